@@ -0,0 +1,48 @@
+package rabbitescape.benchmarks;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import rabbitescape.engine.IgnoreWorldStatsListener;
+import rabbitescape.engine.LoadWorldFile;
+import rabbitescape.engine.World;
+import rabbitescape.engine.WorldSnapshot;
+import rabbitescape.engine.textworld.TextWorldManip;
+
+/**
+ * One bundled level, loaded once per trial.  RunBenchmarks sets level to
+ * every level in the game; the default here is only so that the
+ * benchmarks can also be run straight from JMH's own Main.
+ */
+@State( Scope.Thread )
+public class LevelState
+{
+    @Param( "easy/level_01.rel" )
+    public String level;
+
+    public String[] lines;
+    public World world;
+
+    /**
+     * The level as it is before its first step, for starting again.
+     */
+    public byte[] start;
+
+    @Setup
+    public void load()
+    {
+        lines = LoadWorldFile.readLinesFromResource( level );
+        world = TextWorldManip.createWorld( lines );
+        start = WorldSnapshot.save( world );
+    }
+
+    /**
+     * @return a new copy of the level as it was before its first step.
+     */
+    public World restore()
+    {
+        return WorldSnapshot.restore( start, new IgnoreWorldStatsListener() );
+    }
+}
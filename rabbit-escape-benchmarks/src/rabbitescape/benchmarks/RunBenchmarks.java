@@ -0,0 +1,96 @@
+package rabbitescape.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import rabbitescape.engine.menu.LevelMenuItem;
+import rabbitescape.engine.menu.LevelsCompleted;
+import rabbitescape.engine.menu.Menu;
+import rabbitescape.engine.menu.MenuDefinition;
+import rabbitescape.engine.menu.MenuItem;
+
+/**
+ * Runs every benchmark in this package on every level that ships with the
+ * game, with the GC profiler, and writes the results as JSON.
+ *
+ * Usage: RunBenchmarks RESULTS_FILE [BENCHMARK_REGEX]
+ *
+ * e.g. "RunBenchmarks results.json StepBenchmark" only measures stepping.
+ * Two results files can be compared with any JMH results viewer, or just
+ * with diff.
+ */
+public class RunBenchmarks
+{
+    public static void main( String[] args ) throws RunnerException
+    {
+        if ( args.length < 1 || args.length > 2 )
+        {
+            System.err.println(
+                "Usage: RunBenchmarks RESULTS_FILE [BENCHMARK_REGEX]" );
+            System.exit( 1 );
+        }
+
+        String include = RunBenchmarks.class.getPackage().getName() + ".";
+        if ( args.length > 1 )
+        {
+            include += ".*" + args[1];
+        }
+
+        List<String> levels = levelFileNames();
+
+        Options options = new OptionsBuilder()
+            .include( include )
+            .param( "level", levels.toArray( new String[ levels.size() ] ) )
+            .addProfiler( GCProfiler.class )
+            .warmupIterations( 3 )
+            .measurementIterations( 5 )
+            .forks( 1 )
+            .resultFormat( ResultFormatType.JSON )
+            .result( args[0] )
+            .build();
+
+        new Runner( options ).run();
+    }
+
+    /**
+     * Every level in the game's menus.  (The engine tests have their own
+     * copy of this, but we only depend on the engine itself.)
+     */
+    private static List<String> levelFileNames()
+    {
+        List<String> ret = new ArrayList<String>();
+
+        Menu menu = MenuDefinition.mainMenu( new IgnoreLevelsCompleted() );
+        Menu levelSets = menu.items[0].menu;
+        for ( MenuItem levelSet : levelSets.items )
+        {
+            for ( MenuItem levelItem : levelSet.menu.items )
+            {
+                ret.add( ( (LevelMenuItem)levelItem ).fileName );
+            }
+        }
+
+        return ret;
+    }
+
+    private static class IgnoreLevelsCompleted implements LevelsCompleted
+    {
+        @Override
+        public int highestLevelCompleted( String levelsDir )
+        {
+            return 0;
+        }
+
+        @Override
+        public void setCompletedLevel( String levelsDir, int levelNum )
+        {
+        }
+    }
+}
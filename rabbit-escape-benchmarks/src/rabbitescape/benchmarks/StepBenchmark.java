@@ -0,0 +1,63 @@
+package rabbitescape.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import rabbitescape.engine.World;
+import rabbitescape.engine.World.CompletionState;
+
+/**
+ * How many times a second World.step() runs, for each level, playing it
+ * with no tokens placed.  With the GC profiler, gc.alloc.rate.norm is the
+ * number of bytes allocated per step.
+ *
+ * When the level finishes, it starts again from its first step.  The
+ * restart happens in a setup method, so it is not timed, but JMH's GC
+ * profiler counts everything allocated during an iteration, so step's
+ * gc.alloc.rate.norm still includes a share of each restart: restart's
+ * own gc.alloc.rate.norm, divided by the number of steps the level lasts.
+ * restart measures that on its own, so the two can be told apart.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+public class StepBenchmark
+{
+    @State( Scope.Thread )
+    public static class Playing
+    {
+        public World world;
+
+        @Setup( Level.Invocation )
+        public void restartIfFinished( LevelState level )
+        {
+            if (
+                   world == null
+                || world.completionState() != CompletionState.RUNNING
+            )
+            {
+                world = level.restore();
+            }
+        }
+    }
+
+    @Benchmark
+    public World step( Playing playing )
+    {
+        playing.world.step();
+        return playing.world;
+    }
+
+    @Benchmark
+    public World restart( LevelState level )
+    {
+        return level.restore();
+    }
+}
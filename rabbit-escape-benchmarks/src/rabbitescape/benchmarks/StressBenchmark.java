@@ -0,0 +1,98 @@
+package rabbitescape.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import rabbitescape.engine.IgnoreWorldStatsListener;
+import rabbitescape.engine.World;
+import rabbitescape.engine.WorldSnapshot;
+import rabbitescape.engine.headless.StressLevel;
+
+/**
+ * Time per World.step() in generated levels, varying either the number of
+ * rabbits (in the biggest level) or the size of the level (with the same
+ * number of rabbits), so the two can be plotted separately.
+ *
+ * Every measurement iteration starts again from the level's first step,
+ * so rabbits dying or leaving only affects results within an iteration.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+public class StressBenchmark
+{
+    private static final int rabbits_for_sizes = 1000;
+
+    public abstract static class GeneratedLevel
+    {
+        public World world;
+        private byte[] start;
+
+        protected abstract StressLevel level();
+
+        @Setup( Level.Trial )
+        public void generate()
+        {
+            start = WorldSnapshot.save( level().world() );
+        }
+
+        @Setup( Level.Iteration )
+        public void restart()
+        {
+            world = WorldSnapshot.restore(
+                start, new IgnoreWorldStatsListener() );
+        }
+    }
+
+    @State( Scope.Thread )
+    public static class ByRabbits extends GeneratedLevel
+    {
+        @Param( { "100", "1000", "10000", "100000" } )
+        public int rabbits;
+
+        @Override
+        protected StressLevel level()
+        {
+            return new StressLevel()
+                .size( StressLevel.max_size, StressLevel.max_size )
+                .placedRabbits( rabbits );
+        }
+    }
+
+    @State( Scope.Thread )
+    public static class BySize extends GeneratedLevel
+    {
+        @Param( { "100", "250", "500", "1000", "2000" } )
+        public int size;
+
+        @Override
+        protected StressLevel level()
+        {
+            return new StressLevel()
+                .size( size, size )
+                .placedRabbits( rabbits_for_sizes );
+        }
+    }
+
+    @Benchmark
+    public World stepByRabbits( ByRabbits state )
+    {
+        state.world.step();
+        return state.world;
+    }
+
+    @Benchmark
+    public World stepBySize( BySize state )
+    {
+        state.world.step();
+        return state.world;
+    }
+}
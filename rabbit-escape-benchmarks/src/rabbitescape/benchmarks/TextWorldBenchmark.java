@@ -0,0 +1,32 @@
+package rabbitescape.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import rabbitescape.engine.World;
+import rabbitescape.engine.textworld.TextWorldManip;
+
+/**
+ * How long it takes to turn each level's text into a World, and to turn
+ * a World back into text.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+public class TextWorldBenchmark
+{
+    @Benchmark
+    public World createWorld( LevelState state )
+    {
+        return TextWorldManip.createWorld( state.lines );
+    }
+
+    @Benchmark
+    public String[] renderCompleteWorld( LevelState state )
+    {
+        return TextWorldManip.renderCompleteWorld( state.world, true );
+    }
+}
@@ -1,24 +1,85 @@
 package rabbitescape.engine;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Map;
 
 import rabbitescape.engine.ChangeDescription.State;
 
+/**
+ * One instance of each behaviour is shared by every Rabbit, so behaviours
+ * must not have any state of their own (they may also be used by several
+ * threads at once - see ParallelStepper).  Anything a behaviour needs to
+ * remember about a rabbit lives in that Rabbit's fields.
+ */
 public abstract class Behaviour
 {
-    public boolean triggered;
+    /**
+     * @return the states whose behave() is ours: see Rabbit.step().  The
+     *         same array every time, which must not be modified.
+     */
+    protected abstract State[] handledStates();
+
+    /**
+     * @return true if state is one of ours.
+     */
+    public boolean handles( State state )
+    {
+        for ( State handled : handledStates() )
+        {
+            if ( handled == state )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
 
     public abstract State newState( BehaviourTools t, boolean triggered );
 
     public abstract boolean behave( World world, Rabbit rabbit, State state );
     public abstract boolean checkTriggered( Rabbit rabbit, World world );
-    public abstract void cancel();
+    public abstract void cancel( Rabbit rabbit );
+
+    /**
+     * @return a number summarising the parts of rabbit's state that belong
+     *         to this behaviour, for WorldHash.  Rabbits that would save
+     *         the same state should give the same number.
+     */
+    public long stateHash( Rabbit rabbit )
+    {
+        return 0;
+    }
+
+    public void saveState( Rabbit rabbit, Map<String, String> saveState )
+    {
+    }
+
+    public void restoreFromState(
+        Rabbit rabbit, Map<String, String> saveState )
+    {
+    }
+
+    /**
+     * The version of the layout saveState( Rabbit, DataOutput ) writes:
+     * see Thing.stateVersions().  0 means we write nothing.
+     */
+    public int stateVersion()
+    {
+        return 0;
+    }
 
-    public void saveState( Map<String, String> saveState )
+    /**
+     * Like saveState(), but binary and exact, for WorldSnapshot.
+     */
+    public void saveState( Rabbit rabbit, DataOutput out )
+        throws IOException
     {
     }
 
-    public void restoreFromState( Map<String, String> saveState )
+    public void restoreFromState( Rabbit rabbit, DataInput in, int version )
+        throws IOException
     {
     }
 }
@@ -1,7 +1,12 @@
 package rabbitescape.engine;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Map;
 
+import rabbitescape.engine.WorldSnapshot.BadSnapshot;
+
 public class BehaviourState
 {
     public static void addToStateIfNotDefault(
@@ -82,4 +87,32 @@ public class BehaviourState
             return defaultValue;
         }
     }
+
+    /**
+     * Write a small count in one byte.  Like addToStateIfGtZero(), treats
+     * anything below zero as zero, which is all the behaviours care about.
+     */
+    public static void writeCount( DataOutput out, int value )
+        throws IOException
+    {
+        assert value <= Byte.MAX_VALUE;
+        out.writeByte( Math.max( 0, value ) );
+    }
+
+    public static int readCount( DataInput in ) throws IOException
+    {
+        return in.readByte();
+    }
+
+    /**
+     * Refuse binary state written with a layout we can't read.
+     */
+    public static void checkVersion( String owner, int version, int ours )
+    {
+        if ( version != ours )
+        {
+            throw new BadSnapshot(
+                "Unknown " + owner + " state version " + version );
+        }
+    }
 }
@@ -0,0 +1,342 @@
+package rabbitescape.engine;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import rabbitescape.engine.util.Util;
+
+import rabbitescape.engine.util.Dimension;
+
+/**
+ * A dense lookup table from (x, y) to the Block there, kept in step with
+ * World.blocks so that World.getBlockAt() is O(1).
+ *
+ * When several blocks share a square, the one earliest in World.blocks
+ * wins, exactly as the old linear scan did.  Blocks outside the world
+ * (e.g. a bridge built off the edge) live in a small overflow list.
+ *
+ * A copy made for World.copy() shares the lookup table with the original
+ * until either of them changes, and then that one takes its own copy.
+ *
+ * WorldSnapshot stores the table itself (see write()), so a restored
+ * grid is filled in square by square instead of block by block.
+ */
+class BlockGrid
+{
+    private final int width;
+    private final int height;
+    private final List<Block> blocks;
+    private Block[] cells;
+    private List<Block> outside;
+
+    /**
+     * True if cells and outside may also be in use by a copy of us.
+     */
+    private boolean shared;
+
+    /**
+     * How many blocks are hidden underneath another block in the same
+     * square.  While this is zero, removing a block never needs a search.
+     */
+    private int numStacked;
+
+    /**
+     * The sum of WorldHash.block() for all the blocks.
+     */
+    private long hash;
+
+    // values() makes a new array every time, so only call it once
+    private static final Block.Type[] blockTypes = Block.Type.values();
+
+    public BlockGrid( Dimension size, List<Block> blocks )
+    {
+        this.width = size.width;
+        this.height = size.height;
+        this.cells = new Block[ width * height ];
+        this.blocks = blocks;
+        this.outside = new ArrayList<Block>();
+        this.numStacked = 0;
+        this.hash = 0;
+        this.shared = false;
+
+        for ( Block block : blocks )
+        {
+            index( block );
+            hash += WorldHash.block( block );
+        }
+    }
+
+    private BlockGrid( BlockGrid original, List<Block> blocks )
+    {
+        this.width = original.width;
+        this.height = original.height;
+        this.blocks = blocks;
+        this.cells = original.cells;
+        this.outside = original.outside;
+        this.numStacked = original.numStacked;
+        this.hash = original.hash;
+        this.shared = true;
+    }
+
+    /**
+     * @param blocks a copy of our blocks list, for the copy to keep in step
+     */
+    public BlockGrid copy( List<Block> blocks )
+    {
+        shared = true;
+        return new BlockGrid( this, blocks );
+    }
+
+    /**
+     * The list of blocks this grid indexes, for the World to use as
+     * World.blocks.
+     */
+    List<Block> blocks()
+    {
+        return blocks;
+    }
+
+    /**
+     * Write the type of block in each square, row by row, then their
+     * variants, then any blocks hidden underneath them or outside the
+     * world, in World.blocks order.
+     */
+    void write( DataOutput out ) throws IOException
+    {
+        out.writeInt( blocks.size() );
+
+        byte[] types = new byte[ cells.length ];
+        for ( int i = 0; i < cells.length; ++i )
+        {
+            if ( cells[i] != null )
+            {
+                types[i] = (byte)( cells[i].type.ordinal() + 1 );
+            }
+        }
+        out.write( types );
+
+        for ( Block block : cells )
+        {
+            if ( block != null )
+            {
+                out.writeInt( block.variant );
+            }
+        }
+
+        List<Block> others = outside;
+        if ( numStacked > 0 )
+        {
+            others = new ArrayList<Block>();
+            for ( Block block : blocks )
+            {
+                if (
+                       !inside( block.x, block.y )
+                    || cells[ block.y * width + block.x ] != block
+                )
+                {
+                    others.add( block );
+                }
+            }
+        }
+
+        out.writeInt( others.size() );
+        for ( Block block : others )
+        {
+            out.writeInt( block.x );
+            out.writeInt( block.y );
+            out.writeByte( block.type.ordinal() );
+            out.writeInt( block.variant );
+        }
+    }
+
+    /**
+     * Read what write() wrote.  The blocks come back in a different order
+     * from World.blocks, but the same block wins in every square.
+     */
+    static BlockGrid read( Dimension size, DataInput in ) throws IOException
+    {
+        List<Block> blocks = new ArrayList<Block>(
+            WorldSnapshot.readLength( in, "blocks" ) );
+        BlockGrid ret = new BlockGrid( size, blocks );
+        Block[] cells = ret.cells;
+        long hash = 0;
+
+        byte[] types = new byte[ cells.length ];
+        in.readFully( types );
+
+        int i = 0;
+        for ( int y = 0; y < ret.height; ++y )
+        {
+            for ( int x = 0; x < ret.width; ++x )
+            {
+                if ( types[i] != 0 )
+                {
+                    Block.Type type = WorldSnapshot.fromOrdinal(
+                        blockTypes, types[i] - 1, "block type" );
+                    Block block = new Block( x, y, type, in.readInt() );
+                    blocks.add( block );
+                    cells[i] = block;
+                    hash += WorldHash.block( block );
+                }
+                ++i;
+            }
+        }
+
+        int numOthers = WorldSnapshot.readLength( in, "blocks" );
+        for ( int j = 0; j < numOthers; ++j )
+        {
+            int x = in.readInt();
+            int y = in.readInt();
+            Block.Type type = WorldSnapshot.fromOrdinal(
+                blockTypes, in.readByte(), "block type" );
+            Block block = new Block( x, y, type, in.readInt() );
+            blocks.add( block );
+            ret.index( block );
+            hash += WorldHash.block( block );
+        }
+
+        ret.hash = hash;
+        return ret;
+    }
+
+    public Block get( int x, int y )
+    {
+        if ( inside( x, y ) )
+        {
+            return cells[ y * width + x ];
+        }
+
+        for ( Block block : outside )
+        {
+            if ( block.x == x && block.y == y )
+            {
+                return block;
+            }
+        }
+        return null;
+    }
+
+    public void addAll( List<Block> toAdd )
+    {
+        if ( toAdd.isEmpty() )
+        {
+            return;
+        }
+
+        unshare();
+        blocks.addAll( toAdd );
+        for ( Block block : toAdd )
+        {
+            index( block );
+            hash += WorldHash.block( block );
+        }
+    }
+
+    /**
+     * @param toRemove the blocks to remove, in order
+     * @param lookup   the same blocks, to look them up quickly
+     */
+    public void removeAll( List<Block> toRemove, Set<Block> lookup )
+    {
+        if ( toRemove.isEmpty() )
+        {
+            return;
+        }
+
+        unshare();
+        Util.removeAll( blocks, lookup );
+        for ( Block block : toRemove )
+        {
+            unindex( block );
+            hash -= WorldHash.block( block );
+        }
+    }
+
+    public long hash()
+    {
+        return hash;
+    }
+
+    private void unshare()
+    {
+        if ( shared )
+        {
+            cells = cells.clone();
+            outside = new ArrayList<Block>( outside );
+            shared = false;
+        }
+    }
+
+    private void index( Block block )
+    {
+        if ( !inside( block.x, block.y ) )
+        {
+            outside.add( block );
+            return;
+        }
+
+        int i = block.y * width + block.x;
+        if ( cells[i] == null )
+        {
+            cells[i] = block;
+        }
+        else
+        {
+            ++numStacked;
+        }
+    }
+
+    /**
+     * Must be called after block has been removed from the blocks list.
+     */
+    private void unindex( Block block )
+    {
+        if ( !inside( block.x, block.y ) )
+        {
+            outside.remove( block );
+            return;
+        }
+
+        int i = block.y * width + block.x;
+        if ( cells[i] != block )
+        {
+            // Blocks are only ever removed after being found by
+            // getBlockAt, so this one is already gone - two rabbits
+            // removed the same block in one step.
+            return;
+        }
+
+        cells[i] = null;
+
+        if ( numStacked > 0 )
+        {
+            Block next = firstBlockAt( block.x, block.y );
+            if ( next != null )
+            {
+                cells[i] = next;
+                --numStacked;
+            }
+        }
+    }
+
+    private Block firstBlockAt( int x, int y )
+    {
+        for ( Block block : blocks )
+        {
+            if ( block.x == x && block.y == y )
+            {
+                return block;
+            }
+        }
+        return null;
+    }
+
+    private boolean inside( int x, int y )
+    {
+        return ( x >= 0 && y >= 0 && x < width && y < height );
+    }
+}
@@ -0,0 +1,198 @@
+package rabbitescape.engine;
+
+import static rabbitescape.engine.util.Util.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Changes made by one chunk of rabbits while a ParallelStepper is running,
+ * kept in the order they were made, and labelled with the rabbit that
+ * made them, so they can be passed on to WorldChanges in exactly the
+ * order the serial engine would have made them.
+ */
+class ChangeBuffer
+{
+    private enum Kind
+    {
+        KILL_RABBIT,
+        SAVE_RABBIT,
+        ADD_BLOCK,
+        REMOVE_BLOCK_AT,
+        REMOVE_TOKEN,
+        THING_CHANGED
+    }
+
+    private static class Change
+    {
+        public final int rabbit;
+        public final Kind kind;
+        public final Object target;
+        public final int x;
+        public final int y;
+
+        public Change( int rabbit, Kind kind, Object target, int x, int y )
+        {
+            this.rabbit = rabbit;
+            this.kind = kind;
+            this.target = target;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    private final List<Change> changes = new ArrayList<Change>();
+
+    /**
+     * The index in World.rabbits of the rabbit making changes now.
+     */
+    private int rabbit = 0;
+
+    /**
+     * How many of changes have been passed on so far.
+     */
+    private int replayed = 0;
+    private final Set<Token> tokensBeingRemoved = newIdentitySet();
+
+    /**
+     * Addition is commutative, so this doesn't need to be in order.
+     */
+    private long rabbitHashDifference = 0;
+
+    /**
+     * The changes from now on are made by the rabbit at index in
+     * World.rabbits.
+     */
+    public void startRabbit( int index )
+    {
+        rabbit = index;
+    }
+
+    public void killRabbit( Rabbit rabbit )
+    {
+        add( Kind.KILL_RABBIT, rabbit, 0, 0 );
+    }
+
+    public void saveRabbit( Rabbit rabbit )
+    {
+        add( Kind.SAVE_RABBIT, rabbit, 0, 0 );
+    }
+
+    public void addBlock( Block block )
+    {
+        add( Kind.ADD_BLOCK, block, 0, 0 );
+    }
+
+    public void removeBlockAt( int x, int y )
+    {
+        add( Kind.REMOVE_BLOCK_AT, null, x, y );
+    }
+
+    public void removeToken( Token token )
+    {
+        add( Kind.REMOVE_TOKEN, token, 0, 0 );
+        tokensBeingRemoved.add( token );
+    }
+
+    public void thingChanged( Thing thing )
+    {
+        add( Kind.THING_CHANGED, thing, 0, 0 );
+    }
+
+    private void add( Kind kind, Object target, int x, int y )
+    {
+        changes.add( new Change( rabbit, kind, target, x, y ) );
+    }
+
+    public void rabbitHashChanged( long difference )
+    {
+        rabbitHashDifference += difference;
+    }
+
+    /**
+     * A rabbit can pick up one token and then look for another in the same
+     * square, so it must be able to see what it has already picked up.
+     */
+    public boolean isBeingRemoved( Token token )
+    {
+        return tokensBeingRemoved.contains( token );
+    }
+
+    /**
+     * Must be called on the thread stepping the world, once all the
+     * workers have finished: pass on the changes made by the rabbit at
+     * index, which must be the next rabbit we have changes from.
+     */
+    public void replayRabbitInto( int index, WorldChanges worldChanges )
+    {
+        while (
+               replayed < changes.size()
+            && changes.get( replayed ).rabbit == index
+        )
+        {
+            replay( changes.get( replayed ), worldChanges );
+            ++replayed;
+        }
+    }
+
+    /**
+     * Must be called on the thread stepping the world, once all the
+     * workers have finished: pass on all the changes not passed on yet.
+     */
+    public void replayInto( WorldChanges worldChanges )
+    {
+        while ( replayed < changes.size() )
+        {
+            replay( changes.get( replayed ), worldChanges );
+            ++replayed;
+        }
+        worldChanges.rabbitHashChanged( rabbitHashDifference );
+
+        changes.clear();
+        tokensBeingRemoved.clear();
+        rabbitHashDifference = 0;
+        replayed = 0;
+    }
+
+    private static void replay( Change change, WorldChanges worldChanges )
+    {
+        switch ( change.kind )
+        {
+            case KILL_RABBIT:
+            {
+                worldChanges.killRabbit( (Rabbit)change.target );
+                break;
+            }
+            case SAVE_RABBIT:
+            {
+                worldChanges.saveRabbit( (Rabbit)change.target );
+                break;
+            }
+            case ADD_BLOCK:
+            {
+                worldChanges.addBlock( (Block)change.target );
+                break;
+            }
+            case REMOVE_BLOCK_AT:
+            {
+                worldChanges.removeBlockAt( change.x, change.y );
+                break;
+            }
+            case REMOVE_TOKEN:
+            {
+                worldChanges.removeToken( (Token)change.target );
+                break;
+            }
+            case THING_CHANGED:
+            {
+                worldChanges.thingChanged( (Thing)change.target );
+                break;
+            }
+            default:
+            {
+                throw new AssertionError( "Unknown change " + change.kind );
+            }
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package rabbitescape.engine;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * What changed in a World during its last step: only the things whose
+ * position or state is different from the step before, plus rabbits
+ * entering and leaving and tokens appearing and disappearing.
+ *
+ * Unlike World.describeChanges(), which makes a new Change for every
+ * thing, we never look at every thing: rabbits and tokens tell us (through
+ * WorldChanges.thingChanged()) where they may have changed, e.g. in
+ * Rabbit.calcNewState(), so a step costs us only as much as it changed.
+ * The same buffers are re-used every step, so the contents are only valid
+ * until the world starts its next step: listeners that want to keep
+ * anything must copy it.
+ *
+ * Get the feed for a world from World.changeFeed().
+ */
+public class ChangeFeed
+{
+    public static interface Listener
+    {
+        /**
+         * Called on the thread stepping the world, at the end of each step.
+         */
+        void changed( ChangeFeed feed );
+    }
+
+    public enum Event
+    {
+        RABBIT_ENTERED,
+        RABBIT_KILLED,
+        RABBIT_SAVED,
+        TOKEN_ADDED,
+        TOKEN_REMOVED
+    }
+
+    private final List<Listener> listeners =
+        new CopyOnWriteArrayList<Listener>();
+
+    private Thing[] changedThings = new Thing[ 16 ];
+    private int numChanges = 0;
+
+    private Event[] events = new Event[ 16 ];
+    private Thing[] eventThings = new Thing[ 16 ];
+    private int numEvents = 0;
+
+    /**
+     * True once a step is finished, until the next one starts.
+     */
+    private boolean finished = false;
+
+    ChangeFeed( Iterable<Thing> things )
+    {
+        // Only report changes from now on
+        for ( Thing thing : things )
+        {
+            remember( thing );
+        }
+    }
+
+    public void addListener( Listener listener )
+    {
+        listeners.add( listener );
+    }
+
+    public void removeListener( Listener listener )
+    {
+        listeners.remove( listener );
+    }
+
+    public int numChanges()
+    {
+        return numChanges;
+    }
+
+    public Thing changedThing( int i )
+    {
+        return changedThings[i];
+    }
+
+    public int numEvents()
+    {
+        return numEvents;
+    }
+
+    public Event event( int i )
+    {
+        return events[i];
+    }
+
+    /**
+     * @return the Rabbit or Token that event( i ) is about.
+     */
+    public Thing eventThing( int i )
+    {
+        return eventThings[i];
+    }
+
+    /**
+     * Called by WorldChanges.apply() with everything it is about to do.
+     */
+    void applying(
+        List<Rabbit> rabbitsToEnter,
+        List<Rabbit> rabbitsToKill,
+        List<Rabbit> rabbitsToSave,
+        List<Token> tokensToAdd,
+        List<Token> tokensToRemove
+    )
+    {
+        startIfFinished();
+
+        addEvents( Event.RABBIT_ENTERED, rabbitsToEnter );
+        addEvents( Event.RABBIT_KILLED, rabbitsToKill );
+        addEvents( Event.RABBIT_SAVED, rabbitsToSave );
+        addEvents( Event.TOKEN_ADDED, tokensToAdd );
+        addEvents( Event.TOKEN_REMOVED, tokensToRemove );
+
+        // Things leaving the world are events, not changes
+        forget( rabbitsToKill );
+        forget( rabbitsToSave );
+        forget( tokensToRemove );
+    }
+
+    /**
+     * Called by WorldChanges.thingChanged() on the thread stepping the
+     * world, wherever thing may have moved or changed state.
+     */
+    void changed( Thing thing )
+    {
+        startIfFinished();
+
+        if ( thing.feedIndex != 0 || !hasChanged( thing ) )
+        {
+            return;
+        }
+
+        if ( numChanges == changedThings.length )
+        {
+            changedThings = grow( changedThings );
+        }
+        changedThings[numChanges++] = thing;
+        thing.feedIndex = numChanges;
+    }
+
+    /**
+     * @return true if thing has moved or changed state since we last
+     *         reported it.  Safe to call on any thread while the world is
+     *         stepping.
+     */
+    static boolean hasChanged( Thing thing )
+    {
+        return (
+               thing.state != thing.fedState
+            || thing.x != thing.fedX
+            || thing.y != thing.fedY
+        );
+    }
+
+    /**
+     * Called at the end of World.step().
+     */
+    void stepped()
+    {
+        startIfFinished();
+
+        // Close the gaps left by things that left the world
+        int kept = 0;
+        for ( int i = 0; i < numChanges; ++i )
+        {
+            Thing thing = changedThings[i];
+            if ( thing != null )
+            {
+                remember( thing );
+                changedThings[kept++] = thing;
+                thing.feedIndex = kept;
+            }
+        }
+        for ( int i = kept; i < numChanges; ++i )
+        {
+            changedThings[i] = null;
+        }
+        numChanges = kept;
+
+        finished = true;
+
+        for ( Listener listener : listeners )
+        {
+            listener.changed( this );
+        }
+    }
+
+    private void startIfFinished()
+    {
+        if ( !finished )
+        {
+            return;
+        }
+
+        // Let go of things that may have left the world
+        for ( int i = 0; i < numChanges; ++i )
+        {
+            changedThings[i].feedIndex = 0;
+            changedThings[i] = null;
+        }
+        for ( int i = 0; i < numEvents; ++i )
+        {
+            eventThings[i] = null;
+        }
+
+        numChanges = 0;
+        numEvents = 0;
+        finished = false;
+    }
+
+    private void addEvents( Event event, List<? extends Thing> things )
+    {
+        for ( Thing thing : things )
+        {
+            if ( numEvents == events.length )
+            {
+                Event[] biggerEvents = new Event[ events.length * 2 ];
+                System.arraycopy( events, 0, biggerEvents, 0, numEvents );
+                events = biggerEvents;
+                eventThings = grow( eventThings );
+            }
+            events[numEvents] = event;
+            eventThings[numEvents] = thing;
+            ++numEvents;
+        }
+    }
+
+    private void forget( List<? extends Thing> things )
+    {
+        for ( Thing thing : things )
+        {
+            if ( thing.feedIndex != 0 )
+            {
+                changedThings[ thing.feedIndex - 1 ] = null;
+                thing.feedIndex = 0;
+            }
+        }
+    }
+
+    private static void remember( Thing thing )
+    {
+        thing.fedX = thing.x;
+        thing.fedY = thing.y;
+        thing.fedState = thing.state;
+    }
+
+    private static Thing[] grow( Thing[] things )
+    {
+        // Not Arrays.copyOf, which is not available in Android 2.2
+        Thing[] ret = new Thing[ things.length * 2 ];
+        System.arraycopy( things, 0, ret, 0, things.length );
+        return ret;
+    }
+
+    /**
+     * Convenience for consumers that want a ChangeDescription, holding
+     * only what changed in the last step.
+     */
+    public ChangeDescription describeChanges()
+    {
+        ChangeDescription ret = new ChangeDescription();
+
+        for ( int i = 0; i < numChanges; ++i )
+        {
+            Thing thing = changedThings[i];
+            ret.add( thing.x, thing.y, thing.state );
+        }
+
+        return ret;
+    }
+}
@@ -3,11 +3,16 @@ package rabbitescape.engine;
 import static rabbitescape.engine.ChangeDescription.State.*;
 import static rabbitescape.engine.Direction.*;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
 public class Entrance extends Thing
 {
+    static final int[] state_versions = { 1 };
+
     private int[] delay = new int[1];
 
     private int timeToNextRabbit;
@@ -59,6 +64,15 @@ public class Entrance extends Thing
         world.changes.enterRabbit( new Rabbit( x, y + 1, RIGHT ) );
     }
 
+    long calcHash()
+    {
+        long h = WorldHash.entranceStart();
+        h = WorldHash.combine( h, x );
+        h = WorldHash.combine( h, y );
+        h = WorldHash.combine( h, timeToNextRabbit );
+        return WorldHash.combine( h, rabbitEntranceCount );
+    }
+
     @Override
     public Map<String, String> saveState()
     {
@@ -76,4 +90,27 @@ public class Entrance extends Thing
             state, "Entrance.timeToNextRabbit", timeToNextRabbit
         );
     }
+
+    @Override
+    public void saveState( DataOutput out ) throws IOException
+    {
+        out.writeInt( timeToNextRabbit );
+        out.writeInt( rabbitEntranceCount );
+    }
+
+    @Override
+    public void restoreFromState( DataInput in, int[] versions )
+        throws IOException
+    {
+        BehaviourState.checkVersion(
+            "Entrance", versions[0], state_versions[0] );
+        timeToNextRabbit = in.readInt();
+        rabbitEntranceCount = in.readInt();
+    }
+
+    @Override
+    public int[] stateVersions()
+    {
+        return state_versions;
+    }
 }
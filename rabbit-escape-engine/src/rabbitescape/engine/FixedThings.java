@@ -0,0 +1,61 @@
+package rabbitescape.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import rabbitescape.engine.util.Dimension;
+
+/**
+ * The exits and entrances in a world.  These never move, appear or
+ * disappear, so we find them once when the World is created and never
+ * need to search World.things for them again.
+ */
+class FixedThings
+{
+    private final int width;
+    private final int height;
+    private final boolean[] exitAt;
+
+    public final List<Entrance> entrances;
+    public final List<Exit> exits;
+
+    public FixedThings( Dimension size, List<Thing> things )
+    {
+        this.width = size.width;
+        this.height = size.height;
+        this.exitAt = new boolean[ width * height ];
+
+        List<Entrance> ents = new ArrayList<Entrance>();
+        List<Exit> exs = new ArrayList<Exit>();
+
+        for ( Thing thing : things )
+        {
+            if ( thing instanceof Entrance )
+            {
+                ents.add( (Entrance)thing );
+            }
+            else if ( thing instanceof Exit )
+            {
+                exs.add( (Exit)thing );
+                if ( inside( thing.x, thing.y ) )
+                {
+                    exitAt[ thing.y * width + thing.x ] = true;
+                }
+            }
+        }
+
+        this.entrances = Collections.unmodifiableList( ents );
+        this.exits = Collections.unmodifiableList( exs );
+    }
+
+    public boolean isExitAt( int x, int y )
+    {
+        return inside( x, y ) && exitAt[ y * width + x ];
+    }
+
+    private boolean inside( int x, int y )
+    {
+        return ( x >= 0 && y >= 0 && x < width && y < height );
+    }
+}
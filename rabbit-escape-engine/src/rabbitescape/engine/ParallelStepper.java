@@ -0,0 +1,200 @@
+package rabbitescape.engine;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Opt-in: spreads the rabbits' part of World.step() across a ForkJoinPool.
+ * Give one to World.setParallelStepper() to use it.
+ *
+ * The results are exactly the same as stepping in serial:
+ *
+ * - Rabbit.step() modifies only its own rabbit.  Anything else it does
+ *   (e.g. killing or saving it, or adding or removing blocks) goes
+ *   through WorldChanges, and what it reads (blocks, exits) does not
+ *   change until WorldChanges.apply(), so all rabbits can be stepped at
+ *   once.
+ *
+ * - Rabbit.calcNewState() can also look at the rabbits and tokens next to
+ *   it, whose states may be changing at the same time, and pick up
+ *   tokens.  So we only do rabbits that are alone (see
+ *   RabbitGrid.isAlone()) in parallel, and then do the rest in serial, in
+ *   their usual order.
+ *
+ * The rabbits are split into fixed-size chunks, and each chunk records its
+ * changes in its own ChangeBuffer, labelled with the rabbit that made
+ * them.  Afterwards the changes are passed on to WorldChanges rabbit by
+ * rabbit, in World.rabbits order, and in calcNewState the rabbits that
+ * were not alone make theirs in between.  So WorldChanges (and the
+ * ChangeFeed and WorldHistory after it) see the changes in exactly the
+ * order they would have in serial.
+ */
+public class ParallelStepper
+{
+    public static final int default_chunk_size = 512;
+
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    public ParallelStepper( ForkJoinPool pool, int chunkSize )
+    {
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    public ParallelStepper( ForkJoinPool pool )
+    {
+        this( pool, default_chunk_size );
+    }
+
+    void stepRabbits( World world )
+    {
+        if ( world.rabbits.size() <= chunkSize )
+        {
+            for ( Rabbit rabbit : world.rabbits )
+            {
+                rabbit.step( world );
+            }
+            return;
+        }
+
+        for ( ChangeBuffer buffer : runInChunks( world, false ) )
+        {
+            buffer.replayInto( world.changes );
+        }
+    }
+
+    void calcNewStateOfRabbits( World world )
+    {
+        if ( world.rabbits.size() <= chunkSize )
+        {
+            for ( Rabbit rabbit : world.rabbits )
+            {
+                rabbit.calcNewState( world );
+            }
+            return;
+        }
+
+        world.rabbitGrid.ensureValid();
+
+        ChangeBuffer[] buffers = runInChunks( world, true );
+
+        int i = 0;
+        for ( Rabbit rabbit : world.rabbits )
+        {
+            if ( world.rabbitGrid.isAlone( rabbit.x, rabbit.y ) )
+            {
+                buffers[ i / chunkSize ].replayRabbitInto( i, world.changes );
+            }
+            else
+            {
+                rabbit.calcNewState( world );
+            }
+            ++i;
+        }
+
+        for ( ChangeBuffer buffer : buffers )
+        {
+            buffer.replayInto( world.changes );
+        }
+    }
+
+    /**
+     * @return each chunk's changes, not passed on to WorldChanges yet.
+     */
+    private ChangeBuffer[] runInChunks( World world, boolean calcNewState )
+    {
+        int numChunks = ( world.rabbits.size() + chunkSize - 1 ) / chunkSize;
+        ChangeBuffer[] buffers = new ChangeBuffer[numChunks];
+        for ( int i = 0; i < numChunks; ++i )
+        {
+            buffers[i] = new ChangeBuffer();
+        }
+
+        world.changes.setBuffering( true );
+        try
+        {
+            pool.invoke(
+                new Chunks( world, calcNewState, buffers, 0, numChunks ) );
+        }
+        finally
+        {
+            world.changes.setBuffering( false );
+        }
+
+        return buffers;
+    }
+
+    private class Chunks extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final World world;
+        private final boolean calcNewState;
+        private final ChangeBuffer[] buffers;
+        private final int start;
+        private final int end;
+
+        public Chunks(
+            World world,
+            boolean calcNewState,
+            ChangeBuffer[] buffers,
+            int start,
+            int end
+        )
+        {
+            this.world = world;
+            this.calcNewState = calcNewState;
+            this.buffers = buffers;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if ( end - start > 1 )
+            {
+                int mid = ( start + end ) / 2;
+                invokeAll(
+                    new Chunks( world, calcNewState, buffers, start, mid ),
+                    new Chunks( world, calcNewState, buffers, mid, end )
+                );
+            }
+            else
+            {
+                runChunk( start );
+            }
+        }
+
+        private void runChunk( int chunk )
+        {
+            List<Rabbit> rabbits = world.rabbits;
+            int from = chunk * chunkSize;
+            int to = Math.min( from + chunkSize, rabbits.size() );
+
+            world.changes.bufferChangesOnThisThread( buffers[chunk] );
+            try
+            {
+                for ( int i = from; i < to; ++i )
+                {
+                    Rabbit rabbit = rabbits.get( i );
+                    buffers[chunk].startRabbit( i );
+                    if ( !calcNewState )
+                    {
+                        rabbit.step( world );
+                    }
+                    else if ( world.rabbitGrid.isAlone( rabbit.x, rabbit.y ) )
+                    {
+                        rabbit.calcNewState( world );
+                    }
+                }
+            }
+            finally
+            {
+                world.changes.bufferChangesOnThisThread( null );
+            }
+        }
+    }
+}
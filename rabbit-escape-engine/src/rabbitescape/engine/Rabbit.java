@@ -2,7 +2,11 @@ package rabbitescape.engine;
 
 import static rabbitescape.engine.ChangeDescription.State.*;
 
-import java.util.ArrayList;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -12,82 +16,202 @@ import rabbitescape.engine.behaviours.*;
 
 public class Rabbit extends Thing
 {
-    private final List<Behaviour> behaviours;
-    private final List<Behaviour> behavioursTriggerOrder;
+    private static final Falling falling = new Falling();
+
+    /**
+     * Shared by every rabbit: see Behaviour.  This is the order in which
+     * they get to choose our new state.
+     */
+    private static final Behaviour[] behaviours = {
+        new Exploding(),
+        new OutOfBounds(),
+        new Exiting(),
+        falling,
+        new Bashing(),
+        new Digging(),
+        new Bridging(),
+        new Blocking(),
+        new Climbing(),
+        new Walking()
+    };
+
+    /**
+     * Indices into behaviours, in the order in which they check whether
+     * they have been triggered.
+     */
+    private static final int[] trigger_order = {
+        0, // exploding
+        1, // outOfBounds
+        2, // exiting
+        8, // climbing
+        3, // falling
+        4, // bashing
+        5, // digging
+        6, // bridging
+        7, // blocking
+        9  // walking
+    };
+
+    private static final int falling_index = 3;
+
+    /**
+     * For each State (by ordinal), the index in behaviours of the one
+     * behaviour whose behave() deals with it, or -1 if it is not a rabbit
+     * state.
+     */
+    private static final int[] stateOwners = findStateOwners();
+
+    /**
+     * Our own layout version (for onSlope), followed by each behaviour's:
+     * see stateVersions().
+     */
+    private static final int own_state_version = 1;
+    static final int[] state_versions = findStateVersions();
+
+    /**
+     * Reused every time we calculate our state, so a steady-state step
+     * allocates nothing per rabbit.
+     */
+    private BehaviourTools tools;
+
+    /**
+     * Our part of World.hash(), updated whenever our state is calculated.
+     * 0 until then, so calculating a new rabbit's first state adds it to
+     * World.rabbitsHash.
+     */
+    long hash;
 
     public Direction dir;
     public boolean onSlope;
 
+    // What our behaviours (which are shared by all rabbits) remember
+    // about us.  Saved by each behaviour's saveState() methods.
+    public int heightFallen;               // Falling
+    public int stepsOfBashing;             // Bashing
+    public int stepsOfDigging;             // Digging
+    public int bridgeSmallSteps;           // Bridging
+    public int bridgeBigSteps;             // Bridging
+    public Bridging.BridgeType bridgeType; // Bridging
+    public boolean blocking;               // Blocking
+    public boolean canClimb;               // Climbing: have the ability
+    public boolean climbing;               // Climbing: using it right now
+
     public Rabbit( int x, int y, Direction dir )
     {
         super( x, y, RABBIT_WALKING_LEFT );
         this.dir = dir;
         this.onSlope = false;
-        behaviours = new ArrayList<>();
-        behavioursTriggerOrder = new ArrayList<>();
-        createBehaviours();
+        this.tools = null;
+        this.bridgeType = Bridging.BridgeType.ALONG;
+
+        assert behaviours[falling_index] == falling;
     }
 
-    private void createBehaviours()
+    private static int[] findStateVersions()
     {
-        Climbing climbing = new Climbing();
-        Digging digging = new Digging();
-        Exploding exploding = new Exploding();
-        OutOfBounds outOfBounds = new OutOfBounds();
-        Exiting exiting = new Exiting();
-        Falling falling = new Falling( climbing );
-        Bashing bashing = new Bashing();
-        Bridging bridging = new Bridging();
-        Blocking blocking = new Blocking();
-        Walking walking = new Walking();
-
-        behavioursTriggerOrder.add( exploding );
-        behavioursTriggerOrder.add( outOfBounds );
-        behavioursTriggerOrder.add( exiting );
-        behavioursTriggerOrder.add( climbing );
-        behavioursTriggerOrder.add( falling );
-        behavioursTriggerOrder.add( bashing );
-        behavioursTriggerOrder.add( digging );
-        behavioursTriggerOrder.add( bridging );
-        behavioursTriggerOrder.add( blocking );
-        behavioursTriggerOrder.add( walking );
-
-        behaviours.add( exploding );
-        behaviours.add( outOfBounds );
-        behaviours.add( exiting );
-        behaviours.add( falling );
-        behaviours.add( bashing );
-        behaviours.add( digging );
-        behaviours.add( bridging );
-        behaviours.add( blocking );
-        behaviours.add( climbing );
-        behaviours.add( walking );
-
-        assert behavioursTriggerOrder.size() == behaviours.size();
+        int[] ret = new int[ behaviours.length + 1 ];
+        ret[0] = own_state_version;
+        for ( int i = 0; i < behaviours.length; ++i )
+        {
+            ret[ i + 1 ] = behaviours[i].stateVersion();
+        }
+        return ret;
     }
 
-    @Override
-    public void calcNewState( World world )
+    private static int[] findStateOwners()
+    {
+        State[] states = State.values();
+        int[] ret = new int[ states.length ];
+        Arrays.fill( ret, -1 );
+
+        for ( int i = 0; i < behaviours.length; ++i )
+        {
+            for ( State state : behaviours[i].handledStates() )
+            {
+                if ( ret[ state.ordinal() ] != -1 )
+                {
+                    throw new AssertionError(
+                        "Two behaviours handle " + state.name() );
+                }
+                ret[ state.ordinal() ] = i;
+            }
+        }
+
+        for ( State state : states )
+        {
+            if (
+                   state.name().startsWith( "RABBIT_" )
+                && ret[ state.ordinal() ] == -1
+            )
+            {
+                throw new AssertionError(
+                    "No behaviour handles " + state.name() );
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Our behaviours, in the order in which they choose our new state.
+     *
+     * Public for test
+     */
+    public static List<Behaviour> behaviours()
     {
-        for ( Behaviour behaviour : behavioursTriggerOrder )
+        return Collections.unmodifiableList( Arrays.asList( behaviours ) );
+    }
+
+    /**
+     * The names of our behaviours, in the order StepProfiler numbers them.
+     */
+    static String[] behaviourNames()
+    {
+        String[] ret = new String[ behaviours.length ];
+        for ( int i = 0; i < behaviours.length; ++i )
         {
-            behaviour.triggered = false;
+            ret[i] = behaviours[i].getClass().getSimpleName();
         }
+        return ret;
+    }
+
+    @Override
+    public void calcNewState( World world )
+    {
+        StepProfiler profiler = world.profiler;
+
+        // Bit i is set if behaviours[i] was triggered
+        int triggered = 0;
 
-        for ( Behaviour behaviour : behavioursTriggerOrder )
+        for ( int i : trigger_order )
         {
-            behaviour.triggered = behaviour.checkTriggered( this, world );
-            if ( behaviour.triggered )
+            long start = StepProfiler.start( profiler );
+            boolean thisTriggered = behaviours[i].checkTriggered( this, world );
+            StepProfiler.stop(
+                profiler,
+                StepProfiler.behaviourTimer( i, StepProfiler.check_triggered ),
+                start
+            );
+
+            if ( thisTriggered )
             {
-                cancelAllBehavioursExcept( behaviour );
+                triggered |= ( 1 << i );
+                cancelAllBehavioursExcept( i );
             }
         }
 
+        BehaviourTools t = tools( world );
         boolean done = false;
-        for ( Behaviour behaviour : behaviours )
+        for ( int i = 0; i < behaviours.length; ++i )
         {
-            State thisState = behaviour.newState(
-                new BehaviourTools( this, world ), behaviour.triggered );
+            long start = StepProfiler.start( profiler );
+            State thisState = behaviours[i].newState(
+                t, ( triggered & ( 1 << i ) ) != 0 );
+            StepProfiler.stop(
+                profiler,
+                StepProfiler.behaviourTimer( i, StepProfiler.new_state ),
+                start
+            );
 
             if ( thisState != null && !done )
             {
@@ -95,30 +219,84 @@ public class Rabbit extends Thing
                 done = true;
             }
         }
+
+        long oldHash = hash;
+        hash = calcHash();
+        world.changes.rabbitHashChanged( hash - oldHash );
+
+        // Every rabbit gets here every step, after moving
+        world.changes.thingChanged( this );
     }
 
-    private void cancelAllBehavioursExcept( Behaviour exception )
+    long calcHash()
     {
+        long h = WorldHash.rabbitStart();
+        h = WorldHash.combine( h, x );
+        h = WorldHash.combine( h, y );
+        h = WorldHash.combine( h, state.ordinal() );
+        h = WorldHash.combine( h, dir == Direction.RIGHT ? 1 : 0 );
+        h = WorldHash.combine( h, onSlope ? 1 : 0 );
+
         for ( Behaviour behaviour : behaviours )
         {
-            if ( behaviour != exception )
+            h = WorldHash.combine( h, behaviour.stateHash( this ) );
+        }
+
+        return h;
+    }
+
+    public BehaviourTools tools( World world )
+    {
+        if ( tools == null || tools.world != world )
+        {
+            tools = new BehaviourTools( this, world );
+        }
+        return tools;
+    }
+
+    private void cancelAllBehavioursExcept( int exception )
+    {
+        for ( int i = 0; i < behaviours.length; ++i )
+        {
+            if ( i != exception )
             {
-                behaviour.cancel();
+                behaviours[i].cancel( this );
             }
         }
     }
 
+    /**
+     * Only the behaviour that owns our state needs to do anything, so we
+     * go straight to it instead of asking each behaviour in turn.
+     */
     @Override
     public void step( World world )
     {
-        for ( Behaviour behaviour : behaviours )
+        int owner = stateOwners[ state.ordinal() ];
+        if ( owner == -1 )
         {
-            boolean handled = behaviour.behave( world, this, state );
-            if ( handled )
-            {
-                break;
-            }
+            throw new AssertionError(
+                "Should have handled all states in Walking or before,"
+                + " but we are in state " + state.name()
+            );
+        }
+
+        if ( owner > falling_index )
+        {
+            falling.notFalling( this );
         }
+
+        StepProfiler profiler = world.profiler;
+        long start = StepProfiler.start( profiler );
+
+        boolean handled = behaviours[owner].behave( world, this, state );
+        assert handled;
+
+        StepProfiler.stop(
+            profiler,
+            StepProfiler.behaviourTimer( owner, StepProfiler.behave ),
+            start
+        );
     }
 
     @Override
@@ -130,12 +308,51 @@ public class Rabbit extends Thing
 
         for ( Behaviour behaviour : behaviours )
         {
-            behaviour.saveState( ret );
+            behaviour.saveState( this, ret );
         }
 
         return ret;
     }
 
+    @Override
+    public void saveState( DataOutput out ) throws IOException
+    {
+        out.writeBoolean( onSlope );
+
+        for ( Behaviour behaviour : behaviours )
+        {
+            behaviour.saveState( this, out );
+        }
+    }
+
+    @Override
+    public void restoreFromState( DataInput in, int[] versions )
+        throws IOException
+    {
+        if ( versions.length != state_versions.length )
+        {
+            throw new WorldSnapshot.BadSnapshot(
+                "Saved rabbits have " + ( versions.length - 1 )
+                + " behaviours, but we have " + behaviours.length
+            );
+        }
+
+        BehaviourState.checkVersion(
+            "Rabbit", versions[0], own_state_version );
+        onSlope = in.readBoolean();
+
+        for ( int i = 0; i < behaviours.length; ++i )
+        {
+            behaviours[i].restoreFromState( this, in, versions[ i + 1 ] );
+        }
+    }
+
+    @Override
+    public int[] stateVersions()
+    {
+        return state_versions;
+    }
+
     @Override
     public void restoreFromState( Map<String, String> state )
     {
@@ -145,7 +362,7 @@ public class Rabbit extends Thing
 
         for ( Behaviour behaviour : behaviours )
         {
-            behaviour.restoreFromState( state );
+            behaviour.restoreFromState( this, state );
         }
     }
 }
@@ -0,0 +1,235 @@
+package rabbitescape.engine;
+
+import static rabbitescape.engine.ChangeDescription.State.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import rabbitescape.engine.util.Dimension;
+
+/**
+ * Which rabbits are in each square, so that asking "is there a blocker
+ * here?" or "is anyone bridging into here?" does not scan every rabbit.
+ *
+ * Rabbits only move while World.step() is stepping them, and only join or
+ * leave the world in WorldChanges.apply(), so we rebuild lazily (in
+ * O(rabbits), allocation-free) the first time we are asked after either of
+ * those has happened.  Each square's chain is in World.rabbits order.
+ */
+class RabbitGrid
+{
+    private final int width;
+    private final int height;
+    private final List<Rabbit> rabbits;
+
+    /**
+     * heads[i] is only meaningful if stamps[i] == generation, which saves
+     * clearing the whole grid every time we rebuild.
+     */
+    private final int[] heads;
+    private final int[] stamps;
+    private int generation;
+
+    private Rabbit[] indexed;
+    private int[] next;
+    private int outside;
+    private int numIndexed;
+    private boolean valid;
+
+    public RabbitGrid( Dimension size, List<Rabbit> rabbits )
+    {
+        this.width = size.width;
+        this.height = size.height;
+        this.rabbits = rabbits;
+        this.heads = new int[ width * height ];
+        this.stamps = new int[ width * height ];
+        this.generation = 0;
+        this.indexed = new Rabbit[0];
+        this.next = new int[0];
+        this.valid = false;
+    }
+
+    /**
+     * Call whenever rabbits may have moved, arrived or left.
+     */
+    public void invalidate()
+    {
+        valid = false;
+    }
+
+    public int countAt( int x, int y )
+    {
+        int ret = 0;
+        for ( int i = first( x, y ); i != -1; i = next[i] )
+        {
+            if ( at( indexed[i], x, y ) )
+            {
+                ++ret;
+            }
+        }
+        return ret;
+    }
+
+    public Rabbit[] rabbitsAt( int x, int y )
+    {
+        Rabbit[] ret = new Rabbit[ countAt( x, y ) ];
+        int n = 0;
+        for ( int i = first( x, y ); i != -1; i = next[i] )
+        {
+            if ( at( indexed[i], x, y ) )
+            {
+                ret[n++] = indexed[i];
+            }
+        }
+        return ret;
+    }
+
+    public boolean isBlockerAt( int x, int y )
+    {
+        for ( int i = first( x, y ); i != -1; i = next[i] )
+        {
+            Rabbit r = indexed[i];
+            if ( at( r, x, y ) && r.state == RABBIT_BLOCKING )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A bridging rabbit builds into its own square, the one next to it, or
+     * one of the squares above those, so we only need to look at the
+     * rabbits below and beside (x, y).
+     */
+    public boolean someoneIsBridgingAt( int x, int y )
+    {
+        for ( int dy = 0; dy <= 1; ++dy )
+        {
+            for ( int dx = -1; dx <= 1; ++dx )
+            {
+                int rx = x + dx;
+                int ry = y + dy;
+                for ( int i = first( rx, ry ); i != -1; i = next[i] )
+                {
+                    Rabbit r = indexed[i];
+                    if (
+                           at( r, rx, ry )
+                        && RabbitStates.isBridgingAt( r.state, rx, ry, x, y )
+                    )
+                    {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if there is at most one rabbit in (x, y) and the 8
+     *         squares around it.  Nothing a rabbit does when calculating
+     *         its new state looks further away than that, so a rabbit that
+     *         is alone does not depend on any other rabbit.
+     */
+    public boolean isAlone( int x, int y )
+    {
+        int count = 0;
+        for ( int dy = -1; dy <= 1; ++dy )
+        {
+            for ( int dx = -1; dx <= 1; ++dx )
+            {
+                count += countAt( x + dx, y + dy );
+                if ( count > 1 )
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Bring the index up to date now, so it can safely be read from several
+     * threads at once until the rabbits next change.
+     */
+    public void ensureValid()
+    {
+        first( 0, 0 );
+    }
+
+    private int first( int x, int y )
+    {
+        if ( !valid || rabbits.size() != numIndexed )
+        {
+            rebuild();
+        }
+
+        if ( inside( x, y ) )
+        {
+            int c = y * width + x;
+            return stamps[c] == generation ? heads[c] : -1;
+        }
+        else
+        {
+            return outside;
+        }
+    }
+
+    private void rebuild()
+    {
+        int n = rabbits.size();
+        if ( indexed.length < n )
+        {
+            int cap = Math.max( n, indexed.length * 2 );
+            indexed = new Rabbit[cap];
+            next = new int[cap];
+        }
+
+        if ( ++generation == 0 )
+        {
+            // Wrapped round: old stamps could look current, so wipe them
+            Arrays.fill( stamps, -1 );
+        }
+        outside = -1;
+
+        // Walk backwards, pushing onto the front of each chain, so that
+        // each chain ends up in list order.
+        for ( int i = n - 1; i >= 0; --i )
+        {
+            Rabbit r = rabbits.get( i );
+            indexed[i] = r;
+
+            if ( inside( r.x, r.y ) )
+            {
+                int c = r.y * width + r.x;
+                next[i] = ( stamps[c] == generation ) ? heads[c] : -1;
+                heads[c] = i;
+                stamps[c] = generation;
+            }
+            else
+            {
+                next[i] = outside;
+                outside = i;
+            }
+        }
+
+        for ( int i = n; i < indexed.length && indexed[i] != null; ++i )
+        {
+            indexed[i] = null;
+        }
+
+        numIndexed = n;
+        valid = true;
+    }
+
+    private static boolean at( Rabbit r, int x, int y )
+    {
+        return r.x == x && r.y == y;
+    }
+
+    private boolean inside( int x, int y )
+    {
+        return ( x >= 0 && y >= 0 && x < width && y < height );
+    }
+}
@@ -4,9 +4,83 @@ import rabbitescape.engine.util.Position;
 
 public class RabbitStates
 {
+    private static final int NOT_BRIDGING = -1;
+
     public static Position whereBridging( StateAndPosition change )
     {
-        switch( change.state )
+        int offset = bridgingOffset( change.state );
+
+        if ( offset == NOT_BRIDGING )
+        {
+            return null;
+        }
+
+        return new Position(
+            change.x + offsetX( offset ), change.y + offsetY( offset ) );
+    }
+
+    /**
+     * Allocation-free equivalent of whereBridging: is a rabbit in state
+     * state at (rabbitX, rabbitY) bridging into (x, y)?
+     */
+    public static boolean isBridgingAt(
+        ChangeDescription.State state,
+        int rabbitX,
+        int rabbitY,
+        int x,
+        int y
+    )
+    {
+        int offset = bridgingOffset( state );
+
+        return (
+               offset != NOT_BRIDGING
+            && rabbitX + offsetX( offset ) == x
+            && rabbitY + offsetY( offset ) == y
+        );
+    }
+
+    public static boolean isBridging( ChangeDescription.State state )
+    {
+        return bridgingOffset( state ) != NOT_BRIDGING;
+    }
+
+    /**
+     * Allocation-free equivalents of whereBridging, for a rabbit in a
+     * state where isBridging() is true.
+     */
+    public static int bridgingX( ChangeDescription.State state, int rabbitX )
+    {
+        return rabbitX + offsetX( bridgingOffset( state ) );
+    }
+
+    public static int bridgingY( ChangeDescription.State state, int rabbitY )
+    {
+        return rabbitY + offsetY( bridgingOffset( state ) );
+    }
+
+    private static int offsetX( int offset )
+    {
+        return ( offset % 3 ) - 1;
+    }
+
+    private static int offsetY( int offset )
+    {
+        return ( offset / 3 ) - 1;
+    }
+
+    private static int offset( int dx, int dy )
+    {
+        return ( dx + 1 ) + 3 * ( dy + 1 );
+    }
+
+    /**
+     * Where a rabbit in this state is building its bridge, relative to
+     * the rabbit, packed as ( dx + 1 ) + 3 * ( dy + 1 ), or NOT_BRIDGING.
+     */
+    private static int bridgingOffset( ChangeDescription.State state )
+    {
+        switch( state )
         {
             case RABBIT_BRIDGING_DOWN_UP_RIGHT_1:
             case RABBIT_BRIDGING_DOWN_UP_RIGHT_2:
@@ -14,7 +88,7 @@ public class RabbitStates
             case RABBIT_BRIDGING_RIGHT_1:
             case RABBIT_BRIDGING_RIGHT_2:
             case RABBIT_BRIDGING_RIGHT_3:
-                return new Position( change.x + 1, change.y );
+                return offset( 1, 0 );
 
             case RABBIT_BRIDGING_DOWN_UP_LEFT_1:
             case RABBIT_BRIDGING_DOWN_UP_LEFT_2:
@@ -22,17 +96,17 @@ public class RabbitStates
             case RABBIT_BRIDGING_LEFT_1:
             case RABBIT_BRIDGING_LEFT_2:
             case RABBIT_BRIDGING_LEFT_3:
-                return new Position( change.x - 1, change.y );
+                return offset( -1, 0 );
 
             case RABBIT_BRIDGING_UP_RIGHT_1:
             case RABBIT_BRIDGING_UP_RIGHT_2:
             case RABBIT_BRIDGING_UP_RIGHT_3:
-                return new Position( change.x + 1, change.y - 1 );
+                return offset( 1, -1 );
 
             case RABBIT_BRIDGING_UP_LEFT_1:
             case RABBIT_BRIDGING_UP_LEFT_2:
             case RABBIT_BRIDGING_UP_LEFT_3:
-                return new Position( change.x - 1, change.y - 1 );
+                return offset( -1, -1 );
 
             case RABBIT_BRIDGING_IN_CORNER_LEFT_1:
             case RABBIT_BRIDGING_IN_CORNER_LEFT_2:
@@ -40,16 +114,16 @@ public class RabbitStates
             case RABBIT_BRIDGING_IN_CORNER_RIGHT_1:
             case RABBIT_BRIDGING_IN_CORNER_RIGHT_2:
             case RABBIT_BRIDGING_IN_CORNER_RIGHT_3:
-                return new Position( change.x, change.y );
+                return offset( 0, 0 );
             case RABBIT_BRIDGING_IN_CORNER_UP_LEFT_1:
             case RABBIT_BRIDGING_IN_CORNER_UP_LEFT_2:
             case RABBIT_BRIDGING_IN_CORNER_UP_LEFT_3:
             case RABBIT_BRIDGING_IN_CORNER_UP_RIGHT_1:
             case RABBIT_BRIDGING_IN_CORNER_UP_RIGHT_2:
             case RABBIT_BRIDGING_IN_CORNER_UP_RIGHT_3:
-                return new Position( change.x, change.y - 1 );
+                return offset( 0, -1 );
             default:
-                return null;
+                return NOT_BRIDGING;
         }
     }
 
@@ -0,0 +1,69 @@
+package rabbitescape.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import rabbitescape.engine.ChangeDescription.State;
+
+/**
+ * Everything that changed in a World during one step, as recorded by
+ * WorldHistory.
+ */
+public class StepDelta
+{
+    public static class RabbitChange
+    {
+        /**
+         * Where this rabbit is in World.rabbits after the step.
+         */
+        public final int index;
+        public final int x;
+        public final int y;
+        public final Direction dir;
+        public final State state;
+
+        public RabbitChange(
+            int index, int x, int y, Direction dir, State state )
+        {
+            this.index = index;
+            this.x = x;
+            this.y = y;
+            this.dir = dir;
+            this.state = state;
+        }
+    }
+
+    /**
+     * The step that made these changes: 1 for the first step.
+     */
+    public final int step;
+
+    /**
+     * True if all the rabbits were told to explode just before this step.
+     */
+    public final boolean explodedAll;
+
+    public final List<Block> blocksAdded = new ArrayList<Block>();
+    public final List<Block> blocksRemoved = new ArrayList<Block>();
+    public final List<StateAndPosition> rabbitsEntered =
+        new ArrayList<StateAndPosition>();
+    public final List<StateAndPosition> rabbitsKilled =
+        new ArrayList<StateAndPosition>();
+    public final List<StateAndPosition> rabbitsSaved =
+        new ArrayList<StateAndPosition>();
+    public final List<Token> tokensAdded = new ArrayList<Token>();
+    public final List<Token> tokensRemoved = new ArrayList<Token>();
+
+    /**
+     * Rabbits whose position, direction or state is different from the
+     * step before.  Rabbits that just entered are always included.
+     */
+    public final List<RabbitChange> rabbitsChanged =
+        new ArrayList<RabbitChange>();
+
+    public StepDelta( int step, boolean explodedAll )
+    {
+        this.step = step;
+        this.explodedAll = explodedAll;
+    }
+}
@@ -0,0 +1,10 @@
+package rabbitescape.engine;
+
+public interface StepProfileListener
+{
+    /**
+     * Called at the end of every step of a World being profiled.  The
+     * profiler's numbers for this step are only valid until we return.
+     */
+    void stepProfiled( StepProfiler profiler );
+}
@@ -0,0 +1,70 @@
+package rabbitescape.engine;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+import rabbitescape.engine.util.RollingHistogram;
+
+/**
+ * Prints a table of where the time went every few steps, for the text
+ * and Swing UIs' --profile option, or for headless runs.  Timers that
+ * were never started in the last window are left out.
+ */
+public class StepProfilePrinter implements StepProfileListener
+{
+    private final PrintStream out;
+    private final int everySteps;
+
+    public StepProfilePrinter( PrintStream out, int everySteps )
+    {
+        this.out = out;
+        this.everySteps = everySteps;
+    }
+
+    @Override
+    public void stepProfiled( StepProfiler profiler )
+    {
+        if ( profiler.stepsProfiled() % everySteps != 0 )
+        {
+            return;
+        }
+
+        out.println( String.format(
+            Locale.ROOT,
+            "Step %d: %.0f rabbits, %.0f tokens, %.0f blocks",
+            profiler.stepsProfiled(),
+            profiler.rabbits().mean(),
+            profiler.tokens().mean(),
+            profiler.blocks().mean()
+        ) );
+
+        out.println( String.format(
+            Locale.ROOT,
+            "%-28s %10s %10s %10s %10s",
+            "Microseconds per step",
+            "mean",
+            "p50",
+            "p99",
+            "max"
+        ) );
+
+        for ( int i = 0; i < profiler.numTimers(); ++i )
+        {
+            RollingHistogram h = profiler.histogram( i );
+            if ( h.max() == 0 )
+            {
+                continue;
+            }
+
+            out.println( String.format(
+                Locale.ROOT,
+                "%-28s %10.1f %10.1f %10.1f %10.1f",
+                profiler.timerName( i ),
+                h.mean() / 1000.0,
+                h.percentile( 50 ) / 1000.0,
+                h.percentile( 99 ) / 1000.0,
+                h.max() / 1000.0
+            ) );
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package rabbitescape.engine;
+
+import rabbitescape.engine.util.RollingHistogram;
+
+/**
+ * Times the parts of World.step(), to find out what makes a level slow.
+ * Give one to World.setProfiler() to switch it on.  With no profiler set
+ * the only cost is a null check around each timed call.
+ *
+ * Each timer adds up the nanoseconds and the number of calls of one kind
+ * within a step: each behaviour's checkTriggered(), newState() and
+ * behave(), WorldChanges.apply(), Token.calcNewState() and the whole
+ * step.  After every step the listener is told, and can look at that
+ * step's numbers, or at histograms of the last windowSize steps.
+ *
+ * Our counters are not thread safe, so while a profiler is set, World
+ * steps its rabbits in serial even if it has a ParallelStepper.
+ */
+public class StepProfiler
+{
+    public static final int default_window_size = 100;
+
+    public static final int whole_step = 0;
+    public static final int changes_apply = 1;
+    public static final int token_calc_new_state = 2;
+    private static final int first_behaviour_timer = 3;
+
+    // The calls we time for each behaviour
+    public static final int check_triggered = 0;
+    public static final int new_state = 1;
+    public static final int behave = 2;
+    private static final String[] call_names = {
+        "checkTriggered", "newState", "behave" };
+
+    private final StepProfileListener listener;
+    private final String[] names;
+    private final long[] nanos;
+    private final long[] calls;
+    private final RollingHistogram[] histograms;
+    private final RollingHistogram rabbits;
+    private final RollingHistogram tokens;
+    private final RollingHistogram blocks;
+    private int stepsProfiled;
+
+    public StepProfiler( StepProfileListener listener, int windowSize )
+    {
+        this.listener = listener;
+
+        String[] behaviourNames = Rabbit.behaviourNames();
+        int numTimers =
+            first_behaviour_timer + behaviourNames.length * call_names.length;
+
+        this.names = new String[numTimers];
+        names[whole_step] = "World.step";
+        names[changes_apply] = "WorldChanges.apply";
+        names[token_calc_new_state] = "Token.calcNewState";
+        for ( int b = 0; b < behaviourNames.length; ++b )
+        {
+            for ( int c = 0; c < call_names.length; ++c )
+            {
+                names[ behaviourTimer( b, c ) ] =
+                    behaviourNames[b] + "." + call_names[c];
+            }
+        }
+
+        this.nanos = new long[numTimers];
+        this.calls = new long[numTimers];
+        this.histograms = new RollingHistogram[numTimers];
+        for ( int i = 0; i < numTimers; ++i )
+        {
+            histograms[i] = new RollingHistogram( windowSize );
+        }
+        this.rabbits = new RollingHistogram( windowSize );
+        this.tokens = new RollingHistogram( windowSize );
+        this.blocks = new RollingHistogram( windowSize );
+        this.stepsProfiled = 0;
+    }
+
+    public StepProfiler( StepProfileListener listener )
+    {
+        this( listener, default_window_size );
+    }
+
+    /**
+     * @param behaviour index of a behaviour within the order in
+     *                  Rabbit.behaviourNames().
+     * @param call      check_triggered, new_state or behave.
+     */
+    public static int behaviourTimer( int behaviour, int call )
+    {
+        return first_behaviour_timer + behaviour * call_names.length + call;
+    }
+
+    /**
+     * Start timing, if profiler is not null.  Pass what we return to
+     * stop() when the thing being timed is finished.
+     */
+    static long start( StepProfiler profiler )
+    {
+        return profiler == null ? 0 : System.nanoTime();
+    }
+
+    static void stop( StepProfiler profiler, int timer, long start )
+    {
+        if ( profiler != null )
+        {
+            profiler.nanos[timer] += System.nanoTime() - start;
+            ++profiler.calls[timer];
+        }
+    }
+
+    /**
+     * Called by World at the end of each step.
+     */
+    void stepped( World world, long stepStart )
+    {
+        stop( this, whole_step, stepStart );
+
+        for ( int i = 0; i < nanos.length; ++i )
+        {
+            histograms[i].add( nanos[i] );
+        }
+
+        rabbits.add( world.rabbits.size() );
+        tokens.add( world.tokenGrid.all().size() );
+        blocks.add( world.blocks.size() );
+        ++stepsProfiled;
+
+        listener.stepProfiled( this );
+
+        for ( int i = 0; i < nanos.length; ++i )
+        {
+            nanos[i] = 0;
+            calls[i] = 0;
+        }
+    }
+
+    public int numTimers()
+    {
+        return names.length;
+    }
+
+    public String timerName( int timer )
+    {
+        return names[timer];
+    }
+
+    /**
+     * @return total time spent in timer during this step.
+     */
+    public long nanos( int timer )
+    {
+        return nanos[timer];
+    }
+
+    /**
+     * @return how many times timer was started during this step.
+     */
+    public long calls( int timer )
+    {
+        return calls[timer];
+    }
+
+    /**
+     * @return total time per step spent in timer, for recent steps.
+     */
+    public RollingHistogram histogram( int timer )
+    {
+        return histograms[timer];
+    }
+
+    /**
+     * @return number of rabbits at the end of recent steps.
+     */
+    public RollingHistogram rabbits()
+    {
+        return rabbits;
+    }
+
+    public RollingHistogram tokens()
+    {
+        return tokens;
+    }
+
+    public RollingHistogram blocks()
+    {
+        return blocks;
+    }
+
+    public int stepsProfiled()
+    {
+        return stepsProfiled;
+    }
+}
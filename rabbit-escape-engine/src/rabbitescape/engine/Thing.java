@@ -1,5 +1,8 @@
 package rabbitescape.engine;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Map;
 
 import rabbitescape.engine.ChangeDescription.State;
@@ -10,6 +13,21 @@ public abstract class Thing
     public int x;
     public int y;
 
+    /**
+     * Where we were and what we were doing the last time ChangeFeed
+     * looked, so it can tell whether we have changed.  fedState is null
+     * until it first looks.
+     */
+    int fedX;
+    int fedY;
+    State fedState;
+
+    /**
+     * One more than where we are in ChangeFeed's list of changed things,
+     * or 0 if we are not in it.
+     */
+    int feedIndex;
+
     public Thing( int x, int y, State state )
     {
         this.state = state;
@@ -21,4 +39,39 @@ public abstract class Thing
     public abstract void step( World world );
     public abstract Map<String, String> saveState();
     public abstract void restoreFromState( Map<String, String> state );
+
+    /**
+     * For things whose saveState( DataOutput ) writes nothing.
+     */
+    protected static final int[] no_state_versions = new int[ 0 ];
+
+    /**
+     * Binary equivalent of saveState(), for WorldSnapshot: write any
+     * internal state not covered by x, y and state, in a fixed layout.
+     * Unlike saveState(), this must capture everything.
+     */
+    public void saveState( DataOutput out ) throws IOException
+    {
+    }
+
+    /**
+     * Read back what saveState( DataOutput ) wrote.
+     *
+     * @param versions what stateVersions() returned when it was written.
+     */
+    public void restoreFromState( DataInput in, int[] versions )
+        throws IOException
+    {
+    }
+
+    /**
+     * The version of each part of the layout written by
+     * saveState( DataOutput ).  Whenever a layout changes, its version
+     * must go up, and restoreFromState( DataInput, int[] ) must still
+     * read the old one (or refuse it).
+     */
+    public int[] stateVersions()
+    {
+        return no_state_versions;
+    }
 }
@@ -0,0 +1,96 @@
+package rabbitescape.engine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import rabbitescape.engine.util.ByteArrayDataOutput;
+
+/**
+ * Makes deep copies of Things for World.copy().
+ *
+ * Internal state is copied through saveState( DataOutput ) and
+ * restoreFromState( DataInput, int[] ), so anything a WorldSnapshot
+ * captures is copied too.  Each Thing is only copied once, so pending
+ * WorldChanges that refer to a rabbit or token end up referring to its
+ * copy.
+ */
+class ThingCopier
+{
+    private final Map<Thing, Thing> copies =
+        new IdentityHashMap<Thing, Thing>();
+
+    private final ByteArrayDataOutput scratch = new ByteArrayDataOutput( 64 );
+
+    public <T extends Thing> List<T> copyAll( List<T> things )
+    {
+        List<T> ret = new ArrayList<T>( things.size() );
+        for ( T thing : things )
+        {
+            ret.add( copyOf( thing ) );
+        }
+        return ret;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    public <T extends Thing> T copyOf( T thing )
+    {
+        Thing ret = copies.get( thing );
+        if ( ret == null )
+        {
+            ret = newCopy( thing );
+            copies.put( thing, ret );
+        }
+        return (T)ret;
+    }
+
+    private Thing newCopy( Thing thing )
+    {
+        Thing ret;
+        if ( thing instanceof Rabbit )
+        {
+            Rabbit rabbit = (Rabbit)thing;
+            Rabbit copy = new Rabbit( rabbit.x, rabbit.y, rabbit.dir );
+            copy.hash = rabbit.hash;
+            ret = copy;
+        }
+        else if ( thing instanceof Entrance )
+        {
+            ret = new Entrance( thing.x, thing.y );
+        }
+        else if ( thing instanceof Exit )
+        {
+            ret = new Exit( thing.x, thing.y );
+        }
+        else if ( thing instanceof Token )
+        {
+            ret = new Token( thing.x, thing.y, ( (Token)thing ).type );
+        }
+        else
+        {
+            throw new IllegalArgumentException(
+                "Unknown thing " + thing.getClass().getName() );
+        }
+
+        ret.state = thing.state;
+        copyState( thing, ret );
+        return ret;
+    }
+
+    private void copyState( Thing from, Thing to )
+    {
+        scratch.reset();
+        try
+        {
+            from.saveState( scratch );
+            to.restoreFromState( scratch.asInput(), from.stateVersions() );
+        }
+        catch ( IOException e )
+        {
+            // Can't happen in memory, unless the two disagree
+            throw new IllegalStateException( e );
+        }
+    }
+}
@@ -7,7 +7,6 @@ import java.util.Map;
 
 import rabbitescape.engine.ChangeDescription.State;
 import rabbitescape.engine.err.RabbitEscapeException;
-import rabbitescape.engine.util.Position;
 
 public class Token extends Thing
 {
@@ -35,6 +34,11 @@ public class Token extends Thing
 
     public final Type type;
 
+    // Maintained by TokenGrid
+    int order;
+    Token nextInSquare;
+    boolean needsNewState;
+
     public Token( int x, int y, Type type )
     {
         super( x, y, state( type, false ) );
@@ -70,61 +74,47 @@ public class Token extends Thing
     @Override
     public void calcNewState( World world )
     {
+        long start = StepProfiler.start( world.profiler );
+
         boolean still = (
                BehaviourTools.s_isFlat( world.getBlockAt( x, y + 1 ) )
             || ( world.getBlockAt( x, y ) != null )
-            || someoneIsBridgingAt( world, x, y )
+            || world.someoneIsBridgingAt( x, y )
         );
 
         state = state( type, !still );
+        world.changes.thingChanged( this );
+
+        StepProfiler.stop(
+            world.profiler, StepProfiler.token_calc_new_state, start );
     }
 
-    private static boolean someoneIsBridgingAt( World world, int x, int y )
+    @Override
+    public void step( World world )
     {
-        for( Rabbit rabbit: world.rabbits )
+        if ( isFalling() )
         {
-            if ( rabbitIsBridgingAt( rabbit, x, y ) )
+            ++y;
+            world.tokenGrid.moved( this, x, y - 1 );
+            world.changes.thingChanged( this );
+
+            if ( y >= world.size.height )
             {
-                return true;
+                world.changes.removeToken( this );
             }
         }
-        return false;
-    }
-
-    private static boolean rabbitIsBridgingAt( Rabbit rabbit, int x, int y )
-    {
-        Position bridging = RabbitStates.whereBridging(
-            new StateAndPosition( rabbit.state, rabbit.x, rabbit.y ) );
-
-        if ( bridging == null )
-        {
-            return false;
-        }
-        else
-        {
-            return ( bridging.x == x && bridging.y == y );
-        }
     }
 
-    @Override
-    public void step( World world )
+    public boolean isFalling()
     {
-        if (
+        return (
                state == TOKEN_BASH_FALLING
             || state == TOKEN_DIG_FALLING
             || state == TOKEN_BRIDGE_FALLING
             || state == TOKEN_BLOCK_FALLING
             || state == TOKEN_CLIMB_FALLING
             || state == TOKEN_EXPLODE_FALLING
-        )
-        {
-            ++y;
-
-            if ( y >= world.size.height )
-            {
-                world.changes.removeToken( this );
-            }
-        }
+        );
     }
 
     @Override
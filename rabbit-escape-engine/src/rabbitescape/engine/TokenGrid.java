@@ -0,0 +1,410 @@
+package rabbitescape.engine;
+
+import static rabbitescape.engine.util.Util.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import rabbitescape.engine.util.Dimension;
+import rabbitescape.engine.util.ModCountedList;
+
+/**
+ * An index from (x, y) to the Tokens in that square, so that
+ * World.getTokenAt() does not depend on how many things are in the world.
+ *
+ * Each square holds a chain of tokens (linked through
+ * Token.nextInSquare) in the same order as they appear in World.things,
+ * so the first match is the same one the old scan would have found.
+ * It also keeps a plain list of all the tokens, so World.step() can
+ * visit them without looking at every other Thing.
+ *
+ * WorldChanges.apply() adds and removes tokens through us, and
+ * Token.step() tells us when one moves.  If World.things is modified
+ * behind our back (tests do this) we notice its modification count has
+ * changed and rebuild.
+ *
+ * We also know which tokens need Token.calcNewState(): a token's state
+ * only depends on its position, the blocks in its square and the one
+ * below, and whether a rabbit is bridging into its square.  So a token
+ * only needs a new state after it is added or moves, a block is added or
+ * removed there, or its square starts or stops being bridged into.
+ * Anything else we can't see (e.g. a rebuild) marks every token.  The
+ * marked tokens are kept in a list, so we never look at resting tokens.
+ *
+ * The only tokens that do anything when stepped are falling ones, and a
+ * falling token always moves, so it is always marked.  So after
+ * calcNewStates() we know exactly which tokens need stepping.  Until
+ * then (e.g. when World has just calculated every state itself) we
+ * step them all.
+ */
+class TokenGrid
+{
+    private final int width;
+    private final int height;
+    private final Token[] heads;
+    private final ModCountedList<Thing> things;
+    private final List<Token> tokens;
+    private final List<Token> marked;
+    private final List<Token> falling;
+    private boolean fallingKnown;
+
+    private Token outside;
+    private int modificationsIndexed;
+    private int nextOrder;
+
+    /**
+     * The squares rabbits were bridging into the last time we calculated
+     * token states, as x, y pairs.
+     */
+    private int[] bridged;
+    private int numBridged;
+
+    /**
+     * The sum of WorldHash.token() for all the tokens.
+     */
+    private long hash;
+
+    public TokenGrid( Dimension size, ModCountedList<Thing> things )
+    {
+        this.width = size.width;
+        this.height = size.height;
+        this.heads = new Token[ width * height ];
+        this.things = things;
+        this.tokens = new ArrayList<Token>();
+        this.marked = new ArrayList<Token>();
+        this.falling = new ArrayList<Token>();
+        this.bridged = new int[8];
+        this.numBridged = 0;
+
+        // heads is new, so already clear
+        indexAll();
+    }
+
+    /**
+     * @return the first token in the chain for this square.  Squares
+     *         outside the world share one chain, so callers must check
+     *         the coordinates of what they find.
+     */
+    public Token first( int x, int y )
+    {
+        checkInSync();
+
+        if ( inside( x, y ) )
+        {
+            return heads[ y * width + x ];
+        }
+        else
+        {
+            return outside;
+        }
+    }
+
+    /**
+     * @return all the tokens, in World.things order
+     */
+    public List<Token> all()
+    {
+        checkInSync();
+
+        return tokens;
+    }
+
+    /**
+     * @return the tokens that might do something in Token.step().
+     */
+    public List<Token> toStep()
+    {
+        checkInSync();
+
+        return fallingKnown ? falling : tokens;
+    }
+
+    /**
+     * Add these tokens to the end of World.things, and index them.
+     */
+    public void add( List<Token> toAdd )
+    {
+        checkInSync();
+
+        things.addAll( toAdd );
+        for ( Token token : toAdd )
+        {
+            token.order = nextOrder++;
+            mark( token );
+            link( token );
+            hash += WorldHash.token( token );
+        }
+        tokens.addAll( toAdd );
+        modificationsIndexed = things.modifications();
+    }
+
+    /**
+     * Remove these tokens from World.things, and from the index.
+     */
+    public void remove( Set<Token> toRemove )
+    {
+        checkInSync();
+
+        removeAll( things, toRemove );
+        for ( Token token : toRemove )
+        {
+            if ( unlink( token, token.x, token.y ) )
+            {
+                hash -= WorldHash.token( token );
+            }
+            token.needsNewState = false;
+        }
+        removeAll( tokens, toRemove );
+        removeAll( marked, toRemove );
+        removeAll( falling, toRemove );
+        modificationsIndexed = things.modifications();
+    }
+
+    public void moved( Token token, int oldX, int oldY )
+    {
+        if ( things.modifications() != modificationsIndexed )
+        {
+            rebuild();
+        }
+        else if ( unlink( token, oldX, oldY ) )
+        {
+            hash -= WorldHash.token( token, oldX, oldY );
+            link( token );
+            hash += WorldHash.token( token );
+            mark( token );
+        }
+    }
+
+    /**
+     * Call after adding or removing blocks.
+     */
+    public void blocksChanged( Collection<Block> changed )
+    {
+        for ( Block block : changed )
+        {
+            // Tokens in this square, and ones resting on it
+            markSquare( block.x, block.y );
+            markSquare( block.x, block.y - 1 );
+        }
+    }
+
+    /**
+     * Call Token.calcNewState() for each token whose state may have
+     * changed since it was last calculated.  The rabbits must already
+     * have their new states.
+     */
+    public void calcNewStates( World world )
+    {
+        checkInSync();
+
+        // Squares that were being bridged into may not be any more
+        for ( int i = 0; i < numBridged; ++i )
+        {
+            markSquare( bridged[ 2 * i ], bridged[ 2 * i + 1 ] );
+        }
+        numBridged = 0;
+
+        if ( !tokens.isEmpty() )
+        {
+            markBridged( world );
+        }
+
+        falling.clear();
+        for ( Token token : marked )
+        {
+            token.calcNewState( world );
+            token.needsNewState = false;
+            if ( token.isFalling() )
+            {
+                falling.add( token );
+            }
+        }
+        marked.clear();
+        fallingKnown = true;
+    }
+
+    /**
+     * Force every token to be recalculated next time.
+     */
+    public void markAll()
+    {
+        for ( Token token : tokens )
+        {
+            mark( token );
+        }
+        fallingKnown = false;
+    }
+
+    private void markBridged( World world )
+    {
+        for ( Rabbit rabbit : world.rabbits )
+        {
+            if ( RabbitStates.isBridging( rabbit.state ) )
+            {
+                int x = RabbitStates.bridgingX( rabbit.state, rabbit.x );
+                int y = RabbitStates.bridgingY( rabbit.state, rabbit.y );
+                rememberBridged( x, y );
+                markSquare( x, y );
+            }
+        }
+    }
+
+    private void mark( Token token )
+    {
+        if ( !token.needsNewState )
+        {
+            token.needsNewState = true;
+            marked.add( token );
+        }
+    }
+
+    private void markSquare( int x, int y )
+    {
+        for ( Token t = first( x, y ); t != null; t = t.nextInSquare )
+        {
+            if ( t.x == x && t.y == y )
+            {
+                mark( t );
+            }
+        }
+    }
+
+    private void rememberBridged( int x, int y )
+    {
+        if ( 2 * numBridged + 2 > bridged.length )
+        {
+            int[] bigger = new int[ bridged.length * 2 ];
+            System.arraycopy( bridged, 0, bigger, 0, bridged.length );
+            bridged = bigger;
+        }
+        bridged[ 2 * numBridged ] = x;
+        bridged[ 2 * numBridged + 1 ] = y;
+        ++numBridged;
+    }
+
+    public long hash()
+    {
+        checkInSync();
+
+        return hash;
+    }
+
+    private void checkInSync()
+    {
+        if ( things.modifications() != modificationsIndexed )
+        {
+            rebuild();
+        }
+    }
+
+    private void rebuild()
+    {
+        for ( int i = 0; i < heads.length; ++i )
+        {
+            heads[i] = null;
+        }
+        indexAll();
+    }
+
+    private void indexAll()
+    {
+        outside = null;
+        nextOrder = 0;
+        hash = 0;
+        tokens.clear();
+        for ( Token token : marked )
+        {
+            token.needsNewState = false;
+        }
+        marked.clear();
+        falling.clear();
+
+        for ( Thing thing : things )
+        {
+            if ( thing instanceof Token )
+            {
+                Token token = (Token)thing;
+                token.order = nextOrder++;
+                link( token );
+                hash += WorldHash.token( token );
+                tokens.add( token );
+            }
+        }
+        markAll();
+
+        modificationsIndexed = things.modifications();
+    }
+
+    /**
+     * Insert token into its square's chain, keeping World.things order.
+     */
+    private void link( Token token )
+    {
+        boolean in = inside( token.x, token.y );
+        int i = in ? token.y * width + token.x : -1;
+
+        Token prev = null;
+        Token cur = in ? heads[i] : outside;
+        while ( cur != null && cur.order < token.order )
+        {
+            prev = cur;
+            cur = cur.nextInSquare;
+        }
+
+        token.nextInSquare = cur;
+        if ( prev != null )
+        {
+            prev.nextInSquare = token;
+        }
+        else if ( in )
+        {
+            heads[i] = token;
+        }
+        else
+        {
+            outside = token;
+        }
+    }
+
+    private boolean unlink( Token token, int x, int y )
+    {
+        boolean in = inside( x, y );
+        int i = in ? y * width + x : -1;
+
+        Token prev = null;
+        Token cur = in ? heads[i] : outside;
+        while ( cur != null && cur != token )
+        {
+            prev = cur;
+            cur = cur.nextInSquare;
+        }
+
+        if ( cur == null )
+        {
+            return false;
+        }
+
+        if ( prev != null )
+        {
+            prev.nextInSquare = token.nextInSquare;
+        }
+        else if ( in )
+        {
+            heads[i] = token.nextInSquare;
+        }
+        else
+        {
+            outside = token.nextInSquare;
+        }
+        token.nextInSquare = null;
+
+        return true;
+    }
+
+    private boolean inside( int x, int y )
+    {
+        return ( x >= 0 && y >= 0 && x < width && y < height );
+    }
+}
@@ -3,11 +3,14 @@ package rabbitescape.engine;
 import static rabbitescape.engine.util.Util.*;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import rabbitescape.engine.err.RabbitEscapeException;
 import rabbitescape.engine.util.Dimension;
+import rabbitescape.engine.util.ModCountedList;
 
 public class World
 {
@@ -98,7 +101,7 @@ public class World
     public final Dimension size;
     public final List<Block> blocks;
     public final List<Rabbit> rabbits;
-    public final List<Thing> things;
+    public final ModCountedList<Thing> things;
     public final Map<Token.Type, Integer> abilities;
     public final String name;
     public final String description;
@@ -118,8 +121,24 @@ public class World
     public boolean paused;
 
     public final WorldChanges changes;
+    public final WorldCommands commands;
     public final String music;
 
+    BlockGrid blockGrid;
+    TokenGrid tokenGrid;
+    RabbitGrid rabbitGrid;
+    private FixedThings fixedThings;
+    private ParallelStepper parallelStepper;
+    WorldHistory history;
+    ChangeFeed changeFeed;
+    StepProfiler profiler;
+
+    /**
+     * The sum of Rabbit.hash for all the rabbits, kept up to date by
+     * Rabbit.calcNewState() and WorldChanges.
+     */
+    long rabbitsHash;
+
     public World(
         Dimension size,
         List<Block> blocks,
@@ -143,11 +162,70 @@ public class World
         boolean paused,
         WorldStatsListener statsListener
     )
+    {
+        this(
+            size,
+            blocks,
+            rabbits,
+            things,
+            abilities,
+            name,
+            description,
+            author_name,
+            author_url,
+            hint1,
+            hint2,
+            hint3,
+            num_rabbits,
+            num_to_save,
+            rabbit_delay,
+            music,
+            num_saved,
+            num_killed,
+            num_waiting,
+            paused,
+            statsListener,
+            null
+        );
+    }
+
+    /**
+     * @param restoredBlockGrid null for a new world.  Otherwise the world
+     *                          was restored from a WorldSnapshot: this is
+     *                          its BlockGrid, already filled in from blocks,
+     *                          and the things (and their hashes) are already
+     *                          in exactly the state they should be, so we
+     *                          must not recalculate them.
+     */
+    World(
+        Dimension size,
+        List<Block> blocks,
+        List<Rabbit> rabbits,
+        List<Thing> things,
+        Map<Token.Type, Integer> abilities,
+        String name,
+        String description,
+        String author_name,
+        String author_url,
+        String hint1,
+        String hint2,
+        String hint3,
+        int num_rabbits,
+        int num_to_save,
+        int[] rabbit_delay,
+        String music,
+        int num_saved,
+        int num_killed,
+        int num_waiting,
+        boolean paused,
+        WorldStatsListener statsListener,
+        BlockGrid restoredBlockGrid
+    )
     {
         this.size = size;
         this.blocks = blocks;
         this.rabbits = rabbits;
-        this.things = things;
+        this.things = new ModCountedList<Thing>( things );
         this.abilities = abilities;
         this.name = name;
         this.description = description;
@@ -165,17 +243,118 @@ public class World
         this.num_waiting = num_waiting;
         this.paused = paused;
 
+        this.blockGrid = restoredBlockGrid != null
+            ? restoredBlockGrid : new BlockGrid( size, blocks );
+        this.tokenGrid = new TokenGrid( size, this.things );
+        this.rabbitGrid = new RabbitGrid( size, rabbits );
+        this.fixedThings = new FixedThings( size, this.things );
+        this.changes = new WorldChanges( this, statsListener );
+        this.commands = new WorldCommands( this );
+        this.parallelStepper = null;
+        this.profiler = null;
+
+        if ( restoredBlockGrid == null )
+        {
+            init();
+        }
+        else
+        {
+            initRestored();
+        }
+    }
+
+    /**
+     * Copy everything from original except its ParallelStepper.
+     */
+    private World( World original, WorldStatsListener statsListener )
+    {
+        ThingCopier copier = new ThingCopier();
+
+        this.size = original.size;
+        this.blocks = new ArrayList<Block>( original.blocks );
+        this.rabbits = copier.copyAll( original.rabbits );
+        this.things =
+            new ModCountedList<Thing>( copier.copyAll( original.things ) );
+        this.abilities = new HashMap<Token.Type, Integer>( original.abilities );
+        this.name = original.name;
+        this.description = original.description;
+        this.author_name = original.author_name;
+        this.author_url = original.author_url;
+        this.hint1 = original.hint1;
+        this.hint2 = original.hint2;
+        this.hint3 = original.hint3;
+        this.num_rabbits = original.num_rabbits;
+        this.num_to_save = original.num_to_save;
+        this.rabbit_delay = original.rabbit_delay;
+        this.music = original.music;
+        this.num_saved = original.num_saved;
+        this.num_killed = original.num_killed;
+        this.num_waiting = original.num_waiting;
+        this.paused = original.paused;
+
+        this.blockGrid = original.blockGrid.copy( blocks );
+        this.tokenGrid = new TokenGrid( size, things );
+        this.rabbitGrid = new RabbitGrid( size, rabbits );
+        this.fixedThings = new FixedThings( size, things );
         this.changes = new WorldChanges( this, statsListener );
+        this.commands = new WorldCommands( this );
+        this.parallelStepper = null;
+        this.profiler = null;
 
-        init();
+        changes.copyPendingFrom( original.changes, copier );
+
+        initRestored();
+    }
+
+    /**
+     * A deep copy of this world, including any changes waiting to be
+     * applied, that can be stepped without affecting this one.  Useful for
+     * trying out "what if" on another thread.  Copy between steps, on the
+     * thread that steps this world.
+     *
+     * The copy reports to an IgnoreWorldStatsListener, and steps in serial
+     * until given a ParallelStepper.  Commands that have not been applied
+     * yet are not copied.
+     */
+    public World copy()
+    {
+        return copy( new IgnoreWorldStatsListener() );
+    }
+
+    public World copy( WorldStatsListener statsListener )
+    {
+        return new World( this, statsListener );
     }
 
     private void init()
     {
-        for ( Thing thing : allThings() )
+        for ( Thing thing : thingsToStep() )
         {
             thing.calcNewState( this );
         }
+
+        sumRabbitHashes();
+    }
+
+    private void initRestored()
+    {
+        // All an Entrance does here is find out its rabbit_delay
+        for ( Entrance entrance : fixedThings.entrances )
+        {
+            entrance.calcNewState( this );
+        }
+
+        // Each rabbit's hash was restored or copied along with its state
+        sumRabbitHashes();
+    }
+
+    private void sumRabbitHashes()
+    {
+        rabbitsHash = 0;
+        for ( Rabbit rabbit : rabbits )
+        {
+            rabbitsHash += rabbit.hash;
+        }
     }
 
     public void step()
@@ -185,21 +364,168 @@ public class World
             throw new DontStepAfterFinish( name );
         }
 
-        for ( Thing thing : allThings() )
+        long stepStart = StepProfiler.start( profiler );
+        boolean parallel = ( parallelStepper != null && profiler == null );
+
+        commands.apply();
+
+        rabbitGrid.invalidate();
+
+        if ( parallel )
+        {
+            parallelStepper.stepRabbits( this );
+        }
+        else
+        {
+            for ( Rabbit rabbit : rabbits )
+            {
+                rabbit.step( this );
+            }
+        }
+
+        for ( Thing thing : activeThingsExceptRabbits() )
         {
-            thing.step(this);
+            thing.step( this );
         }
 
+        rabbitGrid.invalidate();
+
         changes.rememberWhatWillHappen();
 
-        changes.apply();
+        applyChanges();
 
-        for ( Thing thing : allThings() )
+        if ( parallel )
         {
-            thing.calcNewState( this );
+            parallelStepper.calcNewStateOfRabbits( this );
+        }
+        else
+        {
+            for ( Rabbit rabbit : rabbits )
+            {
+                rabbit.calcNewState( this );
+            }
+        }
+
+        // Only the tokens whose state might have changed.  Entrances have
+        // nothing to calculate after init().
+        tokenGrid.calcNewStates( this );
+
+        applyChanges();
+
+        if ( history != null )
+        {
+            history.stepped();
         }
 
+        if ( changeFeed != null )
+        {
+            changeFeed.stepped();
+        }
+
+        if ( profiler != null )
+        {
+            profiler.stepped( this, stepStart );
+        }
+    }
+
+    private void applyChanges()
+    {
+        long start = StepProfiler.start( profiler );
         changes.apply();
+        StepProfiler.stop( profiler, StepProfiler.changes_apply, start );
+    }
+
+    /**
+     * Step the rabbits on several threads at once (see ParallelStepper),
+     * or in serial if parallelStepper is null, which is the default.
+     */
+    public void setParallelStepper( ParallelStepper parallelStepper )
+    {
+        this.parallelStepper = parallelStepper;
+    }
+
+    /**
+     * Time each part of step() (see StepProfiler), or stop timing if
+     * profiler is null, which is the default.
+     */
+    public void setProfiler( StepProfiler profiler )
+    {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Called by WorldHistory when it starts recording us.
+     */
+    void setHistory( WorldHistory history )
+    {
+        this.history = history;
+    }
+
+    /**
+     * Make this world exactly like source, which must not be used again
+     * afterwards: we take over its things instead of copying them.  Any
+     * changes waiting to be applied to us are forgotten.  Used by
+     * WorldHistory to go back in time without the UIs needing a new World.
+     */
+    void takeStateFrom( World source )
+    {
+        blocks.clear();
+        blocks.addAll( source.blocks );
+        rabbits.clear();
+        rabbits.addAll( source.rabbits );
+        things.clear();
+        things.addAll( source.things );
+        abilities.clear();
+        abilities.putAll( source.abilities );
+
+        num_saved = source.num_saved;
+        num_killed = source.num_killed;
+        num_waiting = source.num_waiting;
+        rabbitsHash = source.rabbitsHash;
+
+        blockGrid = source.blockGrid.copy( blocks );
+        tokenGrid = new TokenGrid( size, things );
+        rabbitGrid = new RabbitGrid( size, rabbits );
+        fixedThings = new FixedThings( size, things );
+
+        changes.discardPending();
+        if ( source.changes.explodingAllRabbits() )
+        {
+            changes.explodeAllRabbits();
+        }
+        changes.updateStats();
+    }
+
+    /**
+     * @return a hash of everything that affects what this world will do
+     *         next (see WorldHash).  Equal worlds have equal hashes.
+     */
+    public long hash()
+    {
+        long ret = WorldHash.counts( this )
+            + blockGrid.hash()
+            + tokenGrid.hash();
+
+        for ( Entrance entrance : fixedThings.entrances )
+        {
+            ret += entrance.calcHash();
+        }
+
+        return ret + rabbitsHash;
+    }
+
+    /**
+     * @return a feed of only what changed in each step, to avoid calling
+     *         describeChanges() every step.  It is created the first time
+     *         this is called, which should be between steps.
+     */
+    public ChangeFeed changeFeed()
+    {
+        if ( changeFeed == null )
+        {
+            changeFeed = new ChangeFeed( thingsToStep() );
+        }
+        return changeFeed;
     }
 
     public ChangeDescription describeChanges()
@@ -219,17 +545,46 @@ public class World
         return chain( rabbits, things );
     }
 
+    /**
+     * Everything except exits, which never do anything when stepped.
+     */
+    private Iterable<Thing> thingsToStep()
+    {
+        return chain(
+            rabbits, chain( fixedThings.entrances, tokenGrid.all() ) );
+    }
+
+    /**
+     * Only the things that might do something when stepped: entrances
+     * while there are rabbits waiting, and falling tokens.
+     */
+    private Iterable<Thing> activeThingsExceptRabbits()
+    {
+        List<Entrance> entrances = ( num_waiting > 0 )
+            ? fixedThings.entrances
+            : Collections.<Entrance>emptyList();
+
+        return chain( entrances, tokenGrid.toStep() );
+    }
+
+    public List<Entrance> entrances()
+    {
+        return fixedThings.entrances;
+    }
+
+    public List<Exit> exits()
+    {
+        return fixedThings.exits;
+    }
+
+    public boolean isExitAt( int x, int y )
+    {
+        return fixedThings.isExitAt( x, y );
+    }
+
     public Block getBlockAt( int x, int y )
     {
-        // TODO: faster
-        for ( Block block : blocks )
-        {
-            if ( block.x == x && block.y == y )
-            {
-                return block;
-            }
-        }
-        return null;
+        return blockGrid.get( x, y );
     }
 
     public CompletionState completionState()
@@ -257,15 +612,19 @@ public class World
 
     public Token getTokenAt( int x, int y )
     {
-        // TODO: faster
-        for ( Thing thing : things )
+        for (
+            Token token = tokenGrid.first( x, y );
+            token != null;
+            token = token.nextInSquare
+        )
         {
-            if ( thing.x == x && thing.y == y && thing instanceof Token )
+            if (
+                   token.x == x
+                && token.y == y
+                && !changes.isBeingRemoved( token )
+            )
             {
-                if ( !changes.tokensToRemove.contains( thing ) )
-                {
-                    return (Token)thing;
-                }
+                return token;
             }
         }
         return null;
@@ -273,17 +632,17 @@ public class World
 
     public Rabbit[] getRabbitsAt( int x, int y )
     {
-        List<Rabbit> ret = new ArrayList<Rabbit>();
+        return rabbitGrid.rabbitsAt( x, y );
+    }
 
-        for ( Rabbit rabbit : rabbits )
-        {
-            if ( rabbit.x == x && rabbit.y == y )
-            {
-                ret.add( rabbit );
-            }
-        }
+    public boolean isBlockerAt( int x, int y )
+    {
+        return rabbitGrid.isBlockerAt( x, y );
+    }
 
-        return ret.toArray( new Rabbit[ret.size()] );
+    public boolean someoneIsBridgingAt( int x, int y )
+    {
+        return rabbitGrid.someoneIsBridgingAt( x, y );
     }
 
     public int numRabbitsOut()
@@ -1,7 +1,10 @@
 package rabbitescape.engine;
 
+import static rabbitescape.engine.util.Util.*;
+
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import rabbitescape.engine.ChangeDescription.State;
 import rabbitescape.engine.World.CantAddTokenOutsideWorld;
@@ -10,6 +13,13 @@ import rabbitescape.engine.World.NoSuchAbilityInThisWorld;
 import rabbitescape.engine.World.NoneOfThisAbilityLeft;
 import rabbitescape.engine.World.UnableToAddToken;
 
+/**
+ * The changes made during a step, waiting to be applied all at once.
+ *
+ * Only the thread stepping the world (and a ParallelStepper's workers,
+ * through their ChangeBuffers) may use this, so nothing here is
+ * synchronized.  Other threads, e.g. the UI, go through World.commands.
+ */
 public class WorldChanges
 {
     private final World world;
@@ -20,11 +30,26 @@ public class WorldChanges
     private final List<Rabbit> rabbitsToSave  = new ArrayList<Rabbit>();
     private final List<Token>  tokensToAdd    = new ArrayList<Token>();
     public  final List<Token>  tokensToRemove = new ArrayList<Token>();
+    private final Set<Token>   tokensBeingRemoved = newIdentitySet();
     private final List<Block>  blocksToAdd    = new ArrayList<Block>();
     private final List<Block>  blocksToRemove = new ArrayList<Block>();
+    private final Set<Block>   blocksBeingRemoved = newIdentitySet();
+
+    /**
+     * Scratch space for apply(): everything killed or saved this step.
+     */
+    private final Set<Rabbit>  rabbitsLeaving = newIdentitySet();
 
     private boolean explodeAll = false;
 
+    /**
+     * While a ParallelStepper's workers are running, each one records its
+     * changes in its own buffer instead of making them here.
+     */
+    private final ThreadLocal<ChangeBuffer> buffers =
+        new ThreadLocal<ChangeBuffer>();
+    private boolean buffering = false;
+
     private List<Rabbit> rabbitsJustEntered = new ArrayList<Rabbit>();
 
     public WorldChanges( World world, WorldStatsListener statsListener )
@@ -34,22 +59,67 @@ public class WorldChanges
         updateStats();
     }
 
-    public synchronized void apply()
+    public void apply()
     {
+        if ( world.history != null )
+        {
+            world.history.applying(
+                rabbitsToEnter,
+                rabbitsToKill,
+                rabbitsToSave,
+                tokensToAdd,
+                tokensToRemove,
+                blocksToAdd,
+                blocksToRemove
+            );
+        }
+
+        if ( world.changeFeed != null )
+        {
+            world.changeFeed.applying(
+                rabbitsToEnter,
+                rabbitsToKill,
+                rabbitsToSave,
+                tokensToAdd,
+                tokensToRemove
+            );
+        }
+
         // Add any new things
         for ( Rabbit rabbit : rabbitsToEnter )
         {
             rabbit.calcNewState( world );
         }
         world.rabbits.addAll( rabbitsToEnter );
-        world.things.addAll( tokensToAdd );
-        world.blocks.addAll( blocksToAdd );
-
-        // Remove dead/saved rabbits, used tokens, dug out blocks
-        world.rabbits.removeAll( rabbitsToKill );
-        world.rabbits.removeAll( rabbitsToSave );
-        world.things.removeAll(  tokensToRemove );
-        world.blocks.removeAll(  blocksToRemove );
+        world.tokenGrid.add( tokensToAdd );
+        for ( Token token : tokensToAdd )
+        {
+            thingChanged( token );
+        }
+        world.blockGrid.addAll( blocksToAdd );
+        world.tokenGrid.blocksChanged( blocksToAdd );
+
+        // Remove dead/saved rabbits, used tokens, dug out blocks.  Each
+        // list is compacted in one pass, keeping the order of what is left.
+        rabbitsLeaving.addAll( rabbitsToKill );
+        rabbitsLeaving.addAll( rabbitsToSave );
+        for ( Rabbit rabbit : rabbitsLeaving )
+        {
+            world.rabbitsHash -= rabbit.hash;
+        }
+        removeAll( world.rabbits, rabbitsLeaving );
+        world.tokenGrid.remove( tokensBeingRemoved );
+        world.blockGrid.removeAll( blocksToRemove, blocksBeingRemoved );
+        world.tokenGrid.blocksChanged( blocksToRemove );
+
+        if (
+               !rabbitsToEnter.isEmpty()
+            || !rabbitsToKill.isEmpty()
+            || !rabbitsToSave.isEmpty()
+        )
+        {
+            world.rabbitGrid.invalidate();
+        }
 
         if ( rabbitsToSave.size() > 0 )
         {
@@ -59,10 +129,13 @@ public class WorldChanges
         rabbitsToEnter.clear();
         rabbitsToKill.clear();
         rabbitsToSave.clear();
+        rabbitsLeaving.clear();
         tokensToAdd.clear();
         tokensToRemove.clear();
+        tokensBeingRemoved.clear();
         blocksToAdd.clear();
         blocksToRemove.clear();
+        blocksBeingRemoved.clear();
 
         if ( explodeAll )
         {
@@ -70,7 +143,7 @@ public class WorldChanges
         }
     }
 
-    private void updateStats()
+    void updateStats()
     {
         statsListener.worldStats( world.num_saved, world.num_to_save );
     }
@@ -81,40 +154,73 @@ public class WorldChanges
         for ( Rabbit rabbit : world.rabbits )
         {
             rabbit.state = State.RABBIT_EXPLODING;
+            world.rabbitsHash -= rabbit.hash;
+            rabbit.hash = rabbit.calcHash();
+            world.rabbitsHash += rabbit.hash;
+            thingChanged( rabbit );
         }
     }
 
-    public synchronized void revert()
+    /**
+     * Forget all the changes waiting to be applied, without undoing what
+     * they did to the counts in World.  Used when World.takeStateFrom()
+     * replaces everything anyway.
+     */
+    void discardPending()
+    {
+        rabbitsToEnter.clear();
+        rabbitsToKill.clear();
+        rabbitsToSave.clear();
+        tokensToAdd.clear();
+        tokensToRemove.clear();
+        tokensBeingRemoved.clear();
+        blocksToAdd.clear();
+        blocksToRemove.clear();
+        blocksBeingRemoved.clear();
+        explodeAll = false;
+        rabbitsJustEntered = new ArrayList<Rabbit>();
+    }
+
+    public void revert()
     {
         revertEnterRabbits();
         revertKillRabbits();
         revertSaveRabbits();
         revertAddTokens();
         tokensToRemove.clear();
+        tokensBeingRemoved.clear();
         blocksToAdd.clear();
         blocksToRemove.clear();
+        blocksBeingRemoved.clear();
     }
 
-    private synchronized void revertEnterRabbits()
+    private void revertEnterRabbits()
     {
         world.num_waiting += rabbitsToEnter.size();
         rabbitsToEnter.clear();
     }
 
-    public synchronized void enterRabbit( Rabbit rabbit )
+    public void enterRabbit( Rabbit rabbit )
     {
         --world.num_waiting;
         rabbitsToEnter.add( rabbit );
     }
 
-    private synchronized void revertKillRabbits()
+    private void revertKillRabbits()
     {
         world.num_killed -= rabbitsToKill.size();
         rabbitsToKill.clear();
     }
 
-    public synchronized void killRabbit( Rabbit rabbit )
+    public void killRabbit( Rabbit rabbit )
     {
+        ChangeBuffer buffer = currentBuffer();
+        if ( buffer != null )
+        {
+            buffer.killRabbit( rabbit );
+            return;
+        }
+
         ++world.num_killed;
         rabbitsToKill.add( rabbit );
     }
@@ -125,13 +231,20 @@ public class WorldChanges
         rabbitsToSave.clear();
     }
 
-    public synchronized void saveRabbit( Rabbit rabbit )
+    public void saveRabbit( Rabbit rabbit )
     {
+        ChangeBuffer buffer = currentBuffer();
+        if ( buffer != null )
+        {
+            buffer.saveRabbit( rabbit );
+            return;
+        }
+
         ++world.num_saved;
         rabbitsToSave.add( rabbit );
     }
 
-    private synchronized void revertAddTokens()
+    private void revertAddTokens()
     {
         for ( Token t : tokensToAdd )
         {
@@ -140,7 +253,7 @@ public class WorldChanges
         tokensToAdd.clear();
     }
 
-    public synchronized void addToken( int x, int y, Token.Type type )
+    public void addToken( int x, int y, Token.Type type )
     throws UnableToAddToken
     {
         Integer numLeft = world.abilities.get( type );
@@ -170,36 +283,170 @@ public class WorldChanges
         world.abilities.put( type, numLeft - 1 );
     }
 
-    public synchronized void removeToken( Token thing )
+    public void removeToken( Token thing )
     {
+        ChangeBuffer buffer = currentBuffer();
+        if ( buffer != null )
+        {
+            buffer.removeToken( thing );
+            return;
+        }
+
         tokensToRemove.add( thing );
+        tokensBeingRemoved.add( thing );
     }
 
-    public synchronized void addBlock( Block block )
+    public boolean isBeingRemoved( Token token )
     {
+        if ( tokensBeingRemoved.contains( token ) )
+        {
+            return true;
+        }
+
+        ChangeBuffer buffer = currentBuffer();
+        return buffer != null && buffer.isBeingRemoved( token );
+    }
+
+    public void addBlock( Block block )
+    {
+        ChangeBuffer buffer = currentBuffer();
+        if ( buffer != null )
+        {
+            buffer.addBlock( block );
+            return;
+        }
+
         blocksToAdd.add( block );
     }
 
-    public synchronized void removeBlockAt( int x, int y )
+    public void removeBlockAt( int x, int y )
     {
+        ChangeBuffer buffer = currentBuffer();
+        if ( buffer != null )
+        {
+            buffer.removeBlockAt( x, y );
+            return;
+        }
+
         Block block = world.getBlockAt( x, y );
         if ( block == null )
         {
             throw new NoBlockFound( x, y );
         }
-        blocksToRemove.add( block );
+        // Two rabbits can dig out the same block
+        if ( blocksBeingRemoved.add( block ) )
+        {
+            blocksToRemove.add( block );
+        }
     }
 
-    public synchronized List<Thing> tokensAboutToAppear()
+    /**
+     * Called by Rabbit.calcNewState() when its part of World.hash()
+     * changes.
+     */
+    void rabbitHashChanged( long difference )
+    {
+        ChangeBuffer buffer = currentBuffer();
+        if ( buffer != null )
+        {
+            buffer.rabbitHashChanged( difference );
+            return;
+        }
+
+        world.rabbitsHash += difference;
+    }
+
+    /**
+     * Called wherever a rabbit or token may have moved or changed state,
+     * so that the world's ChangeFeed, if it has one, can report it.
+     */
+    void thingChanged( Thing thing )
+    {
+        ChangeFeed feed = world.changeFeed;
+        if ( feed == null || !ChangeFeed.hasChanged( thing ) )
+        {
+            return;
+        }
+
+        ChangeBuffer buffer = currentBuffer();
+        if ( buffer != null )
+        {
+            buffer.thingChanged( thing );
+            return;
+        }
+
+        feed.changed( thing );
+    }
+
+    /**
+     * Called by ParallelStepper, on the thread stepping the world, before
+     * and after it runs its workers.
+     */
+    void setBuffering( boolean buffering )
+    {
+        this.buffering = buffering;
+    }
+
+    /**
+     * Called by ParallelStepper on a worker thread: until this is called
+     * again with null, changes made on this thread go into buffer.
+     */
+    void bufferChangesOnThisThread( ChangeBuffer buffer )
+    {
+        if ( buffer == null )
+        {
+            buffers.remove();
+        }
+        else
+        {
+            buffers.set( buffer );
+        }
+    }
+
+    private ChangeBuffer currentBuffer()
+    {
+        return buffering ? buffers.get() : null;
+    }
+
+    public List<Thing> tokensAboutToAppear()
     {
         return new ArrayList<Thing>( tokensToAdd );
     }
 
-    public synchronized void explodeAllRabbits()
+    public void explodeAllRabbits()
     {
         explodeAll = true;
     }
 
+    boolean explodingAllRabbits()
+    {
+        return explodeAll;
+    }
+
+    /**
+     * Make our pending changes the same as original's, but referring to
+     * the copies of its rabbits and tokens.  Used by World.copy().
+     */
+    void copyPendingFrom(
+        WorldChanges original, ThingCopier copier )
+    {
+        rabbitsToEnter.addAll( copier.copyAll( original.rabbitsToEnter ) );
+        rabbitsToKill.addAll( copier.copyAll( original.rabbitsToKill ) );
+        rabbitsToSave.addAll( copier.copyAll( original.rabbitsToSave ) );
+        tokensToAdd.addAll( copier.copyAll( original.tokensToAdd ) );
+        tokensToRemove.addAll( copier.copyAll( original.tokensToRemove ) );
+        tokensBeingRemoved.addAll(
+            copier.copyAll( list( original.tokensBeingRemoved ) ) );
+
+        // Blocks never change, so the copy can share them
+        blocksToAdd.addAll( original.blocksToAdd );
+        blocksToRemove.addAll( original.blocksToRemove );
+        blocksBeingRemoved.addAll( original.blocksToRemove );
+
+        explodeAll = original.explodeAll;
+        rabbitsJustEntered = copier.copyAll( original.rabbitsJustEntered );
+    }
+
     public List<Rabbit> rabbitsJustEntered()
     {
         return rabbitsJustEntered;
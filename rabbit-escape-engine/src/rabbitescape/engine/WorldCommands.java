@@ -0,0 +1,214 @@
+package rabbitescape.engine;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import rabbitescape.engine.World.UnableToAddToken;
+
+/**
+ * Changes the player asks for from other threads (e.g. the UI thread),
+ * waiting to be made by the thread stepping the world.  Any number of
+ * threads may add commands without taking a lock, and apply() makes them
+ * in the order they arrived, so the same clicks always have the same
+ * result.
+ *
+ * World.step() calls apply() before it does anything else, and a game
+ * loop may call it more often so that new tokens appear straight away.
+ *
+ * World.abilities may only be read on the stepping thread, so apply()
+ * also publishes an unmodifiable copy of it for other threads.
+ *
+ * Stepping back replaces everything in the world, so it is a command too:
+ * anything drawing or stepping the world on that thread never sees it
+ * half way through.
+ */
+public class WorldCommands
+{
+    private enum Kind
+    {
+        ADD_TOKEN,
+        EXPLODE_ALL,
+        STEP_BACK
+    }
+
+    private static class Command
+    {
+        public final Kind kind;
+        public final int x;
+        public final int y;
+        public final Token.Type type;
+
+        public Command( Kind kind, int x, int y, Token.Type type )
+        {
+            this.kind = kind;
+            this.x = x;
+            this.y = y;
+            this.type = type;
+        }
+    }
+
+    private final World world;
+    private final Queue<Command> commands =
+        new ConcurrentLinkedQueue<Command>();
+    private volatile Map<Token.Type, Integer> abilities;
+
+    public WorldCommands( World world )
+    {
+        this.world = world;
+        publishAbilities();
+    }
+
+    /**
+     * Any thread: ask for a token to be added.  If it can't be added when
+     * the command is applied (e.g. there are none left) it is ignored.
+     */
+    public void addToken( int x, int y, Token.Type type )
+    {
+        commands.add( new Command( Kind.ADD_TOKEN, x, y, type ) );
+    }
+
+    /**
+     * Any thread: ask for all the rabbits to explode.
+     */
+    public void explodeAllRabbits()
+    {
+        commands.add( new Command( Kind.EXPLODE_ALL, 0, 0, null ) );
+    }
+
+    /**
+     * Any thread: ask for the world to go back one step, if it has a
+     * WorldHistory that remembers it.  Tokens waiting to be added before
+     * this was asked for are taken back with the step.
+     */
+    public void stepBack()
+    {
+        commands.add( new Command( Kind.STEP_BACK, 0, 0, null ) );
+    }
+
+    /**
+     * Any thread: how many tokens of this type are waiting to be added.
+     * Only a guide, since other threads may be adding or applying
+     * commands while we count.
+     */
+    public int tokensWaiting( Token.Type type )
+    {
+        int ret = 0;
+        for ( Command command : commands )
+        {
+            if ( command.kind == Kind.ADD_TOKEN && command.type == type )
+            {
+                ++ret;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Any thread: how many of each ability the world had at the last
+     * apply(), without the tokens waiting to be added.  Unmodifiable.
+     */
+    public Map<Token.Type, Integer> abilities()
+    {
+        return abilities;
+    }
+
+    /**
+     * Any thread: how many of this ability will be left once the tokens
+     * waiting to be added have been added.  While a command is being
+     * applied this may be one too low, but never too high.
+     */
+    public int abilitiesLeft( Token.Type type )
+    {
+        Integer num = abilities.get( type );
+        if ( num == null )
+        {
+            return 0;
+        }
+        return num - tokensWaiting( type );
+    }
+
+    /**
+     * Must be called on the thread stepping the world, between steps:
+     * pass every waiting command on to WorldChanges.
+     *
+     * @return true if we went back at least one step.
+     */
+    public boolean apply()
+    {
+        boolean steppedBack = false;
+
+
+        // Each command stays in the queue until its effect on the
+        // abilities has been published, so other threads never count it
+        // as neither waiting nor used.  Only this thread removes them.
+        Command command;
+        while ( ( command = commands.peek() ) != null )
+        {
+            switch ( command.kind )
+            {
+                case ADD_TOKEN:
+                {
+                    addTokenNow( command );
+                    break;
+                }
+                case EXPLODE_ALL:
+                {
+                    world.changes.explodeAllRabbits();
+                    break;
+                }
+                case STEP_BACK:
+                {
+                    steppedBack |= stepBackNow();
+                    break;
+                }
+                default:
+                {
+                    throw new AssertionError(
+                        "Unknown command " + command.kind );
+                }
+            }
+            publishAbilities();
+            commands.poll();
+        }
+
+        // In case something else changed them
+        publishAbilities();
+
+        return steppedBack;
+    }
+
+    private void publishAbilities()
+    {
+        if ( !world.abilities.equals( abilities ) )
+        {
+            abilities = Collections.unmodifiableMap(
+                new HashMap<Token.Type, Integer>( world.abilities ) );
+        }
+    }
+
+    private boolean stepBackNow()
+    {
+        if ( world.history == null || !world.history.canStepBack() )
+        {
+            return false;
+        }
+
+        world.history.stepBack();
+        return true;
+    }
+
+    private void addTokenNow( Command command )
+    {
+        try
+        {
+            world.changes.addToken( command.x, command.y, command.type );
+        }
+        catch ( UnableToAddToken e )
+        {
+            // e.g. two clicks both asked for the last one
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package rabbitescape.engine;
+
+import java.util.Map;
+
+/**
+ * A 64-bit hash of everything that affects what a World will do next, for
+ * spotting when we have been in the same state before.
+ *
+ * Each block, token, rabbit etc. is hashed on its own, and the results are
+ * added together, so the order of the things does not matter and a change
+ * to one thing only means subtracting its old hash and adding its new one.
+ * World.hash() uses hashes kept up to date as the world changes;
+ * calculate() works everything out from scratch, and should always agree.
+ */
+public class WorldHash
+{
+    private static final long block_seed    = 0x6a09e667f3bcc908L;
+    private static final long token_seed    = 0xbb67ae8584caa73bL;
+    private static final long rabbit_seed   = 0x3c6ef372fe94f82bL;
+    private static final long entrance_seed = 0xa54ff53a5f1d36f1L;
+    private static final long counts_seed   = 0x510e527fade682d1L;
+
+    public static long calculate( World world )
+    {
+        long ret = counts( world );
+
+        for ( Block block : world.blocks )
+        {
+            ret += block( block );
+        }
+
+        for ( Thing thing : world.things )
+        {
+            if ( thing instanceof Token )
+            {
+                ret += token( (Token)thing );
+            }
+            else if ( thing instanceof Entrance )
+            {
+                ret += ( (Entrance)thing ).calcHash();
+            }
+        }
+
+        for ( Rabbit rabbit : world.rabbits )
+        {
+            ret += rabbit.calcHash();
+        }
+
+        return ret;
+    }
+
+    static long block( Block block )
+    {
+        long h = combine( block_seed, block.x );
+        h = combine( h, block.y );
+        h = combine( h, block.type.ordinal() );
+        return combine( h, block.variant );
+    }
+
+    static long token( Token token )
+    {
+        return token( token, token.x, token.y );
+    }
+
+    /**
+     * The hash of token as if it were at (x, y).
+     */
+    static long token( Token token, int x, int y )
+    {
+        long h = combine( token_seed, x );
+        h = combine( h, y );
+        return combine( h, token.type.ordinal() );
+    }
+
+    static long rabbitStart()
+    {
+        return rabbit_seed;
+    }
+
+    static long entranceStart()
+    {
+        return entrance_seed;
+    }
+
+    static long counts( World world )
+    {
+        long h = combine( counts_seed, world.num_waiting );
+        h = combine( h, world.num_saved );
+        h = combine( h, world.num_killed );
+
+        for ( Map.Entry<Token.Type, Integer> e : world.abilities.entrySet() )
+        {
+            // Added, not combined, so the order of the map does not matter
+            h += combine( combine( counts_seed, e.getKey().ordinal() ),
+                e.getValue() );
+        }
+
+        return h;
+    }
+
+    /**
+     * Fold value into the hash so far.
+     */
+    public static long combine( long hash, long value )
+    {
+        return mix( hash + mix( value ) );
+    }
+
+    /**
+     * The finalising step of SplitMix64: a cheap way to spread the bits of
+     * x over the whole result.
+     */
+    private static long mix( long x )
+    {
+        x += 0x9e3779b97f4a7c15L;
+        x = ( x ^ ( x >>> 30 ) ) * 0xbf58476d1ce4e5b9L;
+        x = ( x ^ ( x >>> 27 ) ) * 0x94d049bb133111ebL;
+        return x ^ ( x >>> 31 );
+    }
+}
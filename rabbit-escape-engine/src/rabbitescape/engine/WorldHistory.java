@@ -0,0 +1,613 @@
+package rabbitescape.engine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import rabbitescape.engine.ChangeDescription.State;
+import rabbitescape.engine.WorldSnapshot.BadSnapshot;
+import rabbitescape.engine.err.RabbitEscapeException;
+import rabbitescape.engine.util.ByteArrayDataInput;
+import rabbitescape.engine.util.ByteArrayDataOutput;
+
+/**
+ * Remembers what happened in a World, so it can be wound back to an
+ * earlier step.
+ *
+ * Every step we record a compact StepDelta, and every keyframeInterval
+ * steps we take a WorldSnapshot.  To go back we restore the nearest
+ * keyframe at or before the step we want, and replay the tokens and
+ * "explode all"s recorded since then.  The world is deterministic, so this
+ * brings back exactly the world we had.
+ *
+ * When we use more than maxBytes we forget the oldest keyframe and its
+ * deltas, so how far back we can go depends on the budget.  If even one
+ * keyframe and its deltas don't fit, we take a new keyframe and start
+ * again from there, but only if a keyframe takes up at most half the
+ * budget.  Otherwise we would be saving the whole world nearly every
+ * step, so instead we stop recording (see recording()).
+ *
+ * Create a WorldHistory before any tokens are placed, and call everything
+ * on the thread that steps the world.
+ */
+public class WorldHistory
+{
+    public static class StepNotInHistory extends RabbitEscapeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        public final int step;
+        public final int earliest;
+        public final int latest;
+
+        public StepNotInHistory( int step, int earliest, int latest )
+        {
+            this.step = step;
+            this.earliest = earliest;
+            this.latest = latest;
+        }
+    }
+
+    public static final int default_keyframe_interval = 50;
+    public static final long default_max_bytes = 4 * 1024 * 1024;
+
+    private static final byte block_added = 0;
+    private static final byte block_removed = 1;
+    private static final byte rabbit_entered = 2;
+    private static final byte rabbit_killed = 3;
+    private static final byte rabbit_saved = 4;
+    private static final byte token_added = 5;
+    private static final byte token_removed = 6;
+    private static final byte rabbit_changed = 7;
+
+    // values() makes a new array every time, so only call it once
+    private static final State[] states = State.values();
+    private static final Block.Type[] blockTypes = Block.Type.values();
+    private static final Token.Type[] tokenTypes = Token.Type.values();
+
+    private final World world;
+    private final int keyframeInterval;
+    private final long maxBytes;
+
+    private final TreeMap<Integer, byte[]> keyframes =
+        new TreeMap<Integer, byte[]>();
+
+    /**
+     * deltas.get( i ) is what happened in step firstDeltaStep + i.
+     */
+    private final List<byte[]> deltas = new ArrayList<byte[]>();
+    private int firstDeltaStep;
+
+    private int currentStep;
+    private long bytes;
+    private boolean recording;
+
+    /**
+     * What happened so far in the step being taken.
+     */
+    private final ByteArrayDataOutput current = new ByteArrayDataOutput();
+    private boolean wasExploding;
+
+    /**
+     * The rabbits at the end of the last step, in World.rabbits order,
+     * and their pack()ed positions and states.  Two sets of arrays which
+     * we swap each step, so stepping allocates nothing once they are big
+     * enough.
+     */
+    private Rabbit[] lastRabbits = new Rabbit[0];
+    private long[] lastPacked = new long[0];
+    private int numLastRabbits;
+    private Rabbit[] nowRabbits = new Rabbit[0];
+    private long[] nowPacked = new long[0];
+
+    public WorldHistory( World world )
+    {
+        this( world, default_keyframe_interval, default_max_bytes );
+    }
+
+    public WorldHistory( World world, int keyframeInterval, long maxBytes )
+    {
+        this.world = world;
+        this.keyframeInterval = Math.max( 1, keyframeInterval );
+        this.maxBytes = maxBytes;
+        this.currentStep = 0;
+        this.firstDeltaStep = 1;
+        this.bytes = 0;
+        this.recording = true;
+
+        startFrom( 0 );
+        world.setHistory( this );
+    }
+
+    /**
+     * @return the number of steps the world has taken since we were
+     *         created, taking away any we have gone back.
+     */
+    public int currentStep()
+    {
+        return currentStep;
+    }
+
+    /**
+     * @return the earliest step we can go back to.
+     */
+    public int earliestStep()
+    {
+        return recording ? keyframes.firstKey() : currentStep;
+    }
+
+    public boolean canStepBack()
+    {
+        return currentStep > earliestStep();
+    }
+
+    /**
+     * @return false if we stopped recording because our budget is too
+     *         small for this world, so we can't go back at all.
+     */
+    public boolean recording()
+    {
+        return recording;
+    }
+
+    /**
+     * @return how much memory our keyframes and deltas take up.
+     */
+    public long sizeInBytes()
+    {
+        return bytes;
+    }
+
+    /**
+     * @return what happened in the given step: delta( 1 ) is the first
+     *         step.
+     */
+    public StepDelta delta( int step )
+    {
+        if ( step < firstDeltaStep || step > currentStep )
+        {
+            throw new StepNotInHistory( step, firstDeltaStep, currentStep );
+        }
+
+        byte[] delta = deltas.get( step - firstDeltaStep );
+        try
+        {
+            return decode( step, delta );
+        }
+        catch ( IOException e )
+        {
+            // Can't happen: we wrote it ourselves
+            throw new AssertionError( e );
+        }
+    }
+
+    /**
+     * Go back one step.
+     */
+    public void stepBack()
+    {
+        seek( currentStep - 1 );
+    }
+
+    /**
+     * Put the world back how it was at the end of the given step.  Any
+     * history after that is forgotten, and the world carries on from
+     * there.  Tokens placed since the last step are taken back.
+     */
+    public void seek( int step )
+    {
+        if ( !recording || step < earliestStep() || step > currentStep )
+        {
+            throw new StepNotInHistory( step, earliestStep(), currentStep );
+        }
+
+        // Not floorEntry(), which is not available in Android 2.2
+        int keyframeStep = keyframes.headMap( step + 1 ).lastKey();
+        World replayed = WorldSnapshot.restore(
+            keyframes.get( keyframeStep ), new IgnoreWorldStatsListener() );
+
+        replayed.setPaused( false );
+        for ( int s = keyframeStep + 1; s <= step; ++s )
+        {
+            StepDelta delta = delta( s );
+            for ( Token token : delta.tokensAdded )
+            {
+                replayed.changes.addToken( token.x, token.y, token.type );
+            }
+            if ( delta.explodedAll )
+            {
+                replayed.changes.explodeAllRabbits();
+            }
+            replayed.step();
+        }
+
+        world.takeStateFrom( replayed );
+
+        forgetAfter( step );
+        startFrom( step );
+    }
+
+    /**
+     * Called by WorldChanges.apply() with everything it is about to do.
+     */
+    void applying(
+        List<Rabbit> rabbitsToEnter,
+        List<Rabbit> rabbitsToKill,
+        List<Rabbit> rabbitsToSave,
+        List<Token> tokensToAdd,
+        List<Token> tokensToRemove,
+        List<Block> blocksToAdd,
+        List<Block> blocksToRemove
+    )
+    {
+        if ( !recording )
+        {
+            return;
+        }
+
+        writeBlocks( block_added, blocksToAdd );
+        writeBlocks( block_removed, blocksToRemove );
+        writeRabbits( rabbit_entered, rabbitsToEnter );
+        writeRabbits( rabbit_killed, rabbitsToKill );
+        writeRabbits( rabbit_saved, rabbitsToSave );
+        writeTokens( token_added, tokensToAdd );
+        writeTokens( token_removed, tokensToRemove );
+    }
+
+    /**
+     * Called at the end of World.step().
+     */
+    void stepped()
+    {
+        ++currentStep;
+
+        if ( !recording )
+        {
+            firstDeltaStep = currentStep + 1;
+            return;
+        }
+
+        int numRabbits = world.rabbits.size();
+        if ( nowRabbits.length < numRabbits )
+        {
+            int capacity = Math.max( numRabbits, 2 * nowRabbits.length );
+            nowRabbits = new Rabbit[ capacity ];
+            nowPacked = new long[ capacity ];
+        }
+
+        // World.rabbits keeps its order: rabbits only leave from anywhere,
+        // and enter at the end.  So each rabbit we had last time is after
+        // the previous one we found.
+        int from = 0;
+        int i = 0;
+        for ( Rabbit rabbit : world.rabbits )
+        {
+            long packed = pack( rabbit );
+            int last = findLastRabbit( rabbit, from );
+            if ( last == -1 || lastPacked[last] != packed )
+            {
+                current.writeByte( rabbit_changed );
+                current.writeInt( i );
+                current.writeShort( rabbit.x );
+                current.writeShort( rabbit.y );
+                current.writeBoolean( rabbit.dir == Direction.RIGHT );
+                current.writeShort( rabbit.state.ordinal() );
+            }
+            if ( last != -1 )
+            {
+                from = last + 1;
+            }
+            nowRabbits[i] = rabbit;
+            nowPacked[i] = packed;
+            ++i;
+        }
+        swapRabbits( numRabbits );
+
+        boolean exploding = world.changes.explodingAllRabbits();
+        current.writeBoolean( exploding && !wasExploding );
+        wasExploding = exploding;
+
+        byte[] delta = current.toByteArray();
+        current.reset();
+        deltas.add( delta );
+        bytes += delta.length;
+
+        if ( currentStep % keyframeInterval == 0 )
+        {
+            addKeyframe();
+        }
+
+        keepWithinBudget();
+    }
+
+    private void keepWithinBudget()
+    {
+        while ( bytes > maxBytes && keyframes.size() > 1 )
+        {
+            forgetOldestKeyframe();
+        }
+
+        if ( bytes > maxBytes && keyframes.lastKey() != currentStep )
+        {
+            if ( 2 * keyframes.get( keyframes.lastKey() ).length > maxBytes )
+            {
+                // We would have to save the whole world again within a
+                // few steps, and over and over.
+                stopRecording();
+                return;
+            }
+
+            // Not even one keyframe and its deltas fit, so start again
+            // from here.
+            addKeyframe();
+            forgetOldestKeyframe();
+        }
+    }
+
+    private void stopRecording()
+    {
+        recording = false;
+
+        keyframes.clear();
+        deltas.clear();
+        firstDeltaStep = currentStep + 1;
+        bytes = 0;
+
+        current.reset();
+        lastRabbits = new Rabbit[0];
+        lastPacked = new long[0];
+        numLastRabbits = 0;
+        nowRabbits = new Rabbit[0];
+        nowPacked = new long[0];
+    }
+
+    private void addKeyframe()
+    {
+        byte[] keyframe = WorldSnapshot.save( world );
+        keyframes.put( currentStep, keyframe );
+        bytes += keyframe.length;
+    }
+
+    private void forgetOldestKeyframe()
+    {
+        bytes -= keyframes.remove( keyframes.firstKey() ).length;
+
+        // We only need the deltas after our earliest keyframe
+        int earliest = keyframes.firstKey();
+        while ( firstDeltaStep <= earliest )
+        {
+            bytes -= deltas.remove( 0 ).length;
+            ++firstDeltaStep;
+        }
+    }
+
+    private void forgetAfter( int step )
+    {
+        while ( !keyframes.isEmpty() && keyframes.lastKey() > step )
+        {
+            bytes -= keyframes.remove( keyframes.lastKey() ).length;
+        }
+
+        while ( firstDeltaStep + deltas.size() - 1 > step )
+        {
+            bytes -= deltas.remove( deltas.size() - 1 ).length;
+        }
+
+        currentStep = step;
+    }
+
+    /**
+     * Make sure we have a keyframe for step, and remember how the world
+     * looks now so we can tell what the next step changes.
+     */
+    private void startFrom( int step )
+    {
+        if ( !keyframes.containsKey( step ) )
+        {
+            addKeyframe();
+        }
+
+        int numRabbits = world.rabbits.size();
+        nowRabbits = new Rabbit[ numRabbits ];
+        nowPacked = new long[ numRabbits ];
+        int i = 0;
+        for ( Rabbit rabbit : world.rabbits )
+        {
+            nowRabbits[i] = rabbit;
+            nowPacked[i] = pack( rabbit );
+            ++i;
+        }
+        swapRabbits( numRabbits );
+
+        wasExploding = world.changes.explodingAllRabbits();
+        current.reset();
+    }
+
+    /**
+     * @return where rabbit was in lastRabbits, looking no earlier than
+     *         from, or -1 if it wasn't there (i.e. it just entered).
+     */
+    private int findLastRabbit( Rabbit rabbit, int from )
+    {
+        for ( int i = from; i < numLastRabbits; ++i )
+        {
+            if ( lastRabbits[i] == rabbit )
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The first numRabbits of nowRabbits become lastRabbits, and the old
+     * lastRabbits arrays are reused next time.
+     */
+    private void swapRabbits( int numRabbits )
+    {
+        Rabbit[] oldRabbits = lastRabbits;
+        long[] oldPacked = lastPacked;
+        int numOld = numLastRabbits;
+
+        lastRabbits = nowRabbits;
+        lastPacked = nowPacked;
+        numLastRabbits = numRabbits;
+
+        // Don't keep rabbits that have left the world alive
+        for ( int i = 0; i < numOld; ++i )
+        {
+            oldRabbits[i] = null;
+        }
+        nowRabbits = oldRabbits;
+        nowPacked = oldPacked;
+    }
+
+    private static long pack( Rabbit rabbit )
+    {
+        return ( rabbit.x & 0xffffL )
+            | ( ( rabbit.y & 0xffffL ) << 16 )
+            | ( ( rabbit.dir == Direction.RIGHT ? 1L : 0L ) << 32 )
+            | ( (long)rabbit.state.ordinal() << 33 );
+    }
+
+    private void writeBlocks( byte kind, List<Block> blocks )
+    {
+        for ( Block block : blocks )
+        {
+            current.writeByte( kind );
+            current.writeShort( block.x );
+            current.writeShort( block.y );
+            current.writeByte( block.type.ordinal() );
+            current.writeShort( block.variant );
+        }
+    }
+
+    private void writeRabbits( byte kind, List<Rabbit> rabbits )
+    {
+        for ( Rabbit rabbit : rabbits )
+        {
+            current.writeByte( kind );
+            current.writeShort( rabbit.x );
+            current.writeShort( rabbit.y );
+            current.writeShort( rabbit.state.ordinal() );
+        }
+    }
+
+    private void writeTokens( byte kind, List<Token> tokens )
+    {
+        for ( Token token : tokens )
+        {
+            current.writeByte( kind );
+            current.writeShort( token.x );
+            current.writeShort( token.y );
+            current.writeByte( token.type.ordinal() );
+        }
+    }
+
+    private static StepDelta decode( int step, byte[] delta )
+        throws IOException
+    {
+        // The last byte says whether all the rabbits exploded
+        StepDelta ret = new StepDelta( step, delta[ delta.length - 1 ] != 0 );
+
+        ByteArrayDataInput in =
+            new ByteArrayDataInput( delta, 0, delta.length - 1 );
+
+        while ( in.remaining() > 0 )
+        {
+            byte kind = in.readByte();
+            switch ( kind )
+            {
+                case block_added:
+                {
+                    ret.blocksAdded.add( readBlock( in ) );
+                    break;
+                }
+                case block_removed:
+                {
+                    ret.blocksRemoved.add( readBlock( in ) );
+                    break;
+                }
+                case rabbit_entered:
+                {
+                    ret.rabbitsEntered.add( readRabbit( in ) );
+                    break;
+                }
+                case rabbit_killed:
+                {
+                    ret.rabbitsKilled.add( readRabbit( in ) );
+                    break;
+                }
+                case rabbit_saved:
+                {
+                    ret.rabbitsSaved.add( readRabbit( in ) );
+                    break;
+                }
+                case token_added:
+                {
+                    ret.tokensAdded.add( readToken( in ) );
+                    break;
+                }
+                case token_removed:
+                {
+                    ret.tokensRemoved.add( readToken( in ) );
+                    break;
+                }
+                case rabbit_changed:
+                {
+                    int index = in.readInt();
+                    int x = in.readShort();
+                    int y = in.readShort();
+                    Direction dir =
+                        in.readBoolean() ? Direction.RIGHT : Direction.LEFT;
+                    State state = WorldSnapshot.fromOrdinal(
+                        states, in.readShort(), "state" );
+
+                    ret.rabbitsChanged.add(
+                        new StepDelta.RabbitChange( index, x, y, dir, state )
+                    );
+                    break;
+                }
+                default:
+                {
+                    throw new BadSnapshot( "Unknown delta kind " + kind );
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    private static Block readBlock( ByteArrayDataInput in ) throws IOException
+    {
+        int x = in.readShort();
+        int y = in.readShort();
+        Block.Type type = WorldSnapshot.fromOrdinal(
+            blockTypes, in.readByte(), "block type" );
+        int variant = in.readShort();
+
+        return new Block( x, y, type, variant );
+    }
+
+    private static StateAndPosition readRabbit( ByteArrayDataInput in )
+        throws IOException
+    {
+        int x = in.readShort();
+        int y = in.readShort();
+        State state =
+            WorldSnapshot.fromOrdinal( states, in.readShort(), "state" );
+
+        return new StateAndPosition( state, x, y );
+    }
+
+    private static Token readToken( ByteArrayDataInput in ) throws IOException
+    {
+        int x = in.readShort();
+        int y = in.readShort();
+        Token.Type type =
+            WorldSnapshot.fromOrdinal( tokenTypes, in.readByte(), "token" );
+
+        return new Token( x, y, type );
+    }
+}
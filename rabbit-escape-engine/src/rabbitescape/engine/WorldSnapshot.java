@@ -0,0 +1,433 @@
+package rabbitescape.engine;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import rabbitescape.engine.ChangeDescription.State;
+import rabbitescape.engine.err.RabbitEscapeException;
+import rabbitescape.engine.util.ByteArrayDataInput;
+import rabbitescape.engine.util.ByteArrayDataOutput;
+import rabbitescape.engine.util.Dimension;
+
+/**
+ * A compact binary copy of everything in a World, including the internal
+ * state of every behaviour, that restores to exactly the same world.
+ *
+ * Much faster than renderCompleteWorld() followed by createWorld(): the
+ * block grid (see BlockGrid.write()) and each rabbit's hash are stored as
+ * they are, so restoring hardly does more than allocate the world.  Each
+ * thing's internal state has a versioned layout (see Thing.stateVersions(),
+ * recorded once at the start), so changing one behaviour's fields need not
+ * make old snapshots unreadable.  But enums are stored as ordinals, so
+ * snapshots are only really safe with the same version of the game.  The
+ * text format is still the one to use for levels and for swapping worlds
+ * between versions.
+ *
+ * Take snapshots between steps: changes waiting in WorldChanges (e.g.
+ * tokens just placed) are not included.
+ */
+public class WorldSnapshot
+{
+    public static class BadSnapshot extends RabbitEscapeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        public final String problem;
+
+        public BadSnapshot( String problem )
+        {
+            this.problem = problem;
+        }
+
+        public BadSnapshot( Throwable cause )
+        {
+            super( cause );
+            this.problem = cause.toString();
+        }
+    }
+
+    private static final int magic = 0x52455357; // "RESW"
+    private static final int version = 3;
+
+    private static final byte kind_entrance = 0;
+    private static final byte kind_exit = 1;
+    private static final byte kind_token = 2;
+
+    /**
+     * More of anything (rabbits, blocks, squares...) than a real world
+     * could hold.  Lengths are checked against this before we allocate
+     * anything, so a corrupt snapshot can't ask for gigabytes.
+     */
+    static final int max_length = 1 << 24;
+
+    // values() makes a new array every time, so only call it once
+    private static final State[] states = State.values();
+    private static final Token.Type[] tokenTypes = Token.Type.values();
+
+    public static byte[] save( World world )
+    {
+        ByteArrayDataOutput out = new ByteArrayDataOutput();
+        try
+        {
+            write( world, out );
+        }
+        catch ( IOException e )
+        {
+            // Can't happen when writing to memory
+            throw new BadSnapshot( e );
+        }
+        return out.toByteArray();
+    }
+
+    public static World restore(
+        byte[] snapshot, WorldStatsListener statsListener )
+    {
+        try
+        {
+            return read( new ByteArrayDataInput( snapshot ), statsListener );
+        }
+        catch ( IOException e )
+        {
+            throw new BadSnapshot( e );
+        }
+    }
+
+    public static void write( World world, DataOutput out ) throws IOException
+    {
+        out.writeInt( magic );
+        out.writeInt( version );
+        writeInts( out, Rabbit.state_versions );
+        writeInts( out, Entrance.state_versions );
+
+        out.writeInt( world.size.width );
+        out.writeInt( world.size.height );
+        out.writeUTF( world.name );
+        out.writeUTF( world.description );
+        out.writeUTF( world.author_name );
+        out.writeUTF( world.author_url );
+        out.writeUTF( world.hint1 );
+        out.writeUTF( world.hint2 );
+        out.writeUTF( world.hint3 );
+        writeNullableString( out, world.music );
+        out.writeInt( world.num_rabbits );
+        out.writeInt( world.num_to_save );
+        writeInts( out, world.rabbit_delay );
+        out.writeInt( world.num_saved );
+        out.writeInt( world.num_killed );
+        out.writeInt( world.num_waiting );
+        out.writeBoolean( world.paused );
+        out.writeBoolean( world.changes.explodingAllRabbits() );
+
+        writeAbilities( out, world.abilities );
+
+        world.blockGrid.write( out );
+
+        out.writeInt( world.rabbits.size() );
+        for ( Rabbit rabbit : world.rabbits )
+        {
+            writeThingStart( out, rabbit );
+            out.writeBoolean( rabbit.dir == Direction.RIGHT );
+            out.writeLong( rabbit.hash );
+            rabbit.saveState( out );
+        }
+
+        out.writeInt( world.things.size() );
+        for ( Thing thing : world.things )
+        {
+            if ( thing instanceof Entrance )
+            {
+                out.writeByte( kind_entrance );
+            }
+            else if ( thing instanceof Exit )
+            {
+                out.writeByte( kind_exit );
+            }
+            else if ( thing instanceof Token )
+            {
+                out.writeByte( kind_token );
+                out.writeByte( ( (Token)thing ).type.ordinal() );
+            }
+            else
+            {
+                throw new BadSnapshot(
+                    "Unknown thing " + thing.getClass().getName() );
+            }
+
+            writeThingStart( out, thing );
+            thing.saveState( out );
+        }
+    }
+
+    public static World read( DataInput in, WorldStatsListener statsListener )
+    throws IOException
+    {
+        if ( in.readInt() != magic )
+        {
+            throw new BadSnapshot( "Not a world snapshot" );
+        }
+
+        int ver = in.readInt();
+        if ( ver != version )
+        {
+            throw new BadSnapshot( "Unknown snapshot version " + ver );
+        }
+
+        int[] rabbitVersions = readInts( in, "rabbit versions" );
+        int[] entranceVersions = readInts( in, "entrance versions" );
+
+        Dimension size = readSize( in );
+        String name = in.readUTF();
+        String description = in.readUTF();
+        String author_name = in.readUTF();
+        String author_url = in.readUTF();
+        String hint1 = in.readUTF();
+        String hint2 = in.readUTF();
+        String hint3 = in.readUTF();
+        String music = readNullableString( in );
+        int num_rabbits = in.readInt();
+        int num_to_save = in.readInt();
+        int[] rabbit_delay = readInts( in, "rabbit delays" );
+        int num_saved = in.readInt();
+        int num_killed = in.readInt();
+        int num_waiting = in.readInt();
+        boolean paused = in.readBoolean();
+        boolean explodeAll = in.readBoolean();
+
+        Map<Token.Type, Integer> abilities = readAbilities( in );
+
+        BlockGrid blockGrid = BlockGrid.read( size, in );
+
+        boolean currentRabbitVersions =
+            Arrays.equals( rabbitVersions, Rabbit.state_versions );
+        int numRabbits = readLength( in, "rabbits" );
+        List<Rabbit> rabbits = new ArrayList<Rabbit>( numRabbits );
+        for ( int i = 0; i < numRabbits; ++i )
+        {
+            int x = in.readInt();
+            int y = in.readInt();
+            State state = readState( in );
+            Direction dir = in.readBoolean() ? Direction.RIGHT : Direction.LEFT;
+
+            Rabbit rabbit = new Rabbit( x, y, dir );
+            rabbit.state = state;
+            rabbit.hash = in.readLong();
+            rabbit.restoreFromState( in, rabbitVersions );
+            if ( !currentRabbitVersions )
+            {
+                // Our hash may not include the same things any more
+                rabbit.hash = rabbit.calcHash();
+            }
+            rabbits.add( rabbit );
+        }
+
+        int numThings = readLength( in, "things" );
+        List<Thing> things = new ArrayList<Thing>( numThings );
+        for ( int i = 0; i < numThings; ++i )
+        {
+            byte kind = in.readByte();
+            Token.Type tokenType = null;
+            if ( kind == kind_token )
+            {
+                tokenType = fromOrdinal( tokenTypes, in.readByte(), "token" );
+            }
+
+            int x = in.readInt();
+            int y = in.readInt();
+            State state = readState( in );
+
+            Thing thing;
+            int[] versions = Thing.no_state_versions;
+            switch ( kind )
+            {
+                case kind_entrance:
+                {
+                    thing = new Entrance( x, y );
+                    versions = entranceVersions;
+                    break;
+                }
+                case kind_exit:
+                {
+                    thing = new Exit( x, y );
+                    break;
+                }
+                case kind_token:
+                {
+                    thing = new Token( x, y, tokenType );
+                    break;
+                }
+                default:
+                {
+                    throw new BadSnapshot( "Unknown kind of thing " + kind );
+                }
+            }
+
+            thing.state = state;
+            thing.restoreFromState( in, versions );
+            things.add( thing );
+        }
+
+        World world = new World(
+            size,
+            blockGrid.blocks(),
+            rabbits,
+            things,
+            abilities,
+            name,
+            description,
+            author_name,
+            author_url,
+            hint1,
+            hint2,
+            hint3,
+            num_rabbits,
+            num_to_save,
+            rabbit_delay,
+            music,
+            num_saved,
+            num_killed,
+            num_waiting,
+            paused,
+            statsListener,
+            blockGrid
+        );
+
+        if ( explodeAll )
+        {
+            world.changes.explodeAllRabbits();
+        }
+
+        return world;
+    }
+
+    private static void writeThingStart( DataOutput out, Thing thing )
+    throws IOException
+    {
+        out.writeInt( thing.x );
+        out.writeInt( thing.y );
+        out.writeShort( thing.state.ordinal() );
+    }
+
+    private static State readState( DataInput in ) throws IOException
+    {
+        return fromOrdinal( states, in.readShort(), "state" );
+    }
+
+    /**
+     * @return values[ ordinal ], where ordinal was read from a snapshot.
+     * @throws BadSnapshot if there is no such value.
+     */
+    public static <T> T fromOrdinal( T[] values, int ordinal, String what )
+    {
+        if ( ordinal < 0 || ordinal >= values.length )
+        {
+            throw new BadSnapshot( "Unknown " + what + " number " + ordinal );
+        }
+        return values[ordinal];
+    }
+
+    /**
+     * Read a number of things written with writeInt().
+     *
+     * @throws BadSnapshot if it is negative or more than max_length.
+     */
+    static int readLength( DataInput in, String what ) throws IOException
+    {
+        int length = in.readInt();
+        if ( length < 0 || length > max_length )
+        {
+            throw new BadSnapshot( "Bad number of " + what + ": " + length );
+        }
+        return length;
+    }
+
+    private static Dimension readSize( DataInput in ) throws IOException
+    {
+        int width = readLength( in, "columns" );
+        int height = readLength( in, "rows" );
+        if ( (long)width * height > max_length )
+        {
+            throw new BadSnapshot(
+                "World too big: " + width + "x" + height );
+        }
+        return new Dimension( width, height );
+    }
+
+    private static void writeAbilities(
+        DataOutput out, Map<Token.Type, Integer> abilities )
+    throws IOException
+    {
+        out.writeInt( abilities.size() );
+
+        // In Token.Type order, so equal worlds give equal snapshots
+        for ( Token.Type type : tokenTypes )
+        {
+            Integer num = abilities.get( type );
+            if ( num != null )
+            {
+                out.writeByte( type.ordinal() );
+                out.writeInt( num );
+            }
+        }
+    }
+
+    private static Map<Token.Type, Integer> readAbilities( DataInput in )
+    throws IOException
+    {
+        int num = readLength( in, "abilities" );
+        Map<Token.Type, Integer> ret = new HashMap<Token.Type, Integer>();
+        for ( int i = 0; i < num; ++i )
+        {
+            Token.Type type =
+                fromOrdinal( tokenTypes, in.readByte(), "ability" );
+            ret.put( type, in.readInt() );
+        }
+        return ret;
+    }
+
+    private static void writeInts( DataOutput out, int[] ints )
+    throws IOException
+    {
+        out.writeInt( ints.length );
+        for ( int i : ints )
+        {
+            out.writeInt( i );
+        }
+    }
+
+    private static int[] readInts( DataInput in, String what )
+    throws IOException
+    {
+        int[] ret = new int[ readLength( in, what ) ];
+        for ( int i = 0; i < ret.length; ++i )
+        {
+            ret[i] = in.readInt();
+        }
+        return ret;
+    }
+
+    private static void writeNullableString( DataOutput out, String s )
+    throws IOException
+    {
+        out.writeBoolean( s != null );
+        if ( s != null )
+        {
+            out.writeUTF( s );
+        }
+    }
+
+    private static String readNullableString( DataInput in )
+    throws IOException
+    {
+        if ( in.readBoolean() )
+        {
+            return in.readUTF();
+        }
+        return null;
+    }
+}
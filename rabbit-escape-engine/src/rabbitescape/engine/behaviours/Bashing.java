@@ -4,6 +4,9 @@ import static rabbitescape.engine.ChangeDescription.State.*;
 import static rabbitescape.engine.Direction.*;
 import static rabbitescape.engine.Token.Type.*;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Map;
 
 import rabbitescape.engine.*;
@@ -11,18 +14,36 @@ import rabbitescape.engine.ChangeDescription.State;
 
 public class Bashing extends Behaviour
 {
-    private int stepsOfBashing;
+    /**
+     * The states whose behave() is ours: see Rabbit.step().
+     */
+    private static final State[] handled_states = {
+        RABBIT_BASHING_RIGHT,
+        RABBIT_BASHING_LEFT,
+        RABBIT_BASHING_UP_RIGHT,
+        RABBIT_BASHING_UP_LEFT,
+        RABBIT_BASHING_USELESSLY_RIGHT,
+        RABBIT_BASHING_USELESSLY_LEFT
+    };
+
+    private static final int state_version = 1;
+
+    @Override
+    protected State[] handledStates()
+    {
+        return handled_states;
+    }
 
     @Override
-    public void cancel()
+    public void cancel( Rabbit rabbit )
     {
-        stepsOfBashing = 0;
+        rabbit.stepsOfBashing = 0;
     }
 
     @Override
     public boolean checkTriggered( Rabbit rabbit, World world )
     {
-        BehaviourTools t = new BehaviourTools( rabbit, world );
+        BehaviourTools t = rabbit.tools( world );
 
         return t.pickUpToken( bash );
     }
@@ -30,14 +51,16 @@ public class Bashing extends Behaviour
     @Override
     public State newState( BehaviourTools t, boolean triggered )
     {
-        if ( triggered || stepsOfBashing > 0 )
+        Rabbit rabbit = t.rabbit;
+
+        if ( triggered || rabbit.stepsOfBashing > 0 )
         {
             if (
                    t.isOnUpSlope()
                 && t.blockAboveNext() != null
             )
             {
-                stepsOfBashing = 2;
+                rabbit.stepsOfBashing = 2;
                 return t.rl(
                     RABBIT_BASHING_UP_RIGHT,
                     RABBIT_BASHING_UP_LEFT
@@ -45,7 +68,7 @@ public class Bashing extends Behaviour
             }
             else if ( t.blockNext() != null )
             {
-                stepsOfBashing = 2;
+                rabbit.stepsOfBashing = 2;
                 return t.rl(
                     RABBIT_BASHING_RIGHT,
                     RABBIT_BASHING_LEFT
@@ -59,7 +82,7 @@ public class Bashing extends Behaviour
                 );
             }
         }
-        --stepsOfBashing;
+        --rabbit.stepsOfBashing;
         return null;
     }
 
@@ -99,23 +122,51 @@ public class Bashing extends Behaviour
     }
 
     @Override
-    public void saveState( Map<String, String> saveState )
+    public long stateHash( Rabbit rabbit )
+    {
+        return Math.max( 0, rabbit.stepsOfBashing );
+    }
+
+    @Override
+    public void saveState( Rabbit rabbit, Map<String, String> saveState )
     {
         BehaviourState.addToStateIfGtZero(
-            saveState, "Bashing.stepsOfBashing", stepsOfBashing
+            saveState, "Bashing.stepsOfBashing", rabbit.stepsOfBashing
         );
     }
 
     @Override
-    public void restoreFromState( Map<String, String> saveState )
+    public void restoreFromState(
+        Rabbit rabbit, Map<String, String> saveState )
     {
-        stepsOfBashing = BehaviourState.restoreFromState(
-            saveState, "Bashing.stepsOfBashing", stepsOfBashing
+        rabbit.stepsOfBashing = BehaviourState.restoreFromState(
+            saveState, "Bashing.stepsOfBashing", rabbit.stepsOfBashing
         );
 
-        if ( stepsOfBashing > 0 )
+        if ( rabbit.stepsOfBashing > 0 )
         {
-            ++stepsOfBashing;
+            ++rabbit.stepsOfBashing;
         }
     }
+
+    @Override
+    public int stateVersion()
+    {
+        return state_version;
+    }
+
+    @Override
+    public void saveState( Rabbit rabbit, DataOutput out )
+        throws IOException
+    {
+        BehaviourState.writeCount( out, rabbit.stepsOfBashing );
+    }
+
+    @Override
+    public void restoreFromState( Rabbit rabbit, DataInput in, int version )
+        throws IOException
+    {
+        BehaviourState.checkVersion( "Bashing", version, state_version );
+        rabbit.stepsOfBashing = BehaviourState.readCount( in );
+    }
 }
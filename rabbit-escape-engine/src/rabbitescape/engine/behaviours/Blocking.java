@@ -3,6 +3,9 @@ package rabbitescape.engine.behaviours;
 import static rabbitescape.engine.ChangeDescription.State.*;
 import static rabbitescape.engine.Token.Type.*;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Map;
 
 import rabbitescape.engine.*;
@@ -10,18 +13,29 @@ import rabbitescape.engine.ChangeDescription.State;
 
 public class Blocking extends Behaviour
 {
-    public boolean abilityActive = false;
+    /**
+     * The states whose behave() is ours: see Rabbit.step().
+     */
+    private static final State[] handled_states = { RABBIT_BLOCKING };
+
+    private static final int state_version = 1;
+
+    @Override
+    protected State[] handledStates()
+    {
+        return handled_states;
+    }
 
     @Override
-    public void cancel()
+    public void cancel( Rabbit rabbit )
     {
-        abilityActive = false;
+        rabbit.blocking = false;
     }
 
     @Override
     public boolean checkTriggered( Rabbit rabbit, World world )
     {
-        BehaviourTools t = new BehaviourTools( rabbit, world );
+        BehaviourTools t = rabbit.tools( world );
 
         return t.pickUpToken( block );
     }
@@ -29,9 +43,11 @@ public class Blocking extends Behaviour
     @Override
     public State newState( BehaviourTools t, boolean triggered )
     {
-        if ( abilityActive || triggered )
+        Rabbit rabbit = t.rabbit;
+
+        if ( rabbit.blocking || triggered )
         {
-            abilityActive = true;
+            rabbit.blocking = true;
             return RABBIT_BLOCKING;
         }
 
@@ -45,18 +61,46 @@ public class Blocking extends Behaviour
     }
 
     @Override
-    public void saveState( Map<String, String> saveState )
+    public long stateHash( Rabbit rabbit )
+    {
+        return rabbit.blocking ? 1 : 0;
+    }
+
+    @Override
+    public void saveState( Rabbit rabbit, Map<String, String> saveState )
     {
         BehaviourState.addToStateIfTrue(
-            saveState, "Blocking.abilityActive", abilityActive
+            saveState, "Blocking.abilityActive", rabbit.blocking
         );
     }
 
     @Override
-    public void restoreFromState( Map<String, String> saveState )
+    public void restoreFromState(
+        Rabbit rabbit, Map<String, String> saveState )
     {
-        abilityActive = BehaviourState.restoreFromState(
-            saveState, "Blocking.abilityActive", abilityActive
+        rabbit.blocking = BehaviourState.restoreFromState(
+            saveState, "Blocking.abilityActive", rabbit.blocking
         );
     }
+
+    @Override
+    public int stateVersion()
+    {
+        return state_version;
+    }
+
+    @Override
+    public void saveState( Rabbit rabbit, DataOutput out )
+        throws IOException
+    {
+        out.writeBoolean( rabbit.blocking );
+    }
+
+    @Override
+    public void restoreFromState( Rabbit rabbit, DataInput in, int version )
+        throws IOException
+    {
+        BehaviourState.checkVersion( "Blocking", version, state_version );
+        rabbit.blocking = in.readBoolean();
+    }
 }
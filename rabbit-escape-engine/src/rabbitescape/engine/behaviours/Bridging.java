@@ -4,6 +4,9 @@ import static rabbitescape.engine.ChangeDescription.State.*;
 import static rabbitescape.engine.Token.Type.*;
 import static rabbitescape.engine.Block.Type.*;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Map;
 
 import rabbitescape.engine.*;
@@ -12,35 +15,77 @@ import rabbitescape.engine.ChangeDescription.State;
 
 public class Bridging extends Behaviour
 {
-    enum BridgeType
+    /**
+     * The states whose behave() is ours: see Rabbit.step().
+     */
+    private static final State[] handled_states = {
+        RABBIT_BRIDGING_RIGHT_1,
+        RABBIT_BRIDGING_RIGHT_2,
+        RABBIT_BRIDGING_LEFT_1,
+        RABBIT_BRIDGING_LEFT_2,
+        RABBIT_BRIDGING_UP_RIGHT_1,
+        RABBIT_BRIDGING_UP_RIGHT_2,
+        RABBIT_BRIDGING_UP_LEFT_1,
+        RABBIT_BRIDGING_UP_LEFT_2,
+        RABBIT_BRIDGING_DOWN_UP_RIGHT_1,
+        RABBIT_BRIDGING_DOWN_UP_RIGHT_2,
+        RABBIT_BRIDGING_DOWN_UP_LEFT_1,
+        RABBIT_BRIDGING_DOWN_UP_LEFT_2,
+        RABBIT_BRIDGING_IN_CORNER_RIGHT_1,
+        RABBIT_BRIDGING_IN_CORNER_LEFT_1,
+        RABBIT_BRIDGING_IN_CORNER_RIGHT_2,
+        RABBIT_BRIDGING_IN_CORNER_LEFT_2,
+        RABBIT_BRIDGING_IN_CORNER_UP_RIGHT_1,
+        RABBIT_BRIDGING_IN_CORNER_UP_LEFT_1,
+        RABBIT_BRIDGING_IN_CORNER_UP_RIGHT_2,
+        RABBIT_BRIDGING_IN_CORNER_UP_LEFT_2,
+        RABBIT_BRIDGING_RIGHT_3,
+        RABBIT_BRIDGING_DOWN_UP_RIGHT_3,
+        RABBIT_BRIDGING_LEFT_3,
+        RABBIT_BRIDGING_DOWN_UP_LEFT_3,
+        RABBIT_BRIDGING_UP_RIGHT_3,
+        RABBIT_BRIDGING_UP_LEFT_3,
+        RABBIT_BRIDGING_IN_CORNER_RIGHT_3,
+        RABBIT_BRIDGING_IN_CORNER_LEFT_3,
+        RABBIT_BRIDGING_IN_CORNER_UP_RIGHT_3,
+        RABBIT_BRIDGING_IN_CORNER_UP_LEFT_3
+    };
+
+    public enum BridgeType
     {
         ALONG,
         UP,
         DOWN_UP
     }
 
-    private int smallSteps = 0;
-    private int bigSteps = 0;
-    private BridgeType bridgeType = BridgeType.ALONG;
+    private static final BridgeType[] bridgeTypes = BridgeType.values();
+
+    private static final int state_version = 1;
+
+    @Override
+    protected State[] handledStates()
+    {
+        return handled_states;
+    }
 
     @Override
-    public void cancel()
+    public void cancel( Rabbit rabbit )
     {
-        bigSteps = 0;
-        smallSteps = 0;
+        rabbit.bridgeBigSteps = 0;
+        rabbit.bridgeSmallSteps = 0;
     }
 
     @Override
     public boolean checkTriggered( Rabbit rabbit, World world )
     {
-        nextStep();
+        nextStep( rabbit );
 
-        if ( bigSteps <= 0 )
+        if ( rabbit.bridgeBigSteps <= 0 )
             // Only pick up a token if we've finished, and we can bridge
         {
-            BehaviourTools t = new BehaviourTools( rabbit, world );
+            BehaviourTools t = rabbit.tools( world );
 
-            State possibleState = bridgingState( t, 3, 3, bridgeType );
+            State possibleState = bridgingState( t, 3, 3, rabbit.bridgeType );
 
             if ( possibleState != null ) // Only pick up if we can bridge
             {
@@ -53,22 +98,29 @@ public class Bridging extends Behaviour
     @Override
     public State newState( BehaviourTools t, boolean triggered )
     {
+        Rabbit rabbit = t.rabbit;
+
         if ( triggered )
         {
-            smallSteps = 3;
-            bigSteps = 3;
+            rabbit.bridgeSmallSteps = 3;
+            rabbit.bridgeBigSteps = 3;
         }
 
-        State ret = bridgingState( t, bigSteps, smallSteps, bridgeType );
+        State ret = bridgingState(
+            t,
+            rabbit.bridgeBigSteps,
+            rabbit.bridgeSmallSteps,
+            rabbit.bridgeType
+        );
 
         if ( ret == null )
         {
-            bigSteps = 0;
+            rabbit.bridgeBigSteps = 0;
         }
 
-        if ( bigSteps <= 0 )
+        if ( rabbit.bridgeBigSteps <= 0 )
         {
-            smallSteps = 0;
+            rabbit.bridgeSmallSteps = 0;
             return null;   // Finished bridging
         }
 
@@ -355,13 +407,13 @@ public class Bridging extends Behaviour
         return ret;
     }
 
-    private void nextStep()
+    private static void nextStep( Rabbit rabbit )
     {
-        --smallSteps;
-        if ( smallSteps <= 0 )
+        --rabbit.bridgeSmallSteps;
+        if ( rabbit.bridgeSmallSteps <= 0 )
         {
-            --bigSteps;
-            smallSteps = 3;
+            --rabbit.bridgeBigSteps;
+            rabbit.bridgeSmallSteps = 3;
         }
     }
 
@@ -393,7 +445,7 @@ public class Bridging extends Behaviour
         return handled;
     }
 
-    private boolean moveRabbit( World world, Rabbit rabbit, State state )
+    private static boolean moveRabbit( World world, Rabbit rabbit, State state )
     {
         switch ( state )
         {
@@ -402,7 +454,7 @@ public class Bridging extends Behaviour
             case RABBIT_BRIDGING_LEFT_1:
             case RABBIT_BRIDGING_LEFT_2:
             {
-                bridgeType = BridgeType.ALONG;
+                rabbit.bridgeType = BridgeType.ALONG;
                 return true;
             }
             case RABBIT_BRIDGING_UP_RIGHT_1:
@@ -410,7 +462,7 @@ public class Bridging extends Behaviour
             case RABBIT_BRIDGING_UP_LEFT_1:
             case RABBIT_BRIDGING_UP_LEFT_2:
             {
-                bridgeType = BridgeType.UP;
+                rabbit.bridgeType = BridgeType.UP;
                 return true;
             }
             case RABBIT_BRIDGING_DOWN_UP_RIGHT_1:
@@ -418,7 +470,7 @@ public class Bridging extends Behaviour
             case RABBIT_BRIDGING_DOWN_UP_LEFT_1:
             case RABBIT_BRIDGING_DOWN_UP_LEFT_2:
             {
-                bridgeType = BridgeType.DOWN_UP;
+                rabbit.bridgeType = BridgeType.DOWN_UP;
                 return true;
             }
             case RABBIT_BRIDGING_IN_CORNER_RIGHT_1:
@@ -430,7 +482,7 @@ public class Bridging extends Behaviour
             case RABBIT_BRIDGING_IN_CORNER_UP_RIGHT_2:
             case RABBIT_BRIDGING_IN_CORNER_UP_LEFT_2:
             {
-                bridgeType = BridgeType.ALONG;
+                rabbit.bridgeType = BridgeType.ALONG;
                 return true;
             }
             case RABBIT_BRIDGING_RIGHT_3:
@@ -555,44 +607,82 @@ public class Bridging extends Behaviour
     }
 
     @Override
-    public void saveState( Map<String, String> saveState )
+    public long stateHash( Rabbit rabbit )
+    {
+        // Like saveState(), treat all counts below zero as the same
+        return Math.max( 0, rabbit.bridgeSmallSteps )
+            + ( (long)Math.max( 0, rabbit.bridgeBigSteps ) << 16 )
+            + ( (long)rabbit.bridgeType.ordinal() << 32 );
+    }
+
+    @Override
+    public void saveState( Rabbit rabbit, Map<String, String> saveState )
     {
         BehaviourState.addToStateIfNotDefault(
             saveState,
             "Bridging.bridgeType",
-            bridgeType.toString(),
+            rabbit.bridgeType.toString(),
             BridgeType.ALONG.toString()
         );
 
         BehaviourState.addToStateIfGtZero(
-            saveState, "Bridging.bigSteps", bigSteps
+            saveState, "Bridging.bigSteps", rabbit.bridgeBigSteps
         );
 
         BehaviourState.addToStateIfGtZero(
-            saveState, "Bridging.smallSteps", smallSteps
+            saveState, "Bridging.smallSteps", rabbit.bridgeSmallSteps
         );
     }
 
     @Override
-    public void restoreFromState( Map<String, String> saveState )
+    public void restoreFromState(
+        Rabbit rabbit, Map<String, String> saveState )
     {
-        bridgeType = BridgeType.valueOf(
+        rabbit.bridgeType = BridgeType.valueOf(
             BehaviourState.restoreFromState(
-                saveState, "Bridging.bridgeType", bridgeType.toString()
+                saveState,
+                "Bridging.bridgeType",
+                rabbit.bridgeType.toString()
             )
         );
 
-        bigSteps = BehaviourState.restoreFromState(
-            saveState, "Bridging.bigSteps", bigSteps
+        rabbit.bridgeBigSteps = BehaviourState.restoreFromState(
+            saveState, "Bridging.bigSteps", rabbit.bridgeBigSteps
         );
 
-        smallSteps = BehaviourState.restoreFromState(
-            saveState, "Bridging.smallSteps", smallSteps
+        rabbit.bridgeSmallSteps = BehaviourState.restoreFromState(
+            saveState, "Bridging.smallSteps", rabbit.bridgeSmallSteps
         );
 
-        if ( smallSteps > 0 )
+        if ( rabbit.bridgeSmallSteps > 0 )
         {
-            ++smallSteps;
+            ++rabbit.bridgeSmallSteps;
         }
     }
+
+    @Override
+    public int stateVersion()
+    {
+        return state_version;
+    }
+
+    @Override
+    public void saveState( Rabbit rabbit, DataOutput out )
+        throws IOException
+    {
+        BehaviourState.writeCount( out, rabbit.bridgeSmallSteps );
+        BehaviourState.writeCount( out, rabbit.bridgeBigSteps );
+        out.writeByte( rabbit.bridgeType.ordinal() );
+    }
+
+    @Override
+    public void restoreFromState( Rabbit rabbit, DataInput in, int version )
+        throws IOException
+    {
+        BehaviourState.checkVersion( "Bridging", version, state_version );
+        rabbit.bridgeSmallSteps = BehaviourState.readCount( in );
+        rabbit.bridgeBigSteps = BehaviourState.readCount( in );
+        rabbit.bridgeType = WorldSnapshot.fromOrdinal(
+            bridgeTypes, in.readByte(), "bridge type" );
+    }
 }
@@ -4,6 +4,9 @@ import static rabbitescape.engine.ChangeDescription.State.*;
 import static rabbitescape.engine.Direction.*;
 import static rabbitescape.engine.Token.Type.*;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Map;
 
 import rabbitescape.engine.*;
@@ -11,21 +14,42 @@ import rabbitescape.engine.ChangeDescription.State;
 
 public class Climbing extends Behaviour
 {
-    boolean hasAbility = false;
-    public boolean abilityActive = false;
+    /**
+     * The states whose behave() is ours: see Rabbit.step().
+     */
+    private static final State[] handled_states = {
+        RABBIT_CLIMBING_RIGHT_START,
+        RABBIT_CLIMBING_LEFT_START,
+        RABBIT_CLIMBING_RIGHT_END,
+        RABBIT_CLIMBING_LEFT_END,
+        RABBIT_CLIMBING_RIGHT_CONTINUE_1,
+        RABBIT_CLIMBING_LEFT_CONTINUE_1,
+        RABBIT_CLIMBING_RIGHT_CONTINUE_2,
+        RABBIT_CLIMBING_LEFT_CONTINUE_2,
+        RABBIT_CLIMBING_RIGHT_BANG_HEAD,
+        RABBIT_CLIMBING_LEFT_BANG_HEAD
+    };
+
+    private static final int state_version = 1;
+
+    @Override
+    protected State[] handledStates()
+    {
+        return handled_states;
+    }
 
     @Override
-    public void cancel()
+    public void cancel( Rabbit rabbit )
     {
-        abilityActive = false;
+        rabbit.climbing = false;
     }
 
     @Override
     public boolean checkTriggered( Rabbit rabbit, World world )
     {
-        BehaviourTools t = new BehaviourTools( rabbit, world );
+        BehaviourTools t = rabbit.tools( world );
 
-        return !hasAbility && t.pickUpToken( climb, true );
+        return !rabbit.canClimb && t.pickUpToken( climb, true );
     }
 
     @Override
@@ -33,10 +57,10 @@ public class Climbing extends Behaviour
     {
         if ( triggered )
         {
-            hasAbility = true;
+            t.rabbit.canClimb = true;
         }
 
-        if ( !hasAbility )
+        if ( !t.rabbit.canClimb )
         {
             return null;
         }
@@ -91,7 +115,7 @@ public class Climbing extends Behaviour
 
         if ( t.isRoof( aboveBlock ) )
         {
-            abilityActive = false;
+            t.rabbit.climbing = false;
             return t.rl(
                 RABBIT_CLIMBING_RIGHT_BANG_HEAD,
                 RABBIT_CLIMBING_LEFT_BANG_HEAD
@@ -137,14 +161,14 @@ public class Climbing extends Behaviour
     @Override
     public boolean behave( World world, Rabbit rabbit, State state )
     {
-        BehaviourTools t = new BehaviourTools( rabbit, world );
+        BehaviourTools t = rabbit.tools( world );
 
         switch ( state )
         {
             case RABBIT_CLIMBING_RIGHT_START:
             case RABBIT_CLIMBING_LEFT_START:
             {
-                abilityActive = true;
+                rabbit.climbing = true;
                 return true;
             }
             case RABBIT_CLIMBING_RIGHT_END:
@@ -156,7 +180,7 @@ public class Climbing extends Behaviour
                 {
                     rabbit.onSlope = true;
                 }
-                abilityActive = false;
+                rabbit.climbing = false;
                 return true;
             }
             case RABBIT_CLIMBING_RIGHT_CONTINUE_1:
@@ -184,26 +208,56 @@ public class Climbing extends Behaviour
     }
 
     @Override
-    public void saveState( Map<String, String> saveState )
+    public long stateHash( Rabbit rabbit )
+    {
+        return ( rabbit.canClimb ? 1 : 0 ) + ( rabbit.climbing ? 2 : 0 );
+    }
+
+    @Override
+    public void saveState( Rabbit rabbit, Map<String, String> saveState )
     {
         BehaviourState.addToStateIfTrue(
-            saveState, "Climbing.hasAbility", hasAbility
+            saveState, "Climbing.hasAbility", rabbit.canClimb
         );
 
         BehaviourState.addToStateIfTrue(
-            saveState, "Climbing.abilityActive", abilityActive
+            saveState, "Climbing.abilityActive", rabbit.climbing
         );
     }
 
     @Override
-    public void restoreFromState( Map<String, String> saveState )
+    public void restoreFromState(
+        Rabbit rabbit, Map<String, String> saveState )
     {
-        hasAbility = BehaviourState.restoreFromState(
-            saveState, "Climbing.hasAbility", hasAbility
+        rabbit.canClimb = BehaviourState.restoreFromState(
+            saveState, "Climbing.hasAbility", rabbit.canClimb
         );
 
-        abilityActive = BehaviourState.restoreFromState(
-            saveState, "Climbing.abilityActive", abilityActive
+        rabbit.climbing = BehaviourState.restoreFromState(
+            saveState, "Climbing.abilityActive", rabbit.climbing
         );
     }
+
+    @Override
+    public int stateVersion()
+    {
+        return state_version;
+    }
+
+    @Override
+    public void saveState( Rabbit rabbit, DataOutput out )
+        throws IOException
+    {
+        out.writeBoolean( rabbit.canClimb );
+        out.writeBoolean( rabbit.climbing );
+    }
+
+    @Override
+    public void restoreFromState( Rabbit rabbit, DataInput in, int version )
+        throws IOException
+    {
+        BehaviourState.checkVersion( "Climbing", version, state_version );
+        rabbit.canClimb = in.readBoolean();
+        rabbit.climbing = in.readBoolean();
+    }
 }
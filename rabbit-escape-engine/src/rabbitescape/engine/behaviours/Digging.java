@@ -3,6 +3,9 @@ package rabbitescape.engine.behaviours;
 import static rabbitescape.engine.ChangeDescription.State.*;
 import static rabbitescape.engine.Token.Type.*;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Map;
 
 import rabbitescape.engine.*;
@@ -10,53 +13,70 @@ import rabbitescape.engine.ChangeDescription.State;
 
 public class Digging extends Behaviour
 {
-    private int stepsOfDigging;
+    /**
+     * The states whose behave() is ours: see Rabbit.step().
+     */
+    private static final State[] handled_states = {
+        RABBIT_DIGGING,
+        RABBIT_DIGGING_ON_SLOPE,
+        RABBIT_DIGGING_2
+    };
+
+    private static final int state_version = 1;
+
+    @Override
+    protected State[] handledStates()
+    {
+        return handled_states;
+    }
 
     @Override
-    public void cancel()
+    public void cancel( Rabbit rabbit )
     {
-        stepsOfDigging = 0;
+        rabbit.stepsOfDigging = 0;
     }
 
     @Override
     public boolean checkTriggered( Rabbit rabbit, World world )
     {
-        BehaviourTools t = new BehaviourTools( rabbit, world );
+        BehaviourTools t = rabbit.tools( world );
         return t.pickUpToken( dig );
     }
 
     @Override
     public State newState( BehaviourTools t, boolean triggered )
     {
-        if ( !triggered && stepsOfDigging == 0 )
+        Rabbit rabbit = t.rabbit;
+
+        if ( !triggered && rabbit.stepsOfDigging == 0 )
         {
             return null;
         }
 
-        if ( t.rabbit.state == RABBIT_DIGGING )
+        if ( rabbit.state == RABBIT_DIGGING )
         {
-            stepsOfDigging = 1;
+            rabbit.stepsOfDigging = 1;
             return RABBIT_DIGGING_2;
         }
 
         if (
                triggered
-            || stepsOfDigging > 0
+            || rabbit.stepsOfDigging > 0
         )
         {
-            if ( t.rabbit.onSlope && t.blockHere() != null )
+            if ( rabbit.onSlope && t.blockHere() != null )
             {
-                stepsOfDigging = 1;
+                rabbit.stepsOfDigging = 1;
                 return RABBIT_DIGGING_ON_SLOPE;
             }
             else if ( t.blockBelow() != null )
             {
-                stepsOfDigging = 2;
+                rabbit.stepsOfDigging = 2;
                 return RABBIT_DIGGING;
             }
         }
 
-        --stepsOfDigging;
+        --rabbit.stepsOfDigging;
         return null;
     }
 
@@ -89,17 +109,44 @@ public class Digging extends Behaviour
     }
 
     @Override
-    public void saveState( Map<String, String> saveState )
+    public long stateHash( Rabbit rabbit )
+    {
+        return Math.max( 0, rabbit.stepsOfDigging );
+    }
+
+    @Override
+    public void saveState( Rabbit rabbit, Map<String, String> saveState )
     {
         BehaviourState.addToStateIfGtZero(
-            saveState, "Digging.stepsOfDigging", stepsOfDigging );
+            saveState, "Digging.stepsOfDigging", rabbit.stepsOfDigging );
     }
 
     @Override
-    public void restoreFromState( Map<String, String> saveState )
+    public void restoreFromState(
+        Rabbit rabbit, Map<String, String> saveState )
     {
-        stepsOfDigging = BehaviourState.restoreFromState(
-            saveState, "Digging.stepsOfDigging", stepsOfDigging );
+        rabbit.stepsOfDigging = BehaviourState.restoreFromState(
+            saveState, "Digging.stepsOfDigging", rabbit.stepsOfDigging );
     }
 
+    @Override
+    public int stateVersion()
+    {
+        return state_version;
+    }
+
+    @Override
+    public void saveState( Rabbit rabbit, DataOutput out )
+        throws IOException
+    {
+        BehaviourState.writeCount( out, rabbit.stepsOfDigging );
+    }
+
+    @Override
+    public void restoreFromState( Rabbit rabbit, DataInput in, int version )
+        throws IOException
+    {
+        BehaviourState.checkVersion( "Digging", version, state_version );
+        rabbit.stepsOfDigging = BehaviourState.readCount( in );
+    }
 }
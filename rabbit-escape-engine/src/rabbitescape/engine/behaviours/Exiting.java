@@ -7,25 +7,26 @@ import rabbitescape.engine.ChangeDescription.State;
 
 public class Exiting extends Behaviour
 {
+    /**
+     * The states whose behave() is ours: see Rabbit.step().
+     */
+    private static final State[] handled_states = { RABBIT_ENTERING_EXIT };
+
     @Override
-    public void cancel()
+    protected State[] handledStates()
+    {
+        return handled_states;
+    }
+
+    @Override
+    public void cancel( Rabbit rabbit )
     {
     }
 
     @Override
     public boolean checkTriggered( Rabbit rabbit, World world )
     {
-        for ( Thing thing : world.things )
-        {
-            if (
-                   ( thing instanceof Exit )
-                && ( thing.x == rabbit.x && thing.y == rabbit.y )
-            )
-            {
-                return true;
-            }
-        }
-        return false;
+        return world.isExitAt( rabbit.x, rabbit.y );
     }
 
     @Override
@@ -8,15 +8,26 @@ import rabbitescape.engine.ChangeDescription.State;
 
 public class Exploding extends Behaviour
 {
+    /**
+     * The states whose behave() is ours: see Rabbit.step().
+     */
+    private static final State[] handled_states = { RABBIT_EXPLODING };
+
+    @Override
+    protected State[] handledStates()
+    {
+        return handled_states;
+    }
+
     @Override
-    public void cancel()
+    public void cancel( Rabbit rabbit )
     {
     }
 
     @Override
     public boolean checkTriggered( Rabbit rabbit, World world )
     {
-        BehaviourTools t = new BehaviourTools( rabbit, world );
+        BehaviourTools t = rabbit.tools( world );
         return t.pickUpToken( explode, true );
     }
 
@@ -3,6 +3,9 @@ package rabbitescape.engine.behaviours;
 import static rabbitescape.engine.ChangeDescription.State.*;
 import static rabbitescape.engine.Block.Type.*;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Map;
 
 import rabbitescape.engine.*;
@@ -10,20 +13,49 @@ import rabbitescape.engine.ChangeDescription.State;
 
 public class Falling extends Behaviour
 {
-    private static final int fatalHeight = 4;
+    /**
+     * The states whose behave() is ours: see Rabbit.step().
+     */
+    private static final State[] handled_states = {
+        RABBIT_DYING_OF_FALLING,
+        RABBIT_DYING_OF_FALLING_2,
+        RABBIT_FALLING,
+        RABBIT_FALLING_ONTO_LOWER_RIGHT,
+        RABBIT_FALLING_ONTO_LOWER_LEFT,
+        RABBIT_FALLING_ONTO_RISE_RIGHT,
+        RABBIT_FALLING_ONTO_RISE_LEFT,
+        RABBIT_FALLING_1_TO_DEATH,
+        RABBIT_FALLING_1,
+        RABBIT_FALLING_1_ONTO_LOWER_RIGHT,
+        RABBIT_FALLING_1_ONTO_LOWER_LEFT,
+        RABBIT_FALLING_1_ONTO_RISE_RIGHT,
+        RABBIT_FALLING_1_ONTO_RISE_LEFT
+    };
 
-    private int heightFallen = 0;
+    private static final int fatalHeight = 4;
 
-    private final Climbing climbing;
+    private static final int state_version = 1;
 
-    public Falling( Climbing climbing )
+    @Override
+    protected State[] handledStates()
     {
-        this.climbing = climbing;
+        return handled_states;
     }
 
     @Override
-    public void cancel()
+    public void cancel( Rabbit rabbit )
+    {
+    }
+
+    /**
+     * Called by Rabbit.step() when we are doing anything that comes after
+     * falling in Rabbit's behaviours, which is everything except dying
+     * and exiting.  This is what our behave() did for those states when
+     * every behaviour was asked in turn.
+     */
+    public void notFalling( Rabbit rabbit )
     {
+        rabbit.heightFallen = 0;
     }
 
     @Override
@@ -68,7 +100,7 @@ public class Falling extends Behaviour
             case RABBIT_FALLING_ONTO_RISE_RIGHT:
             case RABBIT_FALLING_ONTO_RISE_LEFT:
             {
-                heightFallen += 2;
+                rabbit.heightFallen += 2;
                 rabbit.y = rabbit.y + 2;
                 return true;
             }
@@ -79,13 +111,13 @@ public class Falling extends Behaviour
             case RABBIT_FALLING_1_ONTO_RISE_RIGHT:
             case RABBIT_FALLING_1_ONTO_RISE_LEFT:
             {
-                heightFallen += 1;
+                rabbit.heightFallen += 1;
                 rabbit.y = rabbit.y + 1;
                 return true;
             }
             default:
             {
-                heightFallen = 0;
+                rabbit.heightFallen = 0;
                 return false;
             }
         }
@@ -94,12 +126,12 @@ public class Falling extends Behaviour
     @Override
     public boolean checkTriggered( Rabbit rabbit, World world )
     {
-        if ( climbing.abilityActive || rabbit.state == RABBIT_DIGGING )
+        if ( rabbit.climbing || rabbit.state == RABBIT_DIGGING )
         {
             return false;
         }
 
-        BehaviourTools t = new BehaviourTools( rabbit, world );
+        BehaviourTools t = rabbit.tools( world );
 
         //noinspection RedundantIfStatement
         if (
@@ -116,6 +148,8 @@ public class Falling extends Behaviour
     @Override
     public State newState( BehaviourTools t, boolean triggered )
     {
+        int heightFallen = t.rabbit.heightFallen;
+
         if ( !triggered )
         {
             if ( heightFallen > fatalHeight )
@@ -197,18 +231,46 @@ public class Falling extends Behaviour
     }
 
     @Override
-    public void saveState( Map<String, String> saveState )
+    public long stateHash( Rabbit rabbit )
+    {
+        return Math.max( 0, rabbit.heightFallen );
+    }
+
+    @Override
+    public void saveState( Rabbit rabbit, Map<String, String> saveState )
     {
         BehaviourState.addToStateIfGtZero(
-            saveState, "Falling.heightFallen", heightFallen
+            saveState, "Falling.heightFallen", rabbit.heightFallen
         );
     }
 
     @Override
-    public void restoreFromState( Map<String, String> saveState )
+    public void restoreFromState(
+        Rabbit rabbit, Map<String, String> saveState )
     {
-        heightFallen = BehaviourState.restoreFromState(
-            saveState, "Falling.heightFallen", heightFallen
+        rabbit.heightFallen = BehaviourState.restoreFromState(
+            saveState, "Falling.heightFallen", rabbit.heightFallen
         );
     }
+
+    @Override
+    public int stateVersion()
+    {
+        return state_version;
+    }
+
+    @Override
+    public void saveState( Rabbit rabbit, DataOutput out )
+        throws IOException
+    {
+        out.writeInt( rabbit.heightFallen );
+    }
+
+    @Override
+    public void restoreFromState( Rabbit rabbit, DataInput in, int version )
+        throws IOException
+    {
+        BehaviourState.checkVersion( "Falling", version, state_version );
+        rabbit.heightFallen = in.readInt();
+    }
 }
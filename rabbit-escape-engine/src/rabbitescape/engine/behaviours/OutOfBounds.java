@@ -10,8 +10,19 @@ import rabbitescape.engine.World;
 
 public class OutOfBounds extends Behaviour
 {
+    /**
+     * The states whose behave() is ours: see Rabbit.step().
+     */
+    private static final State[] handled_states = { RABBIT_OUT_OF_BOUNDS };
+
+    @Override
+    protected State[] handledStates()
+    {
+        return handled_states;
+    }
+
     @Override
-    public void cancel()
+    public void cancel( Rabbit rabbit )
     {
     }
 
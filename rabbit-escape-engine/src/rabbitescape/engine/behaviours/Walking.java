@@ -9,192 +9,195 @@ import rabbitescape.engine.ChangeDescription.State;
 
 public class Walking extends Behaviour
 {
+    /**
+     * The states whose behave() is ours: see Rabbit.step().
+     */
+    private static final State[] handled_states = {
+        RABBIT_WALKING_LEFT,
+        RABBIT_WALKING_RIGHT,
+        RABBIT_LOWERING_LEFT_END,
+        RABBIT_RISING_LEFT_START,
+        RABBIT_LOWERING_AND_RISING_LEFT,
+        RABBIT_RISING_AND_LOWERING_LEFT,
+        RABBIT_LOWERING_RIGHT_END,
+        RABBIT_RISING_RIGHT_START,
+        RABBIT_LOWERING_AND_RISING_RIGHT,
+        RABBIT_RISING_AND_LOWERING_RIGHT,
+        RABBIT_RISING_LEFT_END,
+        RABBIT_RISING_LEFT_CONTINUE,
+        RABBIT_RISING_RIGHT_END,
+        RABBIT_RISING_RIGHT_CONTINUE,
+        RABBIT_LOWERING_LEFT_CONTINUE,
+        RABBIT_LOWERING_LEFT_START,
+        RABBIT_LOWERING_RIGHT_CONTINUE,
+        RABBIT_LOWERING_RIGHT_START,
+        RABBIT_TURNING_LEFT_TO_RIGHT,
+        RABBIT_TURNING_LEFT_TO_RIGHT_RISING,
+        RABBIT_TURNING_LEFT_TO_RIGHT_LOWERING,
+        RABBIT_TURNING_RIGHT_TO_LEFT,
+        RABBIT_TURNING_RIGHT_TO_LEFT_RISING,
+        RABBIT_TURNING_RIGHT_TO_LEFT_LOWERING
+    };
+
     @Override
-    public void cancel()
+    protected State[] handledStates()
     {
+        return handled_states;
     }
 
-    private static class StateCalc
+    @Override
+    public void cancel( Rabbit rabbit )
     {
-        private final BehaviourTools t;
+    }
 
-        StateCalc( BehaviourTools t )
-        {
-            this.t = t;
-        }
+    @Override
+    public boolean checkTriggered( Rabbit rabbit, World world )
+    {
+        return false; // To avoid cancelling other behaviours, return false
+    }
 
-        public State newState()
+    @Override
+    public State newState( BehaviourTools t, boolean triggered )
+    {
+        if ( t.isOnUpSlope() )
         {
-            if ( t.isOnUpSlope() )
-            {
-                Block aboveNext = t.blockAboveNext();
-                int nextX = t.nextX();
-                int nextY = t.rabbit.y - 1;
+            Block aboveNext = t.blockAboveNext();
+            int nextX = t.nextX();
+            int nextY = t.rabbit.y - 1;
 
-                if
-                    (
-                       t.isWall( aboveNext )
-                    || blockerAt( nextX, nextY )
-                    )
-                {
-                    return rl(
-                        RABBIT_TURNING_RIGHT_TO_LEFT_RISING,
-                        RABBIT_TURNING_LEFT_TO_RIGHT_RISING
-                    );
-                }
-                else if ( t.isUpSlope( aboveNext ) )
-                {
-                    return rl(
-                        RABBIT_RISING_RIGHT_CONTINUE,
-                        RABBIT_RISING_LEFT_CONTINUE
-                    );
-                }
-                else if ( t.isDownSlope( t.blockNext() ) )
-                {
-                    return rl(
-                        RABBIT_RISING_AND_LOWERING_RIGHT,
-                        RABBIT_RISING_AND_LOWERING_LEFT
-                    );
-                }
-                else
-                {
-                    return rl(
-                        RABBIT_RISING_RIGHT_END,
-                        RABBIT_RISING_LEFT_END
-                    );
-                }
+            if
+                (
+                   t.isWall( aboveNext )
+                || t.world.isBlockerAt( nextX, nextY )
+                )
+            {
+                return t.rl(
+                    RABBIT_TURNING_RIGHT_TO_LEFT_RISING,
+                    RABBIT_TURNING_LEFT_TO_RIGHT_RISING
+                );
+            }
+            else if ( t.isUpSlope( aboveNext ) )
+            {
+                return t.rl(
+                    RABBIT_RISING_RIGHT_CONTINUE,
+                    RABBIT_RISING_LEFT_CONTINUE
+                );
+            }
+            else if ( t.isDownSlope( t.blockNext() ) )
+            {
+                return t.rl(
+                    RABBIT_RISING_AND_LOWERING_RIGHT,
+                    RABBIT_RISING_AND_LOWERING_LEFT
+                );
             }
-            else if ( t.isOnDownSlope() )
+            else
             {
-                int nextX = t.nextX();
-                int nextY = t.rabbit.y + 1;
-                Block next = t.blockNext();
-                Block belowNext = t.blockBelowNext();
+                return t.rl(
+                    RABBIT_RISING_RIGHT_END,
+                    RABBIT_RISING_LEFT_END
+                );
+            }
+        }
+        else if ( t.isOnDownSlope() )
+        {
+            int nextX = t.nextX();
+            int nextY = t.rabbit.y + 1;
+            Block next = t.blockNext();
+            Block belowNext = t.blockBelowNext();
 
-                if (
-                       t.isWall( next )
-                    || blockerAt( nextX, nextY )
-                    )
+            if (
+                   t.isWall( next )
+                || t.world.isBlockerAt( nextX, nextY )
+                )
+            {
+                return t.rl(
+                    RABBIT_TURNING_RIGHT_TO_LEFT_LOWERING,
+                    RABBIT_TURNING_LEFT_TO_RIGHT_LOWERING
+                );
+            }
+            else if ( t.isUpSlope( next ) )
+            {
+                return t.rl(
+                    RABBIT_LOWERING_AND_RISING_RIGHT,
+                    RABBIT_LOWERING_AND_RISING_LEFT
+                );
+            }
+            else if ( t.isDownSlope( belowNext ) )
+            {
+                return t.rl(
+                    RABBIT_LOWERING_RIGHT_CONTINUE,
+                    RABBIT_LOWERING_LEFT_CONTINUE
+                );
+            }
+            else
+            {
+                if ( t.world.isBlockerAt( nextX, t.rabbit.y ) )
                 {
-                    return rl(
+                    return t.rl(
                         RABBIT_TURNING_RIGHT_TO_LEFT_LOWERING,
                         RABBIT_TURNING_LEFT_TO_RIGHT_LOWERING
                     );
                 }
-                else if ( t.isUpSlope( next ) )
-                {
-                    return rl(
-                        RABBIT_LOWERING_AND_RISING_RIGHT,
-                        RABBIT_LOWERING_AND_RISING_LEFT
-                    );
-                }
-                else if ( t.isDownSlope( belowNext ) )
-                {
-                    return rl(
-                        RABBIT_LOWERING_RIGHT_CONTINUE,
-                        RABBIT_LOWERING_LEFT_CONTINUE
-                    );
-                }
                 else
                 {
-                    if ( blockerAt( nextX, t.rabbit.y ) )
-                    {
-                        return rl(
-                            RABBIT_TURNING_RIGHT_TO_LEFT_LOWERING,
-                            RABBIT_TURNING_LEFT_TO_RIGHT_LOWERING
-                        );
-                    }
-                    else
-                    {
-                        return rl(
-                            RABBIT_LOWERING_RIGHT_END,
-                            RABBIT_LOWERING_LEFT_END
-                        );
-                    }
+                    return t.rl(
+                        RABBIT_LOWERING_RIGHT_END,
+                        RABBIT_LOWERING_LEFT_END
+                    );
                 }
             }
-            else  // On flat ground now
-            {
-                int nextX = t.nextX();
-                int nextY = t.rabbit.y;
-                Block next = t.blockNext();
+        }
+        else  // On flat ground now
+        {
+            int nextX = t.nextX();
+            int nextY = t.rabbit.y;
+            Block next = t.blockNext();
 
-                if
-                    (
-                       t.isWall( next )
-                    || blockerAt( nextX, nextY )
-                    )
+            if
+                (
+                   t.isWall( next )
+                || t.world.isBlockerAt( nextX, nextY )
+                )
+            {
+                return t.rl(
+                    RABBIT_TURNING_RIGHT_TO_LEFT,
+                    RABBIT_TURNING_LEFT_TO_RIGHT
+                );
+            }
+            else if ( t.isUpSlope( next ) )
+            {
+                return t.rl(
+                    RABBIT_RISING_RIGHT_START,
+                    RABBIT_RISING_LEFT_START
+                );
+            }
+            else if ( t.isDownSlope( t.blockBelowNext() ) )
+            {
+                if ( t.world.isBlockerAt( nextX, t.rabbit.y + 1 ) )
                 {
-                    return rl(
+                    return t.rl(
                         RABBIT_TURNING_RIGHT_TO_LEFT,
                         RABBIT_TURNING_LEFT_TO_RIGHT
                     );
                 }
-                else if ( t.isUpSlope( next ) )
-                {
-                    return rl(
-                        RABBIT_RISING_RIGHT_START,
-                        RABBIT_RISING_LEFT_START
-                    );
-                }
-                else if ( t.isDownSlope( t.blockBelowNext() ) )
-                {
-                    if ( blockerAt( nextX, t.rabbit.y + 1 ) )
-                    {
-                        return rl(
-                            RABBIT_TURNING_RIGHT_TO_LEFT,
-                            RABBIT_TURNING_LEFT_TO_RIGHT
-                        );
-                    }
-                    else
-                    {
-                        return rl(
-                            RABBIT_LOWERING_RIGHT_START,
-                            RABBIT_LOWERING_LEFT_START
-                        );
-                    }
-                }
                 else
                 {
-                    return rl(
-                        RABBIT_WALKING_RIGHT,
-                        RABBIT_WALKING_LEFT
+                    return t.rl(
+                        RABBIT_LOWERING_RIGHT_START,
+                        RABBIT_LOWERING_LEFT_START
                     );
                 }
             }
-        }
-
-        private boolean blockerAt( int nextX, int nextY )
-        {
-            Rabbit[] rabbits = t.world.getRabbitsAt( nextX, nextY );
-            for ( Rabbit r : rabbits )
+            else
             {
-                if ( r.state == RABBIT_BLOCKING )
-                {
-                    return true;
-                }
+                return t.rl(
+                    RABBIT_WALKING_RIGHT,
+                    RABBIT_WALKING_LEFT
+                );
             }
-            return false;
-        }
-
-        private State rl( State rightState, State leftState )
-        {
-            return t.rl( rightState, leftState );
         }
     }
 
-    @Override
-    public boolean checkTriggered( Rabbit rabbit, World world )
-    {
-        return false; // To avoid cancelling other behaviours, return false
-    }
-
-    @Override
-    public State newState( BehaviourTools t, boolean triggered )
-    {
-        return new StateCalc( t ).newState();
-    }
-
     @Override
     public boolean behave( World world, Rabbit rabbit, State state )
     {
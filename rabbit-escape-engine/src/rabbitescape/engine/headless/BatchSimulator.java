@@ -0,0 +1,624 @@
+package rabbitescape.engine.headless;
+
+import static rabbitescape.engine.util.Util.*;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import rabbitescape.engine.IgnoreWorldStatsListener;
+import rabbitescape.engine.LoadWorldFile;
+import rabbitescape.engine.World;
+import rabbitescape.engine.err.RabbitEscapeException;
+import rabbitescape.engine.solver.Solver;
+import rabbitescape.engine.util.FileSystem;
+import rabbitescape.engine.util.RealFileSystem;
+
+/**
+ * Plays lots of levels at once, each with its own schedule of tokens,
+ * e.g. every level with every solution we have, to see how a build of
+ * the engine plays them and how fast.
+ *
+ * Usage: BatchSimulator [--workers=N[,N...]] [--virtual] [--max-steps=N]
+ *            RESULTS_FILE REPLAY_FILE_OR_DIR...
+ *
+ * Each replay file (see ReplayFile) becomes a job, which loads its own
+ * World and plays the replay's tokens on it until the level is won or
+ * lost.  Results are written to RESULTS_FILE as each job finishes, as
+ * JSON Lines if it ends in .jsonl, otherwise as CSV.  After each batch
+ * we print a Report saying how fast the jobs ran.
+ *
+ * The batch runs on N workers (default: one per core).  Give several
+ * numbers, e.g. --workers=1,2,4,8, to run it once for each and see how
+ * well it scales across the cores compared with the first.  The first
+ * run also warms up the JVM, so for fair numbers repeat it, e.g.
+ * --workers=1,1,2,4,8.  --virtual runs it (again) with each job on its
+ * own virtual thread, if this JVM has them (Java 21 and later).
+ */
+public class BatchSimulator
+{
+    public static class VirtualThreadsNotSupported
+        extends RabbitEscapeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        public VirtualThreadsNotSupported( Throwable cause )
+        {
+            super( cause );
+        }
+    }
+
+    /**
+     * One level to play, and what to do while playing it.
+     */
+    public static class Job
+    {
+        public final String name;
+        public final String levelFileName;
+        public final TokenSchedule schedule;
+        public final int maxSteps;
+
+        public Job(
+            String name,
+            String levelFileName,
+            TokenSchedule schedule,
+            int maxSteps
+        )
+        {
+            this.name = name;
+            this.levelFileName = levelFileName;
+            this.schedule = schedule;
+            this.maxSteps = maxSteps;
+        }
+
+        public Job( String name, Replay replay, int maxSteps )
+        {
+            this( name, replay.levelFileName, replay.schedule, maxSteps );
+        }
+    }
+
+    /**
+     * How one Job went.
+     */
+    public static class Result
+    {
+        public final Job job;
+
+        /**
+         * How many jobs were allowed to run at once in this batch.
+         */
+        public final int parallelism;
+
+        /**
+         * null if the job failed
+         */
+        public final RunResult run;
+
+        /**
+         * How long the job took, including loading the level.
+         */
+        public final long nanos;
+
+        /**
+         * null unless the job failed
+         */
+        public final String problem;
+
+        public Result(
+            Job job,
+            int parallelism,
+            RunResult run,
+            long nanos,
+            String problem
+        )
+        {
+            this.job = job;
+            this.parallelism = parallelism;
+            this.run = run;
+            this.nanos = nanos;
+            this.problem = problem;
+        }
+
+        public boolean ok()
+        {
+            return problem == null;
+        }
+
+        /**
+         * @return the CompletionState's name, or ERROR if the job failed
+         */
+        public String resultName()
+        {
+            return ok() ? run.completionState.name() : "ERROR";
+        }
+
+        public int steps()
+        {
+            return ok() ? run.steps : 0;
+        }
+
+        public int num_saved()
+        {
+            return ok() ? run.num_saved : 0;
+        }
+
+        public int num_killed()
+        {
+            return ok() ? run.num_killed : 0;
+        }
+    }
+
+    /**
+     * How a whole batch went.
+     */
+    public static class Report
+    {
+        public final int jobs;
+        public final int failed;
+        public final long steps;
+
+        /**
+         * From the start of the batch until the last job finished.
+         */
+        public final long wallNanos;
+
+        /**
+         * The time taken by all the jobs, added up.
+         */
+        public final long busyNanos;
+
+        /**
+         * How many jobs could run at once.
+         */
+        public final int parallelism;
+        public final int cores;
+
+        public Report(
+            int jobs,
+            int failed,
+            long steps,
+            long wallNanos,
+            long busyNanos,
+            int parallelism,
+            int cores
+        )
+        {
+            this.jobs = jobs;
+            this.failed = failed;
+            this.steps = steps;
+            this.wallNanos = wallNanos;
+            this.busyNanos = busyNanos;
+            this.parallelism = parallelism;
+            this.cores = cores;
+        }
+
+        public double jobsPerSecond()
+        {
+            return perSecond( jobs );
+        }
+
+        public double stepsPerSecond()
+        {
+            return perSecond( steps );
+        }
+
+        /**
+         * @return how many jobs were running at once, on average.  More
+         *         than cores means jobs were waiting for a core, so their
+         *         times include waiting.
+         */
+        public double concurrency()
+        {
+            return wallNanos <= 0 ? 0 : (double)busyNanos / wallNanos;
+        }
+
+        /**
+         * @return how many times more jobs per second we did than in
+         *         baseline (the same jobs, run with less parallelism).
+         */
+        public double scalingFrom( Report baseline )
+        {
+            double base = baseline.jobsPerSecond();
+            return base <= 0 ? 0 : jobsPerSecond() / base;
+        }
+
+        /**
+         * @return scalingFrom( baseline ) as a fraction of what we could
+         *         hope for given the extra cores we were able to use.
+         */
+        public double efficiencyFrom( Report baseline )
+        {
+            double ideal = (double)usableCores() / baseline.usableCores();
+            return scalingFrom( baseline ) / ideal;
+        }
+
+        private int usableCores()
+        {
+            return Math.max( 1, Math.min( parallelism, cores ) );
+        }
+
+        private double perSecond( long n )
+        {
+            return wallNanos <= 0 ? 0 : n * 1e9 / wallNanos;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format(
+                Locale.ROOT,
+                "jobs: %d (%d failed)%n"
+                    + "time: %.2f s%n"
+                    + "throughput: %.1f jobs/sec, %.0f steps/sec%n"
+                    + "parallelism: %d on %d cores%n"
+                    + "concurrency: %.2f jobs at once",
+                jobs,
+                failed,
+                wallNanos / 1e9,
+                jobsPerSecond(),
+                stepsPerSecond(),
+                parallelism,
+                cores,
+                concurrency()
+            );
+        }
+    }
+
+    private static final String workers_arg = "--workers=";
+    private static final String virtual_arg = "--virtual";
+    private static final String max_steps_arg = "--max-steps=";
+
+    private final FileSystem fs;
+    private final ExecutorService pool;
+    private final int parallelism;
+
+    /**
+     * @param fs          where to look for level files before falling back
+     *                    to the levels that ship with the game
+     * @param pool        runs the jobs.  We don't shut it down.
+     * @param parallelism how many jobs pool can run at once
+     */
+    public BatchSimulator(
+        FileSystem fs, ExecutorService pool, int parallelism )
+    {
+        this.fs = fs;
+        this.pool = pool;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return a pool of that many ordinary threads.
+     */
+    public static ExecutorService platformThreads( int workers )
+    {
+        return Executors.newFixedThreadPool( workers );
+    }
+
+    /**
+     * @return a pool that starts a new virtual thread for each job.  How
+     *         many run at once is up to the JVM, which by default uses
+     *         one carrier thread per core.
+     *
+     * @throws VirtualThreadsNotSupported before Java 21
+     */
+    public static ExecutorService virtualThreads()
+    {
+        // By reflection, so we still build and run on older Java and
+        // Android
+        try
+        {
+            Method method = Executors.class.getMethod(
+                "newVirtualThreadPerTaskExecutor" );
+
+            return (ExecutorService)method.invoke( null );
+        }
+        catch ( NoSuchMethodException e )
+        {
+            throw new VirtualThreadsNotSupported( e );
+        }
+        catch ( IllegalAccessException e )
+        {
+            throw new VirtualThreadsNotSupported( e );
+        }
+        catch ( InvocationTargetException e )
+        {
+            throw new VirtualThreadsNotSupported( e.getCause() );
+        }
+    }
+
+    public static void main( String[] args ) throws IOException
+    {
+        int cores = Runtime.getRuntime().availableProcessors();
+        List<Integer> workers = new ArrayList<Integer>();
+        boolean virtual = false;
+        int maxSteps = Solver.default_max_steps;
+
+        int first = 0;
+        while ( first < args.length && args[first].startsWith( "--" ) )
+        {
+            String arg = args[first];
+            ++first;
+            if ( arg.startsWith( workers_arg ) )
+            {
+                String[] counts =
+                    split( arg.substring( workers_arg.length() ), "," );
+                for ( String n : counts )
+                {
+                    workers.add( Integer.parseInt( n ) );
+                }
+            }
+            else if ( arg.equals( virtual_arg ) )
+            {
+                virtual = true;
+            }
+            else if ( arg.startsWith( max_steps_arg ) )
+            {
+                maxSteps = Integer.parseInt(
+                    arg.substring( max_steps_arg.length() ) );
+            }
+            else
+            {
+                usage();
+            }
+        }
+
+        if ( args.length < first + 2 )
+        {
+            usage();
+        }
+
+        FileSystem fs = new RealFileSystem();
+        List<Job> jobs = new ArrayList<Job>();
+        for ( int i = first + 1; i < args.length; ++i )
+        {
+            addJobs( fs, new File( args[i] ), maxSteps, jobs );
+        }
+
+        if ( workers.isEmpty() && !virtual )
+        {
+            workers.add( cores );
+        }
+
+        if ( virtual )
+        {
+            try
+            {
+                virtualThreads().shutdown();
+            }
+            catch ( VirtualThreadsNotSupported e )
+            {
+                System.err.println(
+                    "This JVM has no virtual threads (Java 21 needed)" );
+                System.exit( 1 );
+            }
+        }
+
+        String resultsFile = args[first];
+        PrintStream out = new PrintStream( resultsFile, "UTF-8" );
+        int failed = 0;
+        try
+        {
+            BatchSink sink = resultsFile.endsWith( ".jsonl" )
+                ? new JsonLinesBatchSink( out )
+                : new CsvBatchSink( out );
+
+            Report baseline = null;
+            for ( int i = 0; i <= workers.size(); ++i )
+            {
+                ExecutorService pool;
+                int parallelism;
+                if ( i < workers.size() )
+                {
+                    parallelism = workers.get( i );
+                    pool = platformThreads( parallelism );
+                    System.out.println( parallelism + " workers:" );
+                }
+                else if ( virtual )
+                {
+                    parallelism = cores;
+                    pool = virtualThreads();
+                    System.out.println( "Virtual threads:" );
+                }
+                else
+                {
+                    break;
+                }
+
+                Report report;
+                try
+                {
+                    report = new BatchSimulator( fs, pool, parallelism )
+                        .run( jobs, sink );
+                }
+                finally
+                {
+                    pool.shutdown();
+                }
+
+                System.out.println( report );
+                if ( baseline == null )
+                {
+                    baseline = report;
+                }
+                else
+                {
+                    System.out.println(
+                        String.format(
+                            Locale.ROOT,
+                            "scaling: %.2fx the first run (%.0f%% of ideal)",
+                            report.scalingFrom( baseline ),
+                            report.efficiencyFrom( baseline ) * 100
+                        )
+                    );
+                }
+                System.out.println();
+                failed += report.failed;
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+
+        System.exit( failed == 0 ? 0 : 2 );
+    }
+
+    private static void usage()
+    {
+        System.err.println(
+            "Usage: BatchSimulator [" + workers_arg + "N[,N...]] ["
+                + virtual_arg + "] [" + max_steps_arg + "N] RESULTS_FILE "
+                + "REPLAY_FILE_OR_DIR..."
+        );
+        System.exit( 1 );
+    }
+
+    private static void addJobs(
+        FileSystem fs, File file, int maxSteps, List<Job> jobs )
+        throws IOException
+    {
+        if ( file.isDirectory() )
+        {
+            File[] children = file.listFiles();
+            Arrays.sort( children );
+            for ( File child : children )
+            {
+                if (
+                       child.isDirectory()
+                    || child.getName().endsWith( ReplayFile.extension )
+                )
+                {
+                    addJobs( fs, child, maxSteps, jobs );
+                }
+            }
+        }
+        else if ( file.exists() )
+        {
+            String name = file.getPath();
+            jobs.add(
+                new Job(
+                    name, ReplayFile.read( fs.readLines( name ) ), maxSteps )
+            );
+        }
+        else
+        {
+            throw new FileNotFoundException( file.getPath() );
+        }
+    }
+
+    /**
+     * Run all the jobs, passing each result to sink as soon as it is
+     * ready, and wait until they have all finished.
+     */
+    public Report run( List<Job> jobs, BatchSink sink )
+    {
+        long start = System.nanoTime();
+
+        CompletionService<Result> done =
+            new ExecutorCompletionService<Result>( pool );
+
+        for ( final Job job : jobs )
+        {
+            done.submit(
+                new Callable<Result>()
+                {
+                    @Override
+                    public Result call()
+                    {
+                        return play( job );
+                    }
+                }
+            );
+        }
+
+        int failed = 0;
+        long steps = 0;
+        long busyNanos = 0;
+        for ( int i = 0; i < jobs.size(); ++i )
+        {
+            Result result = take( done );
+
+            sink.jobFinished( result );
+
+            if ( !result.ok() )
+            {
+                ++failed;
+            }
+            steps += result.steps();
+            busyNanos += result.nanos;
+        }
+
+        return new Report(
+            jobs.size(),
+            failed,
+            steps,
+            System.nanoTime() - start,
+            busyNanos,
+            parallelism,
+            Runtime.getRuntime().availableProcessors()
+        );
+    }
+
+    /**
+     * Play one job, on whatever thread the pool gives us.
+     */
+    public Result play( Job job )
+    {
+        long start = System.nanoTime();
+        try
+        {
+            World world = new LoadWorldFile( fs ).load(
+                new IgnoreWorldStatsListener(), job.levelFileName );
+
+            RunResult run = new HeadlessRunner( world, job.schedule )
+                .runToCompletion( job.maxSteps );
+
+            return new Result(
+                job, parallelism, run, System.nanoTime() - start, null );
+        }
+        catch ( Exception | AssertionError e )
+        {
+            // Including bugs in the engine, which often show up as failed
+            // reAsserts: report them, and carry on with the other jobs
+            return new Result(
+                job,
+                parallelism,
+                null,
+                System.nanoTime() - start,
+                e.toString()
+            );
+        }
+    }
+
+    private static Result take( CompletionService<Result> done )
+    {
+        try
+        {
+            return done.take().get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( e );
+        }
+        catch ( ExecutionException e )
+        {
+            // play() catches everything except Errors other than
+            // AssertionError, which we can't carry on after
+            throw new RuntimeException( e.getCause() );
+        }
+    }
+}
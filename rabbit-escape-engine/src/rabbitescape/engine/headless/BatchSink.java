@@ -0,0 +1,12 @@
+package rabbitescape.engine.headless;
+
+import rabbitescape.engine.headless.BatchSimulator.Result;
+
+/**
+ * Where BatchSimulator writes each job's result as soon as it finishes.
+ * Only called from the thread that called BatchSimulator.run().
+ */
+public interface BatchSink
+{
+    void jobFinished( Result result );
+}
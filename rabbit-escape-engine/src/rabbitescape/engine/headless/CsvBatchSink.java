@@ -0,0 +1,61 @@
+package rabbitescape.engine.headless;
+
+import java.io.PrintStream;
+
+import rabbitescape.engine.headless.BatchSimulator.Result;
+
+/**
+ * Writes BatchSimulator results as CSV, one line per job, starting with
+ * a line of column names.
+ */
+public class CsvBatchSink implements BatchSink
+{
+    public static final String header =
+        "name,level,result,steps,num_saved,num_killed,nanos,workers,problem";
+
+    private final PrintStream out;
+
+    public CsvBatchSink( PrintStream out )
+    {
+        this.out = out;
+        out.println( header );
+        out.flush();
+    }
+
+    @Override
+    public void jobFinished( Result result )
+    {
+        out.println(
+            field( result.job.name ) + ","
+            + field( result.job.levelFileName ) + ","
+            + result.resultName() + ","
+            + result.steps() + ","
+            + result.num_saved() + ","
+            + result.num_killed() + ","
+            + result.nanos + ","
+            + result.parallelism + ","
+            + field( result.problem )
+        );
+        out.flush();
+    }
+
+    private static String field( String value )
+    {
+        if ( value == null )
+        {
+            return "";
+        }
+
+        if (
+               value.indexOf( ',' ) == -1
+            && value.indexOf( '"' ) == -1
+            && value.indexOf( '\n' ) == -1
+            && value.indexOf( '\r' ) == -1
+        )
+        {
+            return value;
+        }
+
+        return "\"" + value.replace( "\"", "\"\"" ) + "\"";
+    }
+}
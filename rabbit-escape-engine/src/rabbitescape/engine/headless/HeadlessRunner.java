@@ -0,0 +1,101 @@
+package rabbitescape.engine.headless;
+
+import rabbitescape.engine.World;
+import rabbitescape.engine.World.CompletionState;
+import rabbitescape.engine.World.UnableToAddToken;
+import rabbitescape.engine.headless.TokenSchedule.Placement;
+
+/**
+ * Plays a World as fast as possible, with no rendering and no waiting,
+ * placing tokens (and exploding rabbits) from a TokenSchedule as it goes.
+ * Intended for checking levels and solutions in bulk.
+ *
+ * Not thread safe: only one thread should use a runner (and its World)
+ * at a time.
+ */
+public class HeadlessRunner
+{
+    public static final StopCondition NEVER = new StopCondition()
+    {
+        @Override
+        public boolean shouldStop( World world, int stepNumber )
+        {
+            return false;
+        }
+    };
+
+    public final World world;
+    private final TokenSchedule schedule;
+    private int stepNumber;
+
+    public HeadlessRunner( World world, TokenSchedule schedule )
+    {
+        this.world = world;
+        this.schedule = schedule;
+        this.stepNumber = 0;
+    }
+
+    public HeadlessRunner( World world )
+    {
+        this( world, new TokenSchedule() );
+    }
+
+    /**
+     * Step until the level is won or lost, or maxSteps steps have been
+     * taken.
+     */
+    public RunResult runToCompletion( int maxSteps ) throws UnableToAddToken
+    {
+        return stepUntil( NEVER, maxSteps );
+    }
+
+    /**
+     * Step until the level is won or lost, maxSteps steps have been taken,
+     * or stopCondition says to stop.  May be called again to carry on
+     * from where we left off.
+     */
+    public RunResult stepUntil( StopCondition stopCondition, int maxSteps )
+    throws UnableToAddToken
+    {
+        long start = System.nanoTime();
+        int steps = 0;
+
+        while (
+               steps < maxSteps
+            && world.completionState() == CompletionState.RUNNING
+            && !stopCondition.shouldStop( world, stepNumber )
+        )
+        {
+            for ( Placement p : schedule.at( stepNumber ) )
+            {
+                world.changes.addToken( p.x, p.y, p.type );
+            }
+
+            if ( schedule.explodesAllAt( stepNumber ) )
+            {
+                world.changes.explodeAllRabbits();
+            }
+
+            world.step();
+            ++stepNumber;
+            ++steps;
+        }
+
+        return new RunResult(
+            world.completionState(),
+            steps,
+            world.num_saved,
+            world.num_killed,
+            System.nanoTime() - start
+        );
+    }
+
+    /**
+     * @return how many steps this runner has taken in total.  Also the
+     *         number of the next step, as used by the TokenSchedule.
+     */
+    public int stepNumber()
+    {
+        return stepNumber;
+    }
+}
@@ -0,0 +1,73 @@
+package rabbitescape.engine.headless;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+import rabbitescape.engine.headless.BatchSimulator.Result;
+
+/**
+ * Writes BatchSimulator results as JSON Lines: one JSON object per job,
+ * each on its own line, with the same fields as CsvBatchSink.
+ */
+public class JsonLinesBatchSink implements BatchSink
+{
+    private final PrintStream out;
+
+    public JsonLinesBatchSink( PrintStream out )
+    {
+        this.out = out;
+    }
+
+    @Override
+    public void jobFinished( Result result )
+    {
+        out.println(
+            "{\"name\":" + string( result.job.name )
+            + ",\"level\":" + string( result.job.levelFileName )
+            + ",\"result\":" + string( result.resultName() )
+            + ",\"steps\":" + result.steps()
+            + ",\"num_saved\":" + result.num_saved()
+            + ",\"num_killed\":" + result.num_killed()
+            + ",\"nanos\":" + result.nanos
+            + ",\"workers\":" + result.parallelism
+            + ",\"problem\":" + string( result.problem )
+            + "}"
+        );
+        out.flush();
+    }
+
+    private static String string( String value )
+    {
+        if ( value == null )
+        {
+            return "null";
+        }
+
+        StringBuilder ret = new StringBuilder( "\"" );
+        for ( int i = 0; i < value.length(); ++i )
+        {
+            char c = value.charAt( i );
+            switch ( c )
+            {
+                case '"':  ret.append( "\\\"" ); break;
+                case '\\': ret.append( "\\\\" ); break;
+                case '\n': ret.append( "\\n" );  break;
+                case '\r': ret.append( "\\r" );  break;
+                case '\t': ret.append( "\\t" );  break;
+                default:
+                {
+                    if ( c < ' ' )
+                    {
+                        ret.append(
+                            String.format( Locale.ROOT, "\\u%04x", (int)c ) );
+                    }
+                    else
+                    {
+                        ret.append( c );
+                    }
+                }
+            }
+        }
+        return ret.append( '"' ).toString();
+    }
+}
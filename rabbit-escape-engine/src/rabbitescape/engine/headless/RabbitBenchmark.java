@@ -0,0 +1,174 @@
+package rabbitescape.engine.headless;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import rabbitescape.engine.Block;
+import rabbitescape.engine.Direction;
+import rabbitescape.engine.IgnoreWorldStatsListener;
+import rabbitescape.engine.Rabbit;
+import rabbitescape.engine.Thing;
+import rabbitescape.engine.Token;
+import rabbitescape.engine.World;
+import rabbitescape.engine.util.Dimension;
+
+/**
+ * Measures how much memory each rabbit takes, and how many rabbit-steps
+ * per second World.step() manages, in a big generated world.
+ *
+ * Usage: RabbitBenchmark [NUM_RABBITS [NUM_STEPS]]
+ *
+ * The world is a stack of corridors, each with a wall part way along to
+ * turn rabbits round and a hole to drop some into the corridor below, so
+ * walking, turning and falling all get exercised.  The numbers are rough:
+ * run with a fixed heap (e.g. -Xms1g -Xmx1g) and compare runs on the same
+ * machine.
+ *
+ * The tree only holds one layout of Rabbit, so to compare two, run this
+ * on each commit.  It only uses the World and Rabbit constructors, so it
+ * can be copied into older trees too: the "before" figures for sharing
+ * behaviours between rabbits came from copying it into the commit before
+ * that change.
+ */
+public class RabbitBenchmark
+{
+    private static final int width = 200;
+    private static final int warm_up_steps = 50;
+
+    /**
+     * Holds the world being measured, so it can't be collected first.
+     */
+    private static World measuring;
+
+    public static void main( String[] args )
+    {
+        int numRabbits =
+            args.length > 0 ? Integer.parseInt( args[0] ) : 50000;
+        int numSteps =
+            args.length > 1 ? Integer.parseInt( args[1] ) : 200;
+
+        long emptyBytes = usedAfter( world( 0 ) );
+        World world = world( numRabbits );
+        long fullBytes = usedAfter( world );
+
+        System.out.println( "rabbits: " + numRabbits );
+        System.out.println(
+            "bytes per rabbit: "
+                + ( fullBytes - emptyBytes ) / Math.max( 1, numRabbits )
+        );
+
+        for ( int i = 0; i < warm_up_steps; ++i )
+        {
+            world.step();
+        }
+
+        long start = System.nanoTime();
+        for ( int i = 0; i < numSteps; ++i )
+        {
+            world.step();
+        }
+        long nanos = System.nanoTime() - start;
+
+        System.out.println( "steps: " + numSteps );
+        System.out.println( "ms per step: " + nanos / numSteps / 1000000.0 );
+        System.out.println(
+            "rabbit steps per second: "
+                + (long)( (double)numRabbits * numSteps * 1e9 / nanos )
+        );
+    }
+
+    /**
+     * @return the heap in use while world is still reachable.
+     */
+    private static long usedAfter( World world )
+    {
+        measuring = world;
+
+        Runtime runtime = Runtime.getRuntime();
+        for ( int i = 0; i < 5; ++i )
+        {
+            System.gc();
+        }
+        long ret = runtime.totalMemory() - runtime.freeMemory();
+
+        measuring = null;
+        return ret;
+    }
+
+    public static World world( int numRabbits )
+    {
+        int corridors = 50;
+        int height = corridors * 2;
+
+        List<Block> blocks = new ArrayList<Block>();
+        for ( int c = 0; c < corridors; ++c )
+        {
+            int floorY = c * 2 + 1;
+            int hole = ( c < corridors - 1 ) ? holeX( c ) : -1;
+            for ( int x = 0; x < width; ++x )
+            {
+                if ( x != hole )
+                {
+                    blocks.add( flat( x, floorY ) );
+                }
+            }
+            blocks.add( flat( 0, floorY - 1 ) );
+            blocks.add( flat( width - 1, floorY - 1 ) );
+            blocks.add( flat( wallX( c ), floorY - 1 ) );
+        }
+
+        List<Rabbit> rabbits = new ArrayList<Rabbit>();
+        for ( int i = 0; i < numRabbits; ++i )
+        {
+            int x = 1 + ( i * 7 ) % ( width - 2 );
+            int c = ( i / ( width - 2 ) ) % corridors;
+            int y = c * 2;
+            if ( x == wallX( c ) )
+            {
+                ++x;
+            }
+            rabbits.add( new Rabbit(
+                x, y, ( i % 2 == 0 ) ? Direction.RIGHT : Direction.LEFT ) );
+        }
+
+        return new World(
+            new Dimension( width, height ),
+            blocks,
+            rabbits,
+            new ArrayList<Thing>(),
+            new HashMap<Token.Type, Integer>(),
+            "Benchmark",
+            "",
+            "",
+            "",
+            "",
+            "",
+            "",
+            0,
+            0,
+            new int[] { 4 },
+            null,
+            0,
+            0,
+            0,
+            false,
+            new IgnoreWorldStatsListener()
+        );
+    }
+
+    private static int holeX( int corridor )
+    {
+        return ( corridor * 37 ) % ( width - 20 ) + 10;
+    }
+
+    private static int wallX( int corridor )
+    {
+        return ( corridor * 53 ) % ( width - 20 ) + 10;
+    }
+
+    private static Block flat( int x, int y )
+    {
+        return new Block( x, y, Block.Type.solid_flat, 0 );
+    }
+}
@@ -0,0 +1,57 @@
+package rabbitescape.engine.headless;
+
+import rabbitescape.engine.World.CompletionState;
+
+/**
+ * A record of one game of a level: which level, what was done when, and
+ * how it turned out, down to World.hash() at the end.  Stored in files by
+ * ReplayFile and checked by ReplayVerifier.
+ */
+public class Replay
+{
+    public final String levelFileName;
+    public final TokenSchedule schedule;
+    public final CompletionState result;
+    public final int steps;
+    public final int num_saved;
+    public final long hash;
+
+    public Replay(
+        String levelFileName,
+        TokenSchedule schedule,
+        CompletionState result,
+        int steps,
+        int num_saved,
+        long hash
+    )
+    {
+        this.levelFileName = levelFileName;
+        this.schedule = schedule;
+        this.result = result;
+        this.steps = steps;
+        this.num_saved = num_saved;
+        this.hash = hash;
+    }
+
+    /**
+     * @param run what happened when schedule was played on the level
+     *            from the start
+     * @param hash World.hash() of the world at the end of run
+     */
+    public Replay(
+        String levelFileName,
+        TokenSchedule schedule,
+        RunResult run,
+        long hash
+    )
+    {
+        this(
+            levelFileName,
+            schedule,
+            run.completionState,
+            run.steps,
+            run.num_saved,
+            hash
+        );
+    }
+}
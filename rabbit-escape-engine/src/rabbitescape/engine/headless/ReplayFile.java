@@ -0,0 +1,218 @@
+package rabbitescape.engine.headless;
+
+import static rabbitescape.engine.util.Util.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import rabbitescape.engine.Token;
+import rabbitescape.engine.World.CompletionState;
+import rabbitescape.engine.err.RabbitEscapeException;
+import rabbitescape.engine.headless.TokenSchedule.Placement;
+
+/**
+ * Reads and writes Replays as text, e.g.
+ *
+ * <pre>
+ * :level=easy/level_01.rel
+ * :result=WON
+ * :steps=57
+ * :num_saved=3
+ * :hash=-4015286632451375329
+ * 1 5 2 dig
+ * 16 9 5 dig
+ * 40 explode_all
+ * </pre>
+ *
+ * The meta lines say which level this is and how it should turn out,
+ * including World.hash() at the end, so any difference in how the game
+ * played is noticed, even if the same number of rabbits were saved.
+ * Each other line is something done just before a step (counting from
+ * 0): "step x y ability" places a token, and "step explode_all" explodes
+ * all the rabbits.  Lines are in step order.
+ */
+public class ReplayFile
+{
+    public static class BadReplayLine extends RabbitEscapeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        public final String line;
+        public final int lineNum;
+
+        public BadReplayLine( String line, int lineNum )
+        {
+            this.line = line;
+            this.lineNum = lineNum;
+        }
+
+        public BadReplayLine( Throwable cause, String line, int lineNum )
+        {
+            super( cause );
+            this.line = line;
+            this.lineNum = lineNum;
+        }
+    }
+
+    public static class MissingReplayKey extends RabbitEscapeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        public final String key;
+
+        public MissingReplayKey( String key )
+        {
+            this.key = key;
+        }
+    }
+
+    public static final String extension = ".rer";
+
+    private static final String explode_all = "explode_all";
+
+    private static final String key_level = "level";
+    private static final String key_result = "result";
+    private static final String key_steps = "steps";
+    private static final String key_num_saved = "num_saved";
+    private static final String key_hash = "hash";
+
+    public static String[] write( Replay replay )
+    {
+        List<String> ret = new ArrayList<String>();
+
+        ret.add( meta( key_level, replay.levelFileName ) );
+        ret.add( meta( key_result, replay.result.name() ) );
+        ret.add( meta( key_steps, String.valueOf( replay.steps ) ) );
+        ret.add( meta( key_num_saved, String.valueOf( replay.num_saved ) ) );
+        ret.add( meta( key_hash, String.valueOf( replay.hash ) ) );
+
+        for ( int step : replay.schedule.steps() )
+        {
+            for ( Placement p : replay.schedule.at( step ) )
+            {
+                ret.add( step + " " + p.x + " " + p.y + " " + p.type.name() );
+            }
+
+            if ( replay.schedule.explodesAllAt( step ) )
+            {
+                ret.add( step + " " + explode_all );
+            }
+        }
+
+        return stringArray( ret );
+    }
+
+    public static Replay read( String[] lines )
+    {
+        Map<String, String> meta = new HashMap<String, String>();
+        TokenSchedule schedule = new TokenSchedule();
+
+        int lineNum = 0;
+        for ( String line : lines )
+        {
+            ++lineNum;
+            try
+            {
+                readLine( line, lineNum, meta, schedule );
+            }
+            catch ( IllegalArgumentException e )
+            {
+                // Includes NumberFormatException and unknown enum values
+                throw new BadReplayLine( e, line, lineNum );
+            }
+        }
+
+        return new Replay(
+            required( meta, key_level ),
+            schedule,
+            CompletionState.valueOf( required( meta, key_result ) ),
+            Integer.parseInt( required( meta, key_steps ) ),
+            Integer.parseInt( required( meta, key_num_saved ) ),
+            Long.parseLong( required( meta, key_hash ) )
+        );
+    }
+
+    private static void readLine(
+        String line,
+        int lineNum,
+        Map<String, String> meta,
+        TokenSchedule schedule
+    )
+    {
+        if ( isEmpty( line.trim() ) )
+        {
+            return;
+        }
+
+        if ( line.startsWith( ":" ) )
+        {
+            int eq = line.indexOf( '=' );
+            if ( eq == -1 )
+            {
+                throw new BadReplayLine( line, lineNum );
+            }
+            String key = line.substring( 1, eq );
+            String value = line.substring( eq + 1 );
+            checkValue( key, value );
+            meta.put( key, value );
+            return;
+        }
+
+        String[] parts = split( line.trim(), " " );
+        int step = Integer.parseInt( parts[0] );
+
+        if ( parts.length == 2 && parts[1].equals( explode_all ) )
+        {
+            schedule.explodeAll( step );
+        }
+        else if ( parts.length == 4 )
+        {
+            schedule.add(
+                step,
+                Integer.parseInt( parts[1] ),
+                Integer.parseInt( parts[2] ),
+                Token.Type.valueOf( parts[3] )
+            );
+        }
+        else
+        {
+            throw new BadReplayLine( line, lineNum );
+        }
+    }
+
+    /**
+     * Throw IllegalArgumentException now if value will not parse later.
+     */
+    private static void checkValue( String key, String value )
+    {
+        if ( key.equals( key_result ) )
+        {
+            CompletionState.valueOf( value );
+        }
+        else if ( key.equals( key_steps ) || key.equals( key_num_saved ) )
+        {
+            Integer.parseInt( value );
+        }
+        else if ( key.equals( key_hash ) )
+        {
+            Long.parseLong( value );
+        }
+    }
+
+    private static String meta( String key, String value )
+    {
+        return ":" + key + "=" + value;
+    }
+
+    private static String required( Map<String, String> meta, String key )
+    {
+        String ret = meta.get( key );
+        if ( ret == null )
+        {
+            throw new MissingReplayKey( key );
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,170 @@
+package rabbitescape.engine.headless;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import rabbitescape.engine.IgnoreWorldStatsListener;
+import rabbitescape.engine.LoadWorldFile;
+import rabbitescape.engine.World;
+import rabbitescape.engine.err.RabbitEscapeException;
+import rabbitescape.engine.util.FileSystem;
+
+/**
+ * Plays Replays on their levels and checks they still turn out the way
+ * they did when they were recorded: the same result (won, lost or still
+ * running) after the same number of steps, with the same number of
+ * rabbits saved, and the same World.hash() at the end.
+ *
+ * It does not care whether a replay wins.  Most of the replays in the
+ * tests (see SolveLevels) are regression traces of levels played with no
+ * tokens, recorded just to be played back, and only a few are
+ * walkthroughs that solve their levels.  Either way, a replay that turns
+ * out differently means a change to the engine has changed how the game
+ * plays.
+ */
+public class ReplayVerifier
+{
+    public static class Outcome
+    {
+        public final Replay replay;
+
+        /**
+         * null if the replay went as expected
+         */
+        public final String problem;
+
+        public Outcome( Replay replay, String problem )
+        {
+            this.replay = replay;
+            this.problem = problem;
+        }
+
+        public boolean ok()
+        {
+            return problem == null;
+        }
+
+        @Override
+        public String toString()
+        {
+            return replay.levelFileName + ": " + ( ok() ? "OK" : problem );
+        }
+    }
+
+    private final FileSystem fs;
+
+    /**
+     * @param fs where to look for level files before falling back to the
+     *           levels that ship with the game
+     */
+    public ReplayVerifier( FileSystem fs )
+    {
+        this.fs = fs;
+    }
+
+    public Outcome verify( Replay replay )
+    {
+        World world;
+        RunResult run;
+        try
+        {
+            world = new LoadWorldFile( fs ).load(
+                new IgnoreWorldStatsListener(), replay.levelFileName );
+
+            run = new HeadlessRunner( world, replay.schedule )
+                .runToCompletion( replay.steps );
+        }
+        catch ( RabbitEscapeException e )
+        {
+            return new Outcome( replay, e.toString() );
+        }
+
+        if (
+               run.completionState != replay.result
+            || run.steps != replay.steps
+            || run.num_saved != replay.num_saved
+        )
+        {
+            return new Outcome(
+                replay,
+                "Expected " + describe(
+                    replay.result, replay.steps, replay.num_saved )
+                + " but got " + describe(
+                    run.completionState, run.steps, run.num_saved )
+            );
+        }
+
+        long hash = world.hash();
+        if ( hash != replay.hash )
+        {
+            return new Outcome(
+                replay,
+                "Expected the world's hash to be " + replay.hash
+                + " at the end but it was " + hash
+            );
+        }
+
+        return new Outcome( replay, null );
+    }
+
+    /**
+     * Verify all the replays at once using pool.
+     *
+     * @return the outcomes, in the same order as replays
+     */
+    public List<Outcome> verifyAll(
+        List<Replay> replays, ExecutorService pool )
+    {
+        List<Future<Outcome>> futures = new ArrayList<Future<Outcome>>();
+        for ( final Replay replay : replays )
+        {
+            futures.add(
+                pool.submit(
+                    new Callable<Outcome>()
+                    {
+                        @Override
+                        public Outcome call()
+                        {
+                            return verify( replay );
+                        }
+                    }
+                )
+            );
+        }
+
+        List<Outcome> ret = new ArrayList<Outcome>();
+        for ( int i = 0; i < futures.size(); ++i )
+        {
+            ret.add( get( replays.get( i ), futures.get( i ) ) );
+        }
+        return ret;
+    }
+
+    private static Outcome get( Replay replay, Future<Outcome> future )
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            return new Outcome( replay, "Interrupted" );
+        }
+        catch ( ExecutionException e )
+        {
+            return new Outcome( replay, e.getCause().toString() );
+        }
+    }
+
+    private static String describe(
+        World.CompletionState state, int steps, int num_saved )
+    {
+        return state + " after " + steps + " steps with "
+            + num_saved + " saved";
+    }
+}
@@ -0,0 +1,55 @@
+package rabbitescape.engine.headless;
+
+import java.util.Locale;
+
+import rabbitescape.engine.World.CompletionState;
+
+/**
+ * What happened during one call to HeadlessRunner.stepUntil().
+ */
+public class RunResult
+{
+    public final CompletionState completionState;
+    public final int steps;
+    public final int num_saved;
+    public final int num_killed;
+    public final long nanos;
+
+    public RunResult(
+        CompletionState completionState,
+        int steps,
+        int num_saved,
+        int num_killed,
+        long nanos
+    )
+    {
+        this.completionState = completionState;
+        this.steps = steps;
+        this.num_saved = num_saved;
+        this.num_killed = num_killed;
+        this.nanos = nanos;
+    }
+
+    public double stepsPerSecond()
+    {
+        if ( nanos <= 0 )
+        {
+            return 0;
+        }
+        return steps * 1e9 / nanos;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format(
+            Locale.ROOT,
+            "%s after %d steps: saved=%d killed=%d (%.0f steps/sec)",
+            completionState,
+            steps,
+            num_saved,
+            num_killed,
+            stepsPerSecond()
+        );
+    }
+}
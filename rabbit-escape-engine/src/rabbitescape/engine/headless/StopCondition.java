@@ -0,0 +1,11 @@
+package rabbitescape.engine.headless;
+
+import rabbitescape.engine.World;
+
+/**
+ * Tells a HeadlessRunner to stop early.  Checked before each step.
+ */
+public interface StopCondition
+{
+    boolean shouldStop( World world, int stepNumber );
+}
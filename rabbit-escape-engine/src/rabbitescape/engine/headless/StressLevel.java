@@ -0,0 +1,413 @@
+package rabbitescape.engine.headless;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import rabbitescape.engine.Token;
+import rabbitescape.engine.World;
+import rabbitescape.engine.textworld.TextWorldManip;
+import rabbitescape.engine.util.VariantGenerator;
+
+/**
+ * Generates big levels for finding out how the engine copes with scale.
+ * The same settings and seed always give exactly the same level.
+ *
+ * The level is a stack of corridors, each 3 squares high, with holes in
+ * their floors for rabbits to fall through, and bumps made of slopes or
+ * bridges for them to climb over.  Entrances, exits, tokens and rabbits
+ * are spread across all the corridors.
+ *
+ * Usage: StressLevel [SETTING=VALUE ...] > stress.rel
+ *
+ * e.g. "StressLevel width=2000 height=2000 placed_rabbits=100000" - see main
+ * for the names of the settings.
+ */
+public class StressLevel
+{
+    public static final int max_size = 2000;
+    public static final int max_rabbits = 100000;
+
+    private static final int corridor_height = 4;
+    private static final int hole_spacing = 40;
+
+    private static final Token.Type[] default_token_types = {
+        Token.Type.bash,
+        Token.Type.dig,
+        Token.Type.bridge,
+        Token.Type.block,
+        Token.Type.climb
+    };
+
+    private int width = 100;
+    private int height = 41;
+    private int seed = 0;
+    private int slopePercent = 5;
+    private int bridgePercent = 2;
+    private int numEntrances = 1;
+    private int numExits = 1;
+    private int numRabbits = 10;
+    private int rabbitDelay = 4;
+    private int placedRabbits = 0;
+    private int tokenPercent = 0;
+    private Token.Type[] tokenTypes = default_token_types;
+
+    public StressLevel size( int width, int height )
+    {
+        check( "width", width, 3, max_size );
+        check( "height", height, corridor_height + 1, max_size );
+        this.width = width;
+        this.height = height;
+        return this;
+    }
+
+    public StressLevel seed( int seed )
+    {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * How often a square of corridor floor has a bump made of
+     * slopes (slopePercent) or bridges (bridgePercent) on it.
+     */
+    public StressLevel bumps( int slopePercent, int bridgePercent )
+    {
+        check( "slope percent", slopePercent, 0, 100 );
+        check( "bridge percent", bridgePercent, 0, 100 - slopePercent );
+        this.slopePercent = slopePercent;
+        this.bridgePercent = bridgePercent;
+        return this;
+    }
+
+    public StressLevel entrances( int numEntrances )
+    {
+        check( "entrances", numEntrances, 0, Integer.MAX_VALUE );
+        this.numEntrances = numEntrances;
+        return this;
+    }
+
+    public StressLevel exits( int numExits )
+    {
+        check( "exits", numExits, 0, Integer.MAX_VALUE );
+        this.numExits = numExits;
+        return this;
+    }
+
+    /**
+     * Rabbits that come out of the entrances, as num_rabbits and
+     * rabbit_delay in a .rel file.
+     */
+    public StressLevel rabbits( int numRabbits, int rabbitDelay )
+    {
+        check( "rabbits", numRabbits, 0, max_rabbits );
+        check( "rabbit delay", rabbitDelay, 1, Integer.MAX_VALUE );
+        this.numRabbits = numRabbits;
+        this.rabbitDelay = rabbitDelay;
+        return this;
+    }
+
+    /**
+     * Rabbits already walking along the corridors before the first step,
+     * so that a level can start with lots of rabbits without waiting for
+     * them to come out of the entrances.
+     */
+    public StressLevel placedRabbits( int placedRabbits )
+    {
+        check( "placed rabbits", placedRabbits, 0, max_rabbits );
+        this.placedRabbits = placedRabbits;
+        return this;
+    }
+
+    /**
+     * How often an empty square of corridor has a token on it, and which
+     * types of token to choose from.  With no types given, every type
+     * except explode is used.
+     */
+    public StressLevel tokens( int tokenPercent, Token.Type... tokenTypes )
+    {
+        check( "token percent", tokenPercent, 0, 100 );
+        this.tokenPercent = tokenPercent;
+        this.tokenTypes =
+            tokenTypes.length > 0 ? tokenTypes : default_token_types;
+        return this;
+    }
+
+    public String[] lines()
+    {
+        char[][] grid = grid();
+
+        List<String> ret = new ArrayList<String>();
+        ret.add( ":name=Stress " + width + "x" + height + " seed " + seed );
+        ret.add( ":num_rabbits=" + numRabbits );
+        ret.add( ":num_to_save=1" );
+        ret.add( ":rabbit_delay=" + rabbitDelay );
+        for ( Token.Type type : Token.Type.values() )
+        {
+            ret.add( ":" + type.name() + "=" + max_rabbits );
+        }
+        for ( char[] row : grid )
+        {
+            ret.add( new String( row ) );
+        }
+
+        return ret.toArray( new String[ ret.size() ] );
+    }
+
+    public World world()
+    {
+        return TextWorldManip.createWorld( lines() );
+    }
+
+    private char[][] grid()
+    {
+        VariantGenerator gen = new VariantGenerator( seed );
+        char[][] grid = new char[height][width];
+
+        for ( int y = 0; y < height; ++y )
+        {
+            for ( int x = 0; x < width; ++x )
+            {
+                boolean edge = (
+                       x == 0
+                    || x == width - 1
+                    || y == 0
+                    || y == height - 1
+                );
+                grid[y][x] = edge ? '#' : ' ';
+            }
+        }
+
+        int numCorridors = ( height - 1 ) / corridor_height;
+        for ( int c = 0; c < numCorridors; ++c )
+        {
+            addFloorAndBumps( grid, gen, floorY( c ) );
+        }
+
+        List<int[]> upper = new ArrayList<int[]>();
+        List<int[]> walk = new ArrayList<int[]>();
+        for ( int c = 0; c < numCorridors; ++c )
+        {
+            int floor = floorY( c );
+            for ( int x = 1; x < width - 1; ++x )
+            {
+                upper.add( new int[] { x, floor - 3 } );
+                walk.add( new int[] { x, floor - 1 } );
+            }
+        }
+
+        spread( grid, upper, numEntrances, 'Q', 0, "entrances" );
+        spread( grid, walk, numExits, 'O', walk.size() / 2, "exits" );
+
+        for ( int[] p : walk )
+        {
+            if (
+                   grid[ p[1] ][ p[0] ] == ' '
+                && grid[ p[1] + 1 ][ p[0] ] == '#'
+                && random( gen, 100 ) < tokenPercent
+            )
+            {
+                Token.Type type =
+                    tokenTypes[ random( gen, tokenTypes.length ) ];
+                grid[ p[1] ][ p[0] ] = tokenChar( type );
+            }
+        }
+
+        int placed = 0;
+        for ( int i = 0; i < walk.size() && placed < placedRabbits; ++i )
+        {
+            // Step through the corridors in a fixed stride so the rabbits
+            // are spread out rather than packed into the top corridor.
+            int[] p = walk.get( (int)( (long)i * 7919 % walk.size() ) );
+            if ( grid[ p[1] ][ p[0] ] == ' ' )
+            {
+                grid[ p[1] ][ p[0] ] = ( placed % 2 == 0 ) ? 'r' : 'j';
+                ++placed;
+            }
+        }
+        if ( placed < placedRabbits )
+        {
+            throw new IllegalArgumentException(
+                "Only room for " + placed + " placed rabbits, not "
+                    + placedRabbits + " - make the level bigger." );
+        }
+
+        return grid;
+    }
+
+    private static int floorY( int corridor )
+    {
+        return ( corridor + 1 ) * corridor_height;
+    }
+
+    private void addFloorAndBumps(
+        char[][] grid, VariantGenerator gen, int floor )
+    {
+        if ( floor >= height - 1 )
+        {
+            // The bottom edge is already the floor
+            floor = height - 1;
+        }
+        else
+        {
+            for ( int x = 1; x < width - 1; ++x )
+            {
+                grid[floor][x] =
+                    random( gen, hole_spacing ) == 0 ? ' ' : '#';
+            }
+        }
+
+        for ( int x = 1; x < width - 2; ++x )
+        {
+            boolean flat = (
+                   grid[floor][x] == '#'
+                && grid[floor][x + 1] == '#'
+                && grid[floor - 1][x] == ' '
+                && grid[floor - 1][x + 1] == ' '
+            );
+            if ( !flat )
+            {
+                continue;
+            }
+
+            int r = random( gen, 100 );
+            if ( r < slopePercent )
+            {
+                grid[floor - 1][x] = '/';
+                grid[floor - 1][x + 1] = '\\';
+                ++x;
+            }
+            else if ( r < slopePercent + bridgePercent )
+            {
+                grid[floor - 1][x] = '(';
+                grid[floor - 1][x + 1] = ')';
+                ++x;
+            }
+        }
+    }
+
+    /**
+     * Put count of c evenly along places, starting from offset, moving on
+     * to the next empty place if one is already taken.
+     */
+    private static void spread(
+        char[][] grid,
+        List<int[]> places,
+        int count,
+        char c,
+        int offset,
+        String what
+    )
+    {
+        int size = places.size();
+        int placed = 0;
+        for ( int i = 0; i < count; ++i )
+        {
+            int start = (int)( offset + (long)i * size / count );
+            for ( int j = 0; j < size; ++j )
+            {
+                int[] p = places.get( ( start + j ) % size );
+                if ( grid[ p[1] ][ p[0] ] == ' ' )
+                {
+                    grid[ p[1] ][ p[0] ] = c;
+                    ++placed;
+                    break;
+                }
+            }
+        }
+        if ( placed < count )
+        {
+            throw new IllegalArgumentException(
+                "Only room for " + placed + " " + what + ", not " + count
+                    + " - make the level bigger." );
+        }
+    }
+
+    /**
+     * VariantGenerator.next can be negative once its seeds overflow.
+     */
+    private static int random( VariantGenerator gen, int max )
+    {
+        int ret = gen.next( max );
+        return ret < 0 ? ret + max : ret;
+    }
+
+    private static char tokenChar( Token.Type type )
+    {
+        switch ( type )
+        {
+            case bash:    return 'b';
+            case dig:     return 'd';
+            case bridge:  return 'i';
+            case block:   return 'k';
+            case climb:   return 'c';
+            case explode: return 'p';
+            default: throw new AssertionError( "Unknown token type " + type );
+        }
+    }
+
+    private static void check( String name, int value, int min, int max )
+    {
+        if ( value < min || value > max )
+        {
+            throw new IllegalArgumentException(
+                name + " must be between " + min + " and " + max
+                    + ", not " + value + "." );
+        }
+    }
+
+    /**
+     * Settings, with their defaults: width=100, height=41, seed=0,
+     * slope_percent=5, bridge_percent=2, entrances=1, exits=1,
+     * num_rabbits=10, rabbit_delay=4, placed_rabbits=0, token_percent=0.
+     */
+    public static void main( String[] args )
+    {
+        Map<String, Integer> settings = new HashMap<String, Integer>();
+        settings.put( "width", 100 );
+        settings.put( "height", 41 );
+        settings.put( "seed", 0 );
+        settings.put( "slope_percent", 5 );
+        settings.put( "bridge_percent", 2 );
+        settings.put( "entrances", 1 );
+        settings.put( "exits", 1 );
+        settings.put( "num_rabbits", 10 );
+        settings.put( "rabbit_delay", 4 );
+        settings.put( "placed_rabbits", 0 );
+        settings.put( "token_percent", 0 );
+
+        for ( String arg : args )
+        {
+            String[] kv = arg.split( "=", 2 );
+            if ( kv.length != 2 || !settings.containsKey( kv[0] ) )
+            {
+                throw new IllegalArgumentException(
+                    "Expected SETTING=VALUE with SETTING one of "
+                        + settings.keySet() + ", not '" + arg + "'." );
+            }
+            settings.put( kv[0], Integer.parseInt( kv[1] ) );
+        }
+
+        StressLevel level = new StressLevel()
+            .size( settings.get( "width" ), settings.get( "height" ) )
+            .seed( settings.get( "seed" ) )
+            .bumps(
+                settings.get( "slope_percent" ),
+                settings.get( "bridge_percent" )
+            )
+            .entrances( settings.get( "entrances" ) )
+            .exits( settings.get( "exits" ) )
+            .rabbits(
+                settings.get( "num_rabbits" ),
+                settings.get( "rabbit_delay" )
+            )
+            .placedRabbits( settings.get( "placed_rabbits" ) )
+            .tokens( settings.get( "token_percent" ) );
+
+        for ( String line : level.lines() )
+        {
+            System.out.println( line );
+        }
+    }
+}
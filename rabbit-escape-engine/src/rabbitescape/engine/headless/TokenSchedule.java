@@ -0,0 +1,106 @@
+package rabbitescape.engine.headless;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import rabbitescape.engine.Token;
+
+/**
+ * Which tokens to place before which step of a game, and when to explode
+ * all the rabbits, so that a level can be played through without anyone
+ * clicking.  Step 0 is the first step.
+ */
+public class TokenSchedule
+{
+    public static class Placement
+    {
+        public final int x;
+        public final int y;
+        public final Token.Type type;
+
+        public Placement( int x, int y, Token.Type type )
+        {
+            this.x = x;
+            this.y = y;
+            this.type = type;
+        }
+
+        @Override
+        public String toString()
+        {
+            return type.name() + " at (" + x + ", " + y + ")";
+        }
+    }
+
+    private final Map<Integer, List<Placement>> byStep;
+    private final Set<Integer> explodeSteps;
+
+    public TokenSchedule()
+    {
+        this.byStep = new TreeMap<Integer, List<Placement>>();
+        this.explodeSteps = new TreeSet<Integer>();
+    }
+
+    public TokenSchedule add( int step, int x, int y, Token.Type type )
+    {
+        List<Placement> placements = byStep.get( step );
+        if ( placements == null )
+        {
+            placements = new ArrayList<Placement>();
+            byStep.put( step, placements );
+        }
+        placements.add( new Placement( x, y, type ) );
+
+        return this;
+    }
+
+    /**
+     * Explode all the rabbits just before the given step, after placing
+     * any tokens for that step.
+     */
+    public TokenSchedule explodeAll( int step )
+    {
+        explodeSteps.add( step );
+
+        return this;
+    }
+
+    /**
+     * @return the tokens to place just before the given step, in the order
+     *         they were added.
+     */
+    public List<Placement> at( int step )
+    {
+        List<Placement> ret = byStep.get( step );
+        if ( ret == null )
+        {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList( ret );
+    }
+
+    public boolean explodesAllAt( int step )
+    {
+        return explodeSteps.contains( step );
+    }
+
+    /**
+     * @return every step that has something happening before it, in order
+     */
+    public List<Integer> steps()
+    {
+        Set<Integer> ret = new TreeSet<Integer>( byStep.keySet() );
+        ret.addAll( explodeSteps );
+        return new ArrayList<Integer>( ret );
+    }
+
+    public boolean isEmpty()
+    {
+        return byStep.isEmpty() && explodeSteps.isEmpty();
+    }
+}
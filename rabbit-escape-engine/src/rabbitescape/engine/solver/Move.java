@@ -0,0 +1,64 @@
+package rabbitescape.engine.solver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import rabbitescape.engine.Token;
+import rabbitescape.engine.headless.TokenSchedule;
+
+/**
+ * Placing one token just before a given step (counting from 0).
+ *
+ * Moves are immutable and each one points back to the move before it, so
+ * the solver's search nodes can share the beginning of their solutions.
+ */
+public class Move
+{
+    public final int step;
+    public final int x;
+    public final int y;
+    public final Token.Type type;
+
+    final Move previous;
+
+    Move( int step, int x, int y, Token.Type type, Move previous )
+    {
+        this.step = step;
+        this.x = x;
+        this.y = y;
+        this.type = type;
+        this.previous = previous;
+    }
+
+    /**
+     * @return the moves ending in last, first move first.  Empty if last
+     *         is null.
+     */
+    public static List<Move> list( Move last )
+    {
+        List<Move> ret = new ArrayList<Move>();
+        for ( Move m = last; m != null; m = m.previous )
+        {
+            ret.add( m );
+        }
+        Collections.reverse( ret );
+        return ret;
+    }
+
+    static TokenSchedule schedule( Move last )
+    {
+        TokenSchedule ret = new TokenSchedule();
+        for ( Move move : list( last ) )
+        {
+            ret.add( move.step, move.x, move.y, move.type );
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString()
+    {
+        return step + " " + x + " " + y + " " + type.name();
+    }
+}
@@ -0,0 +1,61 @@
+package rabbitescape.engine.solver;
+
+import java.util.Locale;
+
+/**
+ * How much work a Solver did.
+ */
+public class SearchStats
+{
+    /** Search nodes whose worlds were played forward */
+    public final long nodesExpanded;
+
+    /** Search nodes found that had not been seen before */
+    public final long nodesGenerated;
+
+    /** World.step() calls, including replaying moves */
+    public final long statesEvaluated;
+
+    public final long nanos;
+    public final long peakMemoryBytes;
+
+    public SearchStats(
+        long nodesExpanded,
+        long nodesGenerated,
+        long statesEvaluated,
+        long nanos,
+        long peakMemoryBytes
+    )
+    {
+        this.nodesExpanded = nodesExpanded;
+        this.nodesGenerated = nodesGenerated;
+        this.statesEvaluated = statesEvaluated;
+        this.nanos = nanos;
+        this.peakMemoryBytes = peakMemoryBytes;
+    }
+
+    public double statesPerSecond()
+    {
+        if ( nanos <= 0 )
+        {
+            return 0;
+        }
+        return statesEvaluated * 1e9 / nanos;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format(
+            Locale.ROOT,
+            "expanded=%d generated=%d states=%d (%.0f states/sec) "
+                + "time=%.2fs peak_memory=%dMB",
+            nodesExpanded,
+            nodesGenerated,
+            statesEvaluated,
+            statesPerSecond(),
+            nanos / 1e9,
+            peakMemoryBytes / ( 1024 * 1024 )
+        );
+    }
+}
@@ -0,0 +1,194 @@
+package rabbitescape.engine.solver;
+
+import static rabbitescape.engine.util.Util.*;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import rabbitescape.engine.IgnoreWorldStatsListener;
+import rabbitescape.engine.LoadWorldFile;
+import rabbitescape.engine.World;
+import rabbitescape.engine.World.CompletionState;
+import rabbitescape.engine.headless.HeadlessRunner;
+import rabbitescape.engine.headless.Replay;
+import rabbitescape.engine.headless.ReplayFile;
+import rabbitescape.engine.headless.RunResult;
+import rabbitescape.engine.headless.TokenSchedule;
+import rabbitescape.engine.menu.LevelMenuItem;
+import rabbitescape.engine.menu.LevelsCompleted;
+import rabbitescape.engine.menu.LevelsMenu;
+import rabbitescape.engine.menu.MenuItem;
+import rabbitescape.engine.util.FileSystem;
+import rabbitescape.engine.util.RealFileSystem;
+
+/**
+ * Runs the Solver on the levels that ship with the game and writes a
+ * replay (see ReplayFile) for each one.
+ *
+ * Usage: SolveLevels [--max-nodes=N] OUTPUT_DIR [LEVELS_DIR_OR_FILE...]
+ *
+ * e.g. "SolveLevels out easy medium/level_03.rel" writes
+ * out/walkthroughs/easy/level_01.rer etc.  With no levels, does every
+ * level set.
+ *
+ * If a level is not solved, its replay is of playing it with no tokens.
+ * That is not a walkthrough, but it is still worth checking with a
+ * ReplayVerifier, so it is written as a regression trace in
+ * e.g. out/regressions/easy/level_04.rer instead.
+ */
+public class SolveLevels
+{
+    private static final String[] all_levels_dirs = {
+        "easy", "medium", "hard", "outdoors" };
+
+    private static class IgnoreLevelsCompleted implements LevelsCompleted
+    {
+        @Override
+        public int highestLevelCompleted( String levelsDir )
+        {
+            return 0;
+        }
+
+        @Override
+        public void setCompletedLevel( String levelsDir, int levelNum )
+        {
+        }
+    }
+
+    private static final String max_nodes_arg = "--max-nodes=";
+
+    public static final String walkthroughs_dir = "walkthroughs";
+    public static final String regressions_dir = "regressions";
+
+    private final FileSystem fs;
+    private final PrintStream out;
+    private final int maxNodes;
+
+    public SolveLevels( FileSystem fs, PrintStream out, int maxNodes )
+    {
+        this.fs = fs;
+        this.out = out;
+        this.maxNodes = maxNodes;
+    }
+
+    public static void main( String[] args ) throws IOException
+    {
+        int maxNodes = Solver.default_max_nodes;
+        int first = 0;
+        if ( args.length > 0 && args[0].startsWith( max_nodes_arg ) )
+        {
+            maxNodes = Integer.parseInt(
+                args[0].substring( max_nodes_arg.length() ) );
+            first = 1;
+        }
+
+        if ( args.length < first + 1 )
+        {
+            System.err.println(
+                "Usage: SolveLevels [" + max_nodes_arg + "N] OUTPUT_DIR "
+                    + "[LEVELS_DIR_OR_FILE...]"
+            );
+            System.exit( 1 );
+        }
+
+        List<String> levels = new ArrayList<String>();
+        for ( int i = first + 1; i < args.length; ++i )
+        {
+            levels.add( args[i] );
+        }
+
+        int failed = new SolveLevels(
+            new RealFileSystem(), System.out, maxNodes )
+                .run( args[first], levels );
+
+        System.exit( failed == 0 ? 0 : 2 );
+    }
+
+    /**
+     * @return the number of levels not solved
+     */
+    public int run( String outputDir, List<String> levels ) throws IOException
+    {
+        int failed = 0;
+        for ( String fileName : levelFileNames( levels ) )
+        {
+            World world = new LoadWorldFile( fs ).load(
+                new IgnoreWorldStatsListener(), fileName );
+
+            SolverResult result = new Solver(
+                world,
+                Runtime.getRuntime().availableProcessors(),
+                Solver.default_max_steps,
+                maxNodes
+            ).solve();
+            out.println( fileName + ": " + result );
+
+            if ( !result.solved )
+            {
+                ++failed;
+            }
+
+            Replay replay = replay( world, fileName, result );
+            String kindDir = replay.result == CompletionState.WON
+                ? walkthroughs_dir : regressions_dir;
+            String outFile = outputDir + "/" + kindDir + "/"
+                + fileName.replaceAll( "\\.rel$", ReplayFile.extension );
+            fs.mkdirs( fs.parent( outFile ) );
+            fs.write( outFile, join( "\n", ReplayFile.write( replay ) ) + "\n" );
+        }
+        return failed;
+    }
+
+    /**
+     * Play result's moves on world to find out exactly how they turn out.
+     */
+    public static Replay replay(
+        World world, String fileName, SolverResult result )
+    {
+        TokenSchedule schedule = result.schedule();
+
+        World played = world.copy();
+        RunResult run = new HeadlessRunner( played, schedule )
+            .runToCompletion( Solver.default_max_steps );
+
+        return new Replay( fileName, schedule, run, played.hash() );
+    }
+
+    private static List<String> levelFileNames( List<String> levels )
+    {
+        List<String> ret = new ArrayList<String>();
+        if ( levels.isEmpty() )
+        {
+            for ( String dir : all_levels_dirs )
+            {
+                addLevelsIn( dir, ret );
+            }
+        }
+
+        for ( String level : levels )
+        {
+            if ( level.endsWith( ".rel" ) )
+            {
+                ret.add( level );
+            }
+            else
+            {
+                addLevelsIn( level, ret );
+            }
+        }
+        return ret;
+    }
+
+    private static void addLevelsIn( String levelsDir, List<String> ret )
+    {
+        LevelsMenu menu =
+            new LevelsMenu( levelsDir, new IgnoreLevelsCompleted() );
+
+        for ( MenuItem item : menu.items )
+        {
+            ret.add( ( (LevelMenuItem)item ).fileName );
+        }
+    }
+}
@@ -0,0 +1,594 @@
+package rabbitescape.engine.solver;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import rabbitescape.engine.Block;
+import rabbitescape.engine.Rabbit;
+import rabbitescape.engine.Token;
+import rabbitescape.engine.World;
+import rabbitescape.engine.World.CompletionState;
+import rabbitescape.engine.World.UnableToAddToken;
+import rabbitescape.engine.headless.HeadlessRunner;
+
+/**
+ * Searches for token placements that win a level.
+ *
+ * The search is best-first, trying fewer tokens before more.  Expanding
+ * a node plays its world forward with no more tokens until the level
+ * ends, and at each step tries, in a copy of the world, each token the
+ * world has left on each square where a rabbit will be when it looks
+ * for tokens in that step (see mightPickUp()).  Tokens anywhere else
+ * could not change any rabbit until a later step, where they would be
+ * tried anyway, so only those candidates are copied and stepped.  A
+ * token that still changes no rabbit in the step it is placed is pruned.
+ * A world already reached (going by World.hash()) with as few tokens
+ * is not explored again.
+ *
+ * Nodes only remember their moves, not their worlds, so memory stays
+ * small: a node's world is rebuilt by replaying its moves when it is
+ * expanded.  Nodes are expanded in batches, one per thread.  The threads
+ * only read which worlds have been seen: each expansion lists the worlds
+ * it wants to claim, and the coordinating thread claims them in batch
+ * order.  So the same level and number of threads always give the same
+ * solution.
+ */
+public class Solver
+{
+    public static final int default_max_steps = 2000;
+    public static final int default_max_nodes = 2000;
+
+    private static class Node
+    {
+        public final Move lastMove;
+        public final int step;
+        public final int tokens;
+        public final int saved;
+        public final long order;
+
+        public Node( Move lastMove, int step, int tokens, int saved, long order )
+        {
+            this.lastMove = lastMove;
+            this.step = step;
+            this.tokens = tokens;
+            this.saved = saved;
+            this.order = order;
+        }
+    }
+
+    private static final Comparator<Node> bestFirst = new Comparator<Node>()
+    {
+        @Override
+        public int compare( Node a, Node b )
+        {
+            if ( a.tokens != b.tokens )
+            {
+                return a.tokens < b.tokens ? -1 : 1;
+            }
+            else if ( a.saved != b.saved )
+            {
+                return a.saved > b.saved ? -1 : 1;
+            }
+            else if ( a.step != b.step )
+            {
+                return a.step < b.step ? -1 : 1;
+            }
+            else
+            {
+                return Long.compare( a.order, b.order );
+            }
+        }
+    };
+
+    /**
+     * A world an expansion reached, which it can only carry on from if
+     * nobody has reached it with as few tokens.
+     */
+    private static class Claim
+    {
+        public final long hash;
+        public final int tokens;
+
+        /**
+         * The node to add if the claim succeeds, or null if this is the
+         * world of the node being expanded, which stops the expansion if
+         * the claim fails.
+         */
+        public final Node child;
+
+        public Claim( long hash, int tokens, Node child )
+        {
+            this.hash = hash;
+            this.tokens = tokens;
+            this.child = child;
+        }
+    }
+
+    /**
+     * What one expansion found.
+     */
+    private static class Expansion
+    {
+        /**
+         * In the order the expansion reached them.
+         */
+        public final List<Claim> claims = new ArrayList<Claim>();
+        public boolean solved = false;
+        public Move solution = null;
+        public long states = 0;
+    }
+
+    private final World start;
+    private final int threads;
+    private final int maxSteps;
+    private final int maxNodes;
+
+    /**
+     * The fewest tokens each world (by hash) has been reached with.  Only
+     * changed by the coordinating thread, between batches.
+     */
+    private final Map<Long, Integer> seen = new HashMap<Long, Integer>();
+
+    /**
+     * @param start    is not changed: we work on copies
+     * @param threads  how many worlds to play at once
+     * @param maxSteps give up on a line of play after this many steps
+     * @param maxNodes give up after expanding this many nodes
+     */
+    public Solver( World start, int threads, int maxSteps, int maxNodes )
+    {
+        this.start = start.copy();
+        this.threads = threads;
+        this.maxSteps = maxSteps;
+        this.maxNodes = maxNodes;
+    }
+
+    public Solver( World start )
+    {
+        this(
+            start,
+            Runtime.getRuntime().availableProcessors(),
+            default_max_steps,
+            default_max_nodes
+        );
+    }
+
+    public SolverResult solve()
+    {
+        ExecutorService pool = Executors.newFixedThreadPool( threads );
+        try
+        {
+            return solve( pool );
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    private SolverResult solve( ExecutorService pool )
+    {
+        long startTime = System.nanoTime();
+        long expanded = 0;
+        long generated = 1;
+        long states = 0;
+        long peakMemory = usedMemory();
+        long order = 0;
+
+        PriorityQueue<Node> frontier = new PriorityQueue<Node>(
+            64, bestFirst );
+        frontier.add( new Node( null, 0, 0, 0, order++ ) );
+        claim( start.hash(), 0 );
+
+        while ( !frontier.isEmpty() && expanded < maxNodes )
+        {
+            List<Future<Expansion>> batch = new ArrayList<Future<Expansion>>();
+            while (
+                   !frontier.isEmpty()
+                && batch.size() < threads
+                && expanded < maxNodes
+            )
+            {
+                batch.add( pool.submit( expansionOf( frontier.poll() ) ) );
+                ++expanded;
+            }
+
+            // Wait for the whole batch before claiming anything, because
+            // the expansions are reading seen.
+            List<Expansion> expansions = new ArrayList<Expansion>();
+            for ( Future<Expansion> future : batch )
+            {
+                expansions.add( get( future ) );
+            }
+
+            for ( Expansion expansion : expansions )
+            {
+                states += expansion.states;
+
+                boolean cutShort = false;
+                for ( Claim c : expansion.claims )
+                {
+                    if ( claim( c.hash, c.tokens ) )
+                    {
+                        if ( c.child != null )
+                        {
+                            frontier.add(
+                                new Node(
+                                    c.child.lastMove,
+                                    c.child.step,
+                                    c.child.tokens,
+                                    c.child.saved,
+                                    order++
+                                )
+                            );
+                            ++generated;
+                        }
+                    }
+                    else if ( c.child == null )
+                    {
+                        // An earlier expansion in this batch got here
+                        // with as few tokens, so this one stops here.
+                        cutShort = true;
+                        break;
+                    }
+                }
+
+                if ( expansion.solved && !cutShort )
+                {
+                    return new SolverResult(
+                        true,
+                        expansion.solution,
+                        new SearchStats(
+                            expanded,
+                            generated,
+                            states,
+                            System.nanoTime() - startTime,
+                            peakMemory
+                        )
+                    );
+                }
+            }
+
+            peakMemory = Math.max( peakMemory, usedMemory() );
+        }
+
+        return new SolverResult(
+            false,
+            null,
+            new SearchStats(
+                expanded,
+                generated,
+                states,
+                System.nanoTime() - startTime,
+                peakMemory
+            )
+        );
+    }
+
+    private Callable<Expansion> expansionOf( final Node node )
+    {
+        return new Callable<Expansion>()
+        {
+            @Override
+            public Expansion call()
+            {
+                return expand( node );
+            }
+        };
+    }
+
+    /**
+     * On a worker thread.  Must not change seen: the claims we want to
+     * make go in the Expansion instead.
+     */
+    private Expansion expand( Node node )
+    {
+        Expansion ret = new Expansion();
+
+        // What we will claim, so we don't ask for the same world twice
+        Map<Long, Integer> ours = new HashMap<Long, Integer>();
+
+        World world = start.copy();
+        HeadlessRunner runner =
+            new HeadlessRunner( world, Move.schedule( node.lastMove ) );
+        runner.runToCompletion( node.step );
+        ret.states += runner.stepNumber();
+
+        int step = runner.stepNumber();
+        while (
+               world.completionState() == CompletionState.RUNNING
+            && step < maxSteps
+        )
+        {
+            // Where the rabbits end up tells us where tokens are worth trying
+            World next = world.copy();
+            next.step();
+
+            List<World> tries = new ArrayList<World>();
+            List<Move> tryMoves = new ArrayList<Move>();
+            tryTokens( node, world, next, step, tries, tryMoves );
+
+            world = next;
+            ++step;
+            ++ret.states;
+            ret.states += tries.size();
+
+            for ( int i = 0; i < tries.size(); ++i )
+            {
+                World child = tries.get( i );
+                Move move = tryMoves.get( i );
+                CompletionState state = child.completionState();
+
+                if ( state == CompletionState.WON )
+                {
+                    ret.solved = true;
+                    ret.solution = move;
+                    return ret;
+                }
+                else if (
+                       state == CompletionState.RUNNING
+                    && !sameRabbits( child, world )
+                )
+                {
+                    wantToClaim(
+                        ret,
+                        ours,
+                        child.hash(),
+                        node.tokens + 1,
+                        new Node(
+                            move, step, node.tokens + 1, child.num_saved, 0 )
+                    );
+                }
+            }
+
+            if ( world.completionState() == CompletionState.WON )
+            {
+                ret.solved = true;
+                ret.solution = node.lastMove;
+                return ret;
+            }
+            else if (
+                !wantToClaim( ret, ours, world.hash(), node.tokens, null ) )
+            {
+                // Someone else got here with as few tokens
+                break;
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Fill tries with copies of world that have each useful token added
+     * and have taken one step, and tryMoves with the matching moves.
+     *
+     * @param next world after taking the same step with no token added
+     */
+    private void tryTokens(
+        Node node,
+        World world,
+        World next,
+        int step,
+        List<World> tries,
+        List<Move> tryMoves
+    )
+    {
+        List<Long> squares = new ArrayList<Long>();
+        for ( Token.Type type : Token.Type.values() )
+        {
+            Integer num = world.abilities.get( type );
+            if ( num == null || num <= 0 )
+            {
+                continue;
+            }
+
+            squares.clear();
+            for ( Rabbit rabbit : next.rabbits )
+            {
+                if ( mightPickUp( next, rabbit, type ) )
+                {
+                    addSquare( world, squares, rabbit.x, rabbit.y );
+                }
+            }
+
+            for ( long square : squares )
+            {
+                int x = (int)( square >> 32 );
+                int y = (int)square;
+
+                World child = world.copy();
+                try
+                {
+                    child.changes.addToken( x, y, type );
+                }
+                catch ( UnableToAddToken e )
+                {
+                    continue;
+                }
+                child.step();
+
+                tries.add( child );
+                tryMoves.add( new Move( step, x, y, type, node.lastMove ) );
+            }
+        }
+    }
+
+    /**
+     * A token added before a step is there when the rabbits look for
+     * tokens (in calcNewState()), by which time they have moved.  So
+     * rabbit, as it is after the step, is where it looked, and its state
+     * then is all the behaviours' checkTriggered() go by.
+     *
+     * @return false if rabbit would certainly ignore a token of this type
+     *         on its square.
+     */
+    private static boolean mightPickUp(
+        World world, Rabbit rabbit, Token.Type type )
+    {
+        switch ( type )
+        {
+            case explode:
+            {
+                return true;
+            }
+            case climb:
+            {
+                // Even if it only just picked one up, another one would
+                // make no difference.
+                return !rabbit.canClimb;
+            }
+            default:
+            {
+                // Only picked up on the ground: see BehaviourTools
+                return (
+                       rabbit.onSlope
+                    || world.getBlockAt( rabbit.x, rabbit.y + 1 ) != null
+                );
+            }
+        }
+    }
+
+    private static void addSquare(
+        World world, List<Long> squares, int x, int y )
+    {
+        if (
+               x < 0
+            || y < 0
+            || x >= world.size.width
+            || y >= world.size.height
+            || world.getTokenAt( x, y ) != null
+        )
+        {
+            return;
+        }
+
+        // Tokens can't go inside solid blocks: addToken() ignores them
+        Block block = world.getBlockAt( x, y );
+        if ( block != null && block.type == Block.Type.solid_flat )
+        {
+            return;
+        }
+
+        long square = ( ( (long)x ) << 32 ) | ( y & 0xFFFFFFFFL );
+        if ( !squares.contains( square ) )
+        {
+            squares.add( square );
+        }
+    }
+
+    /**
+     * @return true if every rabbit in one world is in the same place and
+     *         state as the matching rabbit in the other.
+     */
+    private static boolean sameRabbits( World world1, World world2 )
+    {
+        if ( world1.rabbits.size() != world2.rabbits.size() )
+        {
+            return false;
+        }
+
+        for ( int i = 0; i < world1.rabbits.size(); ++i )
+        {
+            Rabbit r1 = world1.rabbits.get( i );
+            Rabbit r2 = world2.rabbits.get( i );
+            if (
+                   r1.x != r2.x
+                || r1.y != r2.y
+                || r1.state != r2.state
+                || r1.dir != r2.dir
+            )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * On a worker thread: if nobody before this batch, and nothing
+     * earlier in this expansion, has reached this world with as few
+     * tokens, add a claim for it to expansion.
+     *
+     * @param child the node to add, or null for the node being expanded
+     * @return false if the claim is sure to fail.
+     */
+    private boolean wantToClaim(
+        Expansion expansion,
+        Map<Long, Integer> ours,
+        long hash,
+        int tokens,
+        Node child
+    )
+    {
+        if (
+               asFew( seen.get( hash ), tokens )
+            || asFew( ours.get( hash ), tokens )
+        )
+        {
+            return false;
+        }
+
+        ours.put( hash, tokens );
+        expansion.claims.add( new Claim( hash, tokens, child ) );
+        return true;
+    }
+
+    /**
+     * On the coordinating thread.
+     *
+     * @return true if this is the first time we have reached this world
+     *         with this few tokens.
+     */
+    private boolean claim( long hash, int tokens )
+    {
+        if ( asFew( seen.get( hash ), tokens ) )
+        {
+            return false;
+        }
+
+        seen.put( hash, tokens );
+        return true;
+    }
+
+    /**
+     * @return true if a world reached with reached tokens (null if never)
+     *         was reached with no more than tokens.
+     */
+    private static boolean asFew( Integer reached, int tokens )
+    {
+        return reached != null && reached <= tokens;
+    }
+
+    private static Expansion get( Future<Expansion> future )
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( e );
+        }
+        catch ( ExecutionException e )
+        {
+            throw new IllegalStateException( e.getCause() );
+        }
+    }
+
+    private static long usedMemory()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
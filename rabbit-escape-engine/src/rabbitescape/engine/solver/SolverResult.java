@@ -0,0 +1,44 @@
+package rabbitescape.engine.solver;
+
+import java.util.List;
+
+import rabbitescape.engine.headless.TokenSchedule;
+
+/**
+ * What a Solver found: the moves that win the level, if any, and how
+ * hard it had to look.
+ */
+public class SolverResult
+{
+    public final boolean solved;
+    public final List<Move> moves;
+    public final SearchStats stats;
+
+    private final Move lastMove;
+
+    SolverResult( boolean solved, Move lastMove, SearchStats stats )
+    {
+        this.solved = solved;
+        this.moves = Move.list( lastMove );
+        this.stats = stats;
+        this.lastMove = lastMove;
+    }
+
+    public TokenSchedule schedule()
+    {
+        return Move.schedule( lastMove );
+    }
+
+    @Override
+    public String toString()
+    {
+        if ( solved )
+        {
+            return "Solved with " + moves.size() + " tokens: " + stats;
+        }
+        else
+        {
+            return "Not solved: " + stats;
+        }
+    }
+}
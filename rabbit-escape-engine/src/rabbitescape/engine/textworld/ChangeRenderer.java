@@ -1,10 +1,10 @@
 package rabbitescape.engine.textworld;
 
 import rabbitescape.engine.ChangeDescription;
-import rabbitescape.engine.ChangeDescription.Change;
+import rabbitescape.engine.ChangeDescription.State;
+import rabbitescape.engine.ChangeFeed;
 import rabbitescape.engine.RabbitStates;
-import rabbitescape.engine.StateAndPosition;
-import rabbitescape.engine.util.Position;
+import rabbitescape.engine.Thing;
 
 public class ChangeRenderer
 {
@@ -12,208 +12,218 @@ public class ChangeRenderer
     {
         for ( ChangeDescription.Change change : desc.changes )
         {
-            charForChange( change, chars );
+            charForChange( change.x, change.y, change.state, chars );
         }
     }
 
-    private static void charForChange( Change change, Chars chars )
+    /**
+     * Render only the things that changed in the last step.
+     */
+    public static void render( Chars chars, ChangeFeed feed )
     {
-        // Handle bridging specially
-        Position bridgingPos = RabbitStates.whereBridging(
-            new StateAndPosition( change.state, change.x, change.y ) );
+        for ( int i = 0; i < feed.numChanges(); ++i )
+        {
+            Thing thing = feed.changedThing( i );
+            charForChange( thing.x, thing.y, thing.state, chars );
+        }
+    }
 
-        if ( bridgingPos != null )
+    private static void charForChange(
+        int x, int y, State state, Chars chars )
+    {
+        // Handle bridging specially
+        if ( RabbitStates.isBridging( state ) )
         {
             chars.set(
-                bridgingPos.x,
-                bridgingPos.y,
-                RabbitStates.bridgingStage( change.state )
+                RabbitStates.bridgingX( state, x ),
+                RabbitStates.bridgingY( state, y ),
+                RabbitStates.bridgingStage( state )
             );
             return;
         }
 
         // Everything else is relatively simple
-        switch( change.state )
+        switch( state )
         {
             case NOTHING:
                 break;
             case RABBIT_WALKING_LEFT:
-                chars.set( change.x-1, change.y, '<' );
+                chars.set( x-1, y, '<' );
                 break;
             case RABBIT_TURNING_LEFT_TO_RIGHT:
-                chars.set( change.x, change.y, '|' );
+                chars.set( x, y, '|' );
                 break;
             case RABBIT_TURNING_LEFT_TO_RIGHT_RISING:
-                chars.set( change.x, change.y, '|' );
+                chars.set( x, y, '|' );
                 break;
             case RABBIT_TURNING_LEFT_TO_RIGHT_LOWERING:
-                chars.set( change.x, change.y, '[' );
+                chars.set( x, y, '[' );
                 break;
             case RABBIT_WALKING_RIGHT:
-                chars.set( change.x + 1, change.y, '>' );
+                chars.set( x + 1, y, '>' );
                 break;
             case RABBIT_TURNING_RIGHT_TO_LEFT:
-                chars.set( change.x, change.y, '?' );
+                chars.set( x, y, '?' );
                 break;
             case RABBIT_TURNING_RIGHT_TO_LEFT_RISING:
-                chars.set( change.x, change.y, '?' );
+                chars.set( x, y, '?' );
                 break;
             case RABBIT_TURNING_RIGHT_TO_LEFT_LOWERING:
-                chars.set( change.x, change.y, ']' );
+                chars.set( x, y, ']' );
                 break;
             case RABBIT_RISING_RIGHT_START:
-                chars.set( change.x + 1, change.y, '~' );
+                chars.set( x + 1, y, '~' );
                 break;
             case RABBIT_RISING_RIGHT_CONTINUE:
-                chars.set( change.x + 1, change.y - 1, '$' );
+                chars.set( x + 1, y - 1, '$' );
                 break;
             case RABBIT_RISING_RIGHT_END:
-                chars.set( change.x + 1, change.y - 1, '\'' );
+                chars.set( x + 1, y - 1, '\'' );
                 break;
             case RABBIT_RISING_LEFT_START:
-                chars.set( change.x - 1, change.y, '`' );
+                chars.set( x - 1, y, '`' );
                 break;
             case RABBIT_RISING_LEFT_CONTINUE:
-                chars.set( change.x - 1, change.y - 1, '^' );
+                chars.set( x - 1, y - 1, '^' );
                 break;
             case RABBIT_RISING_LEFT_END:
-                chars.set( change.x - 1, change.y - 1, '!' );
+                chars.set( x - 1, y - 1, '!' );
                 break;
             case RABBIT_LOWERING_RIGHT_START:
-                chars.set( change.x + 1, change.y + 1, '-' );
+                chars.set( x + 1, y + 1, '-' );
                 break;
             case RABBIT_LOWERING_RIGHT_CONTINUE:
-                chars.set( change.x + 1, change.y + 1, '@' );
+                chars.set( x + 1, y + 1, '@' );
                 break;
             case RABBIT_LOWERING_RIGHT_END:
-                chars.set( change.x + 1, change.y, '_' );
+                chars.set( x + 1, y, '_' );
                 break;
             case RABBIT_LOWERING_LEFT_START:
-                chars.set( change.x - 1, change.y + 1, '=' );
+                chars.set( x - 1, y + 1, '=' );
                 break;
             case RABBIT_LOWERING_LEFT_CONTINUE:
-                chars.set( change.x - 1, change.y + 1, '%' );
+                chars.set( x - 1, y + 1, '%' );
                 break;
             case RABBIT_LOWERING_LEFT_END:
-                chars.set( change.x - 1, change.y, '+' );
+                chars.set( x - 1, y, '+' );
                 break;
             case RABBIT_LOWERING_AND_RISING_RIGHT:
-                chars.set( change.x + 1, change.y, ',' );
+                chars.set( x + 1, y, ',' );
                 break;
             case RABBIT_LOWERING_AND_RISING_LEFT:
-                chars.set( change.x - 1, change.y, '.' );
+                chars.set( x - 1, y, '.' );
                 break;
             case RABBIT_RISING_AND_LOWERING_RIGHT:
-                chars.set( change.x + 1, change.y, '&' );
+                chars.set( x + 1, y, '&' );
                 break;
             case RABBIT_RISING_AND_LOWERING_LEFT:
-                chars.set( change.x - 1, change.y, 'm' );
+                chars.set( x - 1, y, 'm' );
                 break;
             case RABBIT_FALLING:
-                chars.set( change.x, change.y + 1, 'f' );
-                chars.set( change.x, change.y + 2, 'f' );
+                chars.set( x, y + 1, 'f' );
+                chars.set( x, y + 2, 'f' );
                 break;
             case RABBIT_FALLING_ONTO_LOWER_RIGHT:
-                chars.set( change.x, change.y + 1, 'f' );
-                chars.set( change.x, change.y + 2, 'e' );
+                chars.set( x, y + 1, 'f' );
+                chars.set( x, y + 2, 'e' );
                 break;
             case RABBIT_FALLING_ONTO_LOWER_LEFT:
-                chars.set( change.x, change.y + 1, 'f' );
-                chars.set( change.x, change.y + 2, 's' );
+                chars.set( x, y + 1, 'f' );
+                chars.set( x, y + 2, 's' );
                 break;
             case RABBIT_FALLING_ONTO_RISE_RIGHT:
-                chars.set( change.x, change.y + 1, 'f' );
-                chars.set( change.x, change.y + 2, 'h' );
+                chars.set( x, y + 1, 'f' );
+                chars.set( x, y + 2, 'h' );
                 break;
             case RABBIT_FALLING_ONTO_RISE_LEFT:
-                chars.set( change.x, change.y + 1, 'f' );
-                chars.set( change.x, change.y + 2, 'a' );
+                chars.set( x, y + 1, 'f' );
+                chars.set( x, y + 2, 'a' );
                 break;
             case RABBIT_FALLING_1:
-                chars.set( change.x, change.y + 1, 'f' );
+                chars.set( x, y + 1, 'f' );
                 break;
             case RABBIT_FALLING_1_ONTO_LOWER_RIGHT:
-                chars.set( change.x, change.y + 1, 'e' );
+                chars.set( x, y + 1, 'e' );
                 break;
             case RABBIT_FALLING_1_ONTO_LOWER_LEFT:
-                chars.set( change.x, change.y + 1, 's' );
+                chars.set( x, y + 1, 's' );
                 break;
             case RABBIT_FALLING_1_ONTO_RISE_RIGHT:
-                chars.set( change.x, change.y + 1, 'h' );
+                chars.set( x, y + 1, 'h' );
                 break;
             case RABBIT_FALLING_1_ONTO_RISE_LEFT:
-                chars.set( change.x, change.y + 1, 'a' );
+                chars.set( x, y + 1, 'a' );
                 break;
             case RABBIT_FALLING_1_TO_DEATH:
-                chars.set( change.x, change.y + 1, 'x' );
+                chars.set( x, y + 1, 'x' );
                 break;
             case RABBIT_DYING_OF_FALLING_2:
-                chars.set( change.x, change.y, 'y' );
+                chars.set( x, y, 'y' );
                 break;
             case RABBIT_DYING_OF_FALLING:
-                chars.set( change.x, change.y, 'X' );
+                chars.set( x, y, 'X' );
                 break;
             case RABBIT_ENTERING_EXIT:
-                chars.set( change.x, change.y, 'R' );
+                chars.set( x, y, 'R' );
                 break;
             case RABBIT_BASHING_RIGHT:
-                chars.set( change.x + 1, change.y, 'K' );
+                chars.set( x + 1, y, 'K' );
                 break;
             case RABBIT_BASHING_LEFT:
-                chars.set( change.x - 1, change.y, 'W' );
+                chars.set( x - 1, y, 'W' );
                 break;
             case RABBIT_BASHING_UP_RIGHT:
-                chars.set( change.x + 1, change.y - 1, 'K' );
+                chars.set( x + 1, y - 1, 'K' );
                 break;
             case RABBIT_BASHING_UP_LEFT:
-                chars.set( change.x - 1, change.y - 1, 'W' );
+                chars.set( x - 1, y - 1, 'W' );
                 break;
             case RABBIT_BASHING_USELESSLY_RIGHT:
-                chars.set( change.x + 1, change.y, 'I' );
+                chars.set( x + 1, y, 'I' );
                 break;
             case RABBIT_BASHING_USELESSLY_LEFT:
-                chars.set( change.x - 1, change.y, 'J' );
+                chars.set( x - 1, y, 'J' );
                 break;
             case RABBIT_CLIMBING_LEFT_START:
-                chars.set( change.x, change.y, 'T' );
+                chars.set( x, y, 'T' );
                 break;
             case RABBIT_CLIMBING_LEFT_CONTINUE_1:
             case RABBIT_CLIMBING_LEFT_CONTINUE_2:
-                chars.set( change.x, change.y - 1, 'Y' );
+                chars.set( x, y - 1, 'Y' );
                 break;
             case RABBIT_CLIMBING_LEFT_END:
-                chars.set( change.x - 1, change.y - 1, 'U' );
+                chars.set( x - 1, y - 1, 'U' );
                 break;
             case RABBIT_CLIMBING_LEFT_BANG_HEAD:
-                chars.set( change.x, change.y, 'Y' );
+                chars.set( x, y, 'Y' );
                 break;
             case RABBIT_CLIMBING_RIGHT_START:
-                chars.set( change.x, change.y, 'G' );
+                chars.set( x, y, 'G' );
                 break;
             case RABBIT_CLIMBING_RIGHT_CONTINUE_1:
             case RABBIT_CLIMBING_RIGHT_CONTINUE_2:
-                chars.set( change.x, change.y - 1, 'F' );
+                chars.set( x, y - 1, 'F' );
                 break;
             case RABBIT_CLIMBING_RIGHT_END:
-                chars.set( change.x + 1, change.y - 1, 'L' );
+                chars.set( x + 1, y - 1, 'L' );
                 break;
             case RABBIT_CLIMBING_RIGHT_BANG_HEAD:
-                chars.set( change.x, change.y, 'F' );
+                chars.set( x, y, 'F' );
                 break;
             case RABBIT_DIGGING:
-                chars.set( change.x, change.y + 1, 'D' );
+                chars.set( x, y + 1, 'D' );
                 break;
             case RABBIT_DIGGING_ON_SLOPE:
-                chars.set( change.x, change.y, 'D' );
+                chars.set( x, y, 'D' );
                 break;
             case RABBIT_DIGGING_2:
-                chars.set( change.x, change.y, 'D' );
+                chars.set( x, y, 'D' );
                 break;
             case RABBIT_BLOCKING:
-                chars.set( change.x, change.y, 'H' );
+                chars.set( x, y, 'H' );
                 break;
             case RABBIT_EXPLODING:
-                chars.set( change.x, change.y, 'P' );
+                chars.set( x, y, 'P' );
                 break;
             case TOKEN_BASH_STILL:
             case TOKEN_DIG_STILL:
@@ -228,7 +238,7 @@ public class ChangeRenderer
             case TOKEN_BLOCK_FALLING:
             case TOKEN_CLIMB_FALLING:
             case TOKEN_EXPLODE_FALLING:
-                chars.set( change.x, change.y + 1, 'f' );
+                chars.set( x, y + 1, 'f' );
                 break;
             case ENTRANCE:
                 break;
@@ -236,7 +246,7 @@ public class ChangeRenderer
                 break;
             default:
                 throw new AssertionError(
-                    "Unknown Change state: " + change.state.name() );
+                    "Unknown Change state: " + state.name() );
         }
     }
 }
@@ -175,6 +175,25 @@ public class TextWorldManip
         return charsToStrings( chars, coordinates );
     }
 
+    /**
+     * Like renderWorld with showChanges, but only showing what the feed
+     * says changed in the last step, instead of describing the changes of
+     * every thing.  So e.g. a rabbit that has been blocking since before
+     * the last step is drawn as a plain rabbit.
+     */
+    public static String[] renderWorld(
+        World world, ChangeFeed feed, boolean coordinates )
+    {
+        Chars chars = new Chars( world, false );
+
+        BlockRenderer.render( chars, world.blocks );
+        RabbitRenderer.render( chars, world.rabbits );
+        ThingRenderer.render( chars, world.things );
+        ChangeRenderer.render( chars, feed );
+
+        return charsToStrings( chars, coordinates );
+    }
+
     public static String[] renderCompleteWorld( World world, boolean meta )
     {
         Chars chars = new Chars( world, true );
@@ -275,6 +294,20 @@ public class TextWorldManip
         return charsToStrings( chars, coordinates );
     }
 
+    /**
+     * Like renderChangeDescription, but showing only what changed in the
+     * last step.
+     */
+    public static String[] renderChangeFeed(
+        World world, ChangeFeed feed, boolean coordinates )
+    {
+        Chars chars = new Chars( world, false );
+
+        ChangeRenderer.render( chars, feed );
+
+        return charsToStrings( chars, coordinates );
+    }
+
     private static String[] charsToStrings(
         Chars chars, boolean coordinates )
     {
@@ -0,0 +1,223 @@
+package rabbitescape.engine.util;
+
+import java.io.DataInput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+
+/**
+ * A DataInput that reads straight out of a byte array.  The partner of
+ * ByteArrayDataOutput.
+ */
+public class ByteArrayDataInput implements DataInput
+{
+    private final byte[] buf;
+    private final int end;
+    private int pos;
+
+    public ByteArrayDataInput( byte[] buf )
+    {
+        this( buf, 0, buf.length );
+    }
+
+    public ByteArrayDataInput( byte[] buf, int offset, int length )
+    {
+        this.buf = buf;
+        this.pos = offset;
+        this.end = offset + length;
+    }
+
+    public int remaining()
+    {
+        return end - pos;
+    }
+
+    @Override
+    public void readFully( byte[] b ) throws EOFException
+    {
+        readFully( b, 0, b.length );
+    }
+
+    @Override
+    public void readFully( byte[] b, int off, int len ) throws EOFException
+    {
+        need( len );
+        System.arraycopy( buf, pos, b, off, len );
+        pos += len;
+    }
+
+    @Override
+    public int skipBytes( int n )
+    {
+        int skipped = Math.max( 0, Math.min( n, end - pos ) );
+        pos += skipped;
+        return skipped;
+    }
+
+    @Override
+    public boolean readBoolean() throws EOFException
+    {
+        return readByte() != 0;
+    }
+
+    @Override
+    public byte readByte() throws EOFException
+    {
+        need( 1 );
+        return buf[pos++];
+    }
+
+    @Override
+    public int readUnsignedByte() throws EOFException
+    {
+        return readByte() & 0xFF;
+    }
+
+    @Override
+    public short readShort() throws EOFException
+    {
+        return (short)readUnsignedShort();
+    }
+
+    @Override
+    public int readUnsignedShort() throws EOFException
+    {
+        need( 2 );
+        int ret = ( ( buf[pos] & 0xFF ) << 8 ) | ( buf[pos + 1] & 0xFF );
+        pos += 2;
+        return ret;
+    }
+
+    @Override
+    public char readChar() throws EOFException
+    {
+        return (char)readUnsignedShort();
+    }
+
+    @Override
+    public int readInt() throws EOFException
+    {
+        need( 4 );
+        int ret =
+              ( ( buf[pos]     & 0xFF ) << 24 )
+            | ( ( buf[pos + 1] & 0xFF ) << 16 )
+            | ( ( buf[pos + 2] & 0xFF ) << 8 )
+            | (   buf[pos + 3] & 0xFF );
+        pos += 4;
+        return ret;
+    }
+
+    @Override
+    public long readLong() throws EOFException
+    {
+        long hi = readInt();
+        long lo = readInt() & 0xFFFFFFFFL;
+        return ( hi << 32 ) | lo;
+    }
+
+    @Override
+    public float readFloat() throws EOFException
+    {
+        return Float.intBitsToFloat( readInt() );
+    }
+
+    @Override
+    public double readDouble() throws EOFException
+    {
+        return Double.longBitsToDouble( readLong() );
+    }
+
+    @Override
+    public String readLine()
+    {
+        if ( pos >= end )
+        {
+            return null;
+        }
+
+        StringBuilder ret = new StringBuilder();
+        while ( pos < end )
+        {
+            char c = (char)( buf[pos++] & 0xFF );
+            if ( c == '\n' )
+            {
+                break;
+            }
+            else if ( c == '\r' )
+            {
+                if ( pos < end && buf[pos] == '\n' )
+                {
+                    ++pos;
+                }
+                break;
+            }
+            ret.append( c );
+        }
+        return ret.toString();
+    }
+
+    /**
+     * Modified UTF-8, exactly as DataInputStream.readUTF() reads it, but
+     * decoded straight out of our array.
+     */
+    @Override
+    public String readUTF() throws IOException
+    {
+        int utfLen = readUnsignedShort();
+        need( utfLen );
+
+        char[] chars = new char[ utfLen ];
+        int numChars = 0;
+        int utfEnd = pos + utfLen;
+        while ( pos < utfEnd )
+        {
+            int c = buf[pos] & 0xFF;
+            if ( c < 0x80 )
+            {
+                chars[numChars++] = (char)c;
+                pos += 1;
+            }
+            else if ( ( c & 0xE0 ) == 0xC0 && pos + 1 < utfEnd )
+            {
+                chars[numChars++] = (char)(
+                    ( ( c & 0x1F ) << 6 ) | continuation( pos + 1 ) );
+                pos += 2;
+            }
+            else if ( ( c & 0xF0 ) == 0xE0 && pos + 2 < utfEnd )
+            {
+                chars[numChars++] = (char)(
+                      ( ( c & 0x0F ) << 12 )
+                    | ( continuation( pos + 1 ) << 6 )
+                    | continuation( pos + 2 )
+                );
+                pos += 3;
+            }
+            else
+            {
+                throw new UTFDataFormatException(
+                    "Malformed input around byte " + pos );
+            }
+        }
+
+        return new String( chars, 0, numChars );
+    }
+
+    private int continuation( int i ) throws UTFDataFormatException
+    {
+        int b = buf[i] & 0xFF;
+        if ( ( b & 0xC0 ) != 0x80 )
+        {
+            throw new UTFDataFormatException(
+                "Malformed input around byte " + i );
+        }
+        return b & 0x3F;
+    }
+
+    private void need( int n ) throws EOFException
+    {
+        if ( n > end - pos )
+        {
+            throw new EOFException();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package rabbitescape.engine.util;
+
+import java.io.DataOutput;
+import java.io.UTFDataFormatException;
+
+/**
+ * A DataOutput that writes straight into a growing byte array.
+ *
+ * Does the same job as a DataOutputStream wrapped round a
+ * ByteArrayOutputStream, but without a method call and a lock for every
+ * byte, which matters when writing a whole World at once.
+ */
+public class ByteArrayDataOutput implements DataOutput
+{
+    private byte[] buf;
+    private int size;
+
+    public ByteArrayDataOutput()
+    {
+        this( 1024 );
+    }
+
+    public ByteArrayDataOutput( int initialCapacity )
+    {
+        this.buf = new byte[ Math.max( 16, initialCapacity ) ];
+        this.size = 0;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public byte[] toByteArray()
+    {
+        // Not Arrays.copyOf, which is not available in Android 2.2
+        byte[] ret = new byte[ size ];
+        System.arraycopy( buf, 0, ret, 0, size );
+        return ret;
+    }
+
+    /**
+     * Read back what has been written so far, without copying it.  Only
+     * valid until something else is written.
+     */
+    public ByteArrayDataInput asInput()
+    {
+        return new ByteArrayDataInput( buf, 0, size );
+    }
+
+    /**
+     * Forget everything written so far, but keep the space.
+     */
+    public void reset()
+    {
+        size = 0;
+    }
+
+    @Override
+    public void write( int b )
+    {
+        ensureSpace( 1 );
+        buf[size++] = (byte)b;
+    }
+
+    @Override
+    public void write( byte[] b )
+    {
+        write( b, 0, b.length );
+    }
+
+    @Override
+    public void write( byte[] b, int off, int len )
+    {
+        ensureSpace( len );
+        System.arraycopy( b, off, buf, size, len );
+        size += len;
+    }
+
+    @Override
+    public void writeBoolean( boolean v )
+    {
+        write( v ? 1 : 0 );
+    }
+
+    @Override
+    public void writeByte( int v )
+    {
+        write( v );
+    }
+
+    @Override
+    public void writeShort( int v )
+    {
+        ensureSpace( 2 );
+        buf[size++] = (byte)( v >>> 8 );
+        buf[size++] = (byte)v;
+    }
+
+    @Override
+    public void writeChar( int v )
+    {
+        writeShort( v );
+    }
+
+    @Override
+    public void writeInt( int v )
+    {
+        ensureSpace( 4 );
+        buf[size++] = (byte)( v >>> 24 );
+        buf[size++] = (byte)( v >>> 16 );
+        buf[size++] = (byte)( v >>> 8 );
+        buf[size++] = (byte)v;
+    }
+
+    @Override
+    public void writeLong( long v )
+    {
+        writeInt( (int)( v >>> 32 ) );
+        writeInt( (int)v );
+    }
+
+    @Override
+    public void writeFloat( float v )
+    {
+        writeInt( Float.floatToIntBits( v ) );
+    }
+
+    @Override
+    public void writeDouble( double v )
+    {
+        writeLong( Double.doubleToLongBits( v ) );
+    }
+
+    @Override
+    public void writeBytes( String s )
+    {
+        int len = s.length();
+        ensureSpace( len );
+        for ( int i = 0; i < len; ++i )
+        {
+            buf[size++] = (byte)s.charAt( i );
+        }
+    }
+
+    @Override
+    public void writeChars( String s )
+    {
+        int len = s.length();
+        for ( int i = 0; i < len; ++i )
+        {
+            writeChar( s.charAt( i ) );
+        }
+    }
+
+    /**
+     * Modified UTF-8, exactly as DataOutputStream.writeUTF() does it.
+     */
+    @Override
+    public void writeUTF( String s ) throws UTFDataFormatException
+    {
+        int len = s.length();
+        int utfLen = 0;
+        for ( int i = 0; i < len; ++i )
+        {
+            char c = s.charAt( i );
+            if ( c >= 0x0001 && c <= 0x007F )
+            {
+                utfLen += 1;
+            }
+            else if ( c <= 0x07FF )
+            {
+                utfLen += 2;
+            }
+            else
+            {
+                utfLen += 3;
+            }
+        }
+
+        if ( utfLen > 0xFFFF )
+        {
+            throw new UTFDataFormatException(
+                "String too long to write: " + utfLen + " bytes" );
+        }
+
+        writeShort( utfLen );
+        ensureSpace( utfLen );
+        for ( int i = 0; i < len; ++i )
+        {
+            char c = s.charAt( i );
+            if ( c >= 0x0001 && c <= 0x007F )
+            {
+                buf[size++] = (byte)c;
+            }
+            else if ( c <= 0x07FF )
+            {
+                buf[size++] = (byte)( 0xC0 | ( ( c >> 6 ) & 0x1F ) );
+                buf[size++] = (byte)( 0x80 | ( c & 0x3F ) );
+            }
+            else
+            {
+                buf[size++] = (byte)( 0xE0 | ( ( c >> 12 ) & 0x0F ) );
+                buf[size++] = (byte)( 0x80 | ( ( c >> 6 ) & 0x3F ) );
+                buf[size++] = (byte)( 0x80 | ( c & 0x3F ) );
+            }
+        }
+    }
+
+    private void ensureSpace( int n )
+    {
+        if ( size + n > buf.length )
+        {
+            byte[] bigger = new byte[ Math.max( buf.length * 2, size + n ) ];
+            System.arraycopy( buf, 0, bigger, 0, size );
+            buf = bigger;
+        }
+    }
+}
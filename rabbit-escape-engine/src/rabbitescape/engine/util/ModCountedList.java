@@ -0,0 +1,40 @@
+package rabbitescape.engine.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * An ArrayList that tells you how many times it has been modified, so
+ * an index built from it can tell when it is out of date, even if
+ * things were removed and added and it is the same size as before.
+ */
+public class ModCountedList<T> extends ArrayList<T>
+{
+    private static final long serialVersionUID = 1L;
+
+    public ModCountedList()
+    {
+        super();
+    }
+
+    public ModCountedList( Collection<? extends T> items )
+    {
+        super( items );
+    }
+
+    /**
+     * @return a number that changes whenever the list is modified.
+     */
+    public int modifications()
+    {
+        return modCount;
+    }
+
+    @Override
+    public T set( int index, T item )
+    {
+        // ArrayList doesn't count replacing an item as a modification
+        ++modCount;
+        return super.set( index, item );
+    }
+}
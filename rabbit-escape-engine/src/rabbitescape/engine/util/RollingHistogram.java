@@ -0,0 +1,113 @@
+package rabbitescape.engine.util;
+
+import java.util.Arrays;
+
+/**
+ * Remembers the last windowSize numbers added to it, forgetting older
+ * ones, and describes their spread.
+ */
+public class RollingHistogram
+{
+    private final long[] samples;
+    private int next;
+    private int size;
+
+    public RollingHistogram( int windowSize )
+    {
+        if ( windowSize < 1 )
+        {
+            throw new IllegalArgumentException(
+                "Window size must be at least 1, not " + windowSize );
+        }
+        this.samples = new long[windowSize];
+        this.next = 0;
+        this.size = 0;
+    }
+
+    public void add( long sample )
+    {
+        samples[next] = sample;
+        next = ( next + 1 ) % samples.length;
+        if ( size < samples.length )
+        {
+            ++size;
+        }
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return the most recently added sample, or 0 if there are none.
+     */
+    public long last()
+    {
+        if ( size == 0 )
+        {
+            return 0;
+        }
+        return samples[ ( next + samples.length - 1 ) % samples.length ];
+    }
+
+    public double mean()
+    {
+        if ( size == 0 )
+        {
+            return 0;
+        }
+
+        double total = 0;
+        for ( int i = 0; i < size; ++i )
+        {
+            total += samples[i];
+        }
+        return total / size;
+    }
+
+    public long max()
+    {
+        return percentile( 100 );
+    }
+
+    /**
+     * @return the smallest sample that is at least as big as percent% of
+     *         the samples, or 0 if there are none.
+     */
+    public long percentile( double percent )
+    {
+        if ( size == 0 )
+        {
+            return 0;
+        }
+
+        long[] sorted = new long[size];
+        System.arraycopy( samples, 0, sorted, 0, size );
+        Arrays.sort( sorted );
+
+        int index = (int)Math.ceil( percent / 100.0 * size ) - 1;
+        return sorted[ Math.max( 0, Math.min( size - 1, index ) ) ];
+    }
+
+    /**
+     * @param tops the biggest sample to count in each bucket, in
+     *             increasing order.
+     * @return how many samples fall into each bucket, with one extra
+     *         bucket at the end for samples bigger than the last top.
+     */
+    public int[] counts( long[] tops )
+    {
+        int[] ret = new int[ tops.length + 1 ];
+        for ( int i = 0; i < size; ++i )
+        {
+            int bucket = 0;
+            while ( bucket < tops.length && samples[i] > tops[bucket] )
+            {
+                ++bucket;
+            }
+            ++ret[bucket];
+        }
+        return ret;
+    }
+}
@@ -6,11 +6,14 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.TreeSet;
 
 import rabbitescape.engine.err.RabbitEscapeException;
@@ -550,6 +553,47 @@ public class Util
         ).toArray( left );
     }
 
+    /**
+     * Remove every item in toRemove from list in a single pass, keeping
+     * the order of the items that are left.  Unlike List.removeAll this is
+     * linear as long as toRemove.contains() is O(1).
+     */
+    public static <T> void removeAll( List<T> list, Set<? extends T> toRemove )
+    {
+        if ( toRemove.isEmpty() )
+        {
+            return;
+        }
+
+        int size = list.size();
+        int kept = 0;
+        for ( int i = 0; i < size; ++i )
+        {
+            T item = list.get( i );
+            if ( !toRemove.contains( item ) )
+            {
+                if ( kept != i )
+                {
+                    list.set( kept, item );
+                }
+                ++kept;
+            }
+        }
+
+        if ( kept < size )
+        {
+            list.subList( kept, size ).clear();
+        }
+    }
+
+    /**
+     * A Set that compares its members by identity, like IdentityHashMap.
+     */
+    public static <T> Set<T> newIdentitySet()
+    {
+        return Collections.newSetFromMap( new IdentityHashMap<T, Boolean>() );
+    }
+
     public static <T> boolean equalsOrBothNull( T left, T right )
     {
         if ( left == null )
@@ -0,0 +1,242 @@
+package rabbitescape.engine;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static rabbitescape.engine.ChangeDescription.State.*;
+import static rabbitescape.engine.textworld.TextWorldManip.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import rabbitescape.engine.World.CompletionState;
+import rabbitescape.engine.World.UnableToAddToken;
+import rabbitescape.engine.util.AllLevels;
+
+public class TestRestingTokens
+{
+    @Test
+    public void Resting_tokens_are_not_recalculated()
+    {
+        World world = createWorld(
+            "#  b  #",
+            "#  #  #",
+            "#r   j#",
+            "#######"
+        );
+
+        final List<Long> calls = new ArrayList<Long>();
+        world.setProfiler( new StepProfiler( new StepProfileListener()
+        {
+            @Override
+            public void stepProfiled( StepProfiler profiler )
+            {
+                calls.add(
+                    profiler.calls( StepProfiler.token_calc_new_state ) );
+            }
+        } ) );
+
+        world.step();
+        world.step();
+        world.step();
+
+        // Only the first step, when we find out which tokens are falling
+        assertThat( calls, equalTo( Arrays.asList( 1L, 0L, 0L ) ) );
+        assertThat( world.things.get( 0 ).state, equalTo( TOKEN_BASH_STILL ) );
+    }
+
+    @Test
+    public void Token_is_recalculated_when_the_block_under_it_goes()
+    {
+        World world = createWorld(
+            "#  b  #",
+            "#  #  #",
+            "#     #",
+            "#######"
+        );
+
+        world.step();
+        world.changes.removeBlockAt( 3, 1 );
+        world.step();
+
+        assertThat( world.getBlockAt( 3, 1 ), is( nullValue() ) );
+        assertThat(
+            world.things.get( 0 ).state, equalTo( TOKEN_BASH_FALLING ) );
+    }
+
+    @Test
+    public void Only_falling_tokens_are_stepped()
+    {
+        World world = createWorld(
+            "#  b  d  #",
+            "#  #     #",
+            "#        #",
+            "##########"
+        );
+
+        world.step();
+
+        Token falling = (Token)world.things.get( 1 );
+        assertThat( falling.state, equalTo( TOKEN_DIG_FALLING ) );
+        assertThat(
+            world.tokenGrid.toStep(), equalTo( Arrays.asList( falling ) ) );
+
+        world.step();
+
+        assertThat( falling.state, equalTo( TOKEN_DIG_STILL ) );
+        assertThat( world.tokenGrid.toStep().isEmpty(), is( true ) );
+    }
+
+    @Test
+    public void Token_falls_when_a_rabbit_stops_bridging_under_it()
+    {
+        World world = createWorld(
+            ":bridge=1",
+            ":bash=1",
+            "#          #",
+            "#          #",
+            "#          #",
+            "#          #",
+            "#r         #",
+            "############"
+        );
+
+        world.changes.addToken( 2, 4, Token.Type.bridge );
+        world.changes.addToken( 4, 0, Token.Type.bash );
+        world.step();
+        world.step();
+        world.step();
+        world.changes.explodeAllRabbits();
+        world.step();
+
+        // It landed where the rabbit was bridging, just before it exploded
+        Token token = (Token)world.things.get( 0 );
+        assertThat( token.y, equalTo( 3 ) );
+        assertThat( token.state, equalTo( TOKEN_BASH_STILL ) );
+
+        world.step();
+
+        assertThat( token.state, equalTo( TOKEN_BASH_FALLING ) );
+    }
+
+    @Test
+    public void Token_near_a_bridging_rabbit_gives_the_same_states()
+    {
+        String[] lines = {
+            "#   b    #",
+            "#        #",
+            "#        #",
+            "#  i     #",
+            "#r       #",
+            "##########"
+        };
+
+        checkSameAsRecalculatingEverything( lines, 60, false );
+    }
+
+    @Test
+    public void Crowds_of_rabbits_give_the_same_token_states()
+    {
+        List<String> lines = new ArrayList<String>();
+        lines.add( ":num_rabbits=0" );
+        lines.add( ":bash=1000" );
+        lines.add( ":dig=1000" );
+        lines.add( ":bridge=1000" );
+        lines.add( ":block=1000" );
+        lines.add( ":explode=1000" );
+        lines.add( ":climb=1000" );
+        for ( int i = 0; i < 5; ++i )
+        {
+            lines.add( "#  r rr j  rrr jj r  j # O  rrr   /  rj j  j j rr#" );
+            lines.add( "#  ####  ####    ####  ## ###  ######   ######## #" );
+            lines.add( "#rj  r   j j  r   rr j   O    j   \\  r  r j  r   #" );
+            lines.add( "#################################  ###############" );
+        }
+
+        checkSameAsRecalculatingEverything(
+            lines.toArray( new String[ lines.size() ] ), 300, true );
+    }
+
+    @Test
+    public void All_levels_give_the_same_token_states()
+    {
+        for ( String fileName : AllLevels.fileNames() )
+        {
+            World world = AllLevels.load( fileName );
+
+            checkSameAsRecalculatingEverything(
+                renderCompleteWorld( world, true ), 300, true );
+        }
+    }
+
+    /**
+     * Play the same world twice, once forcing every token's state to be
+     * recalculated, and every token to be stepped, every step, as it
+     * always used to be, and check the tokens are the same after every
+     * step.
+     */
+    private static void checkSameAsRecalculatingEverything(
+        String[] lines, int maxSteps, boolean addTokens )
+    {
+        World tracked = createWorld( lines );
+        World everything = createWorld( lines );
+
+        Random trackedRandom = new Random( 5 );
+        Random everythingRandom = new Random( 5 );
+
+        for ( int i = 0; i < maxSteps; ++i )
+        {
+            if ( tracked.completionState() != CompletionState.RUNNING )
+            {
+                break;
+            }
+
+            if ( addTokens )
+            {
+                addRandomToken( tracked, trackedRandom );
+                addRandomToken( everything, everythingRandom );
+            }
+
+            everything.tokenGrid.markAll();
+
+            tracked.step();
+            everything.step();
+
+            assertThat( tokens( tracked ), equalTo( tokens( everything ) ) );
+            assertThat( tracked.hash(), equalTo( everything.hash() ) );
+        }
+    }
+
+    private static List<String> tokens( World world )
+    {
+        List<String> ret = new ArrayList<String>();
+        for ( Thing thing : world.things )
+        {
+            if ( thing instanceof Token )
+            {
+                ret.add( thing.x + "," + thing.y + " " + thing.state );
+            }
+        }
+        return ret;
+    }
+
+    private static void addRandomToken( World world, Random random )
+    {
+        Token.Type[] types = Token.Type.values();
+        Token.Type type = types[ random.nextInt( types.length ) ];
+        int x = random.nextInt( world.size.width );
+        int y = random.nextInt( world.size.height );
+
+        try
+        {
+            world.changes.addToken( x, y, type );
+        }
+        catch ( UnableToAddToken e )
+        {
+            // Fine - we don't have any of these
+        }
+    }
+}
@@ -12,8 +12,10 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 
 import org.junit.Test;
@@ -662,4 +664,30 @@ public class TestUtil
             equalTo( true )
         );
     }
+
+    @Test
+    public void RemoveAll_keeps_the_order_of_what_is_left()
+    {
+        List<String> list = new ArrayList<String>(
+            Arrays.asList( "a", "b", "c", "b", "d", "e" ) );
+
+        Set<String> toRemove = newIdentitySet();
+        toRemove.add( "b" );
+        toRemove.add( "e" );
+        toRemove.add( "z" );
+
+        removeAll( list, toRemove );
+
+        assertThat( list, equalTo( Arrays.asList( "a", "c", "d" ) ) );
+    }
+
+    @Test
+    public void RemoveAll_with_nothing_to_remove_changes_nothing()
+    {
+        List<String> list = new ArrayList<String>( Arrays.asList( "a", "b" ) );
+
+        removeAll( list, new HashSet<String>() );
+
+        assertThat( list, equalTo( Arrays.asList( "a", "b" ) ) );
+    }
 }
@@ -0,0 +1,124 @@
+package rabbitescape.engine.headless;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static rabbitescape.engine.util.Util.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import rabbitescape.engine.World.CompletionState;
+import rabbitescape.engine.headless.ReplayVerifier.Outcome;
+import rabbitescape.engine.solver.SolveLevels;
+import rabbitescape.engine.util.AllLevels;
+import rabbitescape.engine.util.NothingExistsFileSystem;
+import rabbitescape.engine.util.Util.MissingResource;
+
+/**
+ * Plays the recorded replay of every level and checks each one still
+ * ends the same way, after the same number of steps, with the world in
+ * exactly the same state (according to World.hash()).
+ *
+ * The replays were made with "SolveLevels --max-nodes=300".  Where it
+ * found a solution the replay wins the level, and lives in
+ * test/rabbitescape/walkthroughs.  Otherwise it is a game with no tokens,
+ * which is not a walkthrough but is still worth checking, so it lives in
+ * test/rabbitescape/regressions.
+ */
+public class TestAllLevelReplays
+{
+    @Test
+    public void All_levels_play_out_as_recorded()
+    {
+        List<Replay> replays = new ArrayList<Replay>();
+        for ( String fileName : AllLevels.fileNames() )
+        {
+            Replay replay = load( fileName );
+
+            assertThat( replay.levelFileName, equalTo( fileName ) );
+            replays.add( replay );
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(
+            Math.max( 2, Runtime.getRuntime().availableProcessors() ) );
+
+        List<Outcome> outcomes;
+        try
+        {
+            outcomes = new ReplayVerifier( new NothingExistsFileSystem() )
+                .verifyAll( replays, pool );
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        List<String> problems = new ArrayList<String>();
+        for ( Outcome outcome : outcomes )
+        {
+            if ( !outcome.ok() )
+            {
+                problems.add( outcome.toString() );
+            }
+        }
+
+        assertThat( join( "\n", problems ), problems.isEmpty(), is( true ) );
+    }
+
+    /**
+     * Find fileName's walkthrough, or its regression trace if there is
+     * no walkthrough, and check it is in the right place.
+     */
+    private static Replay load( String fileName )
+    {
+        Replay walkthrough = read( SolveLevels.walkthroughs_dir, fileName );
+        Replay regression = read( SolveLevels.regressions_dir, fileName );
+
+        if ( walkthrough != null )
+        {
+            assertThat(
+                fileName + " has a walkthrough and a regression trace",
+                regression,
+                nullValue()
+            );
+            assertThat(
+                fileName + "'s walkthrough",
+                walkthrough.result,
+                equalTo( CompletionState.WON )
+            );
+            return walkthrough;
+        }
+
+        assertThat( fileName + " has no replay", regression, notNullValue() );
+        assertThat(
+            fileName + "'s regression trace wins, so is a walkthrough",
+            regression.result,
+            not( equalTo( CompletionState.WON ) )
+        );
+        return regression;
+    }
+
+    private static Replay read( String dir, String fileName )
+    {
+        try
+        {
+            return ReplayFile.read(
+                stringArray(
+                    resourceLines(
+                        "/rabbitescape/" + dir + "/"
+                            + fileName.replaceAll(
+                                "\\.rel$", ReplayFile.extension )
+                    )
+                )
+            );
+        }
+        catch ( MissingResource e )
+        {
+            return null;
+        }
+    }
+}
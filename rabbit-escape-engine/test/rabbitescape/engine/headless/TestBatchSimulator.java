@@ -0,0 +1,281 @@
+package rabbitescape.engine.headless;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static rabbitescape.engine.util.Util.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.junit.Test;
+
+import rabbitescape.engine.Token;
+import rabbitescape.engine.World.CompletionState;
+import rabbitescape.engine.headless.BatchSimulator.Job;
+import rabbitescape.engine.headless.BatchSimulator.Report;
+import rabbitescape.engine.headless.BatchSimulator.Result;
+import rabbitescape.engine.headless.BatchSimulator.VirtualThreadsNotSupported;
+import rabbitescape.engine.util.FakeFileSystem;
+
+public class TestBatchSimulator
+{
+    private static final String[] digging_level = {
+        ":num_rabbits=0",
+        ":dig=1",
+        "r       ",
+        "####    ",
+        "##O#    ",
+        "####    ",
+        "        ",
+        "        ",
+        "        ",
+        "########"
+    };
+
+    private static final FakeFileSystem fs =
+        new FakeFileSystem( "dig.rel", digging_level );
+
+    @Test
+    public void Every_job_is_played_and_reported()
+    {
+        TokenSchedule dig = new TokenSchedule();
+        dig.add( 1, 2, 0, Token.Type.dig );
+
+        List<Job> jobs = Arrays.asList(
+            new Job( "solved", "dig.rel", dig, 100 ),
+            new Job( "unsolved", "dig.rel", new TokenSchedule(), 100 ),
+            new Job( "missing", "nonexistent.rel", dig, 100 )
+        );
+
+        CollectingSink sink = new CollectingSink();
+        Report report =
+            run( jobs, sink, BatchSimulator.platformThreads( 2 ) );
+
+        assertThat( sink.results.size(), equalTo( 3 ) );
+        assertThat( find( sink, "solved" ).resultName(), equalTo( "WON" ) );
+        assertThat( find( sink, "solved" ).num_saved(), equalTo( 1 ) );
+        assertThat( find( sink, "unsolved" ).resultName(), equalTo( "LOST" ) );
+        assertThat( find( sink, "missing" ).resultName(), equalTo( "ERROR" ) );
+        assertThat( find( sink, "missing" ).problem, notNullValue() );
+
+        assertThat( report.jobs, equalTo( 3 ) );
+        assertThat( report.failed, equalTo( 1 ) );
+        assertThat(
+            report.steps,
+            equalTo(
+                (long)(
+                    find( sink, "solved" ).steps()
+                    + find( sink, "unsolved" ).steps()
+                )
+            )
+        );
+        assertThat( report.parallelism, equalTo( 2 ) );
+    }
+
+    @Test
+    public void Assertion_failures_are_reported_and_the_batch_carries_on()
+    {
+        FakeFileSystem assertingFs = new FakeFileSystem(
+            "dig.rel", digging_level, "asserts.rel", digging_level )
+        {
+            @Override
+            public String[] readLines( String fileName )
+                throws FileNotFoundException, IOException
+            {
+                reAssert( !fileName.equals( "asserts.rel" ) );
+                return super.readLines( fileName );
+            }
+        };
+
+        List<Job> jobs = Arrays.asList(
+            new Job( "asserts", "asserts.rel", new TokenSchedule(), 100 ),
+            new Job( "unsolved", "dig.rel", new TokenSchedule(), 100 )
+        );
+
+        CollectingSink sink = new CollectingSink();
+        ExecutorService pool = BatchSimulator.platformThreads( 2 );
+        Report report;
+        try
+        {
+            report = new BatchSimulator( assertingFs, pool, 2 )
+                .run( jobs, sink );
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        assertThat( report.failed, equalTo( 1 ) );
+        assertThat( find( sink, "asserts" ).resultName(), equalTo( "ERROR" ) );
+        assertThat(
+            find( sink, "asserts" ).problem,
+            containsString( "AssertionError" )
+        );
+        assertThat( find( sink, "unsolved" ).resultName(), equalTo( "LOST" ) );
+    }
+
+    @Test
+    public void Report_describes_throughput_and_scaling()
+    {
+        // 8 seconds of jobs in 2 seconds: 4 at once
+        Report report =
+            new Report( 10, 0, 1000, 2000000000L, 8000000000L, 8, 4 );
+
+        assertThat( report.jobsPerSecond(), equalTo( 5.0 ) );
+        assertThat( report.stepsPerSecond(), equalTo( 500.0 ) );
+        assertThat( report.concurrency(), equalTo( 4.0 ) );
+
+        // 3 times faster on 1 worker than on 4 cores
+        Report serial =
+            new Report( 10, 0, 1000, 6000000000L, 6000000000L, 1, 4 );
+
+        assertThat( report.scalingFrom( serial ), equalTo( 3.0 ) );
+        assertThat( report.efficiencyFrom( serial ), equalTo( 0.75 ) );
+    }
+
+    @Test
+    public void Csv_has_a_line_per_job() throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CsvBatchSink sink = new CsvBatchSink( new PrintStream( bytes ) );
+
+        sink.jobFinished( won( "a,b" ) );
+        sink.jobFinished( failed( "c", "Said \"no\"" ) );
+
+        assertThat(
+            lines( bytes ),
+            equalTo(
+                new String[] {
+                    CsvBatchSink.header,
+                    "\"a,b\",dig.rel,WON,6,1,0,1234,2,",
+                    "c,dig.rel,ERROR,0,0,0,99,2,\"Said \"\"no\"\"\""
+                }
+            )
+        );
+    }
+
+    @Test
+    public void Json_lines_have_an_object_per_job() throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JsonLinesBatchSink sink =
+            new JsonLinesBatchSink( new PrintStream( bytes ) );
+
+        sink.jobFinished( won( "a" ) );
+        sink.jobFinished( failed( "c", "Said \"no\"\n" ) );
+
+        assertThat(
+            lines( bytes ),
+            equalTo(
+                new String[] {
+                    "{\"name\":\"a\",\"level\":\"dig.rel\",\"result\":\"WON\""
+                        + ",\"steps\":6,\"num_saved\":1,\"num_killed\":0"
+                        + ",\"nanos\":1234,\"workers\":2,\"problem\":null}",
+                    "{\"name\":\"c\",\"level\":\"dig.rel\",\"result\":\"ERROR\""
+                        + ",\"steps\":0,\"num_saved\":0,\"num_killed\":0"
+                        + ",\"nanos\":99,\"workers\":2"
+                        + ",\"problem\":\"Said \\\"no\\\"\\n\"}"
+                }
+            )
+        );
+    }
+
+    @Test
+    public void Virtual_threads_play_jobs_or_say_they_are_missing()
+    {
+        ExecutorService pool;
+        try
+        {
+            pool = BatchSimulator.virtualThreads();
+        }
+        catch ( VirtualThreadsNotSupported e )
+        {
+            // Before Java 21 - fine
+            return;
+        }
+
+        CollectingSink sink = new CollectingSink();
+        Report report = run(
+            Arrays.asList(
+                new Job( "unsolved", "dig.rel", new TokenSchedule(), 100 ) ),
+            sink,
+            pool
+        );
+
+        assertThat( report.failed, equalTo( 0 ) );
+        assertThat( sink.results.get( 0 ).resultName(), equalTo( "LOST" ) );
+    }
+
+    // ---
+
+    private static class CollectingSink implements BatchSink
+    {
+        public final List<Result> results = new ArrayList<Result>();
+
+        @Override
+        public void jobFinished( Result result )
+        {
+            results.add( result );
+        }
+    }
+
+    private static Report run(
+        List<Job> jobs, BatchSink sink, ExecutorService pool )
+    {
+        try
+        {
+            return new BatchSimulator( fs, pool, 2 ).run( jobs, sink );
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    private static Result find( CollectingSink sink, String name )
+    {
+        for ( Result result : sink.results )
+        {
+            if ( result.job.name.equals( name ) )
+            {
+                return result;
+            }
+        }
+        throw new AssertionError( "No result for " + name );
+    }
+
+    private static Result won( String name )
+    {
+        return new Result(
+            new Job( name, "dig.rel", new TokenSchedule(), 100 ),
+            2,
+            new RunResult( CompletionState.WON, 6, 1, 0, 5 ),
+            1234,
+            null
+        );
+    }
+
+    private static Result failed( String name, String problem )
+    {
+        return new Result(
+            new Job( name, "dig.rel", new TokenSchedule(), 100 ),
+            2,
+            null,
+            99,
+            problem
+        );
+    }
+
+    private static String[] lines( ByteArrayOutputStream bytes )
+        throws UnsupportedEncodingException
+    {
+        return bytes.toString( "UTF-8" ).split( "\r?\n" );
+    }
+}
@@ -0,0 +1,110 @@
+package rabbitescape.engine.headless;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static rabbitescape.engine.World.CompletionState.*;
+import static rabbitescape.engine.textworld.TextWorldManip.*;
+
+import org.junit.Test;
+
+import rabbitescape.engine.Token;
+import rabbitescape.engine.World;
+
+public class TestHeadlessRunner
+{
+    @Test
+    public void Runs_until_the_level_is_lost()
+    {
+        HeadlessRunner runner = new HeadlessRunner( diggingLevel() );
+
+        RunResult result = runner.runToCompletion( 1000 );
+
+        assertThat( result.completionState, equalTo( LOST ) );
+        assertThat( result.num_saved, equalTo( 0 ) );
+        assertThat( result.num_killed, equalTo( 1 ) );
+        assertThat( result.steps, equalTo( runner.stepNumber() ) );
+    }
+
+    @Test
+    public void Places_scheduled_tokens_and_wins()
+    {
+        TokenSchedule schedule = new TokenSchedule()
+            .add( 1, 2, 0, Token.Type.dig );
+
+        HeadlessRunner runner = new HeadlessRunner( diggingLevel(), schedule );
+
+        RunResult result = runner.runToCompletion( 1000 );
+
+        assertThat( result.completionState, equalTo( WON ) );
+        assertThat( result.num_saved, equalTo( 1 ) );
+        assertThat( result.num_killed, equalTo( 0 ) );
+    }
+
+    @Test
+    public void Stops_at_the_step_cap_and_can_carry_on()
+    {
+        HeadlessRunner runner = new HeadlessRunner( diggingLevel() );
+
+        RunResult result = runner.runToCompletion( 2 );
+
+        assertThat( result.completionState, equalTo( RUNNING ) );
+        assertThat( result.steps, equalTo( 2 ) );
+        assertThat( runner.stepNumber(), equalTo( 2 ) );
+
+        result = runner.runToCompletion( 1000 );
+
+        assertThat( result.completionState, equalTo( LOST ) );
+        assertThat( runner.stepNumber(), equalTo( 2 + result.steps ) );
+    }
+
+    @Test
+    public void Stops_when_asked()
+    {
+        HeadlessRunner runner = new HeadlessRunner( diggingLevel() );
+
+        RunResult result = runner.stepUntil(
+            new StopCondition()
+            {
+                @Override
+                public boolean shouldStop( World world, int stepNumber )
+                {
+                    return world.rabbits.get( 0 ).x == 3;
+                }
+            },
+            1000
+        );
+
+        assertThat( result.completionState, equalTo( RUNNING ) );
+        assertThat( result.steps, equalTo( 3 ) );
+    }
+
+    @Test
+    public void Explodes_all_rabbits_when_scheduled()
+    {
+        TokenSchedule schedule = new TokenSchedule().explodeAll( 1 );
+
+        HeadlessRunner runner = new HeadlessRunner( diggingLevel(), schedule );
+
+        RunResult result = runner.runToCompletion( 1000 );
+
+        assertThat( result.completionState, equalTo( LOST ) );
+        assertThat( result.num_killed, equalTo( 1 ) );
+        assertThat( result.steps < 5, is( true ) );
+    }
+
+    private static World diggingLevel()
+    {
+        return createWorld(
+            ":num_rabbits=0",
+            ":dig=1",
+            "r       ",
+            "####    ",
+            "##O#    ",  // Dig down to reach the exit...
+            "####    ",
+            "        ",
+            "        ",
+            "        ",  // ...or walk off the edge and fall to your death
+            "########"
+        );
+    }
+}
@@ -0,0 +1,113 @@
+package rabbitescape.engine.headless;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+
+import org.junit.Test;
+
+import rabbitescape.engine.Token;
+import rabbitescape.engine.World.CompletionState;
+import rabbitescape.engine.headless.ReplayFile.BadReplayLine;
+import rabbitescape.engine.headless.ReplayFile.MissingReplayKey;
+
+public class TestReplayFile
+{
+    private static final String[] lines = {
+        ":level=easy/level_01.rel",
+        ":result=WON",
+        ":steps=57",
+        ":num_saved=3",
+        ":hash=-4015286632451375329",
+        "1 5 2 dig",
+        "1 6 2 bash",
+        "16 9 5 dig",
+        "40 explode_all"
+    };
+
+    @Test
+    public void Reads_a_replay()
+    {
+        Replay replay = ReplayFile.read( lines );
+
+        assertThat( replay.levelFileName, equalTo( "easy/level_01.rel" ) );
+        assertThat( replay.result, equalTo( CompletionState.WON ) );
+        assertThat( replay.steps, equalTo( 57 ) );
+        assertThat( replay.num_saved, equalTo( 3 ) );
+        assertThat( replay.hash, equalTo( -4015286632451375329L ) );
+
+        assertThat(
+            replay.schedule.steps().toString(), equalTo( "[1, 16, 40]" ) );
+        assertThat( replay.schedule.at( 1 ).size(), equalTo( 2 ) );
+        assertThat(
+            replay.schedule.at( 1 ).get( 1 ).type, equalTo( Token.Type.bash ) );
+        assertThat( replay.schedule.explodesAllAt( 40 ), is( true ) );
+        assertThat( replay.schedule.explodesAllAt( 16 ), is( false ) );
+    }
+
+    @Test
+    public void Round_trip()
+    {
+        assertThat(
+            ReplayFile.write( ReplayFile.read( lines ) ), equalTo( lines ) );
+    }
+
+    @Test
+    public void Blank_lines_are_ignored()
+    {
+        Replay replay = ReplayFile.read(
+            new String[] {
+                ":level=x.rel",
+                "",
+                ":result=LOST",
+                ":steps=3",
+                ":num_saved=0",
+                ":hash=12",
+                ""
+            }
+        );
+
+        assertThat( replay.schedule.isEmpty(), is( true ) );
+    }
+
+    @Test( expected = BadReplayLine.class )
+    public void Unknown_ability_is_rejected()
+    {
+        ReplayFile.read( new String[] { "1 2 3 fly" } );
+    }
+
+    @Test( expected = BadReplayLine.class )
+    public void Wrong_number_of_parts_is_rejected()
+    {
+        ReplayFile.read( new String[] { "1 2 dig" } );
+    }
+
+    @Test( expected = BadReplayLine.class )
+    public void Unknown_result_is_rejected()
+    {
+        ReplayFile.read( new String[] { ":result=DRAWN" } );
+    }
+
+    @Test( expected = BadReplayLine.class )
+    public void Hash_that_is_not_a_number_is_rejected()
+    {
+        ReplayFile.read( new String[] { ":hash=0x12" } );
+    }
+
+    @Test( expected = MissingReplayKey.class )
+    public void Missing_level_is_rejected()
+    {
+        ReplayFile.read(
+            new String[] {
+                ":result=WON", ":steps=3", ":num_saved=1", ":hash=12" }
+        );
+    }
+
+    @Test( expected = MissingReplayKey.class )
+    public void Missing_hash_is_rejected()
+    {
+        ReplayFile.read(
+            new String[] {
+                ":level=x.rel", ":result=WON", ":steps=3", ":num_saved=1" }
+        );
+    }
+}
@@ -0,0 +1,147 @@
+package rabbitescape.engine.headless;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import rabbitescape.engine.headless.ReplayVerifier.Outcome;
+import rabbitescape.engine.util.FakeFileSystem;
+
+public class TestReplayVerifier
+{
+    private static final String[] digging_level = {
+        ":num_rabbits=0",
+        ":dig=1",
+        "r       ",
+        "####    ",
+        "##O#    ",
+        "####    ",
+        "        ",
+        "        ",
+        "        ",
+        "########"
+    };
+
+    /**
+     * World.hash() after digging_level is won by digging at step 1
+     */
+    private static final long dig_level_won_hash = -8194584320547451097L;
+
+    private final ReplayVerifier verifier = new ReplayVerifier(
+        new FakeFileSystem( "dig.rel", digging_level ) );
+
+    @Test
+    public void Correct_replay_is_ok()
+    {
+        Outcome outcome = verifier.verify( replay( ":result=WON", ":steps=6" ) );
+
+        assertThat( outcome.problem, outcome.ok(), is( true ) );
+    }
+
+    @Test
+    public void Wrong_result_is_reported()
+    {
+        Outcome outcome = verifier.verify( replay( ":result=LOST", ":steps=6" ) );
+
+        assertThat( outcome.ok(), is( false ) );
+        assertThat(
+            outcome.problem,
+            equalTo(
+                "Expected LOST after 6 steps with 1 saved "
+                    + "but got WON after 6 steps with 1 saved"
+            )
+        );
+    }
+
+    @Test
+    public void Wrong_number_of_steps_is_reported()
+    {
+        Outcome outcome = verifier.verify( replay( ":result=WON", ":steps=7" ) );
+
+        assertThat( outcome.ok(), is( false ) );
+    }
+
+    @Test
+    public void Different_world_at_the_end_is_reported()
+    {
+        Outcome outcome = verifier.verify(
+            replay( ":result=WON", ":steps=6", ":hash=12" ) );
+
+        assertThat( outcome.ok(), is( false ) );
+        assertThat(
+            outcome.problem,
+            equalTo(
+                "Expected the world's hash to be 12 at the end but it was "
+                    + dig_level_won_hash
+            )
+        );
+    }
+
+    @Test
+    public void Missing_level_is_reported()
+    {
+        Replay replay = ReplayFile.read(
+            new String[] {
+                ":level=nonexistent/level.rel",
+                ":result=WON",
+                ":steps=6",
+                ":num_saved=1",
+                ":hash=12"
+            }
+        );
+
+        assertThat( verifier.verify( replay ).ok(), is( false ) );
+    }
+
+    @Test
+    public void Verifies_several_at_once_in_order()
+    {
+        List<Replay> replays = Arrays.asList(
+            replay( ":result=WON", ":steps=6" ),
+            replay( ":result=LOST", ":steps=6" ),
+            replay( ":result=WON", ":steps=6" )
+        );
+
+        ExecutorService pool = Executors.newFixedThreadPool( 2 );
+        List<Outcome> outcomes;
+        try
+        {
+            outcomes = verifier.verifyAll( replays, pool );
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        assertThat( outcomes.size(), equalTo( 3 ) );
+        assertThat( outcomes.get( 0 ).ok(), is( true ) );
+        assertThat( outcomes.get( 1 ).ok(), is( false ) );
+        assertThat( outcomes.get( 2 ).ok(), is( true ) );
+        assertThat( outcomes.get( 1 ).replay, sameInstance( replays.get( 1 ) ) );
+    }
+
+    private static Replay replay( String result, String steps )
+    {
+        return replay( result, steps, ":hash=" + dig_level_won_hash );
+    }
+
+    private static Replay replay( String result, String steps, String hash )
+    {
+        return ReplayFile.read(
+            new String[] {
+                ":level=dig.rel",
+                result,
+                steps,
+                ":num_saved=1",
+                hash,
+                "1 2 0 dig"
+            }
+        );
+    }
+}
@@ -0,0 +1,124 @@
+package rabbitescape.engine.headless;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import rabbitescape.engine.Entrance;
+import rabbitescape.engine.Exit;
+import rabbitescape.engine.Thing;
+import rabbitescape.engine.Token;
+import rabbitescape.engine.World;
+import rabbitescape.engine.textworld.TextWorldManip;
+
+public class TestStressLevel
+{
+    @Test
+    public void Same_settings_give_the_same_level()
+    {
+        String[] first = level( 7 ).lines();
+        String[] second = level( 7 ).lines();
+
+        assertThat(
+            Arrays.asList( first ), equalTo( Arrays.asList( second ) ) );
+    }
+
+    @Test
+    public void Different_seeds_give_different_levels()
+    {
+        String[] first = level( 7 ).lines();
+        String[] second = level( 8 ).lines();
+
+        assertThat(
+            Arrays.asList( first ), not( equalTo( Arrays.asList( second ) ) ) );
+    }
+
+    @Test
+    public void Level_has_what_was_asked_for()
+    {
+        World world = level( 3 ).world();
+
+        assertThat( world.size.width, equalTo( 120 ) );
+        assertThat( world.size.height, equalTo( 37 ) );
+        assertThat( world.num_rabbits, equalTo( 25 ) );
+        assertThat( world.rabbit_delay[0], equalTo( 2 ) );
+        assertThat( world.rabbits.size(), equalTo( 300 ) );
+        assertThat( count( world, Entrance.class ), equalTo( 5 ) );
+        assertThat( count( world, Exit.class ), equalTo( 4 ) );
+        assertThat( count( world, Token.class ), not( equalTo( 0 ) ) );
+
+        for ( Thing thing : world.things )
+        {
+            if ( thing instanceof Token )
+            {
+                assertThat( ( (Token)thing ).type, anyOf(
+                    equalTo( Token.Type.dig ), equalTo( Token.Type.bridge ) ) );
+            }
+        }
+    }
+
+    @Test
+    public void Level_survives_a_round_trip_through_text()
+    {
+        World world = level( 3 ).world();
+
+        String[] rendered = TextWorldManip.renderCompleteWorld( world, true );
+        World reloaded = TextWorldManip.createWorld( rendered );
+
+        assertThat( reloaded.hash(), equalTo( world.hash() ) );
+    }
+
+    @Test
+    public void Biggest_level_can_be_stepped()
+    {
+        World world = new StressLevel()
+            .size( StressLevel.max_size, StressLevel.max_size )
+            .placedRabbits( StressLevel.max_rabbits )
+            .world();
+
+        world.step();
+
+        assertThat( world.rabbits.size(), not( equalTo( 0 ) ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void Too_big_is_rejected()
+    {
+        new StressLevel().size( StressLevel.max_size + 1, 10 );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void Too_many_rabbits_for_the_space_is_rejected()
+    {
+        new StressLevel().size( 10, 5 ).placedRabbits( 100 ).lines();
+    }
+
+    private static StressLevel level( int seed )
+    {
+        return new StressLevel()
+            .size( 120, 37 )
+            .seed( seed )
+            .bumps( 10, 5 )
+            .entrances( 5 )
+            .exits( 4 )
+            .rabbits( 25, 2 )
+            .placedRabbits( 300 )
+            .tokens( 10, Token.Type.dig, Token.Type.bridge );
+    }
+
+    private static int count( World world, Class<? extends Thing> type )
+    {
+        int ret = 0;
+        for ( Thing thing : world.things )
+        {
+            if ( type.isInstance( thing ) )
+            {
+                ++ret;
+            }
+        }
+        return ret;
+    }
+}
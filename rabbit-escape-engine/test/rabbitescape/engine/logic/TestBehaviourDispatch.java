@@ -0,0 +1,143 @@
+package rabbitescape.engine.logic;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static rabbitescape.engine.textworld.TextWorldManip.*;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import rabbitescape.engine.Behaviour;
+import rabbitescape.engine.ChangeDescription.State;
+import rabbitescape.engine.Direction;
+import rabbitescape.engine.Rabbit;
+import rabbitescape.engine.World;
+
+public class TestBehaviourDispatch
+{
+    @Test
+    public void Every_rabbit_state_is_handled_by_exactly_its_owner()
+    {
+        for ( State state : State.values() )
+        {
+            boolean isRabbitState = state.name().startsWith( "RABBIT_" );
+
+            Behaviour owner = null;
+            Behaviour behaved = null;
+            for ( Behaviour behaviour : Rabbit.behaviours() )
+            {
+                if ( behaviour.handles( state ) )
+                {
+                    assertThat(
+                        state.name() + " has two owners", owner, nullValue() );
+                    owner = behaviour;
+                }
+
+                if ( isRabbitState && behaves( behaviour, state ) )
+                {
+                    assertThat(
+                        state.name() + " is handled by two behaviours",
+                        behaved,
+                        nullValue()
+                    );
+                    behaved = behaviour;
+                }
+            }
+
+            if ( isRabbitState )
+            {
+                // This is what we are testing: Rabbit.step() only asks the
+                // owner, so the owner must be the one that handles it.
+                assertThat( state.name(), owner, notNullValue() );
+                assertThat( state.name(), behaved, sameInstance( owner ) );
+            }
+            else
+            {
+                assertThat( state.name(), owner, nullValue() );
+            }
+        }
+    }
+
+    @Test
+    public void Behaviours_have_no_state_of_their_own()
+    {
+        // One of each is shared by all rabbits, on any thread
+        List<Class<?>> classes = new ArrayList<Class<?>>();
+        classes.add( Behaviour.class );
+        for ( Behaviour behaviour : Rabbit.behaviours() )
+        {
+            classes.add( behaviour.getClass() );
+        }
+
+        for ( Class<?> cls : classes )
+        {
+            for ( Field field : cls.getDeclaredFields() )
+            {
+                assertThat(
+                    cls.getSimpleName() + "." + field.getName(),
+                    Modifier.isStatic( field.getModifiers() ),
+                    is( true )
+                );
+            }
+        }
+    }
+
+    @Test
+    public void Walking_after_a_short_fall_forgets_how_far_we_fell()
+    {
+        // Two falls of 3 squares each, with walking in between, should not
+        // add up to a fatal height.
+        World world = createWorld(
+            "#r      #",
+            "###     #",
+            "#       #",
+            "#       #",
+            "#  ##   #",
+            "#       #",
+            "#       #",
+            "#########",
+            ":num_rabbits=0"
+        );
+
+        for ( int i = 0; i < 12; ++i )
+        {
+            world.step();
+        }
+
+        assertThat( world.num_killed, equalTo( 0 ) );
+        assertThat( world.rabbits.size(), equalTo( 1 ) );
+    }
+
+    /**
+     * Ask behaviour to behave() for a rabbit in state, surrounded by
+     * blocks so that any it digs or bashes are there.
+     */
+    private static boolean behaves( Behaviour behaviour, State state )
+    {
+        World world = createWorld(
+            "#####",
+            "#####",
+            "#####",
+            "#####",
+            "#####"
+        );
+        Rabbit rabbit = new Rabbit( 2, 2, Direction.RIGHT );
+        rabbit.state = state;
+        world.rabbits.add( rabbit );
+
+        try
+        {
+            return behaviour.behave( world, rabbit, state );
+        }
+        catch ( AssertionError e )
+        {
+            // Walking, which used to be asked last, complains about any
+            // state that is not its own
+            return false;
+        }
+    }
+}
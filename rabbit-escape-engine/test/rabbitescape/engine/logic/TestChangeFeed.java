@@ -0,0 +1,251 @@
+package rabbitescape.engine.logic;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static rabbitescape.engine.textworld.TextWorldManip.*;
+import static rabbitescape.engine.util.Util.*;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import rabbitescape.engine.ChangeDescription;
+import rabbitescape.engine.ChangeDescription.State;
+import rabbitescape.engine.ChangeFeed;
+import rabbitescape.engine.ChangeFeed.Event;
+import rabbitescape.engine.Thing;
+import rabbitescape.engine.Token;
+import rabbitescape.engine.World;
+import rabbitescape.engine.World.CompletionState;
+import rabbitescape.engine.util.AllLevels;
+
+public class TestChangeFeed
+{
+    @Test
+    public void Only_things_that_change_are_reported()
+    {
+        World world = createWorld(
+            "#r  b  O#",
+            "#########",
+            ":num_rabbits=0"
+        );
+        ChangeFeed feed = world.changeFeed();
+
+        world.step();
+
+        assertThat( feed.numChanges(), equalTo( 1 ) );
+        assertThat(
+            feed.changedThing( 0 ),
+            sameInstance( (Thing)world.rabbits.get( 0 ) )
+        );
+        assertThat(
+            renderChangeFeed( world, feed, false ),
+            equalTo( new String[] { "   >     ", "         " } )
+        );
+    }
+
+    @Test
+    public void Rabbits_entering_and_leaving_are_events()
+    {
+        World world = createWorld(
+            "Q   ",
+            " O  ",
+            "####",
+            ":num_rabbits=1"
+        );
+        final List<Event> events = new ArrayList<Event>();
+
+        world.changeFeed().addListener( new ChangeFeed.Listener()
+        {
+            @Override
+            public void changed( ChangeFeed feed )
+            {
+                for ( int i = 0; i < feed.numEvents(); ++i )
+                {
+                    events.add( feed.event( i ) );
+                }
+            }
+        } );
+
+        while ( world.completionState() == CompletionState.RUNNING )
+        {
+            world.step();
+        }
+
+        assertThat(
+            events,
+            equalTo( list( new Event[] {
+                Event.RABBIT_ENTERED, Event.RABBIT_SAVED } ) )
+        );
+    }
+
+    @Test
+    public void Tokens_appearing_and_being_used_are_events()
+    {
+        World world = createWorld(
+            "#r   #",
+            "######",
+            "######",
+            ":dig=1"
+        );
+        ChangeFeed feed = world.changeFeed();
+
+        world.changes.addToken( 2, 0, Token.Type.dig );
+        world.step();
+
+        assertThat( feed.numEvents(), equalTo( 2 ) );
+        assertThat( feed.event( 0 ), equalTo( Event.TOKEN_ADDED ) );
+        assertThat( feed.event( 1 ), equalTo( Event.TOKEN_REMOVED ) );
+        assertThat(
+            feed.eventThing( 0 ), sameInstance( feed.eventThing( 1 ) ) );
+
+        world.step();
+
+        assertThat( feed.numEvents(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void Feed_agrees_with_looking_at_every_thing_in_all_levels()
+    {
+        for ( String fileName : AllLevels.fileNames() )
+        {
+            World world = AllLevels.load( fileName );
+            ChangeFeed feed = world.changeFeed();
+            Map<Thing, String> before = positionsAndStates( world );
+
+            for ( int i = 0; i < 60; ++i )
+            {
+                if ( world.completionState() != CompletionState.RUNNING )
+                {
+                    break;
+                }
+
+                world.step();
+                Map<Thing, String> after = positionsAndStates( world );
+
+                Set<Thing> expected = newIdentitySet();
+                for ( Map.Entry<Thing, String> e : after.entrySet() )
+                {
+                    if ( !e.getValue().equals( before.get( e.getKey() ) ) )
+                    {
+                        expected.add( e.getKey() );
+                    }
+                }
+
+                Set<Thing> actual = newIdentitySet();
+                for ( int j = 0; j < feed.numChanges(); ++j )
+                {
+                    actual.add( feed.changedThing( j ) );
+                }
+
+                assertThat(
+                    fileName + " step " + i, actual, equalTo( expected ) );
+
+                before = after;
+            }
+        }
+    }
+
+    @Test
+    public void Rendering_with_the_feed_shows_only_what_changed()
+    {
+        for ( String fileName : AllLevels.fileNames() )
+        {
+            World world = AllLevels.load( fileName );
+            ChangeFeed feed = world.changeFeed();
+            Map<Thing, String> before = positionsAndStates( world );
+
+            for ( int i = 0; i < 60; ++i )
+            {
+                if ( world.completionState() != CompletionState.RUNNING )
+                {
+                    break;
+                }
+
+                world.step();
+                Map<Thing, String> after = positionsAndStates( world );
+
+                // In the feed's order (which is the order things changed
+                // in), so overlapping changes come out the same
+                Set<Thing> changedThings = newIdentitySet();
+                ChangeDescription changed = new ChangeDescription();
+                for ( int j = 0; j < feed.numChanges(); ++j )
+                {
+                    Thing thing = feed.changedThing( j );
+                    changedThings.add( thing );
+                    changed.add( thing.x, thing.y, thing.state );
+                }
+
+                Set<Thing> expectedThings = newIdentitySet();
+                for ( Thing thing : chain( world.rabbits, world.things ) )
+                {
+                    if ( !after.get( thing ).equals( before.get( thing ) ) )
+                    {
+                        expectedThings.add( thing );
+                    }
+                }
+                assertThat(
+                    fileName + " step " + i,
+                    changedThings,
+                    equalTo( expectedThings )
+                );
+                before = after;
+
+                String[] expected;
+                try
+                {
+                    expected = overlay(
+                        renderWorld( world, false, false ),
+                        renderChangeDescription( world, changed, false )
+                    );
+                }
+                catch ( ArrayIndexOutOfBoundsException e )
+                {
+                    // A rabbit at the edge, which neither way can render
+                    break;
+                }
+
+                assertThat(
+                    fileName + " step " + i,
+                    renderWorld( world, feed, false ),
+                    equalTo( expected )
+                );
+            }
+        }
+    }
+
+    private static String[] overlay( String[] under, String[] over )
+    {
+        String[] ret = new String[ under.length ];
+        for ( int i = 0; i < under.length; ++i )
+        {
+            char[] line = under[i].toCharArray();
+            for ( int j = 0; j < line.length; ++j )
+            {
+                if ( over[i].charAt( j ) != ' ' )
+                {
+                    line[j] = over[i].charAt( j );
+                }
+            }
+            ret[i] = new String( line );
+        }
+        return ret;
+    }
+
+    private static Map<Thing, String> positionsAndStates( World world )
+    {
+        Map<Thing, String> ret = new IdentityHashMap<Thing, String>();
+
+        for ( Thing thing : chain( world.rabbits, world.things ) )
+        {
+            State state = thing.state;
+            ret.put( thing, thing.x + "," + thing.y + "," + state );
+        }
+
+        return ret;
+    }
+}
@@ -0,0 +1,268 @@
+package rabbitescape.engine.logic;
+
+import static org.hamcrest.MatcherAssert.*;
+import static rabbitescape.engine.Direction.*;
+import static rabbitescape.engine.Tools.*;
+import static rabbitescape.engine.textworld.TextWorldManip.*;
+import static rabbitescape.engine.util.Util.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import rabbitescape.engine.Block;
+import rabbitescape.engine.ChangeFeed;
+import rabbitescape.engine.ParallelStepper;
+import rabbitescape.engine.Rabbit;
+import rabbitescape.engine.StateAndPosition;
+import rabbitescape.engine.StepDelta;
+import rabbitescape.engine.Thing;
+import rabbitescape.engine.Token;
+import rabbitescape.engine.World;
+import rabbitescape.engine.World.CompletionState;
+import rabbitescape.engine.World.UnableToAddToken;
+import rabbitescape.engine.WorldHash;
+import rabbitescape.engine.WorldHistory;
+import rabbitescape.engine.util.AllLevels;
+
+public class TestParallelStep
+{
+    private static final ForkJoinPool pool = new ForkJoinPool( 4 );
+
+    @AfterClass
+    public static void shutDownPool()
+    {
+        pool.shutdown();
+    }
+
+    @Test
+    public void Crowds_of_rabbits_do_the_same_in_parallel_as_in_serial()
+    {
+        List<String> lines = new ArrayList<String>();
+        lines.add( ":num_rabbits=0" );
+        lines.add( ":bash=1000" );
+        lines.add( ":dig=1000" );
+        lines.add( ":bridge=1000" );
+        lines.add( ":block=1000" );
+        lines.add( ":explode=1000" );
+        lines.add( ":climb=1000" );
+        for ( int i = 0; i < 5; ++i )
+        {
+            lines.add( "#  r rr j  rrr jj r  j # O  rrr   /  rj j  j j rr#" );
+            lines.add( "#  ####  ####    ####  ## ###  ######   ######## #" );
+            lines.add( "#rj  r   j j  r   rr j   O    j   \\  r  r j  r   #" );
+            lines.add( "#################################  ###############" );
+        }
+
+        String[] world = lines.toArray( new String[ lines.size() ] );
+
+        checkSameInParallel( world, 200, 1 );
+        checkSameInParallel( world, 200, 7 );
+    }
+
+    @Test
+    public void All_levels_play_the_same_in_parallel_as_in_serial()
+    {
+        for ( String fileName : AllLevels.fileNames() )
+        {
+            World world = AllLevels.load( fileName );
+
+            checkSameInParallel(
+                renderCompleteWorld( world, true ), 200, 1 );
+        }
+    }
+
+    /**
+     * Play the same world in serial and in (tiny chunks in) parallel,
+     * randomly dropping the same tokens into both, and check they are
+     * identical after every step, and that they told their ChangeFeeds
+     * and WorldHistories the same things in the same order.
+     */
+    private static void checkSameInParallel(
+        String[] lines, int maxSteps, int chunkSize )
+    {
+        World serial = createWorld( lines );
+        World parallel = createWorld( lines );
+        parallel.setParallelStepper( new ParallelStepper( pool, chunkSize ) );
+
+        ChangeFeed serialFeed = serial.changeFeed();
+        ChangeFeed parallelFeed = parallel.changeFeed();
+        WorldHistory serialHistory = new WorldHistory( serial );
+        WorldHistory parallelHistory = new WorldHistory( parallel );
+
+        Random serialRandom = new Random( 3 );
+        Random parallelRandom = new Random( 3 );
+
+        for ( int i = 0; i < maxSteps; ++i )
+        {
+            if ( serial.completionState() != CompletionState.RUNNING )
+            {
+                break;
+            }
+
+            addRandomToken( serial, serialRandom );
+            addRandomToken( parallel, parallelRandom );
+
+            serial.step();
+            parallel.step();
+
+            assertThat( describe( parallel ), equalTo( describe( serial ) ) );
+            assertThat(
+                parallel.hash(), CoreMatchers.equalTo( serial.hash() ) );
+            assertThat(
+                parallel.hash(),
+                CoreMatchers.equalTo( WorldHash.calculate( parallel ) )
+            );
+            assertThat(
+                describe( parallelFeed ), equalTo( describe( serialFeed ) ) );
+            assertThat(
+                describe( parallelHistory.delta( i + 1 ) ),
+                equalTo( describe( serialHistory.delta( i + 1 ) ) )
+            );
+        }
+    }
+
+    /**
+     * Everything about the world, in order.  (Not renderCompleteWorld,
+     * because that can't cope with rabbits that have fallen off the edge.)
+     */
+    private static String[] describe( World world )
+    {
+        List<String> ret = new ArrayList<String>();
+        ret.add(
+            "saved=" + world.num_saved
+            + " killed=" + world.num_killed
+            + " waiting=" + world.num_waiting
+            + " abilities=" + new TreeMap<Token.Type, Integer>(
+                world.abilities )
+        );
+
+        for ( Block block : world.blocks )
+        {
+            ret.add( "block " + block.x + "," + block.y + " " + block.type );
+        }
+
+        for ( Thing thing : chain( world.rabbits, world.things ) )
+        {
+            String dir = "";
+            if ( thing instanceof Rabbit )
+            {
+                dir = ( (Rabbit)thing ).dir == RIGHT ? " right" : " left";
+            }
+
+            ret.add(
+                thing.getClass().getSimpleName()
+                + " " + thing.x + "," + thing.y
+                + " " + thing.state
+                + dir
+                + " " + new TreeMap<String, String>( thing.saveState() )
+            );
+        }
+
+        return ret.toArray( new String[ ret.size() ] );
+    }
+
+    private static String[] describe( ChangeFeed feed )
+    {
+        List<String> ret = new ArrayList<String>();
+
+        for ( int i = 0; i < feed.numChanges(); ++i )
+        {
+            ret.add( "changed " + describe( feed.changedThing( i ) ) );
+        }
+
+        for ( int i = 0; i < feed.numEvents(); ++i )
+        {
+            ret.add( feed.event( i ) + " " + describe( feed.eventThing( i ) ) );
+        }
+
+        return ret.toArray( new String[ ret.size() ] );
+    }
+
+    private static String describe( Thing thing )
+    {
+        return (
+            thing.getClass().getSimpleName()
+            + " " + thing.x + "," + thing.y
+            + " " + thing.state
+        );
+    }
+
+    private static String[] describe( StepDelta delta )
+    {
+        List<String> ret = new ArrayList<String>();
+        ret.add( "explodedAll=" + delta.explodedAll );
+
+        for ( Block block : delta.blocksAdded )
+        {
+            ret.add( "block added " + block.x + "," + block.y );
+        }
+
+        for ( Block block : delta.blocksRemoved )
+        {
+            ret.add( "block removed " + block.x + "," + block.y );
+        }
+
+        describeRabbits( "entered", delta.rabbitsEntered, ret );
+        describeRabbits( "killed", delta.rabbitsKilled, ret );
+        describeRabbits( "saved", delta.rabbitsSaved, ret );
+
+        for ( Token token : delta.tokensAdded )
+        {
+            ret.add( "token added " + describe( token ) );
+        }
+
+        for ( Token token : delta.tokensRemoved )
+        {
+            ret.add( "token removed " + describe( token ) );
+        }
+
+        for ( StepDelta.RabbitChange change : delta.rabbitsChanged )
+        {
+            ret.add(
+                "rabbit " + change.index
+                + " " + change.x + "," + change.y
+                + " " + change.dir
+                + " " + change.state
+            );
+        }
+
+        return ret.toArray( new String[ ret.size() ] );
+    }
+
+    private static void describeRabbits(
+        String what, List<StateAndPosition> rabbits, List<String> ret )
+    {
+        for ( StateAndPosition rabbit : rabbits )
+        {
+            ret.add(
+                "rabbit " + what
+                + " " + rabbit.x + "," + rabbit.y
+                + " " + rabbit.state
+            );
+        }
+    }
+
+    private static void addRandomToken( World world, Random random )
+    {
+        Token.Type[] types = Token.Type.values();
+        Token.Type type = types[ random.nextInt( types.length ) ];
+        int x = random.nextInt( world.size.width );
+        int y = random.nextInt( world.size.height );
+
+        try
+        {
+            world.changes.addToken( x, y, type );
+        }
+        catch ( UnableToAddToken e )
+        {
+            // Fine - we don't have any of these
+        }
+    }
+}
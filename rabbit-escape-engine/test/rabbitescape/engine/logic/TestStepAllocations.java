@@ -0,0 +1,91 @@
+package rabbitescape.engine.logic;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.junit.Assume.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import rabbitescape.engine.World;
+import rabbitescape.engine.textworld.TextWorldManip;
+
+public class TestStepAllocations
+{
+    @Test
+    public void Steady_state_step_allocates_nothing_per_rabbit()
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue( bean instanceof com.sun.management.ThreadMXBean );
+        com.sun.management.ThreadMXBean counter =
+            (com.sun.management.ThreadMXBean)bean;
+        assumeTrue( counter.isThreadAllocatedMemorySupported() );
+        counter.setThreadAllocatedMemoryEnabled( true );
+
+        World few = rabbitsPacingUpAndDown( 5 );
+        World many = rabbitsPacingUpAndDown( 20 );
+
+        // Sanity
+        assertThat( few.rabbits.size(), equalTo( 100 ) );
+        assertThat( many.rabbits.size(), equalTo( 400 ) );
+
+        // Warm up, so the JIT has done its work before we measure
+        bytesPerStep( counter, few, 2000 );
+        bytesPerStep( counter, many, 2000 );
+
+        long fewBytes = bytesPerStep( counter, few, 200 );
+        long manyBytes = bytesPerStep( counter, many, 200 );
+
+        // This is what we are testing: 300 extra rabbits cost (much) less
+        // than one extra byte each per step.
+        assertThat(
+            "Allocated " + fewBytes + " bytes/step for 100 rabbits and "
+                + manyBytes + " for 400",
+            manyBytes - fewBytes < 300,
+            is( true )
+        );
+    }
+
+    private static long bytesPerStep(
+        com.sun.management.ThreadMXBean counter, World world, int steps )
+    {
+        long threadId = Thread.currentThread().getId();
+        long best = Long.MAX_VALUE;
+
+        // Take the best of a few runs, to ignore one-off noise such as
+        // the JIT or a list growing.
+        for ( int run = 0; run < 3; ++run )
+        {
+            long before = counter.getThreadAllocatedBytes( threadId );
+            for ( int i = 0; i < steps; ++i )
+            {
+                world.step();
+            }
+            long after = counter.getThreadAllocatedBytes( threadId );
+
+            best = Math.min( best, ( after - before ) / steps );
+        }
+
+        return best;
+    }
+
+    /**
+     * Rows of rabbits walking back and forth between walls forever.
+     */
+    private static World rabbitsPacingUpAndDown( int rows )
+    {
+        List<String> lines = new ArrayList<String>();
+        for ( int i = 0; i < rows; ++i )
+        {
+            lines.add( "#rrrrrrrrrr          jjjjjjjjjj#" );
+            lines.add( "################################" );
+        }
+
+        return TextWorldManip.createWorld(
+            lines.toArray( new String[ lines.size() ] ) );
+    }
+}
@@ -0,0 +1,173 @@
+package rabbitescape.engine.logic;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static rabbitescape.engine.textworld.TextWorldManip.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import rabbitescape.engine.ParallelStepper;
+import rabbitescape.engine.StepProfileListener;
+import rabbitescape.engine.StepProfilePrinter;
+import rabbitescape.engine.StepProfiler;
+import rabbitescape.engine.World;
+
+public class TestStepProfiler
+{
+    private static class RecordingListener implements StepProfileListener
+    {
+        public final List<Long> walkingBehaves = new ArrayList<Long>();
+        public final List<Long> tokenCalcs = new ArrayList<Long>();
+        public final List<Long> applies = new ArrayList<Long>();
+
+        @Override
+        public void stepProfiled( StepProfiler profiler )
+        {
+            walkingBehaves.add(
+                profiler.calls( timer( profiler, "Walking.behave" ) ) );
+            tokenCalcs.add(
+                profiler.calls( StepProfiler.token_calc_new_state ) );
+            applies.add( profiler.calls( StepProfiler.changes_apply ) );
+        }
+    }
+
+    @Test
+    public void Every_behaviour_call_has_a_named_timer()
+    {
+        StepProfiler profiler = new StepProfiler( new RecordingListener() );
+
+        assertThat( timer( profiler, "Walking.checkTriggered" ), not( -1 ) );
+        assertThat( timer( profiler, "Falling.newState" ), not( -1 ) );
+        assertThat( timer( profiler, "Bridging.behave" ), not( -1 ) );
+        assertThat( timer( profiler, "World.step" ), not( -1 ) );
+        assertThat( timer( profiler, "WorldChanges.apply" ), not( -1 ) );
+        assertThat( timer( profiler, "Token.calcNewState" ), not( -1 ) );
+    }
+
+    @Test
+    public void Calls_are_counted_per_step()
+    {
+        World world = createWorld(
+            "#     b   #",
+            "# r  j  r #",
+            "###########"
+        );
+
+        RecordingListener listener = new RecordingListener();
+        world.setProfiler( new StepProfiler( listener ) );
+
+        world.step();
+        world.step();
+
+        assertThat( listener.walkingBehaves, equalTo( longs( 3, 3 ) ) );
+        // The token lands in the first step, and is resting in the second
+        assertThat( listener.tokenCalcs, equalTo( longs( 1, 0 ) ) );
+        assertThat( listener.applies, equalTo( longs( 2, 2 ) ) );
+    }
+
+    @Test
+    public void Histograms_and_counts_cover_recent_steps()
+    {
+        World world = createWorld(
+            "#     b   #",
+            "# r  j  r #",
+            "###########"
+        );
+
+        StepProfiler profiler =
+            new StepProfiler( new RecordingListener(), 3 );
+        world.setProfiler( profiler );
+
+        for ( int i = 0; i < 5; ++i )
+        {
+            world.step();
+        }
+
+        assertThat( profiler.stepsProfiled(), equalTo( 5 ) );
+        assertThat( profiler.histogram( StepProfiler.whole_step ).size(),
+            equalTo( 3 ) );
+        assertThat( profiler.rabbits().last(), equalTo( 3L ) );
+        assertThat( profiler.blocks().last(), equalTo( 15L ) );
+    }
+
+    @Test
+    public void Profiling_steps_in_serial_with_the_same_result()
+    {
+        String[] lines = {
+            "# r r r r j j j j r r r r j j j j   #",
+            "#  ## #### ### d ####  b  #### ## O #",
+            "#r  r j  j r  r j  j r \\ r j   j    #",
+            "#####################################"
+        };
+
+        ForkJoinPool pool = new ForkJoinPool( 2 );
+        try
+        {
+            World plain = createWorld( lines );
+            World profiled = createWorld( lines );
+            profiled.setParallelStepper( new ParallelStepper( pool, 2 ) );
+            profiled.setProfiler( new StepProfiler( new RecordingListener() ) );
+
+            for ( int i = 0; i < 30; ++i )
+            {
+                plain.step();
+                profiled.step();
+                assertThat( profiled.hash(), equalTo( plain.hash() ) );
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void Printer_prints_every_few_steps()
+    {
+        World world = createWorld(
+            "# r  j  r #",
+            "###########"
+        );
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        world.setProfiler( new StepProfiler(
+            new StepProfilePrinter( new PrintStream( bytes ), 2 ) ) );
+
+        world.step();
+        assertThat( bytes.toString(), equalTo( "" ) );
+
+        world.step();
+        String printed = bytes.toString();
+        assertThat( printed, startsWith( "Step 2: 3 rabbits, 0 tokens" ) );
+        assertThat( printed, containsString( "Walking.behave" ) );
+        assertThat( printed, not( containsString( "Bashing.behave" ) ) );
+    }
+
+    private static int timer( StepProfiler profiler, String name )
+    {
+        for ( int i = 0; i < profiler.numTimers(); ++i )
+        {
+            if ( profiler.timerName( i ).equals( name ) )
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static List<Long> longs( long... values )
+    {
+        List<Long> ret = new ArrayList<Long>();
+        for ( long value : values )
+        {
+            ret.add( value );
+        }
+        return ret;
+    }
+}
@@ -7,12 +7,14 @@ import static rabbitescape.engine.Tools.*;
 import static rabbitescape.engine.textworld.TextWorldManip.*;
 import static rabbitescape.engine.World.CompletionState.*;
 import static rabbitescape.engine.ChangeDescription.State.*;
+import static rabbitescape.engine.Block.Type.*;
 
 import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.Test;
 
+import rabbitescape.engine.Block;
 import rabbitescape.engine.Rabbit;
 import rabbitescape.engine.Token;
 import rabbitescape.engine.World;
@@ -247,6 +249,53 @@ public class TestWorld
         assertThat( world.getTokenAt( 1, 0 ), is( nullValue() ) );
     }
 
+    @Test
+    public void Token_is_found_after_another_is_swapped_for_it()
+    {
+        World world = createWorld(
+            " i ",
+            "###"
+        );
+
+        // Sanity
+        assertThat( world.getTokenAt( 1, 0 ), is( notNullValue() ) );
+
+        // Behind World's back, swap the token for one somewhere else, so
+        // the number of things stays the same
+        world.things.remove( world.getTokenAt( 1, 0 ) );
+        world.things.add( new Token( 2, 0, Token.Type.bridge ) );
+
+        // This is what we are testing: the old one is gone and the new
+        // one is found
+        assertThat( world.getTokenAt( 1, 0 ), is( nullValue() ) );
+        assertThat( world.getTokenAt( 2, 0 ), is( notNullValue() ) );
+    }
+
+    @Test
+    public void Token_that_falls_onto_another_is_found_first()
+    {
+        World world = createWorld(
+            " b ",
+            "   ",
+            " i ",
+            "###"
+        );
+
+        // Sanity: the bridge token is where we put it
+        assertThat( world.getTokenAt( 1, 2 ).type, equalTo( Token.Type.bridge ) );
+
+        world.step();
+        world.step();
+
+        // This is what we are testing: the bash token was first in the
+        // list of things, so it is found first now they are together.
+        assertThat( world.getTokenAt( 1, 2 ).type, equalTo( Token.Type.bash ) );
+        assertThat( world.getTokenAt( 1, 0 ), is( nullValue() ) );
+
+        world.changes.removeToken( world.getTokenAt( 1, 2 ) );
+        assertThat( world.getTokenAt( 1, 2 ).type, equalTo( Token.Type.bridge ) );
+    }
+
     @Test
     public void No_rabbits_at_a_location_gives_empty_array()
     {
@@ -284,6 +333,45 @@ public class TestWorld
         assertThat( rabbits.length, equalTo( 2 ) );
     }
 
+    @Test
+    public void Can_ask_whether_rabbits_are_blocking_or_bridging()
+    {
+        World world = createWorld(
+            "*  *  ",
+            "######",
+            ":*=rk",  // A rabbit on a block token
+            ":*=ri"   // A rabbit on a bridge token
+        );
+
+        // The first rabbit picked up its token when the world was created
+        assertThat( world.isBlockerAt( 0, 0 ), is( true ) );
+        assertThat( world.isBlockerAt( 3, 0 ), is( false ) );
+        assertThat( world.isBlockerAt( 1, 0 ), is( false ) );
+
+        // The second is bridging to the right
+        assertThat( world.someoneIsBridgingAt( 4, 0 ), is( true ) );
+        assertThat( world.someoneIsBridgingAt( 3, 0 ), is( false ) );
+        assertThat( world.someoneIsBridgingAt( 1, 0 ), is( false ) );
+    }
+
+    @Test
+    public void Knows_where_the_exits_and_entrances_are()
+    {
+        World world = createWorld(
+            " Q  Q ",
+            "  O   ",
+            "######"
+        );
+
+        assertThat( world.entrances().size(), equalTo( 2 ) );
+        assertThat( world.entrances().get( 1 ).x, equalTo( 4 ) );
+        assertThat( world.exits().size(), equalTo( 1 ) );
+
+        assertThat( world.isExitAt( 2, 1 ), is( true ) );
+        assertThat( world.isExitAt( 1, 0 ), is( false ) );
+        assertThat( world.isExitAt( -1, 1 ), is( false ) );
+    }
+
     @Test
     public void Explode_all_rabbits_explodes_all_rabbits()
     {
@@ -367,6 +455,46 @@ public class TestWorld
         assertThat( statsListener.calls.get( 1 ).num_to_save, equalTo( 7 ) );
     }
 
+    @Test
+    public void Finds_blocks_as_they_are_added_and_removed()
+    {
+        World world = createWorld(
+            "   ",
+            "#/#"
+        );
+
+        assertThat( world.getBlockAt( 0, 0 ), is( nullValue() ) );
+        assertThat( world.getBlockAt( 1, 1 ).type, equalTo( solid_up_right ) );
+
+        Block stacked = new Block( 1, 1, Block.Type.solid_flat, 0 );
+        Block offEdge = new Block( 3, 1, Block.Type.bridge_up_right, 0 );
+        world.changes.addBlock( new Block( 0, 0, Block.Type.solid_flat, 0 ) );
+        world.changes.addBlock( stacked );
+        world.changes.addBlock( offEdge );
+        world.changes.apply();
+
+        assertThat( world.getBlockAt( 0, 0 ).type, equalTo( solid_flat ) );
+        assertThat( world.getBlockAt( 3, 1 ), sameInstance( offEdge ) );
+
+        // The first block in a square hides any added later
+        assertThat( world.getBlockAt( 1, 1 ).type, equalTo( solid_up_right ) );
+
+        // Removing it (twice in one step) reveals the one underneath
+        world.changes.removeBlockAt( 1, 1 );
+        world.changes.removeBlockAt( 1, 1 );
+        world.changes.removeBlockAt( 3, 1 );
+        world.changes.apply();
+
+        assertThat( world.getBlockAt( 1, 1 ), sameInstance( stacked ) );
+        assertThat( world.getBlockAt( 3, 1 ), is( nullValue() ) );
+
+        world.changes.removeBlockAt( 1, 1 );
+        world.changes.apply();
+
+        assertThat( world.getBlockAt( 1, 1 ), is( nullValue() ) );
+        assertThat( world.blocks.size(), equalTo( 3 ) );
+    }
+
     // ---
 
     private void fiveSteps( World world )
@@ -0,0 +1,208 @@
+package rabbitescape.engine.logic;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static rabbitescape.engine.ChangeDescription.State.*;
+import static rabbitescape.engine.textworld.TextWorldManip.*;
+
+import org.junit.Test;
+
+import rabbitescape.engine.Token;
+import rabbitescape.engine.World;
+import rabbitescape.engine.WorldHistory;
+
+public class TestWorldCommands
+{
+    @Test
+    public void Commands_wait_until_the_next_step()
+    {
+        World world = createWorld(
+            ":bash=2",
+            "#    #",
+            "#    #",
+            "######"
+        );
+
+        world.commands.addToken( 1, 0, Token.Type.bash );
+
+        assertThat( world.things.size(), equalTo( 0 ) );
+        assertThat( world.abilities.get( Token.Type.bash ), equalTo( 2 ) );
+        assertThat(
+            world.commands.tokensWaiting( Token.Type.bash ), equalTo( 1 ) );
+
+        world.step();
+
+        assertThat( world.getTokenAt( 1, 0 ), is( notNullValue() ) );
+        assertThat( world.abilities.get( Token.Type.bash ), equalTo( 1 ) );
+        assertThat(
+            world.commands.tokensWaiting( Token.Type.bash ), equalTo( 0 ) );
+    }
+
+    @Test
+    public void Step_back_waits_for_the_stepping_thread()
+    {
+        World world = createWorld(
+            ":bash=2",
+            "#    #",
+            "# r  #",
+            "######"
+        );
+        new WorldHistory( world );
+
+        world.commands.addToken( 1, 0, Token.Type.bash );
+        world.step();
+
+        world.commands.stepBack();
+
+        assertThat( world.getTokenAt( 1, 0 ), is( notNullValue() ) );
+        assertThat(
+            world.commands.abilitiesLeft( Token.Type.bash ), equalTo( 1 ) );
+
+        assertThat( world.commands.apply(), is( true ) );
+
+        assertThat( world.getTokenAt( 1, 0 ), is( nullValue() ) );
+        assertThat( world.rabbits.get( 0 ).x, equalTo( 2 ) );
+        assertThat(
+            world.commands.abilitiesLeft( Token.Type.bash ), equalTo( 2 ) );
+
+        // Nothing more to go back to
+        world.commands.stepBack();
+        assertThat( world.commands.apply(), is( false ) );
+    }
+
+    @Test
+    public void Step_back_without_history_does_nothing()
+    {
+        World world = createWorld(
+            "#    #",
+            "# r  #",
+            "######"
+        );
+        world.step();
+
+        world.commands.stepBack();
+
+        assertThat( world.commands.apply(), is( false ) );
+        assertThat( world.rabbits.get( 0 ).x, equalTo( 3 ) );
+    }
+
+    @Test
+    public void Abilities_left_counts_tokens_waiting_to_be_added()
+    {
+        World world = createWorld(
+            ":bash=2",
+            "#    #",
+            "#    #",
+            "######"
+        );
+
+        assertThat(
+            world.commands.abilitiesLeft( Token.Type.bash ), equalTo( 2 ) );
+        assertThat(
+            world.commands.abilitiesLeft( Token.Type.dig ), equalTo( 0 ) );
+
+        world.commands.addToken( 1, 0, Token.Type.bash );
+
+        assertThat(
+            world.commands.abilitiesLeft( Token.Type.bash ), equalTo( 1 ) );
+        assertThat(
+            world.commands.abilities().get( Token.Type.bash ), equalTo( 2 ) );
+
+        world.commands.apply();
+
+        // The published counts have caught up, and nothing is waiting
+        assertThat(
+            world.commands.abilitiesLeft( Token.Type.bash ), equalTo( 1 ) );
+        assertThat(
+            world.commands.abilities().get( Token.Type.bash ), equalTo( 1 ) );
+
+        // Changes made on the stepping thread are published by apply()
+        world.changes.revert();
+        assertThat(
+            world.commands.abilities().get( Token.Type.bash ), equalTo( 1 ) );
+        world.commands.apply();
+        assertThat(
+            world.commands.abilities().get( Token.Type.bash ), equalTo( 2 ) );
+    }
+
+    @Test
+    public void Tokens_are_added_in_the_order_asked_for()
+    {
+        World world = createWorld(
+            ":bash=1",
+            "#    #",
+            "#    #",
+            "######"
+        );
+
+        world.commands.addToken( 3, 0, Token.Type.bash );
+        world.commands.addToken( 1, 0, Token.Type.bash );
+        world.commands.addToken( 2, 0, Token.Type.dig );
+
+        // Only the first fits - the others are ignored
+        world.step();
+
+        assertThat( world.things.size(), equalTo( 1 ) );
+        assertThat( world.getTokenAt( 3, 0 ), is( notNullValue() ) );
+        assertThat( world.abilities.get( Token.Type.bash ), equalTo( 0 ) );
+    }
+
+    @Test
+    public void Can_explode_all_rabbits()
+    {
+        World world = createWorld(
+            "#    #",
+            "# r  #",
+            "######"
+        );
+
+        world.commands.explodeAllRabbits();
+        world.step();
+
+        assertThat( world.rabbits.get( 0 ).state, equalTo( RABBIT_EXPLODING ) );
+    }
+
+    @Test
+    public void Many_threads_can_add_tokens_while_stepping()
+        throws Exception
+    {
+        final World world = createWorld(
+            ":bash=1000",
+            "#        #",
+            "#        #",
+            "##########"
+        );
+
+        Thread[] threads = new Thread[4];
+        for ( int i = 0; i < threads.length; ++i )
+        {
+            final int x = i + 1;
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for ( int j = 0; j < 100; ++j )
+                    {
+                        world.commands.addToken( x, 0, Token.Type.bash );
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        for ( int i = 0; i < 20; ++i )
+        {
+            world.step();
+        }
+
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        world.step();
+
+        assertThat( world.things.size(), equalTo( 400 ) );
+        assertThat( world.abilities.get( Token.Type.bash ), equalTo( 600 ) );
+    }
+}
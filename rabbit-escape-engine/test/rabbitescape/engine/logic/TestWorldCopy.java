@@ -0,0 +1,204 @@
+package rabbitescape.engine.logic;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static rabbitescape.engine.textworld.TextWorldManip.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import rabbitescape.engine.Token;
+import rabbitescape.engine.World;
+import rabbitescape.engine.World.CompletionState;
+import rabbitescape.engine.World.UnableToAddToken;
+import rabbitescape.engine.WorldSnapshot;
+import rabbitescape.engine.util.AllLevels;
+
+public class TestWorldCopy
+{
+    @Test
+    public void Copy_looks_the_same()
+    {
+        World world = createWorld(
+            "  Q   r  ",
+            "  j  b  O",
+            "#########",
+            ":bash=2",
+            ":num_rabbits=3"
+        );
+
+        world.step();
+        world.step();
+
+        World copy = world.copy();
+
+        assertThat(
+            renderCompleteWorld( copy, true ),
+            equalTo( renderCompleteWorld( world, true ) )
+        );
+        assertThat( copy.hash(), equalTo( world.hash() ) );
+    }
+
+    @Test
+    public void Stepping_a_copy_does_not_change_the_original()
+    {
+        World world = createWorld(
+            "#r   #",
+            "######",
+            "######",
+            ":dig=1"
+        );
+        String[] before = renderCompleteWorld( world, true );
+
+        World copy = world.copy();
+        copy.changes.addToken( 2, 0, Token.Type.dig );
+        copy.step();
+        copy.step();
+
+        assertThat( renderCompleteWorld( world, true ), equalTo( before ) );
+        assertThat( world.abilities.get( Token.Type.dig ), equalTo( 1 ) );
+        assertThat( copy.abilities.get( Token.Type.dig ), equalTo( 0 ) );
+        assertThat( copy.getBlockAt( 2, 1 ), nullValue() );
+        assertThat( world.getBlockAt( 2, 1 ), notNullValue() );
+    }
+
+    @Test
+    public void Stepping_the_original_does_not_change_a_copy()
+    {
+        World world = createWorld(
+            "#r   #",
+            "######",
+            "######",
+            ":dig=1"
+        );
+        World copy = world.copy();
+        String[] before = renderCompleteWorld( copy, true );
+
+        world.changes.addToken( 2, 0, Token.Type.dig );
+        world.step();
+        world.step();
+
+        assertThat( renderCompleteWorld( copy, true ), equalTo( before ) );
+        assertThat( copy.getBlockAt( 2, 1 ), notNullValue() );
+    }
+
+    @Test
+    public void Half_built_bridge_is_finished_in_the_copy()
+    {
+        World world = createWorld(
+            "#       #",
+            "#       #",
+            "#ri     #",
+            "###     #",
+            ":bridge=1"
+        );
+
+        world.step();
+        world.step();
+
+        World copy = world.copy();
+
+        for ( int i = 0; i < 4; ++i )
+        {
+            world.step();
+            copy.step();
+        }
+
+        assertThat(
+            renderCompleteWorld( copy, true ),
+            equalTo( renderCompleteWorld( world, true ) )
+        );
+    }
+
+    @Test
+    public void Pending_changes_are_copied()
+    {
+        World world = createWorld(
+            " r    ",
+            "######",
+            ":bash=1"
+        );
+
+        world.changes.addToken( 3, 0, Token.Type.bash );
+        world.changes.explodeAllRabbits();
+
+        World copy = world.copy();
+
+        world.step();
+        copy.step();
+
+        assertThat(
+            renderWorld( copy, true, false ),
+            equalTo( renderWorld( world, true, false ) )
+        );
+        assertThat( copy.hash(), equalTo( world.hash() ) );
+    }
+
+    @Test
+    public void All_levels_carry_on_exactly_the_same_in_a_copy()
+    {
+        for ( String fileName : AllLevels.fileNames() )
+        {
+            World world = AllLevels.load( fileName );
+            World copy = null;
+            Random random = new Random( 11 );
+
+            for ( int i = 0; i < 150; ++i )
+            {
+                if ( world.completionState() != CompletionState.RUNNING )
+                {
+                    break;
+                }
+
+                addRandomToken( random, world, copy );
+
+                if ( i % 40 == 0 )
+                {
+                    // Copy with the token still waiting to be placed
+                    copy = world.copy();
+                }
+
+                world.step();
+                copy.step();
+
+                assertThat(
+                    fileName + " step " + i,
+                    Arrays.equals(
+                        WorldSnapshot.save( copy ),
+                        WorldSnapshot.save( world )
+                    ),
+                    is( true )
+                );
+                assertThat( copy.hash(), equalTo( world.hash() ) );
+            }
+        }
+    }
+
+    private static void addRandomToken(
+        Random random, World world1, World world2 )
+    {
+        Token.Type[] types = Token.Type.values();
+        Token.Type type = types[ random.nextInt( types.length ) ];
+        int x = random.nextInt( world1.size.width );
+        int y = random.nextInt( world1.size.height );
+
+        for ( World world : new World[] { world1, world2 } )
+        {
+            if ( world == null )
+            {
+                continue;
+            }
+
+            try
+            {
+                world.changes.addToken( x, y, type );
+            }
+            catch ( UnableToAddToken e )
+            {
+                // Fine - we don't have any of these
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package rabbitescape.engine.logic;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static rabbitescape.engine.textworld.TextWorldManip.*;
+import static rabbitescape.engine.util.Util.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import rabbitescape.engine.Token;
+import rabbitescape.engine.World;
+import rabbitescape.engine.World.CompletionState;
+import rabbitescape.engine.World.UnableToAddToken;
+import rabbitescape.engine.WorldHash;
+import rabbitescape.engine.util.AllLevels;
+
+public class TestWorldHash
+{
+    @Test
+    public void Same_worlds_have_the_same_hash()
+    {
+        String[] lines = {
+            ":bash=2",
+            "  Q   r  ",
+            "  j  b  O",
+            "#########"
+        };
+
+        assertThat( createWorld( lines ).hash(),
+            equalTo( createWorld( lines ).hash() ) );
+    }
+
+    @Test
+    public void Different_worlds_have_different_hashes()
+    {
+        long hash = createWorld(
+            "  r  ",
+            "#####"
+        ).hash();
+
+        assertThat( hash, not( equalTo( createWorld(
+            "  j  ",  // Different direction
+            "#####"
+        ).hash() ) ) );
+
+        assertThat( hash, not( equalTo( createWorld(
+            " r   ",  // Different position
+            "#####"
+        ).hash() ) ) );
+
+        assertThat( hash, not( equalTo( createWorld(
+            "  r  ",
+            "#### "  // Different block
+        ).hash() ) ) );
+
+        assertThat( hash, not( equalTo( createWorld(
+            "  *  ",  // Different behaviour state
+            "#####",
+            ":*=r{Climbing.hasAbility:true}"
+        ).hash() ) ) );
+
+        assertThat( hash, not( equalTo( createWorld(
+            ":num_waiting=3",
+            "  r  ",
+            "#####"
+        ).hash() ) ) );
+    }
+
+    @Test
+    public void Rabbit_walking_back_and_forth_repeats_its_hash()
+    {
+        World world = createWorld(
+            "#r  #",
+            "#####"
+        );
+
+        List<Long> hashes = new ArrayList<Long>();
+        List<String> worlds = new ArrayList<String>();
+        for ( int i = 0; i < 20; ++i )
+        {
+            world.step();
+            hashes.add( world.hash() );
+            worlds.add( join( "\n", renderCompleteWorld( world, true ) ) );
+        }
+
+        int repeat = hashes.subList( 1, 20 ).indexOf( hashes.get( 0 ) ) + 1;
+
+        assertThat( repeat, not( equalTo( 0 ) ) );
+        assertThat( worlds.get( repeat ), equalTo( worlds.get( 0 ) ) );
+
+        // In between, the world (and hash) was different
+        assertThat( worlds.get( 1 ), not( equalTo( worlds.get( 0 ) ) ) );
+        assertThat( hashes.get( 1 ), not( equalTo( hashes.get( 0 ) ) ) );
+    }
+
+    @Test
+    public void Kept_up_to_date_hash_matches_calculating_from_scratch()
+    {
+        for ( String fileName : AllLevels.fileNames() )
+        {
+            World world = AllLevels.load( fileName );
+            Random random = new Random( 5 );
+
+            assertThat( world.hash(), equalTo( WorldHash.calculate( world ) ) );
+
+            for ( int i = 0; i < 200; ++i )
+            {
+                if ( world.completionState() != CompletionState.RUNNING )
+                {
+                    break;
+                }
+
+                addRandomToken( world, random );
+                world.step();
+
+                assertThat(
+                    fileName + " step " + i,
+                    world.hash(),
+                    equalTo( WorldHash.calculate( world ) )
+                );
+            }
+        }
+    }
+
+    @Test
+    public void Hash_is_kept_up_to_date_when_rabbits_explode_and_leave()
+    {
+        World world = createWorld(
+            ":num_rabbits=3",
+            ":rabbit_delay=1",
+            " Q     O  ",
+            "          ",
+            "##########"
+        );
+
+        for ( int i = 0; i < 12; ++i )
+        {
+            world.step();
+            assertThat( world.hash(), equalTo( WorldHash.calculate( world ) ) );
+        }
+
+        world.commands.explodeAllRabbits();
+
+        while ( world.completionState() == CompletionState.RUNNING )
+        {
+            world.step();
+            assertThat( world.hash(), equalTo( WorldHash.calculate( world ) ) );
+        }
+    }
+
+    private static void addRandomToken( World world, Random random )
+    {
+        Token.Type[] types = Token.Type.values();
+        Token.Type type = types[ random.nextInt( types.length ) ];
+        int x = random.nextInt( world.size.width );
+        int y = random.nextInt( world.size.height );
+
+        try
+        {
+            world.changes.addToken( x, y, type );
+        }
+        catch ( UnableToAddToken e )
+        {
+            // Fine - we don't have any of these
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package rabbitescape.engine.logic;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static rabbitescape.engine.textworld.TextWorldManip.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import rabbitescape.engine.Block;
+import rabbitescape.engine.ChangeDescription.State;
+import rabbitescape.engine.StepDelta;
+import rabbitescape.engine.Token;
+import rabbitescape.engine.World;
+import rabbitescape.engine.World.CompletionState;
+import rabbitescape.engine.World.UnableToAddToken;
+import rabbitescape.engine.WorldHistory;
+import rabbitescape.engine.WorldHistory.StepNotInHistory;
+import rabbitescape.engine.WorldSnapshot;
+import rabbitescape.engine.util.AllLevels;
+
+public class TestWorldHistory
+{
+    @Test
+    public void Stepping_back_puts_the_world_back()
+    {
+        World world = createWorld(
+            "#r   #",
+            "######",
+            "######",
+            ":dig=1"
+        );
+        WorldHistory history = new WorldHistory( world );
+
+        world.step();
+        String[] before = renderCompleteWorld( world, true );
+
+        world.changes.addToken( 2, 0, Token.Type.dig );
+        world.step();
+        world.step();
+
+        assertThat( history.currentStep(), equalTo( 3 ) );
+
+        history.stepBack();
+        history.stepBack();
+
+        assertThat( history.currentStep(), equalTo( 1 ) );
+        assertThat( renderCompleteWorld( world, true ), equalTo( before ) );
+        assertThat( world.abilities.get( Token.Type.dig ), equalTo( 1 ) );
+    }
+
+    @Test
+    public void Seeking_to_any_step_matches_what_happened_in_all_levels()
+    {
+        for ( String fileName : AllLevels.fileNames() )
+        {
+            World world = AllLevels.load( fileName );
+            WorldHistory history = new WorldHistory( world, 7, 1000000 );
+            Random random = new Random( 3 );
+            List<byte[]> snapshots = new ArrayList<byte[]>();
+
+            snapshots.add( WorldSnapshot.save( world ) );
+            for ( int i = 0; i < 60; ++i )
+            {
+                if ( world.completionState() != CompletionState.RUNNING )
+                {
+                    break;
+                }
+
+                addRandomToken( random, world );
+                world.step();
+                snapshots.add( WorldSnapshot.save( world ) );
+            }
+
+            for ( int step = snapshots.size() - 1; step >= 0; step -= 5 )
+            {
+                history.seek( step );
+
+                assertThat(
+                    fileName + " step " + step,
+                    Arrays.equals(
+                        WorldSnapshot.save( world ), snapshots.get( step ) ),
+                    is( true )
+                );
+            }
+        }
+    }
+
+    @Test
+    public void World_carries_on_normally_after_going_back()
+    {
+        String[] lines = {
+            "#Q     #",
+            "#      #",
+            "########",
+            ":num_rabbits=2"
+        };
+
+        World expected = createWorld( lines );
+        for ( int i = 0; i < 4; ++i )
+        {
+            expected.step();
+        }
+
+        World world = createWorld( lines );
+        WorldHistory history = new WorldHistory( world, 3, 1000000 );
+        for ( int i = 0; i < 6; ++i )
+        {
+            world.step();
+        }
+        history.seek( 4 );
+
+        for ( int i = 0; i < 10; ++i )
+        {
+            expected.step();
+            world.step();
+        }
+
+        assertThat(
+            renderCompleteWorld( world, true ),
+            equalTo( renderCompleteWorld( expected, true ) )
+        );
+        assertThat( world.hash(), equalTo( expected.hash() ) );
+        assertThat( history.currentStep(), equalTo( 14 ) );
+    }
+
+    @Test
+    public void Deltas_record_what_happened()
+    {
+        World world = createWorld(
+            "#r   #",
+            "######",
+            "######",
+            ":dig=1"
+        );
+        WorldHistory history = new WorldHistory( world );
+
+        world.changes.addToken( 2, 0, Token.Type.dig );
+        world.step();
+        world.step();
+
+        StepDelta first = history.delta( 1 );
+        assertThat( first.step, equalTo( 1 ) );
+        assertThat( first.tokensAdded.size(), equalTo( 1 ) );
+        assertThat(
+            first.tokensAdded.get( 0 ).type, equalTo( Token.Type.dig ) );
+        assertThat( first.tokensRemoved.size(), equalTo( 1 ) );
+        assertThat( first.rabbitsChanged.size(), equalTo( 1 ) );
+        assertThat(
+            first.rabbitsChanged.get( 0 ).state,
+            equalTo( State.RABBIT_DIGGING )
+        );
+
+        StepDelta second = history.delta( 2 );
+        assertThat( second.blocksRemoved.size(), equalTo( 1 ) );
+        assertThat( second.blocksRemoved.get( 0 ).x, equalTo( 2 ) );
+        assertThat( second.blocksRemoved.get( 0 ).y, equalTo( 1 ) );
+        assertThat( second.tokensAdded.isEmpty(), is( true ) );
+        assertThat( second.explodedAll, is( false ) );
+    }
+
+    @Test
+    public void Entering_and_saving_rabbits_is_recorded()
+    {
+        World world = createWorld(
+            "Q   ",
+            " O  ",
+            "####",
+            ":num_rabbits=1"
+        );
+        WorldHistory history = new WorldHistory( world );
+
+        List<StepDelta> deltas = new ArrayList<StepDelta>();
+        while ( world.completionState() == CompletionState.RUNNING )
+        {
+            world.step();
+            deltas.add( history.delta( history.currentStep() ) );
+        }
+
+        int entered = 0;
+        int saved = 0;
+        for ( StepDelta delta : deltas )
+        {
+            entered += delta.rabbitsEntered.size();
+            saved += delta.rabbitsSaved.size();
+        }
+
+        assertThat( entered, equalTo( 1 ) );
+        assertThat( saved, equalTo( 1 ) );
+    }
+
+    @Test
+    public void Explode_all_is_recorded_and_replayed()
+    {
+        World world = createWorld(
+            "#r    #",
+            "#######"
+        );
+        WorldHistory history = new WorldHistory( world, 100, 1000000 );
+
+        world.step();
+        world.changes.explodeAllRabbits();
+        world.step();
+        byte[] exploding = WorldSnapshot.save( world );
+        world.step();
+
+        assertThat( history.delta( 1 ).explodedAll, is( false ) );
+        assertThat( history.delta( 2 ).explodedAll, is( true ) );
+        assertThat( history.delta( 3 ).explodedAll, is( false ) );
+
+        history.seek( 2 );
+
+        assertThat(
+            Arrays.equals( WorldSnapshot.save( world ), exploding ),
+            is( true )
+        );
+    }
+
+    @Test
+    public void Blocks_removed_together_are_recorded_in_the_order_removed()
+    {
+        World world = createWorld(
+            "*  *  *  *  ",
+            "############",
+            "############",
+            ":*=rd",
+            ":*=rd",
+            ":*=rd",
+            ":*=rd"
+        );
+        WorldHistory history = new WorldHistory( world );
+
+        world.step();
+
+        // The same order every time: the order the rabbits dug
+        List<String> removed = new ArrayList<String>();
+        for ( Block block : history.delta( 1 ).blocksRemoved )
+        {
+            removed.add( block.x + "," + block.y );
+        }
+        assertThat(
+            removed,
+            equalTo( Arrays.asList( "0,1", "3,1", "6,1", "9,1" ) )
+        );
+    }
+
+    @Test
+    public void Memory_stays_within_the_budget()
+    {
+        World world = createWorld(
+            "Q                   ",
+            "                    ",
+            "####################",
+            ":num_rabbits=10",
+            ":rabbit_delay=3"
+        );
+
+        long budget = 3 * WorldSnapshot.save( world ).length;
+        WorldHistory history = new WorldHistory( world, 5, budget );
+
+        for ( int i = 0; i < 43; ++i )
+        {
+            world.step();
+            assertThat( history.sizeInBytes() <= budget, is( true ) );
+        }
+
+        assertThat( history.earliestStep() > 0, is( true ) );
+        assertThat( history.canStepBack(), is( true ) );
+
+        history.seek( history.earliestStep() );
+        assertThat( history.canStepBack(), is( false ) );
+    }
+
+    @Test
+    public void Budget_too_small_for_a_keyframe_stops_recording()
+    {
+        World world = createWorld(
+            "Q                   ",
+            "                    ",
+            "####################",
+            ":num_rabbits=10",
+            ":rabbit_delay=3"
+        );
+
+        long budget = WorldSnapshot.save( world ).length;
+        WorldHistory history = new WorldHistory( world, 5, budget );
+        assertThat( history.recording(), is( true ) );
+
+        world.step();
+
+        // Rather than saving the whole world every step, give up
+        assertThat( history.recording(), is( false ) );
+        assertThat( history.sizeInBytes(), equalTo( 0L ) );
+
+        world.step();
+        world.step();
+
+        assertThat( history.recording(), is( false ) );
+        assertThat( history.sizeInBytes(), equalTo( 0L ) );
+        assertThat( history.currentStep(), equalTo( 3 ) );
+        assertThat( history.canStepBack(), is( false ) );
+    }
+
+    @Test( expected = StepNotInHistory.class )
+    public void Cant_seek_into_the_future()
+    {
+        World world = createWorld(
+            "#r  #",
+            "#####"
+        );
+        WorldHistory history = new WorldHistory( world );
+        world.step();
+
+        history.seek( 2 );
+    }
+
+    @Test
+    public void Copies_are_not_recorded()
+    {
+        World world = createWorld(
+            "#r  #",
+            "#####"
+        );
+        WorldHistory history = new WorldHistory( world );
+
+        World copy = world.copy();
+        copy.step();
+        copy.step();
+
+        assertThat( history.currentStep(), equalTo( 0 ) );
+    }
+
+    private static void addRandomToken( Random random, World world )
+    {
+        Token.Type[] types = Token.Type.values();
+        Token.Type type = types[ random.nextInt( types.length ) ];
+        int x = random.nextInt( world.size.width );
+        int y = random.nextInt( world.size.height );
+
+        try
+        {
+            world.changes.addToken( x, y, type );
+        }
+        catch ( UnableToAddToken e )
+        {
+            // Fine - we don't have any of these
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package rabbitescape.engine.logic;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static rabbitescape.engine.textworld.TextWorldManip.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import rabbitescape.engine.Block;
+import rabbitescape.engine.IgnoreWorldStatsListener;
+import rabbitescape.engine.Rabbit;
+import rabbitescape.engine.Token;
+import rabbitescape.engine.World;
+import rabbitescape.engine.World.CompletionState;
+import rabbitescape.engine.World.UnableToAddToken;
+import rabbitescape.engine.WorldHash;
+import rabbitescape.engine.WorldSnapshot;
+import rabbitescape.engine.WorldSnapshot.BadSnapshot;
+import rabbitescape.engine.util.AllLevels;
+
+public class TestWorldSnapshot
+{
+    @Test
+    public void Restored_world_looks_the_same()
+    {
+        World world = createWorld(
+            ":bash=2",
+            ":num_rabbits=3",
+            "  Q   r  ",
+            "  j  b  O",
+            "#########"
+        );
+
+        world.step();
+        world.step();
+
+        World restored = restore( WorldSnapshot.save( world ) );
+
+        assertThat(
+            renderCompleteWorld( restored, true ),
+            equalTo( renderCompleteWorld( world, true ) )
+        );
+    }
+
+    @Test
+    public void Rabbit_part_way_through_bashing_carries_on_bashing()
+    {
+        World world = createWorld(
+            " rb#  ",
+            "######",
+            ":bash=1"
+        );
+
+        world.step();
+        world.step();
+
+        World restored = restore( WorldSnapshot.save( world ) );
+
+        world.step();
+        restored.step();
+
+        assertThat(
+            renderWorld( restored, true, false ),
+            equalTo( renderWorld( world, true, false ) )
+        );
+    }
+
+    @Test
+    public void Exploding_all_rabbits_is_remembered()
+    {
+        World world = createWorld(
+            "  r#  ",
+            "######"
+        );
+        world.changes.explodeAllRabbits();
+        world.changes.apply();
+
+        World restored = restore( WorldSnapshot.save( world ) );
+
+        world.step();
+        restored.step();
+
+        assertThat(
+            renderWorld( restored, true, false ),
+            equalTo( renderWorld( world, true, false ) )
+        );
+    }
+
+    @Test
+    public void Stacked_blocks_and_blocks_outside_the_world_are_restored()
+    {
+        World world = createWorld(
+            "   r  ",
+            "######"
+        );
+
+        // Under the existing block, so the old one still wins
+        world.changes.addBlock(
+            new Block( 2, 1, Block.Type.bridge_up_right, 0 ) );
+        world.changes.addBlock(
+            new Block( 7, 1, Block.Type.solid_flat, 3 ) );
+        world.changes.addBlock(
+            new Block( -1, -2, Block.Type.bridge_up_left, 0 ) );
+        world.changes.apply();
+
+        World restored = restore( WorldSnapshot.save( world ) );
+
+        for ( int y = -2; y < 2; ++y )
+        {
+            for ( int x = -1; x < 8; ++x )
+            {
+                assertThat(
+                    x + ", " + y,
+                    describe( restored.getBlockAt( x, y ) ),
+                    equalTo( describe( world.getBlockAt( x, y ) ) )
+                );
+            }
+        }
+        assertThat( restored.blocks.size(), equalTo( world.blocks.size() ) );
+        assertThat( restored.hash(), equalTo( world.hash() ) );
+        assertThat(
+            restored.hash(), equalTo( WorldHash.calculate( restored ) ) );
+
+        // Removing the top block uncovers the one underneath
+        world.changes.removeBlockAt( 2, 1 );
+        world.changes.apply();
+        restored.changes.removeBlockAt( 2, 1 );
+        restored.changes.apply();
+
+        assertThat(
+            describe( restored.getBlockAt( 2, 1 ) ),
+            equalTo( "bridge_up_right 0" )
+        );
+    }
+
+    @Test
+    public void All_levels_carry_on_exactly_the_same_after_restoring()
+    {
+        for ( String fileName : AllLevels.fileNames() )
+        {
+            World world = AllLevels.load( fileName );
+            World restored = null;
+            Random random = new Random( 7 );
+
+            for ( int i = 0; i < 150; ++i )
+            {
+                if ( world.completionState() != CompletionState.RUNNING )
+                {
+                    break;
+                }
+
+                if ( i % 50 == 0 )
+                {
+                    byte[] snapshot = WorldSnapshot.save( world );
+                    restored = restore( snapshot );
+
+                    assertThat(
+                        fileName + " step " + i,
+                        WorldSnapshot.save( restored ),
+                        equalTo( snapshot )
+                    );
+                }
+
+                addRandomToken( random, world, restored );
+
+                world.step();
+                restored.step();
+
+                assertThat(
+                    fileName + " step " + i,
+                    Arrays.equals(
+                        WorldSnapshot.save( restored ),
+                        WorldSnapshot.save( world )
+                    ),
+                    is( true )
+                );
+                assertThat( restored.hash(), equalTo( world.hash() ) );
+                assertThat(
+                    restored.hash(), equalTo( WorldHash.calculate( restored ) ) );
+            }
+        }
+    }
+
+    @Test
+    public void Text_and_binary_state_restore_identical_worlds()
+    {
+        World world = createWorld(
+            ":num_rabbits=5",
+            ":rabbit_delay=2",
+            ":bash=1",
+            ":bridge=3",
+            ":dig=2",
+            "###########",
+            "#   *     #",
+            "#         #",
+            "# * * * * #",
+            "###########",
+            ":*=Q{Entrance.timeToNextRabbit:3}",
+            ":*=r{Bashing.stepsOfBashing:1}",
+            ":*=j{Bridging.bigSteps:1,Bridging.bridgeType:DOWN_UP,"
+                + "Bridging.smallSteps:1,onSlope:true}",
+            ":*=j{Climbing.hasAbility:true,Falling.heightFallen:2}",
+            ":*=j{Climbing.abilityActive:true,Climbing.hasAbility:true}"
+        );
+
+        World fromText = createWorld( renderCompleteWorld( world, true ) );
+        World fromBinary = restore( WorldSnapshot.save( world ) );
+
+        for ( int i = 0; i < 10; ++i )
+        {
+            assertThat(
+                "step " + i,
+                renderCompleteWorld( fromBinary, true ),
+                equalTo( renderCompleteWorld( fromText, true ) )
+            );
+            assertThat( fromBinary.hash(), equalTo( fromText.hash() ) );
+
+            fromText.step();
+            fromBinary.step();
+        }
+    }
+
+    @Test
+    public void Binary_state_keeps_everything_the_text_form_saves()
+    {
+        for ( String fileName : AllLevels.fileNames() )
+        {
+            World world = AllLevels.load( fileName );
+            Random random = new Random( 11 );
+
+            for ( int i = 0; i < 100; ++i )
+            {
+                if ( world.completionState() != CompletionState.RUNNING )
+                {
+                    break;
+                }
+
+                addRandomToken( random, world );
+                world.step();
+
+                if ( !allRabbitsInside( world ) )
+                {
+                    continue; // Can't render it
+                }
+
+                World restored = restore( WorldSnapshot.save( world ) );
+
+                assertThat(
+                    fileName + " step " + i,
+                    renderCompleteWorld( restored, true ),
+                    equalTo( renderCompleteWorld( world, true ) )
+                );
+            }
+        }
+    }
+
+    @Test( expected = BadSnapshot.class )
+    public void Unknown_behaviour_state_version_is_rejected()
+    {
+        byte[] snapshot = WorldSnapshot.save( createWorld( "r O", "###" ) );
+
+        // After the magic number, the snapshot version, and the number of
+        // rabbit state versions, comes the version of Rabbit's own state.
+        snapshot[15] = 99;
+
+        restore( snapshot );
+    }
+
+    @Test( expected = BadSnapshot.class )
+    public void Rubbish_is_rejected()
+    {
+        restore( new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 } );
+    }
+
+    @Test( expected = BadSnapshot.class )
+    public void Truncated_snapshot_is_rejected()
+    {
+        byte[] snapshot = WorldSnapshot.save( createWorld( "r O", "###" ) );
+
+        restore( Arrays.copyOf( snapshot, snapshot.length - 3 ) );
+    }
+
+    @Test( expected = BadSnapshot.class )
+    public void Negative_length_is_rejected()
+    {
+        byte[] snapshot = WorldSnapshot.save( createWorld( "r O", "###" ) );
+
+        // The number of rabbit state versions follows the magic number
+        // and the snapshot version.
+        snapshot[8] = (byte)0x80;
+
+        restore( snapshot );
+    }
+
+    @Test
+    public void Corrupt_snapshots_are_restored_or_rejected_as_bad()
+    {
+        byte[] snapshot = WorldSnapshot.save(
+            createWorld(
+                ":bash=2",
+                ":bridge=1",
+                "  Q  br  ",
+                " ri  b  O",
+                "#########"
+            )
+        );
+
+        byte[] values = { -128, -1, 1, 127 };
+        for ( int i = 0; i < snapshot.length; ++i )
+        {
+            for ( byte value : values )
+            {
+                byte[] corrupt = snapshot.clone();
+                corrupt[i] = value;
+                try
+                {
+                    restore( corrupt );
+                }
+                catch ( BadSnapshot e )
+                {
+                    // Fine - we noticed
+                }
+            }
+        }
+    }
+
+    private static boolean allRabbitsInside( World world )
+    {
+        for ( Rabbit rabbit : world.rabbits )
+        {
+            if (
+                   rabbit.x < 0
+                || rabbit.y < 0
+                || rabbit.x >= world.size.width
+                || rabbit.y >= world.size.height
+            )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String describe( Block block )
+    {
+        return block == null ? "null" : block.type + " " + block.variant;
+    }
+
+    private static World restore( byte[] snapshot )
+    {
+        return WorldSnapshot.restore(
+            snapshot, new IgnoreWorldStatsListener() );
+    }
+
+    private static void addRandomToken(
+        Random random, World... worlds )
+    {
+        Token.Type[] types = Token.Type.values();
+        Token.Type type = types[ random.nextInt( types.length ) ];
+        int x = random.nextInt( worlds[0].size.width );
+        int y = random.nextInt( worlds[0].size.height );
+
+        for ( World world : worlds )
+        {
+            try
+            {
+                world.changes.addToken( x, y, type );
+            }
+            catch ( UnableToAddToken e )
+            {
+                // Fine - we don't have any of these
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package rabbitescape.engine.solver;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static rabbitescape.engine.World.CompletionState.*;
+import static rabbitescape.engine.textworld.TextWorldManip.*;
+
+import org.junit.Test;
+
+import rabbitescape.engine.Token;
+import rabbitescape.engine.World;
+import rabbitescape.engine.headless.HeadlessRunner;
+import rabbitescape.engine.headless.RunResult;
+
+public class TestSolver
+{
+    @Test
+    public void Level_that_wins_by_itself_needs_no_tokens()
+    {
+        World world = createWorld(
+            ":num_rabbits=0",
+            "r  O",
+            "####"
+        );
+
+        SolverResult result = new Solver( world, 1, 100, 10 ).solve();
+
+        assertThat( result.solved, is( true ) );
+        assertThat( result.moves.size(), equalTo( 0 ) );
+        assertThat( result.stats.nodesExpanded, equalTo( 1L ) );
+    }
+
+    @Test
+    public void Finds_where_to_dig()
+    {
+        SolverResult result = new Solver( diggingLevel(), 1, 100, 10 ).solve();
+
+        assertThat( result.solved, is( true ) );
+        assertThat( result.moves.size(), equalTo( 1 ) );
+        assertThat( result.moves.get( 0 ).type, equalTo( Token.Type.dig ) );
+        assertThat( replay( diggingLevel(), result ), equalTo( WON ) );
+    }
+
+    @Test
+    public void Solutions_found_on_several_threads_work()
+    {
+        World world = createWorld(
+            ":num_rabbits=0",
+            ":dig=1",
+            ":bash=1",
+            "r   #   ",
+            "#####   ",
+            "###O#   ",
+            "#####   ",
+            "        ",
+            "########"
+        );
+
+        SolverResult result = new Solver( world, 3, 200, 200 ).solve();
+
+        assertThat( result.solved, is( true ) );
+        assertThat( replay( world, result ), equalTo( WON ) );
+        assertThat( result.stats.statesEvaluated > 0, is( true ) );
+    }
+
+    @Test
+    public void Same_threads_always_find_the_same_solution()
+    {
+        World world = createWorld(
+            ":num_rabbits=0",
+            ":dig=2",
+            ":bash=2",
+            ":bridge=2",
+            "r   #      r",
+            "#####   ####",
+            "###O#   #   ",
+            "#####   #   ",
+            "            ",
+            "############"
+        );
+
+        SolverResult first = new Solver( world, 4, 200, 300 ).solve();
+
+        for ( int i = 0; i < 5; ++i )
+        {
+            SolverResult again = new Solver( world, 4, 200, 300 ).solve();
+
+            // This is what we are testing: nothing depends on which
+            // thread finished first
+            assertThat(
+                again.moves.toString(), equalTo( first.moves.toString() ) );
+            assertThat(
+                again.stats.nodesGenerated,
+                equalTo( first.stats.nodesGenerated )
+            );
+            assertThat(
+                again.stats.statesEvaluated,
+                equalTo( first.stats.statesEvaluated )
+            );
+        }
+    }
+
+    @Test
+    public void Gives_up_when_there_is_no_solution()
+    {
+        World world = createWorld(
+            ":num_rabbits=0",
+            ":bash=1",
+            "r       ",
+            "####    ",
+            "##O#    ",
+            "####    ",
+            "        ",
+            "########"
+        );
+
+        SolverResult result = new Solver( world, 2, 100, 50 ).solve();
+
+        assertThat( result.solved, is( false ) );
+        assertThat( result.moves.size(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void Does_not_try_tokens_a_falling_rabbit_cannot_pick_up()
+    {
+        World world = createWorld(
+            ":num_rabbits=0",
+            ":bash=1",
+            "r   ",
+            "    ",
+            "    ",
+            "    ",
+            "    "
+        );
+
+        int steps = 0;
+        World played = world.copy();
+        while ( played.completionState() == RUNNING )
+        {
+            played.step();
+            ++steps;
+        }
+
+        SolverResult result = new Solver( world, 1, 100, 10 ).solve();
+
+        // The rabbit never touches the ground, so nothing is tried
+        assertThat( result.solved, is( false ) );
+        assertThat( result.stats.statesEvaluated, equalTo( (long)steps ) );
+    }
+
+    @Test
+    public void Does_not_change_the_world_it_was_given()
+    {
+        World world = diggingLevel();
+        String[] before = renderCompleteWorld( world, true );
+
+        new Solver( world, 1, 100, 10 ).solve();
+
+        assertThat( renderCompleteWorld( world, true ), equalTo( before ) );
+    }
+
+    private static World.CompletionState replay(
+        World world, SolverResult result )
+    {
+        RunResult run = new HeadlessRunner( world, result.schedule() )
+            .runToCompletion( 1000 );
+
+        return run.completionState;
+    }
+
+    private static World diggingLevel()
+    {
+        return createWorld(
+            ":num_rabbits=0",
+            ":dig=1",
+            "r       ",
+            "####    ",
+            "##O#    ",
+            "####    ",
+            "        ",
+            "        ",
+            "        ",
+            "########"
+        );
+    }
+}
@@ -0,0 +1,57 @@
+package rabbitescape.engine.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import rabbitescape.engine.IgnoreWorldStatsListener;
+import rabbitescape.engine.LoadWorldFile;
+import rabbitescape.engine.World;
+import rabbitescape.engine.menu.LevelMenuItem;
+import rabbitescape.engine.menu.LevelsCompleted;
+import rabbitescape.engine.menu.Menu;
+import rabbitescape.engine.menu.MenuDefinition;
+import rabbitescape.engine.menu.MenuItem;
+
+/**
+ * Every level that ships with the game, for tests that want to try
+ * something on all of them.
+ */
+public class AllLevels
+{
+    private static class IgnoreLevelsCompleted implements LevelsCompleted
+    {
+        @Override
+        public int highestLevelCompleted( String levelsDir )
+        {
+            return 0;
+        }
+
+        @Override
+        public void setCompletedLevel( String levelsDir, int levelNum )
+        {
+        }
+    }
+
+    public static List<String> fileNames()
+    {
+        List<String> ret = new ArrayList<String>();
+
+        Menu menu = MenuDefinition.mainMenu( new IgnoreLevelsCompleted() );
+        Menu levelSets = menu.items[0].menu;
+        for ( MenuItem levelSet : levelSets.items )
+        {
+            for ( MenuItem levelItem : levelSet.menu.items )
+            {
+                ret.add( ( (LevelMenuItem)levelItem ).fileName );
+            }
+        }
+
+        return ret;
+    }
+
+    public static World load( String fileName )
+    {
+        return new LoadWorldFile( new NothingExistsFileSystem() ).load(
+            new IgnoreWorldStatsListener(), fileName );
+    }
+}
@@ -0,0 +1,76 @@
+package rabbitescape.engine.util;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+
+import org.junit.Test;
+
+public class TestByteArrayData
+{
+    @Test
+    public void Writes_the_same_bytes_as_DataOutputStream() throws IOException
+    {
+        ByteArrayOutputStream expectedBytes = new ByteArrayOutputStream();
+        DataOutputStream expected = new DataOutputStream( expectedBytes );
+        ByteArrayDataOutput actual = new ByteArrayDataOutput( 1 );
+
+        expected.writeBoolean( true );
+        actual.writeBoolean( true );
+        expected.writeByte( -3 );
+        actual.writeByte( -3 );
+        expected.writeShort( -1234 );
+        actual.writeShort( -1234 );
+        expected.writeInt( 0x12345678 );
+        actual.writeInt( 0x12345678 );
+        expected.writeLong( -0x123456789ABCL );
+        actual.writeLong( -0x123456789ABCL );
+        expected.writeDouble( 1.5 );
+        actual.writeDouble( 1.5 );
+        expected.writeUTF( "ab\u0000c\u00e9\u20ac" );
+        actual.writeUTF( "ab\u0000c\u00e9\u20ac" );
+
+        assertThat( actual.toByteArray(), equalTo( expectedBytes.toByteArray() ) );
+    }
+
+    @Test
+    public void Reads_back_what_was_written() throws IOException
+    {
+        ByteArrayDataOutput out = new ByteArrayDataOutput();
+        out.writeBoolean( false );
+        out.writeShort( -7 );
+        out.writeInt( Integer.MIN_VALUE );
+        out.writeLong( Long.MAX_VALUE );
+        out.writeFloat( -2.25f );
+        out.writeUTF( "Rabbit \u20ac" );
+
+        ByteArrayDataInput in = new ByteArrayDataInput( out.toByteArray() );
+
+        assertThat( in.readBoolean(), is( false ) );
+        assertThat( in.readShort(), equalTo( (short)-7 ) );
+        assertThat( in.readInt(), equalTo( Integer.MIN_VALUE ) );
+        assertThat( in.readLong(), equalTo( Long.MAX_VALUE ) );
+        assertThat( in.readFloat(), equalTo( -2.25f ) );
+        assertThat( in.readUTF(), equalTo( "Rabbit \u20ac" ) );
+        assertThat( in.remaining(), equalTo( 0 ) );
+    }
+
+    @Test( expected = EOFException.class )
+    public void Reading_past_the_end_throws() throws IOException
+    {
+        new ByteArrayDataInput( new byte[] { 1, 2, 3 } ).readInt();
+    }
+
+    @Test( expected = UTFDataFormatException.class )
+    public void Malformed_modified_utf8_is_rejected() throws IOException
+    {
+        // The second byte of a 2-byte character must be 10xxxxxx
+        new ByteArrayDataInput( new byte[] { 0, 2, (byte)0xC3, 0x41 } )
+            .readUTF();
+    }
+}
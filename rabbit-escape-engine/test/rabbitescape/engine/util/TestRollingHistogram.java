@@ -0,0 +1,68 @@
+package rabbitescape.engine.util;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+
+import org.junit.Test;
+
+public class TestRollingHistogram
+{
+    @Test
+    public void Empty_histogram_gives_zeros()
+    {
+        RollingHistogram h = new RollingHistogram( 5 );
+
+        assertThat( h.size(), equalTo( 0 ) );
+        assertThat( h.last(), equalTo( 0L ) );
+        assertThat( h.mean(), equalTo( 0.0 ) );
+        assertThat( h.percentile( 50 ), equalTo( 0L ) );
+    }
+
+    @Test
+    public void Describes_the_samples()
+    {
+        RollingHistogram h = new RollingHistogram( 10 );
+        for ( long s : new long[] { 5, 1, 4, 2, 3 } )
+        {
+            h.add( s );
+        }
+
+        assertThat( h.size(), equalTo( 5 ) );
+        assertThat( h.last(), equalTo( 3L ) );
+        assertThat( h.mean(), equalTo( 3.0 ) );
+        assertThat( h.percentile( 0 ), equalTo( 1L ) );
+        assertThat( h.percentile( 50 ), equalTo( 3L ) );
+        assertThat( h.percentile( 80 ), equalTo( 4L ) );
+        assertThat( h.max(), equalTo( 5L ) );
+    }
+
+    @Test
+    public void Forgets_old_samples()
+    {
+        RollingHistogram h = new RollingHistogram( 3 );
+        for ( long s : new long[] { 100, 200, 1, 2, 3 } )
+        {
+            h.add( s );
+        }
+
+        assertThat( h.size(), equalTo( 3 ) );
+        assertThat( h.max(), equalTo( 3L ) );
+        assertThat( h.mean(), equalTo( 2.0 ) );
+    }
+
+    @Test
+    public void Counts_samples_into_buckets()
+    {
+        RollingHistogram h = new RollingHistogram( 10 );
+        for ( long s : new long[] { 0, 10, 11, 50, 100, 101, 1000 } )
+        {
+            h.add( s );
+        }
+
+        int[] counts = h.counts( new long[] { 10, 100 } );
+
+        assertThat( counts[0], equalTo( 2 ) );
+        assertThat( counts[1], equalTo( 3 ) );
+        assertThat( counts[2], equalTo( 2 ) );
+    }
+}
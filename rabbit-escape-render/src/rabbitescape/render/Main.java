@@ -9,6 +9,8 @@ import rabbitescape.engine.IgnoreLevelWinListener;
 import rabbitescape.engine.IgnoreWorldStatsListener;
 import rabbitescape.engine.LevelWinListener;
 import rabbitescape.engine.LoadWorldFile;
+import rabbitescape.engine.StepProfilePrinter;
+import rabbitescape.engine.StepProfiler;
 import rabbitescape.engine.World;
 import rabbitescape.engine.util.FileSystem;
 
@@ -49,6 +51,12 @@ public abstract class Main
             World world = new LoadWorldFile( fs ).load(
                 new IgnoreWorldStatsListener(), levelName );
 
+            if ( list( args ).contains( "--profile" ) )
+            {
+                world.setProfiler(
+                    new StepProfiler( new StepProfilePrinter( out, 25 ) ) );
+            }
+
             GameLaunch gameLaunch = createGameLaunch( world, winListener );
 
             gameLaunch.run( args );
@@ -75,7 +75,16 @@ public class GameLoop
         while ( !physics.gameRunning() && running )
         {
             input.waitMs( 100 );
-            graphics.drawIfScrolled( physics.frameNumber() );
+
+            // e.g. stepping back while paused
+            if ( physics.applyCommands() )
+            {
+                graphics.draw( physics.frameNumber() );
+            }
+            else
+            {
+                graphics.drawIfScrolled( physics.frameNumber() );
+            }
         }
     }
 
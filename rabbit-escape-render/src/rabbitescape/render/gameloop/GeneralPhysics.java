@@ -6,12 +6,15 @@ import java.util.List;
 import rabbitescape.engine.LevelWinListener;
 import rabbitescape.engine.Token;
 import rabbitescape.engine.World;
+import rabbitescape.engine.WorldHistory;
 
 public class GeneralPhysics implements Physics
 {
     /**
-     * Everything that modifies the world goes through here, with
-     * synchronization.
+     * Everything that modifies the world goes through here.  Adding a
+     * token or stepping back only queues a command in World.commands, so
+     * it never waits for a step to finish, and the game loop thread makes
+     * it between steps, when nothing is drawing the world.
      *
      * Public for test
      */
@@ -29,10 +32,25 @@ public class GeneralPhysics implements Physics
             world.step();
         }
 
-        public synchronized void addToken(
-            int tileX, int tileY, Token.Type type )
+        public void addToken( int tileX, int tileY, Token.Type type )
         {
-            world.changes.addToken( tileX, tileY, type );
+            world.commands.addToken( tileX, tileY, type );
+        }
+
+        /**
+         * Game loop thread: make any waiting commands, so that new tokens
+         * are drawn without waiting for the next step.
+         *
+         * @return true if we went back a step.
+         */
+        public synchronized boolean applyCommands()
+        {
+            return world.commands.apply();
+        }
+
+        public void stepBack()
+        {
+            world.commands.stepBack();
         }
     }
 
@@ -41,14 +59,31 @@ public class GeneralPhysics implements Physics
 
     public int frame;
     public final World world;
+
+    /**
+     * null unless we were asked to record history, which costs memory and
+     * time every step.
+     */
+    public final WorldHistory history;
     private final WorldModifier worldModifier;
     private final LevelWinListener winListener;
     private final List<StatsChangedListener> statsListeners;
 
     public GeneralPhysics( World world, LevelWinListener winListener )
+    {
+        this( world, winListener, false );
+    }
+
+    /**
+     * @param recordHistory true to remember each step so that stepBack()
+     *                      works.
+     */
+    public GeneralPhysics(
+        World world, LevelWinListener winListener, boolean recordHistory )
     {
         this.frame = 0;
         this.world = world;
+        this.history = recordHistory ? new WorldHistory( world ) : null;
         this.worldModifier = new WorldModifier( world );
         this.winListener = winListener;
         this.statsListeners = new ArrayList<>();
@@ -57,6 +92,8 @@ public class GeneralPhysics implements Physics
     @Override
     public long step( long simulation_time, long frame_start_time )
     {
+        applyCommands();
+
         for ( int skipped = 0; skipped < max_allowed_skips; ++skipped )
         {
             if ( simulation_time >= frame_start_time )
@@ -81,6 +118,19 @@ public class GeneralPhysics implements Physics
         return simulation_time;
     }
 
+    @Override
+    public boolean applyCommands()
+    {
+        if ( !worldModifier.applyCommands() )
+        {
+            return false;
+        }
+
+        frame = 0;
+        notifyStatsListeners();
+        return true;
+    }
+
     @Override
     public int frameNumber()
     {
@@ -105,6 +155,11 @@ public class GeneralPhysics implements Physics
         }
     }
 
+    /**
+     * UI thread: ask for a token to be added at the next frame.
+     *
+     * @return how many of this ability will be left once it is added.
+     */
     public int addToken( int tileX, int tileY, Token.Type ability )
     {
         if (
@@ -113,13 +168,42 @@ public class GeneralPhysics implements Physics
             && tileX < world.size.width
             && tileY >= 0
             && tileY < world.size.height
-            && world.abilities.get( ability ) > 0
+            && abilitiesLeft( ability ) > 0
         )
         {
             worldModifier.addToken( tileX, tileY, ability );
         }
 
-        return world.abilities.get( ability );
+        return abilitiesLeft( ability );
+    }
+
+    /**
+     * Any thread (see WorldCommands.abilitiesLeft()).
+     *
+     * @return how many of this ability will be left once the tokens
+     *         waiting to be added have been added.
+     */
+    public int abilitiesLeft( Token.Type ability )
+    {
+        return world.commands.abilitiesLeft( ability );
+    }
+
+    /**
+     * UI thread: ask for the world to be put back how it was one step ago
+     * at the next frame, if we are recording history and still remember.
+     * Stats listeners are told when it has gone back.
+     *
+     * @return false if we are not recording history.
+     */
+    public boolean stepBack()
+    {
+        if ( history == null )
+        {
+            return false;
+        }
+
+        worldModifier.stepBack();
+        return true;
     }
 
     public void addStatsChangedListener( StatsChangedListener listener )
@@ -8,6 +8,14 @@ public interface Physics
     }
 
     long step( long simulation_time, long frame_start_time );
+
+    /**
+     * Make any changes the UI asked for, even while the game is paused.
+     *
+     * @return true if the world went back a step, so must be redrawn.
+     */
+    boolean applyCommands();
+
     int frameNumber();
     boolean gameRunning();
     void dispose();
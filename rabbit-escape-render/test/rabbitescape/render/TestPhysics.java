@@ -124,6 +124,44 @@ public class TestPhysics
         assertEquals( 6, world.rabbits.get( 0 ).x );
     }
 
+    @Test
+    public void Step_back_undoes_a_step()
+    {
+        final World world = TextWorldManip.createWorld(
+            "#      #",
+            "# /) r #",
+            "########",
+            ":climb=1000000"
+        );
+
+        LevelWinListener winListener = null;
+        GeneralPhysics physics =
+            new GeneralPhysics( world, winListener, true );
+
+        // Nothing to go back to yet
+        assertTrue( physics.stepBack() );
+        assertFalse( physics.applyCommands() );
+
+        for ( int i = 0; i < 10; ++i )
+        {
+            physics.step( 0, GeneralPhysics.simulation_time_step_ms );
+        }
+        assertEquals( 6, world.rabbits.get( 0 ).x );
+        physics.step( 0, GeneralPhysics.simulation_time_step_ms );
+
+        // This is what we are testing - ask to go back again
+        assertTrue( physics.stepBack() );
+
+        // Nothing happens until the game loop's next frame
+        assertEquals( 6, world.rabbits.get( 0 ).x );
+        assertEquals( 1, physics.frameNumber() );
+
+        physics.step( 0, 0 );
+
+        assertEquals( 5, world.rabbits.get( 0 ).x );
+        assertEquals( 0, physics.frameNumber() );
+    }
+
     class TracingWinListener implements LevelWinListener
     {
         public boolean wonCalled  = false;
@@ -401,5 +439,28 @@ public class TestPhysics
         assertTrue( myListener.changedCalled );
     }
 
+    @Test
+    public void Step_back_does_nothing_unless_recording_history()
+    {
+        final World world = TextWorldManip.createWorld(
+            "#      #",
+            "# r    #",
+            "########"
+        );
+
+        LevelWinListener winListener = null;
+        GeneralPhysics physics = new GeneralPhysics( world, winListener );
+
+        for ( int i = 0; i < 10; ++i )
+        {
+            physics.step( 0, GeneralPhysics.simulation_time_step_ms );
+        }
+
+        // This is what we are testing - no history, so no going back
+        assertNull( physics.history );
+        assertFalse( physics.stepBack() );
+        assertEquals( 3, world.rabbits.get( 0 ).x );
+    }
+
     // TODO: Stats_listeners_are_not_notified_when_stats_do_not_change
 }
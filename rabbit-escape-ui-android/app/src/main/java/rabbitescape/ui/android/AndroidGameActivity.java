@@ -23,14 +23,13 @@ import rabbitescape.engine.LoadWorldFile;
 import rabbitescape.engine.MultiLevelWinListener;
 import rabbitescape.engine.Token;
 import rabbitescape.engine.World;
+import rabbitescape.engine.WorldSnapshot;
 import rabbitescape.engine.WorldStatsListener;
 import rabbitescape.engine.err.RabbitEscapeException;
 import rabbitescape.engine.menu.LevelsCompleted;
-import rabbitescape.engine.textworld.TextWorldManip;
 import rabbitescape.engine.util.RealFileSystem;
 import rabbitescape.render.BitmapCache;
 
-import static android.text.TextUtils.split;
 import static rabbitescape.engine.i18n.Translation.t;
 
 import net.artificialworlds.rabbitescape.R;
@@ -96,10 +95,10 @@ public class AndroidGameActivity extends RabbitEscapeActivity
     {
         if ( savedInstanceState != null )
         {
-            String savedWorld = savedInstanceState.getString( AndroidGameLaunch.STATE_WORLD );
+            byte[] savedWorld = savedInstanceState.getByteArray( AndroidGameLaunch.STATE_WORLD );
             if ( savedWorld != null )
             {
-                return TextWorldManip.createWorld( this, split( savedWorld, "\n" ) );
+                return WorldSnapshot.restore( savedWorld, this );
             }
         }
 
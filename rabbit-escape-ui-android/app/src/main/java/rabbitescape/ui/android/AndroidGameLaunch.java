@@ -12,8 +12,6 @@ import rabbitescape.render.SoundPlayer;
 import rabbitescape.render.gameloop.GameLoop;
 import rabbitescape.render.gameloop.GeneralPhysics;
 
-import static android.text.TextUtils.join;
-
 public class AndroidGameLaunch implements Runnable
 {
     // Constants
@@ -101,7 +99,7 @@ public class AndroidGameLaunch implements Runnable
 
     public void onSaveInstanceState( Bundle outState )
     {
-        outState.putString( STATE_WORLD, join( "\n", worldSaver.waitUntilSaved() ) );
+        outState.putByteArray( STATE_WORLD, worldSaver.waitUntilSaved() );
         outState.putInt( STATE_SCROLL_X, graphics.scrollX );
         outState.putInt( STATE_SCROLL_Y, graphics.scrollY );
     }
@@ -187,7 +187,7 @@ public class Dialogs
             {
                 activity.currentDialog = null;
                 activity.setPaused( world, false );
-                world.changes.explodeAllRabbits();
+                world.commands.explodeAllRabbits();
             }
         };
 
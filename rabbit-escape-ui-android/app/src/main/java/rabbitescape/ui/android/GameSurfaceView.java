@@ -9,8 +9,6 @@ import android.view.SurfaceView;
 import android.view.View;
 import android.view.ViewConfiguration;
 
-import java.util.Map;
-
 import rabbitescape.engine.LevelWinListener;
 import rabbitescape.engine.Token;
 import rabbitescape.engine.World;
@@ -91,9 +89,10 @@ public class GameSurfaceView extends SurfaceView
         this.scaleGestureDetector = new ScaleGestureDetector(
             getContext(), this.scaleGestureListener );
 
-        for ( Map.Entry<Token.Type, Integer> e : world.abilities.entrySet() )
+        for ( Token.Type ability : world.commands.abilities().keySet() )
         {
-            numLeftListener.numLeft( e.getKey(), e.getValue() );
+            numLeftListener.numLeft(
+                ability, game.gameLaunch.physics.abilitiesLeft( ability ) );
         }
     }
 
@@ -134,7 +133,7 @@ public class GameSurfaceView extends SurfaceView
             return;
         }
 
-        int prev = world.abilities.get( chosenAbility );
+        int prev = game.gameLaunch.physics.abilitiesLeft( chosenAbility );
         int numLeft = game.gameLaunch.addToken( chosenAbility, scrolling.curX, scrolling.curY );
 
         if ( numLeft != prev )
@@ -1,7 +1,7 @@
 package rabbitescape.ui.android;
 
 import rabbitescape.engine.World;
-import rabbitescape.engine.textworld.TextWorldManip;
+import rabbitescape.engine.WorldSnapshot;
 
 /**
  * Hairy synchronization of the game loop, and the UI/system thread to
@@ -39,7 +39,7 @@ public class WorldSaver
     private final Signal requestSave = new Signal();
     private final Signal saved = new Signal();
     private boolean saveWorld = false;
-    public String[] savedWorld = null;
+    public byte[] savedWorld = null;
 
     public WorldSaver( World world, AndroidGameLaunch gameLaunch )
     {
@@ -61,10 +61,10 @@ public class WorldSaver
         }
     }
 
-    private String[] actuallySaveWorld()
+    private byte[] actuallySaveWorld()
     {
         world.changes.revert();
-        return TextWorldManip.renderCompleteWorld( world, true );
+        return WorldSnapshot.save( world );
     }
 
     /**
@@ -84,7 +84,7 @@ public class WorldSaver
      *
      * @return the saved model
      */
-    public String[] waitUntilSaved()
+    public byte[] waitUntilSaved()
     {
         if ( !gameLaunch.isRunning() )
         {
@@ -98,7 +98,7 @@ public class WorldSaver
             saved.listen( 0 );
         }
 
-        String[] ret = savedWorld;
+        byte[] ret = savedWorld;
         savedWorld = null;
         return ret;
     }
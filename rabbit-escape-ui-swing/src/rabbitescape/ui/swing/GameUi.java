@@ -19,10 +19,13 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
 import java.awt.event.WindowEvent;
+import java.util.Map;
 
 import javax.swing.JPanel;
 import javax.swing.JScrollBar;
+import javax.swing.JToggleButton;
 import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
 
 import rabbitescape.engine.Token;
 import rabbitescape.engine.config.Config;
@@ -136,6 +139,11 @@ public class GameUi implements StatsChangedListener
                     scrollScrollBarBy( canvasScrollBarY, 1 );
                     break;
                 }
+                case KeyEvent.VK_BACK_SPACE:
+                {
+                    stepBackPressed();
+                    break;
+                }
             }
         }
     }
@@ -497,6 +505,30 @@ public class GameUi implements StatsChangedListener
         }
     }
 
+    private void stepBackPressed()
+    {
+        // The game loop goes back at its next frame, and then tells us
+        // through changed().
+        gameLaunch.stepBack();
+    }
+
+    private void updateAbilities()
+    {
+        // e.g. any tokens placed in a step we went back over are back in
+        // the menu
+        for ( Map.Entry<Token.Type, JToggleButton> entry :
+            menu.abilities.entrySet() )
+        {
+            entry.getValue().setEnabled(
+                gameLaunch.abilitiesLeft( entry.getKey() ) > 0 );
+        }
+
+        if ( chosenAbility != null )
+        {
+            updateChosenAbility();
+        }
+    }
+
     private void zoomClicked( boolean zoomIn )
     {
         if ( zoomIn )
@@ -596,12 +628,23 @@ public class GameUi implements StatsChangedListener
     private void updateChosenAbility()
     {
         topBar.abilityChanged(
-            chosenAbility, gameLaunch.world.abilities.get( chosenAbility ) );
+            chosenAbility, gameLaunch.abilitiesLeft( chosenAbility ) );
     }
 
     @Override
     public void changed( int waiting, int out, int saved )
     {
+        SwingUtilities.invokeLater(
+            new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    updateAbilities();
+                }
+            }
+        );
+
         switch ( gameLaunch.world.completionState() )
         {
             case WON:
@@ -63,7 +63,8 @@ public class SwingGameLaunch implements GameLaunch
     {
         this.world = world;
         this.frame = init.frame;
-        this.physics = new GeneralPhysics( world, winListener );
+        // Backspace steps back, so remember where we've been
+        this.physics = new GeneralPhysics( world, winListener, true );
 
         // This blocks until the UI is ready:
         WhenUiReady uiPieces = init.waitForUi.waitForUi();
@@ -361,13 +362,13 @@ public class SwingGameLaunch implements GameLaunch
 
         if ( explode )
         {
-            world.changes.explodeAllRabbits();
+            world.commands.explodeAllRabbits();
         }
     }
 
     public int addToken( int tileX, int tileY, Token.Type ability )
     {
-        int prev = world.abilities.get( ability );
+        int prev = physics.abilitiesLeft( ability );
         int now = physics.addToken( tileX, tileY, ability );
         if ( now != prev )
         {
@@ -376,9 +377,19 @@ public class SwingGameLaunch implements GameLaunch
         return now;
     }
 
+    public boolean stepBack()
+    {
+        return physics.stepBack();
+    }
+
     public Map<Token.Type, Integer> getAbilities()
     {
-        return world.abilities;
+        return world.commands.abilities();
+    }
+
+    public int abilitiesLeft( Token.Type ability )
+    {
+        return physics.abilitiesLeft( ability );
     }
 
     public void addStatsChangedListener( Physics.StatsChangedListener listener )
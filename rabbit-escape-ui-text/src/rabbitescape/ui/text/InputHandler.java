@@ -7,8 +7,10 @@ import static rabbitescape.engine.util.Util.*;
 
 import rabbitescape.engine.Token;
 import rabbitescape.engine.World;
+import rabbitescape.engine.WorldHistory;
 import rabbitescape.engine.err.ExceptionTranslation;
 import rabbitescape.engine.err.RabbitEscapeException;
+import rabbitescape.engine.textworld.TextWorldManip;
 
 public class InputHandler
 {
@@ -151,11 +153,14 @@ public class InputHandler
     }
 
     private final World world;
+    private final WorldHistory history;
     private final Terminal terminal;
 
-    public InputHandler( World world, Terminal terminal )
+    public InputHandler(
+        World world, WorldHistory history, Terminal terminal )
     {
         this.world = world;
+        this.history = history;
         this.terminal = terminal;
     }
 
@@ -168,6 +173,11 @@ public class InputHandler
             return true;
         }
 
+        if ( input.equals( "back" ) )
+        {
+            return stepBack();
+        }
+
         try
         {
             Command command = new Command( input, world );
@@ -188,6 +198,24 @@ public class InputHandler
         return true;
     }
 
+    /**
+     * @return false, because we still want a command for this step.
+     */
+    private boolean stepBack()
+    {
+        if ( !history.canStepBack() )
+        {
+            return fail( t( "Can't go back any further." ) );
+        }
+
+        history.stepBack();
+
+        terminal.out.println(
+            join( "\n", TextWorldManip.renderWorld( world, false, true ) ) );
+
+        return false;
+    }
+
     private boolean fail( String message )
     {
         terminal.out.println( message );
@@ -202,6 +230,8 @@ public class InputHandler
         terminal.out.println(
             t( "ITEM = ${items}", newMap( "items", "bash" ) ) );
 
+        terminal.out.println( t( "Or type 'back' to go back a step." ) );
+
         try
         {
             return terminal.in.readLine();
@@ -3,8 +3,10 @@ package rabbitescape.ui.text;
 import static rabbitescape.engine.i18n.Translation.*;
 import static rabbitescape.engine.util.Util.*;
 
+import rabbitescape.engine.ChangeFeed;
 import rabbitescape.engine.LevelWinListener;
 import rabbitescape.engine.World;
+import rabbitescape.engine.WorldHistory;
 import rabbitescape.engine.World.CompletionState;
 import rabbitescape.engine.textworld.TextWorldManip;
 import rabbitescape.render.GameLaunch;
@@ -14,6 +16,7 @@ public class TextGameLaunch implements GameLaunch
     private final World world;
     private final LevelWinListener winListener;
     private final Terminal terminal;
+    private final ChangeFeed changes;
 
     public TextGameLaunch(
         World world, LevelWinListener winListener, Terminal terminal )
@@ -21,15 +24,20 @@ public class TextGameLaunch implements GameLaunch
         this.world = world;
         this.winListener = winListener;
         this.terminal = terminal;
+
+        // Before any steps, so the feed knows about everything that moves
+        this.changes = world.changeFeed();
     }
 
     @Override
     public void run( String[] args )
     {
         boolean useInput = false;
-        if ( args.length > 1 && args[1].equals( "--interactive" ) )
+        WorldHistory history = null;
+        if ( list( args ).contains( "--interactive" ) )
         {
             useInput = true;
+            history = new WorldHistory( world );
         }
 
         while( world.completionState() == CompletionState.RUNNING )
@@ -47,7 +55,7 @@ public class TextGameLaunch implements GameLaunch
                 if ( useInput )
                 {
                     InputHandler inputHandler =
-                        new InputHandler( world, terminal );
+                        new InputHandler( world, history, terminal );
 
                     //noinspection StatementWithEmptyBody
                     while ( !inputHandler.handle() )
@@ -89,7 +97,15 @@ public class TextGameLaunch implements GameLaunch
 
     private void printWorldImpl( boolean showChanges )
     {
-        String[] txt = TextWorldManip.renderWorld( world, showChanges, true );
+        String[] txt;
+        if ( showChanges )
+        {
+            txt = TextWorldManip.renderWorld( world, changes, true );
+        }
+        else
+        {
+            txt = TextWorldManip.renderWorld( world, false, true );
+        }
 
         terminal.out.println( join( "\n", txt ) );
     }